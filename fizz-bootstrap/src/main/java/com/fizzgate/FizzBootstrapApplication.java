@@ -87,6 +87,7 @@ import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import com.fizzgate.Fizz;
 import com.fizzgate.FizzAppContext;
 import com.fizzgate.config.AggregateRedisConfig;
+import com.fizzgate.log.AsyncLogSendService;
 import com.fizzgate.log.LogSendAppender;
 import com.fizzgate.util.FileUtils;
 
@@ -212,6 +213,10 @@ public class FizzBootstrapApplication {
                 LOGGER.info("FizzBootstrapApplication stopped.");
                 // set LogSendAppender.logEnabled to false to stop send log to fizz-manager
                 LogSendAppender.logEnabled = Boolean.FALSE;
+                if (LogSendAppender.logSendService instanceof AsyncLogSendService) {
+                    // send the buffered logs
+                    ((AsyncLogSendService) LogSendAppender.logSendService).shutdown(1000);
+                }
                 try {
                     Thread.sleep(100);
                 } catch (InterruptedException e) {
@@ -25,6 +25,7 @@ import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -137,12 +138,26 @@ public abstract class WebClientConfig {
     @Resource
     WebClientBuilderConfig webClientBuilderConfig;
 
+    /**
+     * @return the http client with the shared connection pool of reactor netty, subclass can give one with its own pool
+     */
+    protected HttpClient createHttpClient() {
+        return HttpClient.create();
+    }
+
+    /**
+     * @return the tcp client running on the loops of reactor netty, subclass can give one running on its own loops
+     */
+    protected TcpClient runOn(TcpClient tcpClient) {
+        return tcpClient;
+    }
+
     public WebClient webClient() {
 
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = createHttpClient()
                                           .tcpConfiguration(
                                               tcpClient -> {
-                                                  TcpClient newTcpClient = tcpClient.doOnConnected(
+                                                  TcpClient newTcpClient = runOn(tcpClient).doOnConnected(
                                                           connection -> {
                                                               if (connReadTimeout != null) {
                                                                   connection.addHandlerLast(new ReadTimeoutHandler(connReadTimeout,   TimeUnit.MILLISECONDS));
@@ -184,12 +199,16 @@ public abstract class WebClientConfig {
             }
         }
 
+        return webClient(new ReactorClientHttpConnector(httpClient));
+    }
+
+    protected WebClient webClient(ClientHttpConnector connector) {
         return webClientBuilderConfig.getBuilder()
                                      .exchangeStrategies(
                                              ExchangeStrategies.builder().codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(-1))
                                                                          .build()
                                      )
-                                     .clientConnector(new ReactorClientHttpConnector(httpClient))
+                                     .clientConnector(connector)
                                      .build();
     }
 
@@ -0,0 +1,393 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.util;
+
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressSeqRange;
+import inet.ipaddr.IPAddressString;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ip whitelist or blacklist compiled from rules, which are single ips, CIDR blocks, ranges and ipaddress wildcards.
+ * <p/>
+ * IPv4 rules are merged into sorted disjoint intervals, so matching an IPv4 ip in dotted decimal form is a binary search
+ * without allocation, except per segment ranges like 10.1-3.*.5, which are not intervals and are matched one by one.
+ * IPv6 rules are merged into intervals of 128 bits too, but matching an IPv6 ip, or an IPv4 one in other forms,
+ * allocates, as the ip is parsed by {@link IPAddressString}.
+ * <p/>
+ * An instance is immutable and can be shared by threads, it should be built once when the rules change.
+ *
+ * @author hongqiaowei
+ */
+
+public class IpMatcher {
+
+    private static final long[]      EMPTY_LONGS      = new long[0];
+
+    private static final int[][]     EMPTY_BOXES      = new int[0][];
+
+    private static final IPAddress[] EMPTY_ADDRESSES  = new IPAddress[0];
+
+    public  static final IpMatcher   EMPTY            = new Builder().build();
+
+    private final        long[]      v4starts;
+
+    private final        long[]      v4ends;
+
+    /**
+     * high and low 64 bits of interval starts, in pairs
+     */
+    private final        long[]      v6starts;
+
+    private final        long[]      v6ends;
+
+    /**
+     * from and to of 4 segments
+     */
+    private final        int[][]     v4boxes;
+
+    /**
+     * IPv6 addresses which are not sequential
+     */
+    private final        IPAddress[] others;
+
+    private IpMatcher(long[] v4starts, long[] v4ends, long[] v6starts, long[] v6ends, int[][] v4boxes, IPAddress[] others) {
+        this.v4starts = v4starts;
+        this.v4ends   = v4ends;
+        this.v6starts = v6starts;
+        this.v6ends   = v6ends;
+        this.v4boxes  = v4boxes;
+        this.others   = others;
+    }
+
+    public boolean isEmpty() {
+        return v4starts.length == 0 && v6starts.length == 0 && v4boxes.length == 0 && others.length == 0;
+    }
+
+    /**
+     * Allocation free only if the ip is IPv4 in dotted decimal form.
+     *
+     * @return false if ip is invalid
+     */
+    public boolean match(String ip) {
+        if (ip == null) {
+            return false;
+        }
+        long v4 = parseIpv4(ip);
+        if (v4 >= 0) {
+            return matchIpv4(v4);
+        }
+        if (v6starts.length == 0 && others.length == 0) {
+            return false;
+        }
+        IPAddress address = new IPAddressString(ip).getAddress();
+        if (address == null) {
+            return false;
+        }
+        if (address.isIPv4()) {
+            return matchIpv4(address.getValue().longValue());
+        }
+        byte[] bytes = address.getBytes();
+        long hi = toLong(bytes, 0), lo = toLong(bytes, 8);
+        int i = floor(v6starts, hi, lo);
+        if (i >= 0 && compare(hi, lo, v6ends[i << 1], v6ends[(i << 1) + 1]) <= 0) {
+            return true;
+        }
+        for (IPAddress other : others) {
+            if (other.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchIpv4(long ip) {
+        int lo = 0, hi = v4starts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (v4starts[mid] <= ip) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (hi >= 0 && ip <= v4ends[hi]) {
+            return true;
+        }
+        for (int[] box : v4boxes) {
+            int j = 0;
+            for (; j < 4; j++) {
+                int seg = (int) (ip >>> (24 - 8 * j)) & 0xFF;
+                if (seg < box[j] || seg > box[4 + j]) {
+                    break;
+                }
+            }
+            if (j == 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return index of the last interval whose start is not greater than the ip, -1 if none
+     */
+    private static int floor(long[] starts, long hi, long lo) {
+        int l = 0, h = starts.length / 2 - 1;
+        while (l <= h) {
+            int mid = (l + h) >>> 1;
+            if (compare(starts[mid << 1], starts[(mid << 1) + 1], hi, lo) <= 0) {
+                l = mid + 1;
+            } else {
+                h = mid - 1;
+            }
+        }
+        return h;
+    }
+
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int c = Long.compareUnsigned(hi1, hi2);
+        if (c == 0) {
+            c = Long.compareUnsigned(lo1, lo2);
+        }
+        return c;
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            v = (v << 8) | (bytes[i] & 0xFF);
+        }
+        return v;
+    }
+
+    /**
+     * @return the IPv4 address as unsigned int, or -1 if ip is not in dotted decimal form
+     */
+    public static long parseIpv4(String ip) {
+        int len = ip.length();
+        if (len < 7 || len > 15) {
+            return -1;
+        }
+        long v = 0;
+        int seg = 0, digits = 0, dots = 0;
+        for (int i = 0; i < len; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seg = seg * 10 + (c - '0');
+                if (++digits > 3 || seg > 255) {
+                    return -1;
+                }
+            } else if (c == Consts.S.DOT && digits > 0 && dots < 3) {
+                v = (v << 8) | seg;
+                seg = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || dots != 3) {
+            return -1;
+        }
+        return (v << 8) | seg;
+    }
+
+    public static class Builder {
+
+        private final List<long[]>    v4intervals = new ArrayList<>();
+
+        private final List<long[]>    v6intervals = new ArrayList<>();
+
+        private final List<int[]>     v4boxes     = new ArrayList<>();
+
+        private final List<IPAddress> others      = new ArrayList<>();
+
+        /**
+         * Invalid ip is ignored, and so are the other methods' invalid arguments.
+         */
+        public Builder ip(String ip) {
+            long v4 = parseIpv4(ip);
+            if (v4 >= 0) {
+                v4intervals.add(new long[]{v4, v4});
+            } else {
+                IPAddress address = new IPAddressString(ip).getAddress();
+                if (address != null && address.isIPv6() && !address.isMultiple()) {
+                    address(address);
+                }
+            }
+            return this;
+        }
+
+        public Builder cidr(String network, int prefixLength) {
+            long v4 = parseIpv4(network);
+            if (v4 >= 0) {
+                if (prefixLength >= 0 && prefixLength <= 32) {
+                    long hostMask = (1L << (32 - prefixLength)) - 1;
+                    v4intervals.add(new long[]{v4 & ~hostMask, v4 | hostMask});
+                }
+            } else {
+                IPAddress address = new IPAddressString(network + Consts.S.FORWARD_SLASH + prefixLength).getAddress();
+                if (address != null) {
+                    address(address.toPrefixBlock());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param start inclusive
+         * @param end   inclusive, the range is empty if end is less than start
+         */
+        public Builder range(String start, String end) {
+            long s = parseIpv4(start), e = parseIpv4(end);
+            if (s >= 0 && e >= 0) {
+                if (s <= e) {
+                    v4intervals.add(new long[]{s, e});
+                }
+            } else {
+                IPAddress sa = new IPAddressString(start).getAddress(), ea = new IPAddressString(end).getAddress();
+                if (sa != null && ea != null && sa.isIPv6() && ea.isIPv6() && sa.compareTo(ea) <= 0) {
+                    IPAddressSeqRange range = sa.spanWithRange(ea);
+                    addIpv6(range.getLower().getBytes(), range.getUpper().getBytes());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Matches the IPv4 whose each segment is in the range from[i] to to[i].
+         */
+        public Builder box(int[] from, int[] to) {
+            int k = 0;
+            while (k < 4 && from[k] == to[k]) {
+                k++;
+            }
+            boolean interval = true;
+            for (int i = k + 1; i < 4; i++) {
+                if (from[i] != 0 || to[i] != 255) {
+                    interval = false;
+                    break;
+                }
+            }
+            if (interval) {
+                long s = 0, e = 0;
+                for (int i = 0; i < 4; i++) {
+                    s = (s << 8) | from[i];
+                    e = (e << 8) | to[i];
+                }
+                if (s <= e) {
+                    v4intervals.add(new long[]{s, e});
+                }
+            } else {
+                int[] box = new int[8];
+                for (int i = 0; i < 4; i++) {
+                    box[i]     = from[i];
+                    box[4 + i] = to[i];
+                }
+                v4boxes.add(box);
+            }
+            return this;
+        }
+
+        /**
+         * @param address which can be a prefix block or has wildcard segments, like 10.1.*.*
+         */
+        public Builder address(IPAddress address) {
+            if (address.isIPv4()) {
+                int[] from = new int[4], to = new int[4];
+                for (int i = 0; i < 4; i++) {
+                    from[i] = address.getSegment(i).getSegmentValue();
+                    to[i]   = address.getSegment(i).getUpperSegmentValue();
+                }
+                box(from, to);
+            } else if (address.isSequential()) {
+                addIpv6(address.getLower().getBytes(), address.getUpper().getBytes());
+            } else {
+                others.add(address);
+            }
+            return this;
+        }
+
+        private void addIpv6(byte[] start, byte[] end) {
+            v6intervals.add(new long[]{toLong(start, 0), toLong(start, 8), toLong(end, 0), toLong(end, 8)});
+        }
+
+        public IpMatcher build() {
+            long[] v4starts = EMPTY_LONGS, v4ends = EMPTY_LONGS;
+            if (!v4intervals.isEmpty()) {
+                v4intervals.sort(Comparator.comparingLong(i -> i[0]));
+                List<long[]> merged = new ArrayList<>();
+                long[] cur = v4intervals.get(0).clone();
+                for (int i = 1; i < v4intervals.size(); i++) {
+                    long[] next = v4intervals.get(i);
+                    if (next[0] <= cur[1] + 1) {
+                        cur[1] = Math.max(cur[1], next[1]);
+                    } else {
+                        merged.add(cur);
+                        cur = next.clone();
+                    }
+                }
+                merged.add(cur);
+                v4starts = new long[merged.size()];
+                v4ends   = new long[merged.size()];
+                for (int i = 0; i < merged.size(); i++) {
+                    v4starts[i] = merged.get(i)[0];
+                    v4ends[i]   = merged.get(i)[1];
+                }
+            }
+
+            long[] v6starts = EMPTY_LONGS, v6ends = EMPTY_LONGS;
+            if (!v6intervals.isEmpty()) {
+                v6intervals.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+                List<long[]> merged = new ArrayList<>();
+                long[] cur = v6intervals.get(0).clone();
+                for (int i = 1; i < v6intervals.size(); i++) {
+                    long[] next = v6intervals.get(i);
+                    if (compare(next[0], next[1], cur[2], cur[3]) <= 0) {
+                        if (compare(next[2], next[3], cur[2], cur[3]) > 0) {
+                            cur[2] = next[2];
+                            cur[3] = next[3];
+                        }
+                    } else {
+                        merged.add(cur);
+                        cur = next.clone();
+                    }
+                }
+                merged.add(cur);
+                v6starts = new long[merged.size() * 2];
+                v6ends   = new long[merged.size() * 2];
+                for (int i = 0; i < merged.size(); i++) {
+                    long[] m = merged.get(i);
+                    v6starts[i * 2]     = m[0];
+                    v6starts[i * 2 + 1] = m[1];
+                    v6ends[i * 2]       = m[2];
+                    v6ends[i * 2 + 1]   = m[3];
+                }
+            }
+
+            return new IpMatcher(v4starts, v4ends, v6starts, v6ends,
+                                 v4boxes.isEmpty() ? EMPTY_BOXES     : v4boxes.toArray(new int[0][]),
+                                 others.isEmpty()  ? EMPTY_ADDRESSES : others.toArray(new IPAddress[0]));
+        }
+    }
+}
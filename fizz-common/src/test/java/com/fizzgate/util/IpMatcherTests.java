@@ -0,0 +1,107 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.util;
+
+import inet.ipaddr.IPAddressString;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class IpMatcherTests {
+
+    @Test
+    void parseIpv4Test() {
+        assertEquals(0x0A01020FL,  IpMatcher.parseIpv4("10.1.2.15"));
+        assertEquals(0xFFFFFFFFL,  IpMatcher.parseIpv4("255.255.255.255"));
+        assertEquals(-1, IpMatcher.parseIpv4("256.1.1.1"));
+        assertEquals(-1, IpMatcher.parseIpv4("1.1.1"));
+        assertEquals(-1, IpMatcher.parseIpv4("1.1.1.1.1"));
+        assertEquals(-1, IpMatcher.parseIpv4("1..1.1"));
+        assertEquals(-1, IpMatcher.parseIpv4("1.1.1.1 "));
+        assertEquals(-1, IpMatcher.parseIpv4("::1"));
+    }
+
+    @Test
+    void ipv4Test() {
+        IpMatcher matcher = new IpMatcher.Builder().ip("10.237.148.107")
+                                                   .cidr("192.168.3.0", 24)
+                                                   .range("172.25.104.136", "172.25.104.138")
+                                                   .range("172.25.104.137", "172.25.104.140")
+                                                   .range("9.9.9.9", "9.9.9.1")
+                                                   .box(new int[]{10, 1, 0, 5}, new int[]{10, 3, 255, 5})
+                                                   .address(new IPAddressString("11.*.2.*").getAddress())
+                                                   .ip("not ip")
+                                                   .build();
+        assertFalse(matcher.isEmpty());
+
+        assertTrue (matcher.match("10.237.148.107"));
+        assertFalse(matcher.match("10.237.148.108"));
+
+        assertTrue (matcher.match("192.168.3.0"));
+        assertTrue (matcher.match("192.168.3.255"));
+        assertFalse(matcher.match("192.168.4.0"));
+        assertFalse(matcher.match("192.168.2.255"));
+
+        assertFalse(matcher.match("172.25.104.135"));
+        assertTrue (matcher.match("172.25.104.136"));
+        assertTrue (matcher.match("172.25.104.140"));
+        assertFalse(matcher.match("172.25.104.141"));
+        assertFalse(matcher.match("9.9.9.5"));
+
+        assertTrue (matcher.match("10.2.100.5"));
+        assertFalse(matcher.match("10.2.100.6"));
+        assertFalse(matcher.match("10.4.100.5"));
+
+        assertTrue (matcher.match("11.200.2.9"));
+        assertFalse(matcher.match("11.200.3.9"));
+
+        assertFalse(matcher.match("not ip"));
+        assertFalse(matcher.match(null));
+        assertFalse(matcher.match("::1"));
+    }
+
+    @Test
+    void ipv6Test() {
+        IpMatcher matcher = new IpMatcher.Builder().ip("::1")
+                                                   .cidr("2001:db8::", 32)
+                                                   .range("fe80::10", "fe80::20")
+                                                   .cidr("10.0.0.0", 8)
+                                                   .build();
+        assertTrue (matcher.match("::1"));
+        assertTrue (matcher.match("0:0:0:0:0:0:0:1"));
+        assertFalse(matcher.match("::2"));
+        assertTrue (matcher.match("2001:db8:ffff::1"));
+        assertFalse(matcher.match("2001:db9::1"));
+        assertTrue (matcher.match("fe80::15"));
+        assertFalse(matcher.match("fe80::21"));
+        assertTrue (matcher.match("10.255.0.1"));
+        assertFalse(matcher.match("11.0.0.1"));
+    }
+
+    @Test
+    void emptyTest() {
+        assertTrue (IpMatcher.EMPTY.isEmpty());
+        assertFalse(IpMatcher.EMPTY.match("10.1.1.1"));
+        assertFalse(IpMatcher.EMPTY.match("::1"));
+    }
+}
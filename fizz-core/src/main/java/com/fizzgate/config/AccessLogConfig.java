@@ -0,0 +1,241 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.config;
+
+import com.fizzgate.log.AccessLogContext;
+import com.fizzgate.log.AccessLogRecord;
+import com.fizzgate.log.AccessLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configures the access log, e.g.
+ * <pre>
+ * fizz.access-log:
+ *   enable: true
+ *   file: log/access.log
+ *   sample-rate: 0.1
+ *   fields: ts,traceId,service,path,status,time
+ *   services:
+ *     xservice:
+ *       sample-rate: 1
+ *       fields: ts,traceId,app,service,path,status,upstream,time,upstreamTime
+ * </pre>
+ * services configure the sampling and fields of all the routes of a service, keyed by the service in request path,
+ * the fields are those of {@link AccessLogRecord}, all fields are logged if none configured.
+ *
+ * @author hongqiaowei
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "fizz.access-log")
+public class AccessLogConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLogConfig.class);
+
+    public static class Service {
+
+        /**
+         * 0 to 1, null means the default
+         */
+        private Double       sampleRate;
+
+        /**
+         * null means the default
+         */
+        private List<String> fields;
+
+        public Double getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(Double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public List<String> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<String> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public String toString() {
+            return "{ sampleRate=" + sampleRate + ", fields=" + fields + " }";
+        }
+    }
+
+    /**
+     * the compiled sampling and fields of a service
+     */
+    public static class Setting {
+
+        public final double sampleRate;
+
+        public final int    fields;
+
+        Setting(double sampleRate, int fields) {
+            this.sampleRate = sampleRate;
+            this.fields     = fields;
+        }
+    }
+
+    private boolean              enable      = false;
+
+    private String               file        = "log/access.log";
+
+    /**
+     * in bytes
+     */
+    private long                 maxFileSize = 100 * 1024 * 1024;
+
+    private int                  maxFiles    = 10;
+
+    /**
+     * max records waiting for writing, logs are dropped when exceeded
+     */
+    private int                  bufferSize  = 16 * 1024;
+
+    private double               sampleRate  = 1;
+
+    private List<String>         fields;
+
+    private Map<String, Service> services    = new HashMap<>();
+
+    private Setting              defaultSetting;
+
+    private Map<String, Setting> settings    = new HashMap<>();
+
+    private AccessLogWriter      writer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enable) {
+            return;
+        }
+        defaultSetting = new Setting(sampleRate, AccessLogRecord.fields(fields));
+        services.forEach(
+                (service, r) -> {
+                    double sr = r.sampleRate == null ? sampleRate : r.sampleRate;
+                    int    fs = r.fields == null ? defaultSetting.fields : AccessLogRecord.fields(r.fields);
+                    settings.put(service, new Setting(sr, fs));
+                }
+        );
+        writer = new AccessLogWriter(file, maxFileSize, maxFiles, bufferSize);
+        AccessLogContext.setEnabled(true);
+        log.info("access log sample rate: {}, fields: {}, services: {}", sampleRate, fields, services);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (writer != null) {
+            AccessLogContext.setEnabled(false);
+            writer.shutdown(1000);
+        }
+    }
+
+    /**
+     * @return null if access log is disabled
+     */
+    public AccessLogWriter getWriter() {
+        return writer;
+    }
+
+    public Setting getSetting(String service) {
+        if (service == null || settings.isEmpty()) {
+            return defaultSetting;
+        }
+        return settings.getOrDefault(service, defaultSetting);
+    }
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public void setEnable(boolean enable) {
+        this.enable = enable;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public Map<String, Service> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, Service> services) {
+        this.services = services;
+    }
+}
@@ -35,6 +35,7 @@ import org.springframework.session.data.redis.config.annotation.SpringSessionRed
 
 import com.fizzgate.config.RedisReactiveConfig;
 import com.fizzgate.config.RedisReactiveProperties;
+import com.fizzgate.log.AsyncLogSendService;
 import com.fizzgate.log.LogSendAppender;
 import com.fizzgate.log.RedisLogSendServiceImpl;
 
@@ -94,8 +95,10 @@ public class AggregateRedisConfig extends RedisReactiveConfig {
 
         if (SEND_LOG_TYPE_REDIS.equals(aggregateRedisConfigProperties.getSendLogType())) {
             // set LogSendAppender.logSendService here to let send log as early as possible
-            LogSendAppender.logSendService = new RedisLogSendServiceImpl(aggregateRedisConfigProperties, this,
-                    reactiveStringRedisTemplate);
+            LogSendAppender.logSendService = new AsyncLogSendService(
+                    new RedisLogSendServiceImpl(aggregateRedisConfigProperties, this, reactiveStringRedisTemplate),
+                    aggregateRedisConfigProperties.getSendLogBufferSize(), aggregateRedisConfigProperties.getSendLogBatchSize(),
+                    aggregateRedisConfigProperties.getSendLogBatchInterval());
         }
 
         return reactiveStringRedisTemplate;
@@ -44,4 +44,23 @@ public class AggregateRedisConfigProperties {
     @Value("${send-log.type:redis}")
     private String sendLogType;
 
+    /**
+     * max logs waiting for sending, logs are dropped when exceeded
+     */
+    @Value("${send-log.buffer-size:8192}")
+    private int sendLogBufferSize;
+
+    /**
+     * max logs sent in one message as a JSON array, 1, the default, means one message, so one PUBLISH, per log as before,
+     * for consumers of the channel expect a JSON object per message; set it larger only if all consumers accept arrays
+     */
+    @Value("${send-log.batch-size:1}")
+    private int sendLogBatchSize;
+
+    /**
+     * max millis a log waits for its batch
+     */
+    @Value("${send-log.batch-interval:200}")
+    private long sendLogBatchInterval;
+
 }
@@ -17,12 +17,17 @@
 
 package com.fizzgate.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 
 import com.fizzgate.stats.FlowStat;
 import com.fizzgate.stats.circuitbreaker.CircuitBreakManager;
+import com.fizzgate.stats.ratelimit.ClusterRateLimiter;
 
 /**
  * @author hongqiaowei
@@ -33,7 +38,18 @@ import com.fizzgate.stats.circuitbreaker.CircuitBreakManager;
 public class FlowControlConfig {
 
     @Bean
-    public FlowStat flowStat(CircuitBreakManager circuitBreakManager) {
-        return new FlowStat(circuitBreakManager);
+    public FlowStat flowStat(CircuitBreakManager circuitBreakManager, ObjectProvider<ClusterRateLimiter> clusterRateLimiter) {
+        FlowStat flowStat = new FlowStat(circuitBreakManager);
+        flowStat.setClusterRateLimiter(clusterRateLimiter.getIfAvailable());
+        return flowStat;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "fizz.flow-control.cluster.enable", havingValue = "true")
+    public ClusterRateLimiter clusterRateLimiter(@Qualifier(AggregateRedisConfig.AGGREGATE_REACTIVE_REDIS_TEMPLATE) ReactiveStringRedisTemplate rt,
+                                                 @Value("${fizz.flow-control.cluster.lease-percent:10}")        int  leasePercent,
+                                                 @Value("${fizz.flow-control.cluster.lease-millis:1000}")       long leaseMillis,
+                                                 @Value("${fizz.flow-control.cluster.redis-timeout-millis:50}") long redisTimeoutMillis) {
+        return new ClusterRateLimiter(rt, leasePercent, leaseMillis, redisTimeoutMillis);
     }
 }
@@ -62,6 +62,10 @@ public class FlowStatSchedConfig extends SchedConfig {
     private static final String _avgRespTime     = "\"avgRespTime\":";
     private static final String _minRespTime     = "\"minRespTime\":";
     private static final String _maxRespTime     = "\"maxRespTime\":";
+    private static final String _p50RespTime     = "\"p50RespTime\":";
+    private static final String _p90RespTime     = "\"p90RespTime\":";
+    private static final String _p99RespTime     = "\"p99RespTime\":";
+    private static final String _p999RespTime    = "\"p999RespTime\":";
 
     private static final String _app             = "\"app\":";
     private static final String _sourceIp        = "\"sourceIp\":";
@@ -227,6 +231,10 @@ public class FlowStatSchedConfig extends SchedConfig {
                         b.append(_avgRespTime);            b.append(w.getAvgRt());                   b.append(Consts.S.COMMA);
                         b.append(_maxRespTime);            b.append(w.getMax());                     b.append(Consts.S.COMMA);
                         b.append(_minRespTime);            b.append(w.getMin());                     b.append(Consts.S.COMMA);
+                        b.append(_p50RespTime);            b.append(w.getP50());                     b.append(Consts.S.COMMA);
+                        b.append(_p90RespTime);            b.append(w.getP90());                     b.append(Consts.S.COMMA);
+                        b.append(_p99RespTime);            b.append(w.getP99());                     b.append(Consts.S.COMMA);
+                        b.append(_p999RespTime);           b.append(w.getP999());                    b.append(Consts.S.COMMA);
 
                         b.append(_2xxStatus);              b.append(w.get2xxStatus());               b.append(Consts.S.COMMA);
                         b.append(_4xxStatus);              b.append(w.get4xxStatus());               b.append(Consts.S.COMMA);
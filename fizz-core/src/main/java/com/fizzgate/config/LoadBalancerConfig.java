@@ -0,0 +1,105 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.config;
+
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
+import com.fizzgate.proxy.balancer.UpstreamStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures the balancer of upstream services, e.g.
+ * <pre>
+ * fizz.load-balancer.type: p2c-ewma
+ * fizz.load-balancer.services.xservice: least-request
+ * </pre>
+ * the built-in balancers: round-robin, random, p2c-ewma and least-request, {@link LoadBalancer} beans are registered too.
+ * Without type configured, services are balanced as before.
+ *
+ * @author hongqiaowei
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "fizz.load-balancer")
+public class LoadBalancerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancerConfig.class);
+
+    private final ObjectProvider<LoadBalancer> loadBalancers;
+
+    /**
+     * the default balancer of services
+     */
+    private String              type;
+
+    /**
+     * service to its balancer
+     */
+    private Map<String, String> services  = new HashMap<>();
+
+    /**
+     * the decay time of EWMA latency of upstream instances, in millis
+     */
+    private long                ewmaDecay = 10_000;
+
+    public LoadBalancerConfig(ObjectProvider<LoadBalancer> loadBalancers) {
+        this.loadBalancers = loadBalancers;
+    }
+
+    @PostConstruct
+    public void init() {
+        loadBalancers.orderedStream().forEach(LoadBalancers::register);
+        LoadBalancers.configure(type, services);
+        UpstreamStats.setDecayNanos(TimeUnit.MILLISECONDS.toNanos(ewmaDecay));
+        UpstreamStats.setEnabled(LoadBalancers.isAnyConfigured());
+        log.info("load balancer type: {}, services: {}", type, services);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Map<String, String> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, String> services) {
+        this.services = services;
+    }
+
+    public long getEwmaDecay() {
+        return ewmaDecay;
+    }
+
+    public void setEwmaDecay(long ewmaDecay) {
+        this.ewmaDecay = ewmaDecay;
+    }
+}
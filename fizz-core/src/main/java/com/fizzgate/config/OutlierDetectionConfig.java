@@ -0,0 +1,166 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.config;
+
+import com.fizzgate.monitor.FizzMonitorService;
+import com.fizzgate.proxy.balancer.OutlierDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Configures the passive outlier detection of upstream instances, e.g.
+ * <pre>
+ * fizz.outlier-detection.enable: true
+ * fizz.outlier-detection.consecutive-failures: 5
+ * </pre>
+ * see {@link OutlierDetector}, ejections are reported to FizzMonitorService as {@link FizzMonitorService#OUTLIER_EJECT_ALARM}.
+ *
+ * @author hongqiaowei
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "fizz.outlier-detection")
+public class OutlierDetectionConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(OutlierDetectionConfig.class);
+
+    private final FizzMonitorService fizzMonitorService;
+
+    private boolean enable              = false;
+
+    /**
+     * eject an instance after so many failures in a row, 0 means no limit
+     */
+    private int     consecutiveFailures = 5;
+
+    /**
+     * eject an instance if its failures reach the percentage of requests in the interval, 0 means no limit
+     */
+    private int     failureRate         = 50;
+
+    /**
+     * the min requests in the interval to check the failure rate
+     */
+    private int     minRequests         = 20;
+
+    /**
+     * in millis
+     */
+    private long    interval            = 10_000;
+
+    /**
+     * in millis
+     */
+    private long    baseEjectionTime    = 30_000;
+
+    /**
+     * in millis
+     */
+    private long    maxEjectionTime     = 300_000;
+
+    private int     maxEjectionPercent  = 50;
+
+    public OutlierDetectionConfig(FizzMonitorService fizzMonitorService) {
+        this.fizzMonitorService = fizzMonitorService;
+    }
+
+    @PostConstruct
+    public void init() {
+        OutlierDetector.setListener(
+                (stats, ejectionMillis, reason) -> {
+                    String service = stats.getService();
+                    if (service == null) {
+                        service = stats.getAddress();
+                    }
+                    String desc = stats.getAddress() + " ejected for " + ejectionMillis + "ms: " + reason;
+                    log.warn("{} {}", service, desc);
+                    fizzMonitorService.alarm(service, stats.getAddress(), FizzMonitorService.OUTLIER_EJECT_ALARM, desc);
+                }
+        );
+        OutlierDetector.configure(enable, consecutiveFailures, failureRate, minRequests, interval, baseEjectionTime, maxEjectionTime, maxEjectionPercent);
+        log.info("outlier detection enable: {}", enable);
+    }
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public void setEnable(boolean enable) {
+        this.enable = enable;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public int getFailureRate() {
+        return failureRate;
+    }
+
+    public void setFailureRate(int failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public int getMinRequests() {
+        return minRequests;
+    }
+
+    public void setMinRequests(int minRequests) {
+        this.minRequests = minRequests;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public long getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    public void setBaseEjectionTime(long baseEjectionTime) {
+        this.baseEjectionTime = baseEjectionTime;
+    }
+
+    public long getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    public void setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public void setMaxEjectionPercent(int maxEjectionPercent) {
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+}
@@ -23,8 +23,45 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import com.fizzgate.config.WebClientConfig;
+import com.fizzgate.proxy.FizzConnectionProvider;
+import com.fizzgate.proxy.http2.Http2ClientHttpConnector;
+import com.fizzgate.proxy.http2.Http2ConnectionPool;
+
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.tcp.TcpClient;
+
+import javax.annotation.Resource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
+ * The proxy web client has its own connection pools, the default one is configured by proxy-webclient.pool.*,
+ * and pools of specific backend service or host by proxy-webclient.service-pools.{service}.* or
+ * proxy-webclient.host-pools.[{host:port}].*, which inherit the unset properties from the default one, e.g.
+ * <pre>
+ * proxy-webclient:
+ *   pool:
+ *     max-connections: 500
+ *   service-pools:
+ *     xservice:
+ *       max-connections: 100
+ *   host-pools:
+ *     "[10.0.0.1:8080]":
+ *       max-connections: 50
+ *       pending-acquire-max-count: 100
+ * </pre>
+ * the live metrics of the pools are served by /admin/connectionPool/stats.
+ * <p/>
+ * Requests to the services and hosts in proxy-webclient.http2.services and proxy-webclient.http2.hosts, and of the routes
+ * with http2 set, are sent by HTTP/2 when proxy-webclient.http2.enable is true, h2c with prior knowledge for http
+ * and h2 negotiated by ALPN for https, the streams of a host are multiplexed over at most
+ * proxy-webclient.http2.max-connections connections.
+ *
  * @author hongqiaowei
  */
 
@@ -32,13 +69,325 @@ import com.fizzgate.config.WebClientConfig;
 @ConfigurationProperties(prefix = ProxyWebClientConfig.prefix)
 public class ProxyWebClientConfig extends WebClientConfig {
 
-    protected static final String prefix         = "proxy-webclient";
+    protected static final String prefix                  = "proxy-webclient";
+
+    public    static final String proxyWebClient          = "proxyWebClient";
+
+    public    static final String proxyConnectionProvider = "proxyConnectionProvider";
+
+    public    static final String proxyHttp2ConnectionPool = "proxyHttp2ConnectionPool";
+
+    public    static final String proxyHttp2WebClient     = "proxyHttp2WebClient";
+
+    public static class Pool {
+
+        /**
+         * max connections to each remote host
+         */
+        private Integer maxConnections;
+
+        /**
+         * max acquires pending for connection, -1 means no limit
+         */
+        private Integer pendingAcquireMaxCount;
+
+        /**
+         * in millis
+         */
+        private Long    pendingAcquireTimeout;
+
+        /**
+         * connection idle longer than this is closed, in millis, 0 means no limit
+         */
+        private Long    maxIdleTime;
+
+        /**
+         * connection alive longer than this is closed, in millis, 0 means no limit
+         */
+        private Long    maxLifeTime;
+
+        /**
+         * interval of evicting idle and expired connections in background, in millis, 0 means only on acquiring
+         */
+        private Long    evictionInterval;
+
+        /**
+         * reuse the most recently used idle connection first, so the others can idle out
+         */
+        private Boolean lifo;
+
+        public static Pool defaults() {
+            Pool p = new Pool();
+            p.maxConnections         = 500;
+            p.pendingAcquireMaxCount = 1000;
+            p.pendingAcquireTimeout  = 45_000L;
+            p.maxIdleTime            = 15_000L;
+            p.maxLifeTime            = 0L;
+            p.evictionInterval       = 10_000L;
+            p.lifo                   = false;
+            return p;
+        }
+
+        /**
+         * @return the pool with the unset properties of this inherited from parent
+         */
+        public Pool inherit(Pool parent) {
+            Pool p = new Pool();
+            p.maxConnections         = maxConnections         == null ? parent.maxConnections         : maxConnections;
+            p.pendingAcquireMaxCount = pendingAcquireMaxCount == null ? parent.pendingAcquireMaxCount : pendingAcquireMaxCount;
+            p.pendingAcquireTimeout  = pendingAcquireTimeout  == null ? parent.pendingAcquireTimeout  : pendingAcquireTimeout;
+            p.maxIdleTime            = maxIdleTime            == null ? parent.maxIdleTime            : maxIdleTime;
+            p.maxLifeTime            = maxLifeTime            == null ? parent.maxLifeTime            : maxLifeTime;
+            p.evictionInterval       = evictionInterval       == null ? parent.evictionInterval       : evictionInterval;
+            p.lifo                   = lifo                   == null ? parent.lifo                   : lifo;
+            return p;
+        }
+
+        public Integer getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(Integer maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public Integer getPendingAcquireMaxCount() {
+            return pendingAcquireMaxCount;
+        }
+
+        public void setPendingAcquireMaxCount(Integer pendingAcquireMaxCount) {
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        }
+
+        public Long getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Long pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public Long getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Long getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Long maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public Long getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Long evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+
+        public Boolean getLifo() {
+            return lifo;
+        }
+
+        public void setLifo(Boolean lifo) {
+            this.lifo = lifo;
+        }
+
+        @Override
+        public String toString() {
+            return  "{ maxConnections="         + maxConnections +
+                    ", pendingAcquireMaxCount=" + pendingAcquireMaxCount +
+                    ", pendingAcquireTimeout="  + pendingAcquireTimeout +
+                    ", maxIdleTime="            + maxIdleTime +
+                    ", maxLifeTime="            + maxLifeTime +
+                    ", evictionInterval="       + evictionInterval +
+                    ", lifo="                   + lifo +
+                    " }";
+        }
+    }
+
+    public static class Http2 {
+
+        private boolean      enable                 = false;
+
+        /**
+         * max connections to each remote host
+         */
+        private int          maxConnections         = 2;
+
+        /**
+         * max concurrent streams of each connection, the smaller of it and the server's SETTINGS_MAX_CONCURRENT_STREAMS applies
+         */
+        private int          maxConcurrentStreams   = 100;
+
+        private int          pendingAcquireMaxCount = 1000;
+
+        /**
+         * in millis
+         */
+        private long         pendingAcquireTimeout  = 45_000;
+
+        private List<String> services               = new ArrayList<>();
+
+        /**
+         * host:port
+         */
+        private List<String> hosts                  = new ArrayList<>();
+
+        public boolean isEnable() {
+            return enable;
+        }
+
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
 
-    public    static final String proxyWebClient = "proxyWebClient";
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConcurrentStreams() {
+            return maxConcurrentStreams;
+        }
+
+        public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+        }
+
+        public int getPendingAcquireMaxCount() {
+            return pendingAcquireMaxCount;
+        }
+
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        }
+
+        public long getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(long pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public List<String> getServices() {
+            return services;
+        }
+
+        public void setServices(List<String> services) {
+            this.services = services;
+        }
+
+        public List<String> getHosts() {
+            return hosts;
+        }
+
+        public void setHosts(List<String> hosts) {
+            // in the form of the address of request uri, e.g. an IPv6 host in full
+            this.hosts = hosts.stream().map(FizzConnectionProvider::address).collect(Collectors.toList());
+        }
+
+        @Override
+        public String toString() {
+            return  "{ enable="                 + enable +
+                    ", maxConnections="         + maxConnections +
+                    ", maxConcurrentStreams="   + maxConcurrentStreams +
+                    ", pendingAcquireMaxCount=" + pendingAcquireMaxCount +
+                    ", pendingAcquireTimeout="  + pendingAcquireTimeout +
+                    ", services="               + services +
+                    ", hosts="                  + hosts +
+                    " }";
+        }
+    }
+
+    private Pool              pool         = new Pool();
+
+    private Map<String, Pool> servicePools = new HashMap<>();
+
+    private Map<String, Pool> hostPools    = new HashMap<>();
+
+    private Http2             http2        = new Http2();
+
+    @Resource
+    private TransportConfig   transportConfig;
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+
+    public Map<String, Pool> getServicePools() {
+        return servicePools;
+    }
+
+    public void setServicePools(Map<String, Pool> servicePools) {
+        this.servicePools = servicePools;
+    }
+
+    public Map<String, Pool> getHostPools() {
+        return hostPools;
+    }
+
+    public void setHostPools(Map<String, Pool> hostPools) {
+        this.hostPools = hostPools;
+    }
+
+    public Http2 getHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(Http2 http2) {
+        this.http2 = http2;
+    }
+
+    @Bean(name = proxyConnectionProvider, destroyMethod = "dispose")
+    public FizzConnectionProvider proxyConnectionProvider() {
+        Pool p = pool.inherit(Pool.defaults());
+        log.info("proxy connection pool: {}, service pools: {}, host pools: {}", p, servicePools, hostPools);
+        return new FizzConnectionProvider("proxy", p, servicePools, hostPools);
+    }
+
+    @Override
+    protected TcpClient runOn(TcpClient tcpClient) {
+        return transportConfig.runOn(tcpClient);
+    }
+
+    @Override
+    protected HttpClient createHttpClient() {
+        return HttpClient.create(proxyConnectionProvider());
+    }
 
     @Bean(proxyWebClient)
     public WebClient webClient() {
         log.info("proxy web client: {}", this);
         return super.webClient();
     }
+
+    @Bean(name = proxyHttp2ConnectionPool, destroyMethod = "dispose")
+    public Http2ConnectionPool proxyHttp2ConnectionPool() {
+        log.info("proxy http2: {}", http2);
+        Integer connectTimeout = getChConnTimeout();
+        Boolean trustInsecureSSL = getTrustInsecureSSL();
+        return new Http2ConnectionPool(http2.maxConnections, http2.maxConcurrentStreams, http2.pendingAcquireMaxCount, Duration.ofMillis(http2.pendingAcquireTimeout),
+                                       connectTimeout == null ? 20_000 : connectTimeout, trustInsecureSSL != null && trustInsecureSSL,
+                                       transportConfig.getClientLoops(), transportConfig.isPreferNative());
+    }
+
+    @Bean(proxyHttp2WebClient)
+    public WebClient http2WebClient() {
+        return webClient(new Http2ClientHttpConnector(proxyHttp2ConnectionPool()));
+    }
 }
@@ -138,6 +138,48 @@ public class SystemConfig {
     @Value("${fizz.web-client.x-forwarded-for.append-gateway-ip:true}")
     private boolean fizzWebClientXForwardedForAppendGatewayIp;
 
+    @Value("${fizz.web-client.retry.body-max-size:1048576}")
+    private long fizzWebClientRetryBodyMaxSize = 1048576; // bytes
+
+    @Value("${fizz.web-client.retry.exponential-backoff.enable:false}")
+    private boolean fizzWebClientRetryExponentialBackoffEnable;
+
+    @Value("${fizz.web-client.retry.exponential-backoff.max-interval:10000}")
+    private long fizzWebClientRetryExponentialBackoffMaxInterval = 10000; // mills
+
+    @Value("${fizz.web-client.retry.jitter:0}")
+    private double fizzWebClientRetryJitter = 0;
+
+    @Value("${fizz.web-client.retry.budget.percent:0}")
+    private int fizzWebClientRetryBudgetPercent = 0;
+
+    @Value("${fizz.web-client.retry.budget.min-retries:10}")
+    private int fizzWebClientRetryBudgetMinRetries = 10;
+
+    public long getFizzWebClientRetryBodyMaxSize() {
+        return fizzWebClientRetryBodyMaxSize;
+    }
+
+    public boolean isFizzWebClientRetryExponentialBackoffEnable() {
+        return fizzWebClientRetryExponentialBackoffEnable;
+    }
+
+    public long getFizzWebClientRetryExponentialBackoffMaxInterval() {
+        return fizzWebClientRetryExponentialBackoffMaxInterval;
+    }
+
+    public double getFizzWebClientRetryJitter() {
+        return fizzWebClientRetryJitter;
+    }
+
+    public int getFizzWebClientRetryBudgetPercent() {
+        return fizzWebClientRetryBudgetPercent;
+    }
+
+    public int getFizzWebClientRetryBudgetMinRetries() {
+        return fizzWebClientRetryBudgetMinRetries;
+    }
+
     public boolean isFizzWebClientXForwardedForAppendGatewayIp() {
         return fizzWebClientXForwardedForAppendGatewayIp;
     }
@@ -0,0 +1,192 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.config;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpClient;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Configures the event loops of the gateway server, the dedicated line server and the proxy web client, e.g.
+ * <pre>
+ * fizz.transport:
+ *   prefer-native: true
+ *   worker-count: 8
+ *   share-loops: true
+ *   reuse-port: false
+ * </pre>
+ * native epoll transport is used if available, otherwise NIO. With share-loops, the servers and the proxy client run on
+ * the same loops, so a request and its proxied request are mostly handled by one thread. With reuse-port, the server
+ * sockets are bound with SO_REUSEPORT under epoll, so several gateway processes on one host can listen on the same port
+ * and the kernel balances the connections among their accept loops.
+ *
+ * @author hongqiaowei
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "fizz.transport")
+public class TransportConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(TransportConfig.class);
+
+    private boolean       preferNative      = true;
+
+    /**
+     * threads accepting connections, -1 means to accept by the worker threads
+     */
+    private int           selectCount       = LoopResources.DEFAULT_IO_SELECT_COUNT;
+
+    /**
+     * io threads of the servers, also of the proxy client if share-loops is true
+     */
+    private int           workerCount       = LoopResources.DEFAULT_IO_WORKER_COUNT;
+
+    /**
+     * io threads of the proxy client if share-loops is false
+     */
+    private int           clientWorkerCount = LoopResources.DEFAULT_IO_WORKER_COUNT;
+
+    private boolean       shareLoops        = true;
+
+    private boolean       reusePort         = false;
+
+    private LoopResources serverLoops;
+
+    private LoopResources clientLoops;
+
+    @PostConstruct
+    public void init() {
+        if (selectCount > 0) {
+            serverLoops = LoopResources.create("fizz-server", selectCount, workerCount, true);
+        } else {
+            serverLoops = LoopResources.create("fizz-server", workerCount, true);
+        }
+        if (shareLoops) {
+            clientLoops = serverLoops;
+        } else {
+            clientLoops = LoopResources.create("fizz-client", clientWorkerCount, true);
+        }
+        EventLoopGroup group = serverLoops.onServer(preferNative);
+        log.info("transport: {}, server channel: {}, select count: {}, worker count: {}, share loops: {}, reuse port: {}",
+                 isEpoll() ? "epoll" : "nio", serverLoops.onServerChannel(group).getSimpleName(), selectCount, workerCount, shareLoops, reusePort && isEpoll());
+    }
+
+    @PreDestroy
+    public void dispose() {
+        serverLoops.dispose();
+        if (clientLoops != serverLoops) {
+            clientLoops.dispose();
+        }
+    }
+
+    /**
+     * @return whether the loops are native epoll ones
+     */
+    public boolean isEpoll() {
+        return preferNative && Epoll.isAvailable();
+    }
+
+    public LoopResources getServerLoops() {
+        return serverLoops;
+    }
+
+    public LoopResources getClientLoops() {
+        return clientLoops;
+    }
+
+    /**
+     * @return the customizer making server run on the server loops
+     */
+    public NettyServerCustomizer serverCustomizer() {
+        return httpServer -> httpServer.tcpConfiguration(
+                tcpServer -> {
+                    tcpServer = tcpServer.runOn(serverLoops, preferNative);
+                    if (reusePort && isEpoll()) {
+                        tcpServer = tcpServer.option(EpollChannelOption.SO_REUSEPORT, true);
+                    }
+                    return tcpServer;
+                }
+        );
+    }
+
+    /**
+     * @return the client running on the client loops
+     */
+    public TcpClient runOn(TcpClient tcpClient) {
+        return tcpClient.runOn(clientLoops, preferNative);
+    }
+
+    public boolean isPreferNative() {
+        return preferNative;
+    }
+
+    public void setPreferNative(boolean preferNative) {
+        this.preferNative = preferNative;
+    }
+
+    public int getSelectCount() {
+        return selectCount;
+    }
+
+    public void setSelectCount(int selectCount) {
+        this.selectCount = selectCount;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public int getClientWorkerCount() {
+        return clientWorkerCount;
+    }
+
+    public void setClientWorkerCount(int clientWorkerCount) {
+        this.clientWorkerCount = clientWorkerCount;
+    }
+
+    public boolean isShareLoops() {
+        return shareLoops;
+    }
+
+    public void setShareLoops(boolean shareLoops) {
+        this.shareLoops = shareLoops;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+}
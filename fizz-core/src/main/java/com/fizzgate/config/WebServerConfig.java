@@ -22,6 +22,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.http.codec.multipart.MultipartHttpMessageReader;
@@ -42,7 +44,15 @@ import javax.annotation.Resource;
 public class WebServerConfig {
 
     private static final Logger log = LoggerFactory.getLogger(WebServerConfig.class);
-    
+
+    /**
+     * runs the server on the loops of {@link TransportConfig}
+     */
+    @Bean
+    public NettyServerCustomizer transportServerCustomizer(TransportConfig transportConfig) {
+        return transportConfig.serverCustomizer();
+    }
+
     @Configuration
     @EnableWebFlux
     public static class FizzWebFluxConfigurer implements WebFluxConfigurer {
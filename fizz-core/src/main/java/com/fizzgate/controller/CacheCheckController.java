@@ -29,6 +29,7 @@ import com.fizzgate.plugin.auth.ApiConfig2appsService;
 import com.fizzgate.plugin.auth.ApiConfigService;
 import com.fizzgate.plugin.auth.AppService;
 import com.fizzgate.plugin.auth.GatewayGroupService;
+import com.fizzgate.plugin.auth.RouteCache;
 import com.fizzgate.stats.FlowStat;
 import com.fizzgate.stats.ResourceStat;
 import com.fizzgate.stats.circuitbreaker.CircuitBreakManager;
@@ -100,6 +101,22 @@ public class CacheCheckController {
 		return Mono.just(JacksonUtils.writeValueAsString(apiConfigService.serviceConfigMap));
 	}
 
+	@GetMapping("/routeCache")
+	public Mono<String> routeCache(ServerWebExchange exchange) {
+		Map<String, Object> map = new HashMap<>();
+		RouteCache routeCache = apiConfigService.getRouteCache();
+		if (routeCache == null) {
+			map.put("enable", false);
+		} else {
+			map.put("enable", true);
+			map.put("size", routeCache.size());
+			map.put("hits", routeCache.getHitCount());
+			map.put("misses", routeCache.getMissCount());
+			map.put("evictions", routeCache.getEvictionCount());
+		}
+		return Mono.just(JacksonUtils.writeValueAsString(map));
+	}
+
 	@GetMapping("/resourceRateLimitConfigs")
 	public Mono<String> resourceRateLimitConfigs(ServerWebExchange exchange) {
 		return Mono.just(JacksonUtils.writeValueAsString(resourceRateLimitConfigService.getResourceRateLimitConfigMap()));
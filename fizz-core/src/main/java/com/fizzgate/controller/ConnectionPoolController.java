@@ -0,0 +1,50 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fizzgate.config.ProxyWebClientConfig;
+import com.fizzgate.proxy.FizzConnectionProvider;
+import com.fizzgate.util.JacksonUtils;
+
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Resource;
+
+/**
+ * @author hongqiaowei
+ */
+
+@RestController
+@RequestMapping("/admin/connectionPool")
+public class ConnectionPoolController {
+
+    @Resource(name = ProxyWebClientConfig.proxyConnectionProvider)
+    private FizzConnectionProvider connectionProvider;
+
+    /**
+     * @return the active, idle and pending acquire count, and the acquire latency of the proxy connection pools
+     */
+    @GetMapping("/stats")
+    public Mono<String> stats() {
+        return Mono.just(JacksonUtils.writeValueAsString(connectionProvider.getPoolStats()));
+    }
+}
@@ -28,6 +28,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
 
+import com.fizzgate.stats.AdaptiveConcurrencyLimit;
 import com.fizzgate.stats.FlowStat;
 import com.fizzgate.stats.ResourceTimeWindowStat;
 import com.fizzgate.stats.TimeWindowStat;
@@ -40,6 +41,7 @@ import com.fizzgate.util.ResourceIdUtils;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -106,6 +108,66 @@ public class FlowControlController {
         return Mono.just(JacksonUtils.writeValueAsString(result));
     }
 
+    @GetMapping("/rtPercentiles")
+    public Mono<String> rtPercentiles(ServerWebExchange exchange, @RequestParam(value = "resource", required = false) String resource,
+                                      @RequestParam(value = "recent", required = false, defaultValue = "60") int recent) {
+
+        Map<String, Object> result = new HashMap<>();
+        if (resource == null) {
+            resource = ResourceIdUtils.NODE_RESOURCE;
+        }
+
+        if (flowControl) {
+            try {
+                long currentTimeSlot = flowStat.currentTimeSlotId();
+                long startTimeSlot = currentTimeSlot - recent * 1000;
+                List<ResourceTimeWindowStat> wins = flowStat.getResourceTimeWindowStats(resource, startTimeSlot, currentTimeSlot, recent);
+                if (wins != null && !wins.isEmpty()) {
+                    TimeWindowStat timeWindowStat = wins.get(0).getWindows().get(0);
+                    result.put("compReqs", timeWindowStat.getCompReqs());
+                    result.put("min",      timeWindowStat.getMin());
+                    result.put("avg",      timeWindowStat.getAvgRt());
+                    result.put("max",      timeWindowStat.getMax());
+                    result.put("p50",      timeWindowStat.getP50());
+                    result.put("p90",      timeWindowStat.getP90());
+                    result.put("p99",      timeWindowStat.getP99());
+                    result.put("p999",     timeWindowStat.getP999());
+                }
+            } catch (Throwable t) {
+                log.error("get " + resource + " rt percentiles error", t);
+            }
+        }
+
+        return Mono.just(JacksonUtils.writeValueAsString(result));
+    }
+
+    /**
+     * @return the adaptive concurrent request limit of each resource, or of the specified resource only
+     */
+    @GetMapping("/adaptiveConcurrents")
+    public Mono<String> adaptiveConcurrents(ServerWebExchange exchange, @RequestParam(value = "resource", required = false) String resource) {
+
+        List<Map<String, Object>> result = new ArrayList<>();
+
+        if (flowControl) {
+            flowStat.resourceStats.forEach(
+                    (r, resourceStat) -> {
+                        AdaptiveConcurrencyLimit acl = resourceStat.getAdaptiveConcurrencyLimit();
+                        if (acl != null && (resource == null || resource.equals(r))) {
+                            Map<String, Object> m = new HashMap<>();
+                            m.put("resource",    r);
+                            m.put("concurrents", resourceStat.getConcurrentRequests().get());
+                            m.put("limit",       acl.getLimit());
+                            m.put("maxLimit",    acl.getMaxLimit());
+                            result.add(m);
+                        }
+                    }
+            );
+        }
+
+        return Mono.just(JacksonUtils.writeValueAsString(result));
+    }
+
     private String toDP19(long startTimeSlot) {
         return DateTimeUtils.convert(startTimeSlot, Consts.DP.DP19);
     }
@@ -32,6 +32,7 @@ import org.springframework.web.server.adapter.HttpWebHandlerAdapter;
 import org.springframework.web.server.session.DefaultWebSessionManager;
 
 import com.fizzgate.config.SystemConfig;
+import com.fizzgate.config.TransportConfig;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -54,6 +55,9 @@ public class DedicatedLineWebServer {
     @Resource
     private HttpHandler                         httpHandler;
 
+    @Resource
+    private TransportConfig                     transportConfig;
+
     private WebServer                           server;
 
     @Value("${fizz.dedicated-line.client.port:8601}")
@@ -67,6 +71,7 @@ public class DedicatedLineWebServer {
         if (fizzDedicatedLineClientEnable) {
             HttpWebHandlerAdapter adapter = (HttpWebHandlerAdapter) httpHandler;
             NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory(port);
+            factory.addServerCustomizers(transportConfig.serverCustomizer());
                                  server = factory.getWebServer(
                                                        new DedicatedLineHttpHandler(
                                                            applicationContext,
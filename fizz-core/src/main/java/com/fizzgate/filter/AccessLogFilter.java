@@ -0,0 +1,103 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.filter;
+
+import com.fizzgate.config.AccessLogConfig;
+import com.fizzgate.log.AccessLogContext;
+import com.fizzgate.log.AccessLogRecord;
+import com.fizzgate.log.AccessLogWriter;
+import com.fizzgate.util.WebUtils;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Resource;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs the requests sampled by {@link AccessLogConfig} to the access log file, the sampling is decided when
+ * the request comes.
+ *
+ * @author hongqiaowei
+ */
+
+@Component
+@Order(-20)
+public class AccessLogFilter implements WebFilter {
+
+    private static final EventTranslatorTwoArg<AccessLogRecord, ServerWebExchange, AccessLogContext> translator =
+            (r, sequence, exchange, alc) -> {
+                ServerHttpRequest  req  = exchange.getRequest();
+                ServerHttpResponse resp = exchange.getResponse();
+                Integer status = resp.getRawStatusCode();
+                r.fields       = alc.fields;
+                r.ts           = alc.ts;
+                r.traceId      = WebUtils.getTraceId(exchange);
+                r.app          = WebUtils.getAppId(exchange);
+                r.service      = alc.service;
+                r.method       = req.getMethodValue();
+                r.path         = req.getPath().value();
+                r.status       = status == null ? 200 : status;
+                r.upstream     = alc.upstream;
+                r.reqBytes     = req.getHeaders().getContentLength();
+                r.respBytes    = resp.getHeaders().getContentLength();
+                r.time         = (System.nanoTime() - alc.start) / 1000;
+                r.upstreamTime = alc.upstreamNanos / 1000;
+            };
+
+    @Resource
+    private AccessLogConfig accessLogConfig;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        AccessLogWriter writer = accessLogConfig.getWriter();
+        if (writer == null) {
+            return chain.filter(exchange);
+        }
+        // sampled out requests go on without the context, so neither the filter nor the proxy client records them
+        String service = service(exchange);
+        AccessLogConfig.Setting setting = accessLogConfig.getSetting(service);
+        if (setting.sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= setting.sampleRate) {
+            return chain.filter(exchange);
+        }
+        AccessLogContext alc = new AccessLogContext();
+        alc.service = service;
+        alc.fields  = setting.fields;
+        return chain.filter(exchange)
+                    .subscriberContext(ctx -> ctx.put(AccessLogContext.KEY, alc))
+                    .doFinally(s -> writer.write(translator, exchange, alc));
+    }
+
+    /**
+     * @return null if the request path has no service
+     */
+    private static String service(ServerWebExchange exchange) {
+        try {
+            return WebUtils.getClientService(exchange);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -44,6 +44,7 @@ import com.fizzgate.plugin.auth.GatewayGroupService;
 import com.fizzgate.plugin.auth.Receiver;
 import com.fizzgate.proxy.CallbackService;
 import com.fizzgate.proxy.DiscoveryClientUriSelector;
+import com.fizzgate.proxy.Route;
 import com.fizzgate.proxy.ServiceInstance;
 import com.fizzgate.service_registry.RegistryCenterService;
 import com.fizzgate.spring.http.server.reactive.ext.FizzServerHttpRequestDecorator;
@@ -96,7 +97,7 @@ public class CallbackFilter extends FizzWebFilter {
     	org.apache.logging.log4j.ThreadContext.put(Consts.TRACE_ID, traceId);
 
         ServerHttpRequest req = exchange.getRequest();
-        if (req instanceof FizzServerHttpRequestDecorator) {
+        if (req instanceof FizzServerHttpRequestDecorator || !isBodyAggregationRequired(exchange)) {
             return doFilter(exchange, chain);
         }
         return
@@ -122,6 +123,19 @@ public class CallbackFilter extends FizzWebFilter {
                         );
     }
     
+    /**
+     * The request body is aggregated only if it will be read more than once by callback,
+     * otherwise it streams to backend, FizzWebClient retains it for retrying,
+     * and plugins extending RequestBodyPlugin aggregate it when they need.
+     */
+    private static boolean isBodyAggregationRequired(ServerWebExchange exchange) {
+        Route route = WebUtils.getRoute(exchange);
+        if (route == null) {
+            return false;
+        }
+        return route.type == ApiConfig.Type.CALLBACK;
+    }
+
     public Mono<Void> doFilter(ServerWebExchange exchange, WebFilterChain chain) {
     	String traceId = WebUtils.getTraceId(exchange);
     	org.apache.logging.log4j.ThreadContext.put(Consts.TRACE_ID, traceId);
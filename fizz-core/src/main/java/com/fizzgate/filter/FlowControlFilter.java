@@ -263,7 +263,11 @@ public class FlowControlFilter extends FizzWebFilter {
 								} else {
 									flowStat.addRequestRT(resourceConfigs, currentTimeSlot, rt, true, statusCode);
 									if (cb != null) {
-										cb.transit(CircuitBreaker.State.RESUME_DETECTIVE, CircuitBreaker.State.CLOSED, currentTimeSlot, flowStat);
+										if (cb.isSlow(rt)) {
+											cb.transit(CircuitBreaker.State.RESUME_DETECTIVE, CircuitBreaker.State.OPEN, currentTimeSlot, flowStat);
+										} else {
+											cb.transit(CircuitBreaker.State.RESUME_DETECTIVE, CircuitBreaker.State.CLOSED, currentTimeSlot, flowStat);
+										}
 									}
 								}
 
@@ -403,6 +407,7 @@ public class FlowControlFilter extends FizzWebFilter {
 		if (rateLimitConfig != null && rateLimitConfig.isEnable()) {
 			something4appAndIp(resourceConfigs, rateLimitConfig);
 			rc = new ResourceConfig(resource, rateLimitConfig.concurrents, rateLimitConfig.qps);
+			rc.setAdaptiveCon(rateLimitConfig.isAdaptiveConcurrents());
 			resourceConfigs.add(rc);
 		} else {
 			String node = ResourceIdUtils.getNode(resource);
@@ -416,12 +421,14 @@ public class FlowControlFilter extends FizzWebFilter {
 					if (rateLimitConfig != null && rateLimitConfig.isEnable()) {
 						rc.setMaxCon(rateLimitConfig.concurrents);
 						rc.setMaxQPS(rateLimitConfig.qps);
+						rc.setAdaptiveCon(rateLimitConfig.isAdaptiveConcurrents());
 					}
 				}
 				if (defaultRateLimitConfigId.equals(ResourceIdUtils.APP_DEFAULT)) {
 					rateLimitConfig = resourceRateLimitConfigService.getResourceRateLimitConfig(ResourceIdUtils.APP_DEFAULT_RESOURCE);
 					if (rateLimitConfig != null && rateLimitConfig.isEnable()) {
 						rc = new ResourceConfig(resource, rateLimitConfig.concurrents, rateLimitConfig.qps);
+						rc.setAdaptiveCon(rateLimitConfig.isAdaptiveConcurrents());
 					}
 				}
 			}
@@ -46,7 +46,7 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Resource;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -126,7 +126,8 @@ public class RouteFilter extends FizzWebFilter {
         } else if (route.type == ApiConfig.Type.SERVICE_DISCOVERY) {
             Map.Entry<String, List<String>> pathQueryTemplate = getBackendPathQueryTemplate(req, route).entrySet().iterator().next();
             String svc = RegistryCenterService.getServiceNameSpace(route.registryCenter, route.backendService);
-            return fizzWebClient.send2service(traceId, route.method, svc, pathQueryTemplate.getKey(), hdrs, req.getBody(), route.timeout, route.retryCount, route.retryInterval, pathQueryTemplate.getValue().toArray(new String[0]))
+            return fizzWebClient.send2service(traceId, route.method, svc, pathQueryTemplate.getKey(), hdrs, req.getBody(), route.timeout, route.retryCount, route.retryInterval, route.retryBodyMaxSize, pathQueryTemplate.getValue().toArray(new String[0]))
+                                .subscriberContext(FizzWebClient.http2(route.http2))
                                 .flatMap(genServerResponse(exchange));
 
         } else if (route.type == ApiConfig.Type.REVERSE_PROXY) {
@@ -134,7 +135,8 @@ public class RouteFilter extends FizzWebFilter {
             String uri = ThreadContext.getStringBuilder().append(route.nextHttpHostPort)
                                                          .append(pathQueryTemplate.getKey())
                                                          .toString();
-            return fizzWebClient.send(traceId, route.method, uri, hdrs, req.getBody(), route.timeout, route.retryCount, route.retryInterval, pathQueryTemplate.getValue().toArray(new String[0]))
+            return fizzWebClient.send(traceId, route.method, uri, hdrs, req.getBody(), route.timeout, route.retryCount, route.retryInterval, route.retryBodyMaxSize, pathQueryTemplate.getValue().toArray(new String[0]))
+                                .subscriberContext(FizzWebClient.http2(route.http2))
                                 .flatMap(genServerResponse(exchange));
 
         } else {
@@ -214,23 +216,29 @@ public class RouteFilter extends FizzWebFilter {
     // }
 
     private Mono<Void> dubboRpc(ServerWebExchange exchange, Route route) {
-        final String[] ls = {null};
+        final Object[] ps = {null};
         return DataBufferUtils.join(exchange.getRequest().getBody()).defaultIfEmpty(NettyDataBufferUtils.EMPTY_DATA_BUFFER)
                 .flatMap(
                         b -> {
                             HashMap<String, Object> parameters = null;
                             if (b != NettyDataBufferUtils.EMPTY_DATA_BUFFER) {
-                                String json = b.toString(StandardCharsets.UTF_8).trim();
-                                ls[0] = json;
-                                NettyDataBufferUtils.release(b);
-                                if (json.charAt(0) == '[') {
-                                    ArrayList<Object> lst = JacksonUtils.readValue(json, ArrayList.class);
+                                Object body;
+                                try {
+                                    body = JacksonUtils.getObjectMapper().readValue(b.asInputStream(), Object.class);
+                                } catch (IOException e) {
+                                    throw new RuntimeException(e);
+                                } finally {
+                                    NettyDataBufferUtils.release(b);
+                                }
+                                ps[0] = body;
+                                if (body instanceof List) {
+                                    List<Object> lst = (List<Object>) body;
                                     parameters = new HashMap<>();
                                     for (int i = 0; i < lst.size(); i++) {
                                         parameters.put("p" + (i + 1), lst.get(i));
                                     }
-                                } else {
-                                    parameters = JacksonUtils.readValue(json, HashMap.class);
+                                } else if (body instanceof Map) {
+                                    parameters = (HashMap<String, Object>) body;
                                 }
                             }
 
@@ -240,6 +248,7 @@ public class RouteFilter extends FizzWebFilter {
                             declaration.setGroup(route.rpcGroup);
                             declaration.setMethod(route.rpcMethod);
                             declaration.setParameterTypes(route.rpcParamTypes);
+                            declaration.setParamBinding(route.rpcParamBinding);
                             int t = 20_000;
                             if (route.timeout != 0) {
                                 t = (int) route.timeout;
@@ -260,8 +269,8 @@ public class RouteFilter extends FizzWebFilter {
                         t -> {
                             StringBuilder b = ThreadContext.getStringBuilder();
                             WebUtils.request2stringBuilder(exchange, b);
-                            if (ls[0] != null) {
-                                b.append('\n').append(ls[0]);
+                            if (ps[0] != null) {
+                                b.append('\n').append(JacksonUtils.writeValueAsString(ps[0]));
                             }
                             org.apache.logging.log4j.ThreadContext.put(Consts.TRACE_ID, WebUtils.getTraceId(exchange));
                             LOGGER.error(b.toString(), t);
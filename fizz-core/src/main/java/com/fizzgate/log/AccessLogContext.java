@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+import com.fizzgate.proxy.balancer.UpstreamStats;
+import reactor.core.publisher.Mono;
+
+/**
+ * What a request collects for its access log on the way, put into the reactor context by the access log filter,
+ * so the proxy client can record the upstream instance and time of the request.
+ *
+ * @author hongqiaowei
+ */
+
+public class AccessLogContext {
+
+    public  static final    String  KEY           = "fizzAccessLog";
+
+    private static volatile boolean enabled       = false;
+
+    public  final           long    ts            = System.currentTimeMillis();
+
+    public  final           long    start         = System.nanoTime();
+
+    public                  String  service;
+
+    /**
+     * the fields to log, see {@link AccessLogRecord}
+     */
+    public                  int     fields;
+
+    public  volatile        String  upstream;
+
+    /**
+     * nanos from sending request to receiving response header of the upstream, summed up if retried
+     */
+    public  volatile        long    upstreamNanos = 0;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    /**
+     * @param uri the upstream uri
+     * @return the response which records the upstream and its time to the access log context of the subscriber,
+     *         if the request is sampled
+     */
+    public static <T> Mono<T> upstream(String uri, Mono<T> response) {
+        return Mono.deferWithContext(
+                ctx -> {
+                    AccessLogContext alc = ctx.getOrDefault(KEY, null);
+                    if (alc == null) {
+                        return response;
+                    }
+                    long s = System.nanoTime();
+                    return response.doFinally(
+                            st -> {
+                                alc.upstream = UpstreamStats.address(uri);
+                                alc.upstreamNanos += System.nanoTime() - s;
+                            }
+                    );
+                }
+        );
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+/**
+ * Preallocated in the ring buffer of {@link AccessLogWriter} and refilled for each request,
+ * the fields reference the strings the request already has, so recording a request creates no object.
+ *
+ * @author hongqiaowei
+ */
+
+public final class AccessLogRecord {
+
+    public static final int TS            = 1;
+    public static final int TRACE_ID      = 1 << 1;
+    public static final int APP           = 1 << 2;
+    public static final int SERVICE       = 1 << 3;
+    public static final int METHOD        = 1 << 4;
+    public static final int PATH          = 1 << 5;
+    public static final int STATUS        = 1 << 6;
+    public static final int UPSTREAM      = 1 << 7;
+    public static final int REQ_BYTES     = 1 << 8;
+    public static final int RESP_BYTES    = 1 << 9;
+    public static final int TIME          = 1 << 10;
+    public static final int UPSTREAM_TIME = 1 << 11;
+    public static final int GATEWAY_TIME  = 1 << 12;
+
+    public static final int ALL           = (1 << 13) - 1;
+
+    static final String[]   NAMES         = {"ts", "traceId", "app", "service", "method", "path", "status", "upstream",
+                                             "reqBytes", "respBytes", "time", "upstreamTime", "gatewayTime"};
+
+    /**
+     * the fields to write
+     */
+    public int    fields;
+
+    /**
+     * epoch millis of the request start
+     */
+    public long   ts;
+
+    public String traceId;
+
+    public String app;
+
+    public String service;
+
+    public String method;
+
+    public String path;
+
+    public int    status;
+
+    public String upstream;
+
+    /**
+     * from content-length, -1 if unknown
+     */
+    public long   reqBytes;
+
+    /**
+     * from content-length, -1 if unknown
+     */
+    public long   respBytes;
+
+    /**
+     * micros of the whole request
+     */
+    public long   time;
+
+    /**
+     * micros waiting for the upstream
+     */
+    public long   upstreamTime;
+
+    /**
+     * @param names field names, null or empty means all fields
+     * @return the field mask
+     */
+    public static int fields(Iterable<String> names) {
+        if (names == null) {
+            return ALL;
+        }
+        int mask = 0;
+        for (String n : names) {
+            int i = 0;
+            for (; i < NAMES.length; i++) {
+                if (NAMES[i].equals(n)) {
+                    mask |= 1 << i;
+                    break;
+                }
+            }
+            if (i == NAMES.length) {
+                throw new IllegalArgumentException("unknown access log field " + n);
+            }
+        }
+        return mask == 0 ? ALL : mask;
+    }
+
+    void clear() {
+        traceId  = null;
+        app      = null;
+        service  = null;
+        method   = null;
+        path     = null;
+        upstream = null;
+    }
+}
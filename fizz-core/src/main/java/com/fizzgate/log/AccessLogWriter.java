@@ -0,0 +1,355 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes access logs to a rolling file, one compact json per line, e.g.
+ * <pre>
+ * {"ts":1700000000000,"traceId":"...","app":"app1","service":"xservice","method":"GET","path":"/ypath","status":200,
+ *  "upstream":"10.0.0.1:8080","reqBytes":-1,"respBytes":35,"time":1520,"upstreamTime":1200,"gatewayTime":320}
+ * </pre>
+ * times are in micros.
+ * <p/>
+ * Requests fill the preallocated records of a ring buffer, and a background thread encodes the records into
+ * a reused buffer and writes the file, so the request thread does no io and no encoding.
+ * When the ring buffer is full, the log is dropped and counted by {@link #getDropped()}, the dropped logs are
+ * logged at WARN every {@link #REPORT_INTERVAL_SECONDS} seconds if any.
+ * <p/>
+ * Not a log4j2 async logger with a rolling appender: that formats each log into a message and copies it into
+ * its own ring buffer, while here a log is a few field assignments, and the file doesn't depend on the log4j2.xml
+ * of the application.
+ * <p/>
+ * When the file reaches maxFileSize bytes, it is renamed to file.1, file.1 to file.2, and so on,
+ * at most maxFiles old files are kept.
+ *
+ * @author hongqiaowei
+ */
+
+public class AccessLogWriter {
+
+    private static final Logger                      log     = LoggerFactory.getLogger(AccessLogWriter.class);
+
+    private static final byte[]                      HEX     = "0123456789abcdef".getBytes();
+
+    public  static final long                        REPORT_INTERVAL_SECONDS = 60;
+
+    private final        Path                        file;
+
+    private final        long                        maxFileSize;
+
+    private final        int                         maxFiles;
+
+    private final        Disruptor<AccessLogRecord>  disruptor;
+
+    private final        RingBuffer<AccessLogRecord> ringBuffer;
+
+    private final        AtomicLong                  dropped = new AtomicLong(0);
+
+    private final        AtomicLong                  written = new AtomicLong(0);
+
+    private              FileChannel                 channel;
+
+    private              long                        fileSize;
+
+    private              ByteBuffer                  buffer  = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * @param bufferSize max records waiting for writing, rounded up to a power of 2
+     */
+    public AccessLogWriter(String file, long maxFileSize, int maxFiles, int bufferSize) throws IOException {
+        this.file        = Paths.get(file).toAbsolutePath();
+        this.maxFileSize = maxFileSize;
+        this.maxFiles    = maxFiles;
+        Path dir = this.file.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        open();
+
+        int size = 1;
+        while (size < bufferSize) {
+            size <<= 1;
+        }
+        disruptor = new Disruptor<>(
+                AccessLogRecord::new, size,
+                r -> {
+                    Thread t = new Thread(r, "fizz-access-log");
+                    t.setDaemon(true);
+                    return t;
+                },
+                ProducerType.MULTI, new SleepingWaitStrategy()
+        );
+        disruptor.handleEventsWith(new Writer());
+        ringBuffer = disruptor.start();
+        log.info("access log file: {}", this.file);
+    }
+
+    /**
+     * @param translator fills the record with a and b
+     * @return false if the ring buffer is full and the log is dropped
+     */
+    public <A, B> boolean write(EventTranslatorTwoArg<AccessLogRecord, A, B> translator, A a, B b) {
+        if (ringBuffer.tryPublishEvent(translator, a, b)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Writes the logs in the ring buffer and closes the file, waits at most timeout millis.
+     */
+    public void shutdown(long timeout) {
+        try {
+            disruptor.shutdown(timeout, TimeUnit.MILLISECONDS);
+        } catch (com.lmax.disruptor.TimeoutException e) {
+            disruptor.halt();
+        }
+    }
+
+    private void open() throws IOException {
+        channel  = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        String name = file.getFileName().toString();
+        Files.deleteIfExists(file.resolveSibling(name + '.' + maxFiles));
+        for (int i = maxFiles - 1; i > 0; i--) {
+            Path p = file.resolveSibling(name + '.' + i);
+            if (Files.exists(p)) {
+                Files.move(p, file.resolveSibling(name + '.' + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file, file.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private void flush() {
+        // cast for java 8 runtime, ByteBuffer overrides flip and clear since java 9
+        ((Buffer) buffer).flip();
+        try {
+            if (fileSize + buffer.remaining() > maxFileSize && fileSize > 0) {
+                roll();
+            }
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            log.warn("write access log fail", e);
+        } finally {
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    // encoding
+
+    private void ensure(int n) {
+        if (buffer.remaining() < n) {
+            if (buffer.position() > 0) {
+                flush();
+            }
+            if (buffer.remaining() < n) {
+                buffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, n));
+            }
+        }
+    }
+
+    private void key(int field, boolean first) {
+        if (!first) {
+            buffer.put((byte) ',');
+        }
+        buffer.put((byte) '"');
+        String name = AccessLogRecord.NAMES[Integer.numberOfTrailingZeros(field)];
+        for (int i = 0; i < name.length(); i++) {
+            buffer.put((byte) name.charAt(i));
+        }
+        buffer.put((byte) '"').put((byte) ':');
+    }
+
+    private void value(long v) {
+        if (v == Long.MIN_VALUE) {
+            v = Long.MIN_VALUE + 1;
+        }
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte t = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, t);
+        }
+    }
+
+    private void value(String s) {
+        if (s == null) {
+            buffer.put((byte) 'n').put((byte) 'u').put((byte) 'l').put((byte) 'l');
+            return;
+        }
+        buffer.put((byte) '"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                      .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18))).put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                      .put((byte) (0x80 | ((cp >> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.put((byte) '"');
+    }
+
+    private static int length(String s) {
+        return s == null ? 4 : s.length() * 6 + 2;
+    }
+
+    void encode(AccessLogRecord r) {
+        int f = r.fields;
+        ensure(512 + length(r.traceId) + length(r.app) + length(r.service) + length(r.method) + length(r.path) + length(r.upstream));
+        buffer.put((byte) '{');
+        boolean first = true;
+        for (int bit = 1; bit <= AccessLogRecord.GATEWAY_TIME; bit <<= 1) {
+            if ((f & bit) == 0) {
+                continue;
+            }
+            key(bit, first);
+            first = false;
+            switch (bit) {
+                case AccessLogRecord.TS:            value(r.ts);                                   break;
+                case AccessLogRecord.TRACE_ID:      value(r.traceId);                              break;
+                case AccessLogRecord.APP:           value(r.app);                                  break;
+                case AccessLogRecord.SERVICE:       value(r.service);                              break;
+                case AccessLogRecord.METHOD:        value(r.method);                               break;
+                case AccessLogRecord.PATH:          value(r.path);                                 break;
+                case AccessLogRecord.STATUS:        value(r.status);                               break;
+                case AccessLogRecord.UPSTREAM:      value(r.upstream);                             break;
+                case AccessLogRecord.REQ_BYTES:     value(r.reqBytes);                             break;
+                case AccessLogRecord.RESP_BYTES:    value(r.respBytes);                            break;
+                case AccessLogRecord.TIME:          value(r.time);                                 break;
+                case AccessLogRecord.UPSTREAM_TIME: value(r.upstreamTime);                         break;
+                default:                            value(Math.max(r.time - r.upstreamTime, 0));   break;
+            }
+        }
+        buffer.put((byte) '}').put((byte) '\n');
+    }
+
+    private class Writer implements EventHandler<AccessLogRecord>, LifecycleAware {
+
+        private long lastReport = System.nanoTime();
+
+        private long reportedDropped;
+
+        @Override
+        public void onEvent(AccessLogRecord record, long sequence, boolean endOfBatch) {
+            try {
+                encode(record);
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                log.warn("encode access log fail", e);
+            } finally {
+                record.clear();
+            }
+            if (endOfBatch) {
+                flush();
+                report(false);
+            }
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onShutdown() {
+            if (buffer.position() > 0) {
+                flush();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("close access log fail", e);
+            }
+            report(true);
+        }
+
+        private void report(boolean force) {
+            long now = System.nanoTime();
+            if (!force && now - lastReport < TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS)) {
+                return;
+            }
+            lastReport = now;
+            long d = dropped.get();
+            if (d != reportedDropped) {
+                log.warn("{} access logs dropped for the ring buffer is full, {} dropped in total", d - reportedDropped, d);
+                reportedDropped = d;
+            }
+        }
+    }
+}
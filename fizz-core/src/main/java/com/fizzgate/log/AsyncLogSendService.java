@@ -0,0 +1,242 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.LiteTimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutHandler;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LogSendService} which puts logs into a bounded ring buffer and returns at once, a background thread drains
+ * the buffer and passes the logs to the delegate in batches, a batch is sent when it has batchSize logs,
+ * or batchInterval millis after its first log.
+ * <p/>
+ * When the buffer is full, the log is dropped and counted by {@link #getDropped()}; the logs dropped and the batches
+ * failed to send, if any, are logged at WARN every {@link #REPORT_INTERVAL_SECONDS} seconds.
+ * <p/>
+ * Ordering: logs are sent in the order they enter the buffer, so the logs of one thread keep their order,
+ * and the logs of different threads are ordered by the time they enter the buffer; dropped logs leave gaps.
+ *
+ * @author zhongjie
+ */
+public class AsyncLogSendService implements LogSendService {
+
+    // not a normal logger, whose logs come back to this service
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // normal logger for the periodic report, which goes to fizz-manager too, a few logs are fine
+    private static final Logger REPORTER = LogManager.getLogger(AsyncLogSendService.class);
+
+    public  static final long   REPORT_INTERVAL_SECONDS = 60;
+
+    private static final class Event {
+        LogSend logSend;
+    }
+
+    private final LogSendService    delegate;
+
+    private final int               batchSize;
+
+    private final long              batchIntervalNanos;
+
+    private final Disruptor<Event>  disruptor;
+
+    private final RingBuffer<Event> ringBuffer;
+
+    private final AtomicLong        dropped = new AtomicLong(0);
+
+    private final AtomicLong        batches = new AtomicLong(0);
+
+    private final AtomicLong        failed  = new AtomicLong(0);
+
+    /**
+     * @param bufferSize    max logs waiting for sending, rounded up to a power of 2
+     * @param batchSize     max logs of a batch
+     * @param batchInterval max millis a log waits in a batch
+     */
+    public AsyncLogSendService(LogSendService delegate, int bufferSize, int batchSize, long batchInterval) {
+        this.delegate           = delegate;
+        this.batchSize          = Math.max(batchSize, 1);
+        this.batchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(batchInterval);
+
+        int size = 1;
+        while (size < bufferSize) {
+            size <<= 1;
+        }
+        disruptor = new Disruptor<>(
+                Event::new, size,
+                r -> {
+                    Thread t = new Thread(r, "fizz-log-sender");
+                    t.setDaemon(true);
+                    return t;
+                },
+                ProducerType.MULTI, new LiteTimeoutBlockingWaitStrategy(Math.max(batchInterval, 1), TimeUnit.MILLISECONDS)
+        );
+        disruptor.handleEventsWith(new Sender());
+        disruptor.setDefaultExceptionHandler(new IgnoreExceptionHandler());
+        ringBuffer = disruptor.start();
+    }
+
+    @Override
+    public void send(LogSend logSend) {
+        if (!ringBuffer.tryPublishEvent((event, sequence, ls) -> event.logSend = ls, logSend)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void send(List<LogSend> logSends) {
+        for (LogSend logSend : logSends) {
+            send(logSend);
+        }
+    }
+
+    /**
+     * @return logs dropped for the buffer is full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return batches passed to the delegate
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return batches the delegate failed to send, including those failed asynchronously the delegate knows of
+     */
+    @Override
+    public long getFailed() {
+        return failed.get() + delegate.getFailed();
+    }
+
+    /**
+     * Sends the logs in the buffer and stops the background thread, waits at most timeout millis.
+     */
+    public void shutdown(long timeout) {
+        try {
+            disruptor.shutdown(timeout, TimeUnit.MILLISECONDS);
+        } catch (com.lmax.disruptor.TimeoutException e) {
+            disruptor.halt();
+        }
+    }
+
+    private class Sender implements EventHandler<Event>, TimeoutHandler, LifecycleAware {
+
+        private final List<LogSend> batch      = new ArrayList<>();
+
+        private       long          batchStart = 0;
+
+        private       long          lastReport = System.nanoTime();
+
+        private       long          reportedDropped, reportedFailed;
+
+        @Override
+        public void onEvent(Event event, long sequence, boolean endOfBatch) {
+            if (batch.isEmpty()) {
+                batchStart = System.nanoTime();
+            }
+            batch.add(event.logSend);
+            event.logSend = null;
+            if (batch.size() >= batchSize || (endOfBatch && System.nanoTime() - batchStart >= batchIntervalNanos)) {
+                flush();
+                report();
+            }
+        }
+
+        @Override
+        public void onTimeout(long sequence) {
+            flush();
+            report();
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onShutdown() {
+            flush();
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                delegate.send(batch);
+                batches.incrementAndGet();
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                LOGGER.error("send {} logs fail", batch.size(), t);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        private void report() {
+            long now = System.nanoTime();
+            if (now - lastReport < TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS)) {
+                return;
+            }
+            lastReport = now;
+            long d = dropped.get(), f = getFailed();
+            if (d != reportedDropped || f != reportedFailed) {
+                REPORTER.warn("{} logs dropped for the send buffer is full, {} batches failed to send, in the last {} seconds, {} dropped and {} failed in total",
+                              d - reportedDropped, f - reportedFailed, REPORT_INTERVAL_SECONDS, d, f);
+                reportedDropped = d;
+                reportedFailed  = f;
+            }
+        }
+    }
+
+    private static class IgnoreExceptionHandler implements ExceptionHandler<Object> {
+
+        @Override
+        public void handleEventException(Throwable ex, long sequence, Object event) {
+            LOGGER.error("log sender exception", ex);
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            LOGGER.error("log sender start exception", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            LOGGER.error("log sender shutdown exception", ex);
+        }
+    }
+}
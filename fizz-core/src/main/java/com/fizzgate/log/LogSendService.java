@@ -16,6 +16,8 @@
  */
 package com.fizzgate.log;
 
+import java.util.List;
+
 /**
  * log send service interface,  used by {@link LogSendAppenderWithLog4j2} to send log to fizz-manager
  *
@@ -27,4 +29,21 @@ public interface LogSendService {
      * @param logSend log data
      */
     void send(LogSend logSend);
+
+    /**
+     * send logs in batch, the list may be reused after the method returns
+     * @param logSends log data
+     */
+    default void send(List<LogSend> logSends) {
+        for (LogSend logSend : logSends) {
+            send(logSend);
+        }
+    }
+
+    /**
+     * @return logs or batches failed to send, which the service knows of
+     */
+    default long getFailed() {
+        return 0;
+    }
 }
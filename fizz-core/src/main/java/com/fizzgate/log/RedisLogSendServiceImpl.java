@@ -22,6 +22,9 @@ import com.fizzgate.config.AggregateRedisConfigProperties;
 
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * {@link LogSendService} impl class, using redis channel to send log
  *
@@ -39,11 +42,34 @@ public class RedisLogSendServiceImpl implements LogSendService {
     private AggregateRedisConfigProperties aggregateRedisConfigProperties;
     private AggregateRedisConfig aggregateRedisConfig;
     private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final AtomicLong failed = new AtomicLong(0);
 
     @Override
     public void send(LogSend logSend) {
         if (aggregateRedisConfigProperties.isSendLogOpen()) {
-            reactiveStringRedisTemplate.convertAndSend(aggregateRedisConfigProperties.getSendLogChannel(), JSON.toJSONString(logSend)).subscribe();
+            reactiveStringRedisTemplate.convertAndSend(aggregateRedisConfigProperties.getSendLogChannel(), JSON.toJSONString(logSend))
+                                       .subscribe(null, t -> failed.incrementAndGet());
+        }
+    }
+
+    /**
+     * publish the logs as one json array, or as one json object if there is only one log
+     */
+    @Override
+    public void send(List<LogSend> logSends) {
+        if (logSends.size() == 1) {
+            send(logSends.get(0));
+        } else if (aggregateRedisConfigProperties.isSendLogOpen()) {
+            reactiveStringRedisTemplate.convertAndSend(aggregateRedisConfigProperties.getSendLogChannel(), JSON.toJSONString(logSends))
+                                       .subscribe(null, t -> failed.incrementAndGet());
         }
     }
+
+    /**
+     * @return messages redis failed to publish
+     */
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
 }
@@ -50,6 +50,7 @@ public class FizzMonitorService extends SchedConfig {
     public static final byte TIMEOUT_ALARM       = 2;
     public static final byte RATE_LIMIT_ALARM    = 3;
     public static final byte CIRCUIT_BREAK_ALARM = 4;
+    public static final byte OUTLIER_EJECT_ALARM = 5;
 
     private static class Alarm {
 
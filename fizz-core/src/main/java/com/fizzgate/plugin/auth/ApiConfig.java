@@ -21,6 +21,10 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fizzgate.plugin.PluginConfig;
 import com.fizzgate.proxy.Route;
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
+import com.fizzgate.proxy.balancer.UpstreamStats;
+import com.fizzgate.proxy.dubbo.DubboParamBinding;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.JacksonUtils;
 import com.fizzgate.util.UrlTransformUtils;
@@ -32,6 +36,7 @@ import org.springframework.web.server.ServerWebExchange;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -94,10 +99,15 @@ public class ApiConfig {
     @JsonProperty("proxyMode")
     public  byte               type               = Type.SERVICE_DISCOVERY;
 
-    private int                counter            = 0;
+    private AtomicInteger      counter            = new AtomicInteger(0);
 
     public  List<String>       httpHostPorts;
 
+    /**
+     * the balancer of httpHostPorts, the default one of LoadBalancers if null, see LoadBalancerConfig
+     */
+    public  String             loadBalancer;
+
     public  boolean            allowAccess        = true;
 
     public  List<PluginConfig> pluginConfigs      = Collections.emptyList();
@@ -120,6 +130,19 @@ public class ApiConfig {
 
     public  long               retryInterval      = 0;
 
+    public  long               retryBodyMaxSize   = 0;
+
+    /**
+     * send request to backend with HTTP/2 when proxy-webclient.http2.enable is true
+     */
+    public  boolean            http2              = false;
+
+    private volatile ApiConfigPathPatternComparator.PatternInfo pathPatternInfo;
+
+    private volatile PathRewriteTemplate pathRewriteTemplate;
+
+    private volatile DubboParamBinding rpcParamBinding;
+
     public void setDeleted(int v) {
         if (v == 1) {
             isDeleted = true;
@@ -191,12 +214,28 @@ public class ApiConfig {
         }
     }
 
+    ApiConfigPathPatternComparator.PatternInfo getPathPatternInfo() {
+        ApiConfigPathPatternComparator.PatternInfo info = pathPatternInfo;
+        if (info == null || !path.equals(info.pattern)) {
+            info = new ApiConfigPathPatternComparator.PatternInfo(path);
+            info.getLength();
+            pathPatternInfo = info;
+        }
+        return info;
+    }
+
     @JsonIgnore
     public String getNextHttpHostPort() {
-        int i = counter++;
-        if (i < 0) {
-            i = Math.abs(i);
+        if (httpHostPorts.size() > 1) {
+            LoadBalancer balancer = LoadBalancers.find(loadBalancer);
+            if (balancer == null) {
+                balancer = LoadBalancers.get(backendService);
+            }
+            if (balancer != null) {
+                return balancer.choose(String.valueOf(id), httpHostPorts, UpstreamStats::address);
+            }
         }
+        int i = counter.getAndIncrement() & Integer.MAX_VALUE;
         return httpHostPorts.get(
             i % httpHostPorts.size()
         );
@@ -206,7 +245,25 @@ public class ApiConfig {
         if (exactMatch) {
             return backendPath;
         }
-        return UrlTransformUtils.transform(path, backendPath, reqPath);
+        return getPathRewriteTemplate().transform(reqPath);
+    }
+
+    PathRewriteTemplate getPathRewriteTemplate() {
+        PathRewriteTemplate t = pathRewriteTemplate;
+        if (t == null || !path.equals(t.frontendPath) || !backendPath.equals(t.backendPath)) {
+            t = PathRewriteTemplate.compile(path, backendPath);
+            pathRewriteTemplate = t;
+        }
+        return t;
+    }
+
+    DubboParamBinding getRpcParamBinding() {
+        DubboParamBinding b = rpcParamBinding;
+        if (b == null || !b.isFor(rpcParamTypes)) {
+            b = DubboParamBinding.compile(rpcParamTypes);
+            rpcParamBinding = b;
+        }
+        return b;
     }
 
     @Override
@@ -238,7 +295,13 @@ public class ApiConfig {
                              .rpcVersion(     this.rpcVersion)
                              .timeout(        this.timeout)
                              .retryCount(     this.retryCount)
-                             .retryInterval(  this.retryInterval);
+                             .retryInterval(  this.retryInterval)
+                             .retryBodyMaxSize(this.retryBodyMaxSize)
+                             .http2(          this.http2);
+
+        if (this.type == Type.DUBBO) {
+            r.rpcParamBinding = getRpcParamBinding();
+        }
 
         if (gatewayGroupPluginConfigs == null || gatewayGroupPluginConfigs.isEmpty()) {
             r.pluginConfigs = this.pluginConfigs;
@@ -33,6 +33,7 @@ import reactor.core.publisher.Mono;
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author hongqiaowei
@@ -51,6 +52,8 @@ public class ApiConfig2appsService {
 
     private Map<Integer/* api config id */, Set<String/* app */>> apiConfig2appsMap = new HashMap<>(128);
 
+    private final AtomicLong version = new AtomicLong();
+
     @Resource(name = AggregateRedisConfig.AGGREGATE_REACTIVE_REDIS_TEMPLATE)
     private ReactiveStringRedisTemplate rt;
 
@@ -100,6 +103,7 @@ public class ApiConfig2appsService {
                         m.subscribe(
                             e -> {
                                 apiConfig2appsMap = apiConfig2appsMapTmp;
+                                version.incrementAndGet();
                                 if (doAfterLoadCache != null) {
                                     doAfterLoadCache.run();
                                 }
@@ -156,6 +160,7 @@ public class ApiConfig2appsService {
                         try {
                             ApiConfig2apps data = JacksonUtils.readValue(json, ApiConfig2apps.class);
                             updateApiConfig2appsMap(data);
+                            version.incrementAndGet();
                         } catch (Throwable t) {
                             log.error(Consts.S.EMPTY, t);
                         }
@@ -192,7 +197,16 @@ public class ApiConfig2appsService {
     }
 
     public Set<String> remove(int id) {
-        return apiConfig2appsMap.remove(id);
+        Set<String> apps = apiConfig2appsMap.remove(id);
+        version.incrementAndGet();
+        return apps;
+    }
+
+    /**
+     * @return increased after api config to apps mapping changed
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     public Map<Integer, Set<String>> getApiConfig2appsMap() {
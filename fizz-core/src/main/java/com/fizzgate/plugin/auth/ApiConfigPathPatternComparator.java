@@ -0,0 +1,197 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.plugin.auth;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * Orders the api configs matching a request path from the most specific to the least specific,
+ * the pattern info of api config is computed when the config is loaded.
+ *
+ * @author hongqiaowei
+ */
+
+class ApiConfigPathPatternComparator implements Comparator<ApiConfig> {
+
+    private final String path;
+
+    public ApiConfigPathPatternComparator(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public int compare(ApiConfig ac1, ApiConfig ac2) {
+        ApiConfigPathPatternComparator.PatternInfo info1 = ac1.getPathPatternInfo();
+        ApiConfigPathPatternComparator.PatternInfo info2 = ac2.getPathPatternInfo();
+        String pattern1 = info1.pattern, pattern2 = info2.pattern;
+
+        if (info1.isLeastSpecific() && info2.isLeastSpecific()) {
+            return 0;
+        }
+        else if (info1.isLeastSpecific()) {
+            return 1;
+        }
+        else if (info2.isLeastSpecific()) {
+            return -1;
+        }
+
+        boolean pattern1EqualsPath = pattern1.equals(this.path);
+        boolean pattern2EqualsPath = pattern2.equals(this.path);
+        if (pattern1EqualsPath && pattern2EqualsPath) {
+            return 0;
+        }
+        else if (pattern1EqualsPath) {
+            return -1;
+        }
+        else if (pattern2EqualsPath) {
+            return 1;
+        }
+
+        if (info1.isPrefixPattern() && info2.isPrefixPattern()) {
+            return info2.getLength() - info1.getLength();
+        }
+        // unlike AntPathMatcher, a prefix pattern goes after any other pattern but /**, not only the ones without **,
+        // so the order is total and the api configs can be ranked once when built, see PathPatternTrie
+        else if (info1.isPrefixPattern()) {
+            return 1;
+        }
+        else if (info2.isPrefixPattern()) {
+            return -1;
+        }
+
+        if (info1.getTotalCount() != info2.getTotalCount()) {
+            return info1.getTotalCount() - info2.getTotalCount();
+        }
+
+        if (info1.getLength() != info2.getLength()) {
+            return info2.getLength() - info1.getLength();
+        }
+
+        if (info1.getSingleWildcards() < info2.getSingleWildcards()) {
+            return -1;
+        }
+        else if (info2.getSingleWildcards() < info1.getSingleWildcards()) {
+            return 1;
+        }
+
+        if (info1.getUriVars() < info2.getUriVars()) {
+            return -1;
+        }
+        else if (info2.getUriVars() < info1.getUriVars()) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    static class PatternInfo {
+
+        private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{[^/]+?}");
+
+        @Nullable
+        final String pattern;
+
+        private int uriVars;
+
+        private int singleWildcards;
+
+        private int doubleWildcards;
+
+        private boolean catchAllPattern;
+
+        private boolean prefixPattern;
+
+        @Nullable
+        private Integer length;
+
+        public PatternInfo(@Nullable String pattern) {
+            this.pattern = pattern;
+            if (this.pattern != null) {
+                initCounters();
+                this.catchAllPattern = this.pattern.equals("/**");
+                this.prefixPattern = !this.catchAllPattern && this.pattern.endsWith("/**");
+            }
+            if (this.uriVars == 0) {
+                this.length = (this.pattern != null ? this.pattern.length() : 0);
+            }
+        }
+
+        protected void initCounters() {
+            int pos = 0;
+            if (this.pattern != null) {
+                while (pos < this.pattern.length()) {
+                    if (this.pattern.charAt(pos) == '{') {
+                        this.uriVars++;
+                        pos++;
+                    }
+                    else if (this.pattern.charAt(pos) == '*') {
+                        if (pos + 1 < this.pattern.length() && this.pattern.charAt(pos + 1) == '*') {
+                            this.doubleWildcards++;
+                            pos += 2;
+                        }
+                        else if (pos > 0 && !this.pattern.substring(pos - 1).equals(".*")) {
+                            this.singleWildcards++;
+                            pos++;
+                        }
+                        else {
+                            pos++;
+                        }
+                    }
+                    else {
+                        pos++;
+                    }
+                }
+            }
+        }
+
+        public int getUriVars() {
+            return this.uriVars;
+        }
+
+        public int getSingleWildcards() {
+            return this.singleWildcards;
+        }
+
+        public int getDoubleWildcards() {
+            return this.doubleWildcards;
+        }
+
+        public boolean isLeastSpecific() {
+            return (this.pattern == null || this.catchAllPattern);
+        }
+
+        public boolean isPrefixPattern() {
+            return this.prefixPattern;
+        }
+
+        public int getTotalCount() {
+            return this.uriVars + this.singleWildcards + (2 * this.doubleWildcards);
+        }
+
+        public int getLength() {
+            if (this.length == null) {
+                this.length = (this.pattern != null ?
+                        VARIABLE_PATTERN.matcher(this.pattern).replaceAll("#").length() : 0);
+            }
+            return this.length;
+        }
+    }
+}
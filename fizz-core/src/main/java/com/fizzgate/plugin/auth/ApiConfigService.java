@@ -27,7 +27,6 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.server.reactive.ServerHttpRequest;
-import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.server.ServerWebExchange;
@@ -45,8 +44,8 @@ import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
-import java.util.regex.Pattern;
 
 /**
  * @author hongqiaowei
@@ -63,6 +62,10 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
 
     private Map<String,  String>        pluginConfigMap  = new HashMap<>(32);
 
+    private final AtomicLong            version          = new AtomicLong();
+
+    private RouteCache                  routeCache;
+
     @Resource
     private ReactiveWebServerApplicationContext applicationContext;
 
@@ -90,6 +93,10 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
 
     @PostConstruct
     public void init() throws Throwable {
+        long routeCacheSize = apiConfigServiceProperties.getRouteCacheSize();
+        if (routeCacheSize > 0) {
+            routeCache = new RouteCache(routeCacheSize);
+        }
         this.init(this::lsnApiConfigChange);
     }
 
@@ -120,7 +127,9 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
                     try {
                         ApiConfig ac = JacksonUtils.readValue(json, ApiConfig.class);
                         apiConfigMapTmp.put(ac.id, ac);
-                        updateServiceConfigMap(ac, serviceConfigMapTmp);
+                        if (!ac.isDeleted) {
+                            serviceConfigMapTmp.computeIfAbsent(ac.service, ServiceConfig::new).load(ac);
+                        }
                         return Flux.just(e);
                     } catch (Throwable t) {
                         throwable[0] = t;
@@ -142,8 +151,11 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
         if (error != ReactorUtils.EMPTY_THROWABLE) {
             throw error;
         }
+        // build once after loading, instead of for each api config
+        serviceConfigMapTmp.values().forEach(ServiceConfig::buildPathPatternTries);
         this.apiConfigMap = apiConfigMapTmp;
         this.serviceConfigMap = serviceConfigMapTmp;
+        version.incrementAndGet();
     }
 
     // TODO: no need like this
@@ -178,6 +190,7 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
                 } else {
                     apiConfig2AppsService.remove(ac.id);
                 }
+                version.incrementAndGet();
             } catch (Throwable t) {
                 log.error("deser {}", json, t);
             }
@@ -329,6 +342,41 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
         return apiConfigMap;
     }
 
+    /**
+     * @return null if route cache disabled
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    private long getConfigVersion() {
+        return version.get() + apiConfig2AppsService.getVersion() + gatewayGroupService.getVersion();
+    }
+
+    /**
+     * @return api configs matching the path, ordered by {@link ApiConfigPathPatternComparator}
+     */
+    private ApiConfig[] getApiConfigs(ServiceConfig sc, boolean dedicatedLineRequest, Set<String> gatewayGroups, String service, HttpMethod method, String path) {
+        long version = 0;
+        if (routeCache != null) {
+            version = getConfigVersion();
+            ApiConfig[] apiConfigs = routeCache.get(version, dedicatedLineRequest, gatewayGroups, service, method, path);
+            if (apiConfigs != null) {
+                return apiConfigs;
+            }
+        }
+        Set<String> ggs = CollectionUtils.isEmpty(gatewayGroups) ? gatewayGroupService.currentGatewayGroupSet : gatewayGroups;
+        List<ApiConfig> apiConfigList = sc.getApiConfigs(dedicatedLineRequest, ggs, method, path);
+        ApiConfig[] apiConfigs = RouteCache.EMPTY_API_CONFIGS;
+        if (!apiConfigList.isEmpty()) {
+            apiConfigs = apiConfigList.toArray(RouteCache.EMPTY_API_CONFIGS);
+        }
+        if (routeCache != null) {
+            routeCache.put(version, dedicatedLineRequest, gatewayGroups, service, method, path, apiConfigs);
+        }
+        return apiConfigs;
+    }
+
     /**
      * @deprecated
      */
@@ -388,17 +436,20 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
             return Result.fail("no " + service + " service api config");
         }
         if (CollectionUtils.isEmpty(gatewayGroups)) {
-            gatewayGroups = gatewayGroupService.currentGatewayGroupSet;
+            gatewayGroups = null;
         }
-        List<ApiConfig> apiConfigs = sc.getApiConfigs(dedicatedLineRequest, gatewayGroups, method, path);
-        if (apiConfigs.isEmpty()) {
+        ApiConfig[] apiConfigs = getApiConfigs(sc, dedicatedLineRequest, gatewayGroups, service, method, path);
+        if (apiConfigs.length == 0) {
+            if (gatewayGroups == null) {
+                gatewayGroups = gatewayGroupService.currentGatewayGroupSet;
+            }
             StringBuilder b = ThreadContext.getStringBuilder();
             b.append(service).append(" don't have api config matching ").append(gatewayGroups).append(" group ").append(method).append(" method ").append(path).append(" path");
             return Result.fail(b.toString());
         }
         List<ApiConfig> clientCanAccess = ThreadContext.getArrayList();
-        for (int i = 0; i < apiConfigs.size(); i++) {
-            ApiConfig ac = apiConfigs.get(i);
+        for (int i = 0; i < apiConfigs.length; i++) {
+            ApiConfig ac = apiConfigs[i];
             if (!dedicatedLineRequest && ac.checkApp) {
                 if (StringUtils.isNotBlank(app) && apiConfig2AppsService.contains(ac.id, app)) {
                     clientCanAccess.add(ac);
@@ -415,7 +466,7 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
         }
         ApiConfig bestOne = clientCanAccess.get(0);
         if (clientCanAccess.size() != 1) {
-            clientCanAccess.sort(new ApiConfigPathPatternComparator(path)); // singleton ?
+            // apiConfigs are sorted already, and so are the ones client can access
             ApiConfig ac0 = clientCanAccess.get(0);
             bestOne = ac0;
             ApiConfig ac1 = clientCanAccess.get(1);
@@ -558,171 +609,4 @@ public class ApiConfigService implements ApplicationListener<ContextRefreshedEve
         }
         return Mono.just(r);
     }
-
-
-
-    private static class ApiConfigPathPatternComparator implements Comparator<ApiConfig> {
-
-        private final String path;
-
-        public ApiConfigPathPatternComparator(String path) {
-            this.path = path;
-        }
-
-        @Override
-        public int compare(ApiConfig ac1, ApiConfig ac2) {
-            String pattern1 = ac1.path, pattern2 = ac2.path;
-            ApiConfigPathPatternComparator.PatternInfo info1 = new ApiConfigPathPatternComparator.PatternInfo(pattern1);
-            ApiConfigPathPatternComparator.PatternInfo info2 = new ApiConfigPathPatternComparator.PatternInfo(pattern2);
-
-            if (info1.isLeastSpecific() && info2.isLeastSpecific()) {
-                return 0;
-            }
-            else if (info1.isLeastSpecific()) {
-                return 1;
-            }
-            else if (info2.isLeastSpecific()) {
-                return -1;
-            }
-
-            boolean pattern1EqualsPath = pattern1.equals(this.path);
-            boolean pattern2EqualsPath = pattern2.equals(this.path);
-            if (pattern1EqualsPath && pattern2EqualsPath) {
-                return 0;
-            }
-            else if (pattern1EqualsPath) {
-                return -1;
-            }
-            else if (pattern2EqualsPath) {
-                return 1;
-            }
-
-            if (info1.isPrefixPattern() && info2.isPrefixPattern()) {
-                return info2.getLength() - info1.getLength();
-            }
-            else if (info1.isPrefixPattern() && info2.getDoubleWildcards() == 0) {
-                return 1;
-            }
-            else if (info2.isPrefixPattern() && info1.getDoubleWildcards() == 0) {
-                return -1;
-            }
-
-            if (info1.getTotalCount() != info2.getTotalCount()) {
-                return info1.getTotalCount() - info2.getTotalCount();
-            }
-
-            if (info1.getLength() != info2.getLength()) {
-                return info2.getLength() - info1.getLength();
-            }
-
-            if (info1.getSingleWildcards() < info2.getSingleWildcards()) {
-                return -1;
-            }
-            else if (info2.getSingleWildcards() < info1.getSingleWildcards()) {
-                return 1;
-            }
-
-            if (info1.getUriVars() < info2.getUriVars()) {
-                return -1;
-            }
-            else if (info2.getUriVars() < info1.getUriVars()) {
-                return 1;
-            }
-
-            return 0;
-        }
-
-        private static class PatternInfo {
-
-            private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{[^/]+?}");
-
-            @Nullable
-            private final String pattern;
-
-            private int uriVars;
-
-            private int singleWildcards;
-
-            private int doubleWildcards;
-
-            private boolean catchAllPattern;
-
-            private boolean prefixPattern;
-
-            @Nullable
-            private Integer length;
-
-            public PatternInfo(@Nullable String pattern) {
-                this.pattern = pattern;
-                if (this.pattern != null) {
-                    initCounters();
-                    this.catchAllPattern = this.pattern.equals("/**");
-                    this.prefixPattern = !this.catchAllPattern && this.pattern.endsWith("/**");
-                }
-                if (this.uriVars == 0) {
-                    this.length = (this.pattern != null ? this.pattern.length() : 0);
-                }
-            }
-
-            protected void initCounters() {
-                int pos = 0;
-                if (this.pattern != null) {
-                    while (pos < this.pattern.length()) {
-                        if (this.pattern.charAt(pos) == '{') {
-                            this.uriVars++;
-                            pos++;
-                        }
-                        else if (this.pattern.charAt(pos) == '*') {
-                            if (pos + 1 < this.pattern.length() && this.pattern.charAt(pos + 1) == '*') {
-                                this.doubleWildcards++;
-                                pos += 2;
-                            }
-                            else if (pos > 0 && !this.pattern.substring(pos - 1).equals(".*")) {
-                                this.singleWildcards++;
-                                pos++;
-                            }
-                            else {
-                                pos++;
-                            }
-                        }
-                        else {
-                            pos++;
-                        }
-                    }
-                }
-            }
-
-            public int getUriVars() {
-                return this.uriVars;
-            }
-
-            public int getSingleWildcards() {
-                return this.singleWildcards;
-            }
-
-            public int getDoubleWildcards() {
-                return this.doubleWildcards;
-            }
-
-            public boolean isLeastSpecific() {
-                return (this.pattern == null || this.catchAllPattern);
-            }
-
-            public boolean isPrefixPattern() {
-                return this.prefixPattern;
-            }
-
-            public int getTotalCount() {
-                return this.uriVars + this.singleWildcards + (2 * this.doubleWildcards);
-            }
-
-            public int getLength() {
-                if (this.length == null) {
-                    this.length = (this.pattern != null ?
-                            VARIABLE_PATTERN.matcher(this.pattern).replaceAll("#").length() : 0);
-                }
-                return this.length;
-            }
-        }
-    }
 }
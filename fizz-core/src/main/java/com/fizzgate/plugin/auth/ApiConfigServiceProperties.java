@@ -44,4 +44,10 @@ public class ApiConfigServiceProperties {
 
     @Value("${fizz-plugin-config.channel:fizz_plugin_config_channel}")
     private String fizzPluginConfigChannel;
+
+    /**
+     * Max number of resolved routes cached, 0 to disable the cache
+     */
+    @Value("${fizz-api-config.route-cache-size:10000}")
+    private long routeCacheSize;
 }
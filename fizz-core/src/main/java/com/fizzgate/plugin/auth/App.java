@@ -19,7 +19,7 @@ package com.fizzgate.plugin.auth;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.fizzgate.util.Consts;
+import com.fizzgate.util.IpMatcher;
 import com.fizzgate.util.JacksonUtils;
 
 import java.util.*;
@@ -58,6 +58,8 @@ public class App {
 
     public Map<String, List<String[]>> ips                      =  new HashMap<>();
 
+    private IpMatcher                  ipMatcher                =  IpMatcher.EMPTY;
+
     public void setDeleted(int v) {
         if (v == 1) {
             isDeleted = true;
@@ -78,6 +80,7 @@ public class App {
 
     public void setIps(String ips) {
         if (StringUtils.isNotBlank(ips)) {
+            IpMatcher.Builder builder = new IpMatcher.Builder();
             Arrays.stream(StringUtils.split(ips, ',')).forEach(
                     ip -> {
                         ip = ip.trim();
@@ -88,86 +91,26 @@ public class App {
                             // this.ips.put(subnet, Collections.singletonList(new String[]{"1", "255"}));
                             List<String[]> segs = this.ips.computeIfAbsent(subnet, k -> new ArrayList<>());
                             segs.add(new String[]{"1", "255"});
+                            builder.range(subnet + ".1", subnet + ".255");
                         } else if (addrSeg.indexOf('-') > 0) {
                             String[] a = StringUtils.split(addrSeg, '-');
                             String beg = a[0].trim();
                             String end = a[1].trim();
                             List<String[]> lst = this.ips.computeIfAbsent(subnet, k -> new ArrayList<>());
                             lst.add(new String[]{beg, end});
+                            builder.range(subnet + '.' + beg, subnet + '.' + end);
                         } else {
                             this.ips.put(ip, null);
+                            builder.ip(ip);
                         }
                     }
             );
+            ipMatcher = builder.build();
         }
     }
 
     public boolean allow(String ip) {
-        if (ips.containsKey(ip)) {
-            return true;
-        }
-        int originSubnetLen = ip.lastIndexOf(Consts.S.DOT);
-        for (Map.Entry<String, List<String[]>> e : ips.entrySet()) {
-            String subnet = e.getKey();
-            int subnetLen = subnet.length();
-            byte i = 0;
-            if (subnetLen == originSubnetLen) {
-                for (; i < subnetLen; i++) {
-                    if (subnet.charAt(i) != ip.charAt(i)) {
-                        break;
-                    }
-                }
-                if (i == subnetLen) {
-                    int originAddrLen = ip.length() - originSubnetLen - 1;
-                    boolean in = false;
-                    for (String[] addrSeg : e.getValue()) {
-                        in = inAddrSeg(ip, originSubnetLen, originAddrLen, addrSeg);
-                        if (in) {
-                            return in;
-                        }
-                    }
-                    return in;
-                }
-            }
-        }
-        return false;
-    }
-
-    private boolean inAddrSeg(String ip, int originSubnetLen, int originAddrLen, String[] addrSeg) {
-        String addrSegBeg = addrSeg[0];
-        String addrSegEnd = addrSeg[1];
-        if (originAddrLen < addrSegBeg.length() || addrSegEnd.length() < originAddrLen) {
-            return false;
-        } else {
-            boolean b = true;
-            if (originAddrLen == addrSegBeg.length()) {
-                for (byte j = 0; j < addrSegBeg.length(); j++) {
-                    char o = ip.charAt(originSubnetLen + 1 + j);
-                    char a = addrSegBeg.charAt(j);
-                    if (o < a) {
-                        b = false;
-                        break;
-                    } else if (o > a) {
-                        break;
-                    }
-                }
-            }
-            if (b) {
-                if (originAddrLen == addrSegEnd.length()) {
-                    for (byte j = 0; j < addrSegEnd.length(); j++) {
-                        char a = addrSegEnd.charAt(j);
-                        char o = ip.charAt(originSubnetLen + 1 + j);
-                        if (a < o) {
-                            b = false;
-                            break;
-                        } else if (a > o) {
-                            break;
-                        }
-                    }
-                }
-            }
-            return b;
-        }
+        return ipMatcher.match(ip);
     }
 
     @Override
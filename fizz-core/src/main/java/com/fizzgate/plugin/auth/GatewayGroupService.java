@@ -37,6 +37,7 @@ import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -60,6 +61,8 @@ public class GatewayGroupService {
 
     public  Set<String>                 currentGatewayGroupSet = Stream.of(GatewayGroup.DEFAULT).collect(Collectors.toSet());
 
+    private final AtomicLong            version                = new AtomicLong();
+
     @Resource(name = AggregateRedisConfig.AGGREGATE_REACTIVE_REDIS_TEMPLATE)
     private ReactiveStringRedisTemplate rt;
 
@@ -122,6 +125,7 @@ public class GatewayGroupService {
         gatewayGroupMap = gatewayGroupMapTmp;
         oldGatewayGroupMap = oldGatewayGroupMapTmp;
         currentGatewayGroupSet = currentGatewayGroupSetTmp;
+        version.incrementAndGet();
     }
 
     private Mono<Throwable> lsnGatewayGroupChange() {
@@ -151,6 +155,7 @@ public class GatewayGroupService {
                 if (!gg.isDeleted) {
                     oldGatewayGroupMap.put(gg.id, gg);
                 }
+                version.incrementAndGet();
             } catch (Throwable t) {
                 log.info(json, t);
             }
@@ -208,4 +213,11 @@ public class GatewayGroupService {
     public GatewayGroup get(String gg) {
         return gatewayGroupMap.get(gg);
     }
+
+    /**
+     * @return increased after gateway groups changed
+     */
+    public long getVersion() {
+        return version.get();
+    }
 }
@@ -0,0 +1,340 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.plugin.auth;
+
+import com.fizzgate.util.Consts;
+import com.fizzgate.util.ThreadContext;
+import com.fizzgate.util.UrlTransformUtils;
+
+import java.util.*;
+
+/**
+ * Compiled path patterns of a gateway group and method.
+ * <p>
+ * A pattern consisting of literal, {var}, * and ** segments is compiled into a segment trie, the trie follows
+ * {@link UrlTransformUtils#ANT_PATH_MATCHER} semantics: {var} and * match one segment, ** matches one or more segments.
+ * Other patterns, like /a/b*, /a/{id:\d+} or /a/?, are still matched by ANT_PATH_MATCHER one by one.
+ * <p>
+ * The api configs are ranked by {@link ApiConfigPathPatternComparator} when the trie is built, so the matched ones
+ * come out from the most specific to the least specific without sorting them for each request.
+ * <p>
+ * The trie is immutable after built, a change of api config builds a new one.
+ *
+ * @author hongqiaowei
+ */
+
+class PathPatternTrie {
+
+    private static final String DOUBLE_WILDCARDS  = "**";
+
+    private static final String SINGLE_WILDCARD   = "*";
+
+    private static final String MATCHED_NODES     = "pptMatchedNodesT";
+
+    private static final String MATCHED_ENTRIES   = "pptMatchedEntriesT";
+
+    private static final String[] ROOT_PATH_SEGMENTS = {Consts.S.EMPTY};
+
+    private static class Entry {
+
+        private final ApiConfig apiConfig;
+
+        /**
+         * rank of the api config in the trie, the smaller the more specific
+         */
+        private       int       precedence;
+
+        private Entry(ApiConfig apiConfig) {
+            this.apiConfig = apiConfig;
+        }
+    }
+
+    private static class Node {
+
+        private Map<String, Node> literalChildren;
+
+        private Node              singleWildcardChild;
+
+        private Node              doubleWildcardsChild;
+
+        private Entry[]           entries;
+
+        private Node child(String segment) {
+            if (segment.equals(DOUBLE_WILDCARDS)) {
+                if (doubleWildcardsChild == null) {
+                    doubleWildcardsChild = new Node();
+                }
+                return doubleWildcardsChild;
+            }
+            if (segment.equals(SINGLE_WILDCARD) || isUriVar(segment)) {
+                if (singleWildcardChild == null) {
+                    singleWildcardChild = new Node();
+                }
+                return singleWildcardChild;
+            }
+            if (literalChildren == null) {
+                literalChildren = new HashMap<>();
+            }
+            return literalChildren.computeIfAbsent(segment, k -> new Node());
+        }
+
+        private void addEntries(Entry[] es) {
+            int n = entries == null ? 0 : entries.length;
+            Entry[] arr = new Entry[n + es.length];
+            if (n > 0) {
+                System.arraycopy(entries, 0, arr, 0, n);
+            }
+            System.arraycopy(es, 0, arr, n, es.length);
+            entries = arr;
+        }
+    }
+
+    private static final Comparator<Entry> PRECEDENCE = Comparator.comparingInt(e -> e.precedence);
+
+    private final Node          root               = new Node();
+
+    private final List<String>  uncompiledPatterns = new ArrayList<>();
+
+    private final List<Entry[]> uncompiledEntries  = new ArrayList<>();
+
+    PathPatternTrie(Map<String/*path pattern*/, Set<ApiConfig>> pathPattern2apiConfigsMap) {
+        List<Entry> all = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        for (Map.Entry<String, Set<ApiConfig>> entry : pathPattern2apiConfigsMap.entrySet()) {
+            String pathPattern = entry.getKey();
+            Set<ApiConfig> apiConfigs = entry.getValue();
+            if (apiConfigs.isEmpty()) {
+                continue;
+            }
+            Entry[] es = new Entry[apiConfigs.size()];
+            int i = 0;
+            for (ApiConfig ac : apiConfigs) {
+                es[i] = new Entry(ac);
+                all.add(es[i++]);
+            }
+            String[] segments = compile(pathPattern);
+            if (segments == null) {
+                uncompiledPatterns.add(pathPattern);
+                uncompiledEntries.add(es);
+            } else {
+                Node node = root;
+                for (String segment : segments) {
+                    node = node.child(segment);
+                }
+                if (node.entries == null) {
+                    nodes.add(node);
+                }
+                node.addEntries(es);
+            }
+        }
+
+        // the ranks don't depend on the request path, an api config whose pattern equals the path goes first when matching
+        ApiConfigPathPatternComparator comparator = new ApiConfigPathPatternComparator(null);
+        all.sort((e1, e2) -> comparator.compare(e1.apiConfig, e2.apiConfig));
+        for (int i = 0; i < all.size(); i++) {
+            all.get(i).precedence = i;
+        }
+        for (Node node : nodes) {
+            Arrays.sort(node.entries, PRECEDENCE);
+        }
+        for (Entry[] es : uncompiledEntries) {
+            Arrays.sort(es, PRECEDENCE);
+        }
+    }
+
+    /**
+     * @return segments of the path pattern, or null if the pattern can't be compiled into trie
+     */
+    static String[] compile(String pathPattern) {
+        if (pathPattern.isEmpty() || pathPattern.charAt(0) != Consts.S.FORWARD_SLASH) {
+            return null;
+        }
+        String[] segments = split(pathPattern);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals(DOUBLE_WILDCARDS)) {
+                if (i > 0 && segments[i - 1].equals(DOUBLE_WILDCARDS)) {
+                    return null;
+                }
+            } else if (!segment.equals(SINGLE_WILDCARD) && !isUriVar(segment)) {
+                for (int j = 0; j < segment.length(); j++) {
+                    char c = segment.charAt(j);
+                    if (c == '*' || c == '?' || c == '{' || c == '}') {
+                        return null;
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static boolean isUriVar(String segment) {
+        int l = segment.length();
+        if (l < 3 || segment.charAt(0) != '{' || segment.charAt(l - 1) != '}') {
+            return false;
+        }
+        for (int i = 1; i < l - 1; i++) {
+            char c = segment.charAt(i);
+            if (c == '{' || c == '}' || c == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split the path into segments after the leading /, empty segments are kept, so /a/b/ is [a, b, ""]
+     */
+    static String[] split(String path) {
+        int n = 1;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == Consts.S.FORWARD_SLASH) {
+                n++;
+            }
+        }
+        String[] segments = new String[n];
+        int start = 1, idx = 0;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == Consts.S.FORWARD_SLASH) {
+                segments[idx++] = path.substring(start, i);
+                start = i + 1;
+            }
+        }
+        segments[idx] = path.substring(start);
+        return segments;
+    }
+
+    /**
+     * Add api configs whose path pattern matches the path, or the path with or without the trailing /, to result,
+     * from the most specific to the least specific.
+     */
+    void match(boolean dedicatedLineRequest, String path, List<ApiConfig> result) {
+        ArrayList<Entry> matchedEntries = ThreadContext.getArrayList(MATCHED_ENTRIES);
+        if (!path.isEmpty() && path.charAt(0) == Consts.S.FORWARD_SLASH) {
+            ArrayList<Node> matchedNodes = ThreadContext.getArrayList(MATCHED_NODES);
+            String[] segments;
+            int n;
+            if (path.length() == 1) {
+                match(root, ROOT_PATH_SEGMENTS, 0, 1, matchedNodes);
+            } else if (path.charAt(path.length() - 1) == Consts.S.FORWARD_SLASH) {
+                segments = split(path);
+                n = segments.length;
+                match(root, segments, 0, n,     matchedNodes);
+                match(root, segments, 0, n - 1, matchedNodes);
+            } else {
+                String[] ss = split(path);
+                n = ss.length;
+                segments = Arrays.copyOf(ss, n + 1);
+                segments[n] = Consts.S.EMPTY;
+                match(root, segments, 0, n,     matchedNodes);
+                match(root, segments, 0, n + 1, matchedNodes);
+            }
+            for (int i = 0; i < matchedNodes.size(); i++) {
+                for (Entry e : matchedNodes.get(i).entries) {
+                    insert(matchedEntries, e);
+                }
+            }
+            matchedNodes.clear();
+        }
+
+        if (!uncompiledPatterns.isEmpty()) {
+            matchUncompiledPatterns(path, matchedEntries);
+        }
+
+        if (!matchedEntries.isEmpty()) {
+            for (int i = 0; i < matchedEntries.size(); i++) {
+                ApiConfig ac = matchedEntries.get(i).apiConfig;
+                if (ac.dedicatedLine == dedicatedLineRequest && ac.path.equals(path)) {
+                    result.add(ac);
+                }
+            }
+            for (int i = 0; i < matchedEntries.size(); i++) {
+                ApiConfig ac = matchedEntries.get(i).apiConfig;
+                if (ac.dedicatedLine == dedicatedLineRequest && !ac.path.equals(path)) {
+                    result.add(ac);
+                }
+            }
+            matchedEntries.clear();
+        }
+    }
+
+    /**
+     * Insert the entry into the entries in precedence order, the matched entries are few, so it's cheap.
+     */
+    private static void insert(List<Entry> entries, Entry e) {
+        int i = entries.size();
+        while (i > 0 && entries.get(i - 1).precedence > e.precedence) {
+            i--;
+        }
+        entries.add(i, e);
+    }
+
+    private static void match(Node node, String[] segments, int idx, int n, List<Node> matchedNodes) {
+        if (idx == n) {
+            if (node.entries != null && !contains(matchedNodes, node)) {
+                matchedNodes.add(node);
+            }
+            return;
+        }
+        if (node.literalChildren != null) {
+            Node child = node.literalChildren.get(segments[idx]);
+            if (child != null) {
+                match(child, segments, idx + 1, n, matchedNodes);
+            }
+        }
+        if (node.singleWildcardChild != null) {
+            match(node.singleWildcardChild, segments, idx + 1, n, matchedNodes);
+        }
+        if (node.doubleWildcardsChild != null) {
+            for (int i = idx + 1; i <= n; i++) {
+                match(node.doubleWildcardsChild, segments, i, n, matchedNodes);
+            }
+        }
+    }
+
+    private static boolean contains(List<Node> nodes, Node node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void matchUncompiledPatterns(String path, List<Entry> matchedEntries) {
+        String path0 = path;
+        if (!path.equals(Consts.S.FORWARD_SLASH_STR)) {
+            int lastCharPos = path.length() - 1;
+            char c = path.charAt(lastCharPos);
+            if (c == Consts.S.FORWARD_SLASH) {
+                path0 = path.substring(0, lastCharPos);
+            } else {
+                path0 = path + Consts.S.FORWARD_SLASH;
+            }
+        }
+        for (int i = 0; i < uncompiledPatterns.size(); i++) {
+            String pathPattern = uncompiledPatterns.get(i);
+            if (pathPattern.equals(path) || pathPattern.equals(path0)
+                    || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path) || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path0)) {
+                for (Entry e : uncompiledEntries.get(i)) {
+                    insert(matchedEntries, e);
+                }
+            }
+        }
+    }
+}
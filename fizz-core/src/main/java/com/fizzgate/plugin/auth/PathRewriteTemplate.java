@@ -0,0 +1,263 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.fizzgate.plugin.auth;
+
+import com.fizzgate.util.Consts;
+import com.fizzgate.util.ThreadContext;
+import com.fizzgate.util.UrlTransformUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Backend path template compiled from the frontend path pattern and the backend path of api config,
+ * it gives the same result as {@link UrlTransformUtils#transform(String, String, String)}:
+ * uri variables of the request path, named ones and $1...$n, fill the variable slots of the backend path,
+ * and unknown {xxx} are removed.
+ * <p>
+ * Only a frontend pattern which {@link PathPatternTrie} can compile is supported, other patterns and
+ * request paths with # or uri variable values with { or } are transformed by UrlTransformUtils still.
+ *
+ * @author hongqiaowei
+ */
+
+class PathRewriteTemplate {
+
+    private static final Pattern UNKNOWN_VAR     = Pattern.compile("\\{[^/]*}");
+
+    private static final char    SLOT            = '\uE000';
+
+    private static final byte    LITERAL         = 0;
+
+    private static final byte    SINGLE_WILDCARD = 1;
+
+    private static final byte    DOUBLE_WILDCARDS = 2;
+
+    final String     frontendPath;
+
+    final String     backendPath;
+
+    private String[] segments;
+
+    private byte[]   segmentTypes;
+
+    /**
+     * Group index of each segment, -1 for literal segment
+     */
+    private int[]    segmentGroups;
+
+    private int      groups;
+
+    /**
+     * Backend path is literals[0] + group value of slots[0] + literals[1] + ... + literals[slots.length]
+     */
+    private String[] literals;
+
+    private int[]    slots;
+
+    private PathRewriteTemplate(String frontendPath, String backendPath) {
+        this.frontendPath = frontendPath;
+        this.backendPath  = backendPath;
+    }
+
+    static PathRewriteTemplate compile(String frontendPath, String backendPath) {
+        PathRewriteTemplate t = new PathRewriteTemplate(frontendPath, backendPath);
+        if (frontendPath.indexOf('#') == -1) {
+            String[] segments = PathPatternTrie.compile(frontendPath);
+            if (segments != null) {
+                t.compile(segments);
+            }
+        }
+        return t;
+    }
+
+    boolean isCompiled() {
+        return literals != null;
+    }
+
+    private void compile(String[] segs) {
+        byte[] types = new byte[segs.length];
+        int[] segGroups = new int[segs.length];
+        Map<String, Integer> var2group = new HashMap<>();
+        int g = 0;
+        for (int i = 0; i < segs.length; i++) {
+            String seg = segs[i];
+            segGroups[i] = -1;
+            if (seg.equals("**")) {
+                types[i] = DOUBLE_WILDCARDS;
+                segGroups[i] = g++;
+            } else if (seg.equals("*")) {
+                types[i] = SINGLE_WILDCARD;
+                segGroups[i] = g++;
+            } else if (seg.length() > 2 && seg.charAt(0) == '{' && seg.charAt(seg.length() - 1) == '}') {
+                String var = seg.substring(1, seg.length() - 1);
+                for (int j = 0; j < var.length(); j++) {
+                    char c = var.charAt(j);
+                    if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                        return; // the var is a regex when replacing
+                    }
+                }
+                types[i] = SINGLE_WILDCARD;
+                segGroups[i] = g;
+                var2group.put(var, g++);
+            }
+        }
+        for (int i = 0; i < g; i++) {
+            var2group.put("$" + (i + 1), i);
+        }
+
+        // mark the known vars of backend path with slot chars, then remove unknown ones like UrlTransformUtils does
+        List<Integer> slotList = new ArrayList<>();
+        StringBuilder b = new StringBuilder(backendPath.length());
+        int bl = backendPath.length();
+        for (int i = 0; i < bl; i++) {
+            char c = backendPath.charAt(i);
+            if (c == SLOT) {
+                return;
+            }
+            if (c == '{') {
+                int end = backendPath.indexOf('}', i + 1);
+                if (end != -1) {
+                    Integer group = var2group.get(backendPath.substring(i + 1, end));
+                    if (group != null) {
+                        b.append(SLOT);
+                        slotList.add(group);
+                        i = end;
+                        continue;
+                    }
+                }
+            }
+            b.append(c);
+        }
+        String marked = b.toString();
+        if (marked.indexOf('{') != -1) {
+            Matcher m = UNKNOWN_VAR.matcher(marked);
+            StringBuilder stripped = new StringBuilder(marked.length());
+            int last = 0;
+            while (m.find()) {
+                if (marked.indexOf(SLOT, m.start()) < m.end()) {
+                    return; // the removal depends on variable values
+                }
+                stripped.append(marked, last, m.start());
+                last = m.end();
+            }
+            stripped.append(marked, last, marked.length());
+            marked = stripped.toString();
+        }
+
+        String[] lits = new String[slotList.size() + 1];
+        int[] sls = new int[slotList.size()];
+        int start = 0, s = 0;
+        for (int i = 0; i < marked.length(); i++) {
+            if (marked.charAt(i) == SLOT) {
+                lits[s] = marked.substring(start, i);
+                sls[s] = slotList.get(s);
+                s++;
+                start = i + 1;
+            }
+        }
+        lits[s] = marked.substring(start);
+
+        segments      = segs;
+        segmentTypes  = types;
+        segmentGroups = segGroups;
+        groups        = g;
+        slots         = sls;
+        literals      = lits;
+    }
+
+    String transform(String reqPath) {
+        if (literals == null || reqPath.isEmpty() || reqPath.charAt(0) != Consts.S.FORWARD_SLASH || reqPath.indexOf('#') != -1) {
+            return UrlTransformUtils.transform(frontendPath, backendPath, reqPath);
+        }
+        if (slots.length == 0) {
+            if (match(reqPath, 0, 1, null)) {
+                return literals[0];
+            }
+            return UrlTransformUtils.transform(frontendPath, backendPath, reqPath);
+        }
+        int[] groupBounds = new int[groups << 1];
+        if (!match(reqPath, 0, 1, groupBounds)) {
+            return UrlTransformUtils.transform(frontendPath, backendPath, reqPath);
+        }
+        for (int i = 0; i < groupBounds.length; i += 2) {
+            for (int j = groupBounds[i]; j < groupBounds[i + 1]; j++) {
+                char c = reqPath.charAt(j);
+                if (c == '{' || c == '}') {
+                    return UrlTransformUtils.transform(frontendPath, backendPath, reqPath);
+                }
+            }
+        }
+        StringBuilder b = ThreadContext.getStringBuilder();
+        for (int i = 0; i < slots.length; i++) {
+            int g = slots[i] << 1;
+            b.append(literals[i]).append(reqPath, groupBounds[g], groupBounds[g + 1]);
+        }
+        b.append(literals[slots.length]);
+        return b.toString();
+    }
+
+    /**
+     * Match segments from the i-th one against the path from pos, which is the start of a path segment,
+     * ** consumes one or more segments as many as possible, like the regex of ANT_PATH_MATCHER.
+     */
+    private boolean match(String path, int i, int pos, int[] groupBounds) {
+        int pl = path.length();
+        boolean last = i == segments.length - 1;
+        byte type = segmentTypes[i];
+        if (type == DOUBLE_WILDCARDS) {
+            if (last) {
+                setGroup(groupBounds, segmentGroups[i], pos, pl);
+                return true;
+            }
+            for (int end = path.lastIndexOf(Consts.S.FORWARD_SLASH); end >= pos; end = path.lastIndexOf(Consts.S.FORWARD_SLASH, end - 1)) {
+                if (match(path, i + 1, end + 1, groupBounds)) {
+                    setGroup(groupBounds, segmentGroups[i], pos, end);
+                    return true;
+                }
+            }
+            return false;
+        }
+        int end = path.indexOf(Consts.S.FORWARD_SLASH, pos);
+        if (end == -1) {
+            end = pl;
+        }
+        if (type == LITERAL) {
+            String seg = segments[i];
+            if (end - pos != seg.length() || !path.startsWith(seg, pos)) {
+                return false;
+            }
+        } else {
+            setGroup(groupBounds, segmentGroups[i], pos, end);
+        }
+        if (last) {
+            return end == pl;
+        }
+        return end != pl && match(path, i + 1, end + 1, groupBounds);
+    }
+
+    private static void setGroup(int[] groupBounds, int group, int start, int end) {
+        if (groupBounds != null) {
+            groupBounds[group << 1]       = start;
+            groupBounds[(group << 1) + 1] = end;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.fizzgate.plugin.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.http.HttpMethod;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the api configs matching a concrete request path, sorted by {@link ApiConfigPathPatternComparator},
+ * app access is checked by caller on each request.
+ * <p>
+ * An entry only hits while the config version it is resolved with is current,
+ * so api config, api config to apps or gateway group changes make all entries stale.
+ *
+ * @author hongqiaowei
+ */
+
+public class RouteCache {
+
+    static final ApiConfig[] EMPTY_API_CONFIGS = new ApiConfig[0];
+
+    private final Cache<Key, Entry> cache;
+
+    private final LongAdder         hits      = new LongAdder();
+
+    private final LongAdder         misses    = new LongAdder();
+
+    private final LongAdder         evictions = new LongAdder();
+
+    public RouteCache(long maximumSize) {
+        cache = Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .executor(Runnable::run)
+                        .removalListener(
+                                (k, v, cause) -> {
+                                    if (cause.wasEvicted()) {
+                                        evictions.increment();
+                                    }
+                                }
+                        )
+                        .build();
+    }
+
+    /**
+     * @param gatewayGroups null means current gateway groups
+     * @return null if absent or stale
+     */
+    ApiConfig[] get(long version, boolean dedicatedLineRequest, Set<String> gatewayGroups, String service, HttpMethod method, String path) {
+        Entry entry = cache.getIfPresent(new Key(dedicatedLineRequest, gatewayGroups, service, method, path));
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.apiConfigs;
+    }
+
+    void put(long version, boolean dedicatedLineRequest, Set<String> gatewayGroups, String service, HttpMethod method, String path, ApiConfig[] apiConfigs) {
+        if (gatewayGroups != null) {
+            gatewayGroups = new HashSet<>(gatewayGroups);
+        }
+        cache.put(new Key(dedicatedLineRequest, gatewayGroups, service, method, path), new Entry(version, apiConfigs));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class Key {
+
+        private final boolean     dedicatedLineRequest;
+
+        private final Set<String> gatewayGroups;
+
+        private final String      service;
+
+        private final HttpMethod  method;
+
+        private final String      path;
+
+        private final int         hash;
+
+        Key(boolean dedicatedLineRequest, Set<String> gatewayGroups, String service, HttpMethod method, String path) {
+            this.dedicatedLineRequest = dedicatedLineRequest;
+            this.gatewayGroups        = gatewayGroups;
+            this.service              = service;
+            this.method               = method;
+            this.path                 = path;
+            int h = Boolean.hashCode(dedicatedLineRequest);
+            h = 31 * h + Objects.hashCode(gatewayGroups);
+            h = 31 * h + service.hashCode();
+            h = 31 * h + Objects.hashCode(method);
+            h = 31 * h + path.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash && dedicatedLineRequest == that.dedicatedLineRequest && method == that.method
+                    && path.equals(that.path) && service.equals(that.service) && Objects.equals(gatewayGroups, that.gatewayGroups);
+        }
+    }
+
+    private static final class Entry {
+
+        final long        version;
+
+        final ApiConfig[] apiConfigs;
+
+        Entry(long version, ApiConfig[] apiConfigs) {
+            this.version    = version;
+            this.apiConfigs = apiConfigs;
+        }
+    }
+}
@@ -18,9 +18,7 @@
 package com.fizzgate.plugin.auth;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fizzgate.util.Consts;
 import com.fizzgate.util.ThreadContext;
-import com.fizzgate.util.UrlTransformUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,18 +43,39 @@ public class ServiceConfig {
            >
            apiConfigMap = new HashMap<>();
 
+    /**
+     * Compiled from apiConfigMap for request matching, when an api config changes, the maps are copied and
+     * only the tries of its gateway groups and method are rebuilt.
+     */
+    private volatile Map<String/*gateway group*/, Map<Object/*method*/, PathPatternTrie>> pathPatternTrieMap = Collections.emptyMap();
+
     public ServiceConfig(String id) {
         this.id = id;
     }
 
     public void add(ApiConfig ac) {
+        put(ac);
+        rebuildPathPatternTries(ac.gatewayGroups, ac.fizzMethod);
+        log.info("{} service add api config: {}", id, ac);
+    }
+
+    /**
+     * Add api config without building the path pattern tries, for loading all api configs,
+     * {@link #buildPathPatternTries()} after loading.
+     */
+    public void load(ApiConfig ac) {
+        put(ac);
+        log.info("{} service load api config: {}", id, ac);
+    }
+
+    private void put(ApiConfig ac) {
         for (String gatewayGroup : ac.gatewayGroups) {
             Map<Object, Map<String, Set<ApiConfig>>> method2pathPattenMap = apiConfigMap.computeIfAbsent(gatewayGroup, k -> new HashMap<>());
             Map<String, Set<ApiConfig>> pathPattern2apiConfigsMap = method2pathPattenMap.computeIfAbsent(ac.fizzMethod, k -> new HashMap<>());
             Set<ApiConfig> apiConfigs = pathPattern2apiConfigsMap.computeIfAbsent(ac.path, k -> new HashSet<>());
+            apiConfigs.remove(ac);
             apiConfigs.add(ac);
         }
-        log.info("{} service add api config: {}", id, ac);
     }
 
     public void remove(ApiConfig ac) {
@@ -81,89 +100,123 @@ public class ServiceConfig {
                 }
             }
         }
+        rebuildPathPatternTries(ac.gatewayGroups, ac.fizzMethod);
         log.info("{} service remove api config: {}", id, ac);
     }
 
     public void update(ApiConfig ac) {
-        for (String gatewayGroup : ac.gatewayGroups) {
-            Map<Object, Map<String, Set<ApiConfig>>> method2pathPattenMap = apiConfigMap.computeIfAbsent(gatewayGroup, k -> new HashMap<>());
-            Map<String, Set<ApiConfig>> pathPattern2apiConfigsMap = method2pathPattenMap.computeIfAbsent(ac.fizzMethod, k -> new HashMap<>());
-            Set<ApiConfig> apiConfigs = pathPattern2apiConfigsMap.computeIfAbsent(ac.path, k -> new HashSet<>());
-            apiConfigs.remove(ac);
-            apiConfigs.add(ac);
-        }
+        put(ac);
+        rebuildPathPatternTries(ac.gatewayGroups, ac.fizzMethod);
         log.info("{} service update api config: {}", id, ac);
     }
 
+    /**
+     * Build the path pattern tries of all gateway groups and methods, after {@link #load(ApiConfig)}.
+     */
+    public void buildPathPatternTries() {
+        Map<String, Map<Object, PathPatternTrie>> newPathPatternTrieMap = new HashMap<>();
+        for (Map.Entry<String, Map<Object, Map<String, Set<ApiConfig>>>> e : apiConfigMap.entrySet()) {
+            Map<Object, PathPatternTrie> method2trieMap = new HashMap<>();
+            for (Map.Entry<Object, Map<String, Set<ApiConfig>>> me : e.getValue().entrySet()) {
+                method2trieMap.put(me.getKey(), buildPathPatternTrie(me.getValue()));
+            }
+            newPathPatternTrieMap.put(e.getKey(), method2trieMap);
+        }
+        pathPatternTrieMap = newPathPatternTrieMap;
+    }
+
+    private void rebuildPathPatternTries(Set<String> gatewayGroups, Object method) {
+        Map<String, Map<Object, PathPatternTrie>> newPathPatternTrieMap = new HashMap<>(pathPatternTrieMap);
+        for (String gatewayGroup : gatewayGroups) {
+            Map<Object, Map<String, Set<ApiConfig>>> method2pathPattenMap = apiConfigMap.get(gatewayGroup);
+            if (method2pathPattenMap == null) {
+                newPathPatternTrieMap.remove(gatewayGroup);
+                continue;
+            }
+            Map<Object, PathPatternTrie> method2trieMap = newPathPatternTrieMap.get(gatewayGroup);
+            method2trieMap = method2trieMap == null ? new HashMap<>() : new HashMap<>(method2trieMap);
+            Map<String, Set<ApiConfig>> pathPattern2apiConfigsMap = method2pathPattenMap.get(method);
+            if (pathPattern2apiConfigsMap == null) {
+                method2trieMap.remove(method);
+            } else {
+                method2trieMap.put(method, buildPathPatternTrie(pathPattern2apiConfigsMap));
+            }
+            newPathPatternTrieMap.put(gatewayGroup, method2trieMap);
+        }
+        pathPatternTrieMap = newPathPatternTrieMap;
+    }
+
+    private static PathPatternTrie buildPathPatternTrie(Map<String, Set<ApiConfig>> pathPattern2apiConfigsMap) {
+        for (Set<ApiConfig> apiConfigs : pathPattern2apiConfigsMap.values()) {
+            for (ApiConfig ac : apiConfigs) {
+                ac.getPathPatternInfo();
+                if (!ac.exactMatch && ac.backendPath != null) {
+                    ac.getPathRewriteTemplate();
+                }
+                if (ac.type == ApiConfig.Type.DUBBO) {
+                    ac.getRpcParamBinding();
+                }
+            }
+        }
+        return new PathPatternTrie(pathPattern2apiConfigsMap);
+    }
+
+    /**
+     * @return api configs matching the path, from the most specific to the least specific
+     */
     @JsonIgnore
     public List<ApiConfig> getApiConfigs(boolean dedicatedLineRequest, Set<String> gatewayGroups, HttpMethod method, String path) {
         ArrayList<ApiConfig> result = ThreadContext.getArrayList(ThreadContext.arrayList0);
         for (String gatewayGroup : gatewayGroups) {
             List<ApiConfig> apiConfigs = getApiConfigs(dedicatedLineRequest, gatewayGroup, method, path);
+            int n = result.size();
             result.addAll(apiConfigs);
+            merge(result, n, path);
         }
         return result;
     }
 
+    /**
+     * @return api configs matching the path, from the most specific to the least specific
+     */
     @JsonIgnore
     public List<ApiConfig> getApiConfigs(boolean dedicatedLineRequest, String gatewayGroup, HttpMethod method, String path) {
-        Map<Object, Map<String, Set<ApiConfig>>> method2pathPattenMap = apiConfigMap.get(gatewayGroup);
-        if (method2pathPattenMap == null) {
+        Map<Object, PathPatternTrie> method2trieMap = pathPatternTrieMap.get(gatewayGroup);
+        if (method2trieMap == null) {
             return Collections.emptyList();
         } else {
             ArrayList<ApiConfig> result = ThreadContext.getArrayList();
-            Map<String, Set<ApiConfig>> pathPattern2apiConfigsMap = method2pathPattenMap.get(method);
-            if (pathPattern2apiConfigsMap != null) {
-                checkPathPattern(pathPattern2apiConfigsMap, dedicatedLineRequest, path, result);
+            PathPatternTrie trie = method2trieMap.get(method);
+            if (trie != null) {
+                trie.match(dedicatedLineRequest, path, result);
             }
-            pathPattern2apiConfigsMap = method2pathPattenMap.get(ApiConfig.ALL_METHOD);
-            if (pathPattern2apiConfigsMap != null) {
-                checkPathPattern(pathPattern2apiConfigsMap, dedicatedLineRequest, path, result);
+            trie = method2trieMap.get(ApiConfig.ALL_METHOD);
+            if (trie != null) {
+                int n = result.size();
+                trie.match(dedicatedLineRequest, path, result);
+                merge(result, n, path);
             }
             return result;
         }
     }
 
-    private void checkPathPattern(Map<String, Set<ApiConfig>> pathPattern2apiConfigMap, boolean dedicatedLineRequest, String path, ArrayList<ApiConfig> result) {
-        String path0 = path;
-        if (!path.equals(Consts.S.FORWARD_SLASH_STR)) {
-            int lastCharPos = path.length() - 1;
-            char c = path.charAt(lastCharPos);
-            if (c == Consts.S.FORWARD_SLASH) {
-                path0 = path.substring(0, lastCharPos);
-            } else {
-                path0 = path + Consts.S.FORWARD_SLASH;
-            }
+    /**
+     * Merge the ordered api configs from the index into the ordered ones before it,
+     * nothing to do in general, where only one trie matches.
+     */
+    private static void merge(List<ApiConfig> apiConfigs, int from, String path) {
+        if (from == 0 || from == apiConfigs.size()) {
+            return;
         }
-        Set<Map.Entry<String, Set<ApiConfig>>> entries = pathPattern2apiConfigMap.entrySet();
-        for (Map.Entry<String, Set<ApiConfig>> entry : entries) {
-            String pathPattern = entry.getKey();
-            Set<ApiConfig> apiConfigs = entry.getValue();
-            if (pathPattern.equals(path) || pathPattern.equals(path0)) {
-                for (ApiConfig ac : apiConfigs) {
-                        if (dedicatedLineRequest) {
-                            if (ac.dedicatedLine) {
-                                result.add(ac);
-                            }
-                        } else {
-                            if (!ac.dedicatedLine) {
-                                result.add(ac);
-                            }
-                        }
-                }
-            } else if (UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path) || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path0)) {
-                for (ApiConfig ac : apiConfigs) {
-                        if (dedicatedLineRequest) {
-                            if (ac.dedicatedLine) {
-                                result.add(ac);
-                            }
-                        } else {
-                            if (!ac.dedicatedLine) {
-                                result.add(ac);
-                            }
-                        }
-                }
+        ApiConfigPathPatternComparator comparator = new ApiConfigPathPatternComparator(path);
+        for (int i = from; i < apiConfigs.size(); i++) {
+            ApiConfig ac = apiConfigs.get(i);
+            int j = i;
+            while (j > 0 && comparator.compare(apiConfigs.get(j - 1), ac) > 0) {
+                apiConfigs.set(j, apiConfigs.get(j - 1));
+                j--;
             }
+            apiConfigs.set(j, ac);
         }
     }
 }
@@ -27,10 +27,13 @@ import com.fizzgate.config.AggregateRedisConfig;
 import com.fizzgate.config.SchedConfig;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.DateTimeUtils;
+import com.fizzgate.util.JacksonUtils;
 import com.fizzgate.util.StringUtils;
 
+import reactor.core.publisher.Flux;
+
 import javax.annotation.Resource;
-import java.util.Map;
+import java.util.List;
 
 /**
  * @author hongqiaowei
@@ -55,31 +58,46 @@ public class AccessStatSchedConfig extends SchedConfig {
     @Scheduled(cron = "${fizz-access-stat-sched.cron:2/10 * * * * ?}")
     public void sched() {
         long prevTimeWinStart = DateTimeUtils.get10sTimeWinStart(2);
-        Map<String, AccessStat> accessStatMap = statPluginFilter.getAccessStat(prevTimeWinStart);
+        List<AccessStat> accessStats = statPluginFilter.getAccessStat(prevTimeWinStart);
 
-        if (accessStatMap.isEmpty()) {
+        if (accessStats.isEmpty()) {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("no access stat in {} window", DateTimeUtils.convert(prevTimeWinStart, Consts.DP.DP19));
             }
-        } else {
-            accessStatMap.forEach(
-                    (smp, accessStat) -> {
-                        String msg = accessStat.toString();
-                        String topic = statPluginFilterProperties.getFizzAccessStatTopic();
-                        if (StringUtils.isBlank(topic)) {
-                            String channel = statPluginFilterProperties.getFizzAccessStatChannel();
-                            rt.convertAndSend(channel, msg).subscribe();
-                            if (LOGGER.isDebugEnabled()) {
-                                LOGGER.debug("send access stat {} which belong to {} window to channel {}", msg, DateTimeUtils.convert(accessStat.start, Consts.DP.DP19), channel);
-                            }
-                        } else {
-                            STAT_LOGGER.info(msg);
-                            if (LOGGER.isDebugEnabled()) {
-                                LOGGER.debug("send access stat {} which belong to {} window to topic", msg, DateTimeUtils.convert(accessStat.start, Consts.DP.DP19));
+            return;
+        }
+
+        String topic = statPluginFilterProperties.getFizzAccessStatTopic();
+        if (StringUtils.isBlank(topic)) {
+            String channel = statPluginFilterProperties.getFizzAccessStatChannel();
+            if (statPluginFilterProperties.isFizzAccessStatBatch()) {
+                String msg = JacksonUtils.writeValueAsString(accessStats);
+                rt.convertAndSend(channel, msg).subscribe();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("send {} access stats which belong to {} window to channel {}: {}", accessStats.size(), DateTimeUtils.convert(prevTimeWinStart, Consts.DP.DP19), channel, msg);
+                }
+            } else {
+                // the messages are pipelined on the shared connection
+                Flux.fromIterable(accessStats)
+                    .flatMap(
+                            accessStat -> {
+                                String msg = accessStat.toString();
+                                if (LOGGER.isDebugEnabled()) {
+                                    LOGGER.debug("send access stat {} which belong to {} window to channel {}", msg, DateTimeUtils.convert(accessStat.start, Consts.DP.DP19), channel);
+                                }
+                                return rt.convertAndSend(channel, msg);
                             }
-                        }
-                    }
-            );
+                    )
+                    .subscribe();
+            }
+        } else {
+            for (AccessStat accessStat : accessStats) {
+                String msg = accessStat.toString();
+                STAT_LOGGER.info(msg);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("send access stat {} which belong to {} window to topic", msg, DateTimeUtils.convert(accessStat.start, Consts.DP.DP19));
+                }
+            }
         }
     }
 }
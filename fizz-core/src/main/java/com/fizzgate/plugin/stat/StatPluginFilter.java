@@ -25,17 +25,28 @@ import org.springframework.web.server.ServerWebExchange;
 import com.fizzgate.plugin.PluginFilter;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.DateTimeUtils;
-import com.fizzgate.util.ThreadContext;
 import com.fizzgate.util.WebUtils;
 
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Resource;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Counts the requests of each route in 10s windows.
+ * <p/>
+ * A route, service + method + path, is resolved to its {@link RouteStat} handle by nested lookups, without building key,
+ * the handle keeps the counters of the current and previous windows in two slots, selected by the parity of the window epoch,
+ * a slot is swapped to a new window by CAS when the first request of the window comes, so the stat is lock-free,
+ * and the counter is a {@link LongAdder}, whose cells spread the contention of event loop threads.
+ * Routes idle for 3 windows are removed when collecting stat, a request racing with the removal may be uncounted.
+ *
  * @author hongqiaowei
  */
 
@@ -46,81 +57,129 @@ public class StatPluginFilter extends PluginFilter {
 
     public static final String STAT_PLUGIN_FILTER = "statPlugin";
 
+    private static final long   WINDOW            = 10_000;
+
+    private static final class Window {
+
+        final long      epoch;
+
+        final LongAdder reqs    = new LongAdder();
+
+        volatile long   reqTime;
+
+        Window(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    static final class RouteStat {
+
+        final String                       service;
+
+        final String                       method;
+
+        final String                       path;
+
+        final AtomicReferenceArray<Window> windows = new AtomicReferenceArray<>(new Window[] {new Window(-1), new Window(-1)});
+
+        RouteStat(String service, String method, String path) {
+            this.service = service;
+            this.method  = method;
+            this.path    = path;
+        }
+
+        Window window(long epoch) {
+            int i = (int) (epoch & 1);
+            Window w = windows.get(i);
+            if (w.epoch != epoch) {
+                Window nw = new Window(epoch);
+                if (windows.compareAndSet(i, w, nw)) {
+                    return nw;
+                }
+                w = windows.get(i);
+            }
+            return w;
+        }
+
+        void incr(long now) {
+            Window w = window(now / WINDOW);
+            w.reqs.increment();
+            w.reqTime = now;
+        }
+
+        boolean idle(long epoch) {
+            return windows.get(0).epoch < epoch - 1 && windows.get(1).epoch < epoch - 1;
+        }
+    }
+
     @Resource
     private StatPluginFilterProperties statPluginFilterProperties;
 
-    private Map<Long/*thread id*/,
-                                      Map/*LinkedHashMap*/<Long/*time win start*/,
-                                                                                      Map<String/*service+apiMethod+apiPath*/, AccessStat>
-                                      >
-            >
-            threadTimeWinAccessStatMap = new HashMap<>();
+    private final Map<String/*service*/, Map<String/*method*/, Map<String/*path*/, RouteStat>>> routeStatMap = new ConcurrentHashMap<>();
 
     @Override
     public Mono<Void> doFilter(ServerWebExchange exchange, Map<String, Object> config, String fixedConfig) {
 
         if (statPluginFilterProperties.isStatOpen()) {
-            long tid = Thread.currentThread().getId();
-            Map<Long, Map<String, AccessStat>> timeWinAccessStatMap = threadTimeWinAccessStatMap.get(tid);
-            if (timeWinAccessStatMap == null) {
-                timeWinAccessStatMap = new LinkedHashMap<Long, Map<String, AccessStat>>(4, 1) {
-                                           @Override
-                                           protected boolean removeEldestEntry(Map.Entry eldest) {
-                                                return size() > 2;
-                                            }
-                                       };
-                threadTimeWinAccessStatMap.put(tid, timeWinAccessStatMap);
-            }
-
-            long currentTimeWinStart = DateTimeUtils.get10sTimeWinStart(1);
-            Map<String, AccessStat> accessStatMap = timeWinAccessStatMap.computeIfAbsent(currentTimeWinStart, k -> new HashMap<>(128));
-
             String service = WebUtils.getClientService(exchange);
             String method  = exchange.getRequest().getMethodValue();
             String path    = WebUtils.getClientReqPath(exchange);
-            String key     = ThreadContext.getStringBuilder().append(service).append(method).append(path).toString();
-            AccessStat accessStat = accessStatMap.get(key);
-            if (accessStat == null) {
-                accessStat = new AccessStat();
-                accessStat.service   = service;
-                accessStat.apiMethod = method;
-                accessStat.apiPath   = path;
-                accessStatMap.put(key, accessStat);
-            }
-            accessStat.reqTime = System.currentTimeMillis();
-            accessStat.reqs++;
+            RouteStat routeStat = getRouteStat(service, method, path);
+            long now = System.currentTimeMillis();
+            routeStat.incr(now);
             if (LOGGER.isDebugEnabled()) {
                 org.apache.logging.log4j.ThreadContext.put(Consts.TRACE_ID, WebUtils.getTraceId(exchange));
-                LOGGER.debug("update access stat: {}, which request at {}", accessStat, DateTimeUtils.convert(accessStat.reqTime, Consts.DP.DP19));
+                LOGGER.debug("update access stat: {} {} {}, which request at {}", service, method, path, DateTimeUtils.convert(now, Consts.DP.DP19));
             }
         }
 
         return WebUtils.transmitSuccessFilterResultAndEmptyMono(exchange, STAT_PLUGIN_FILTER, null);
     }
 
-    public Map<String, AccessStat> getAccessStat(long timeWinStart) {
-        Map<String, AccessStat> result = ThreadContext.getHashMap();
-        threadTimeWinAccessStatMap.forEach(
-                (t, timeWinAccessStatMap) -> {
-                    Map<String, AccessStat> accessStatMap = timeWinAccessStatMap.get(timeWinStart);
-                    if (accessStatMap != null) {
-                        accessStatMap.forEach(
-                                (smp, accessStat) -> {
-                                    AccessStat as = result.get(smp);
-                                    if (as == null) {
-                                        accessStat.start = timeWinStart;
-                                        result.put(smp, accessStat);
-                                    } else {
-                                        as.reqs = as.reqs + accessStat.reqs;
-                                        if (accessStat.reqTime > as.reqTime) {
-                                            as.reqTime = accessStat.reqTime;
-                                        }
-                                    }
-                                }
-                        );
+    RouteStat getRouteStat(String service, String method, String path) {
+        Map<String, Map<String, RouteStat>> methodMap = routeStatMap.get(service);
+        if (methodMap == null) {
+            methodMap = routeStatMap.computeIfAbsent(service, k -> new ConcurrentHashMap<>());
+        }
+        Map<String, RouteStat> pathMap = methodMap.get(method);
+        if (pathMap == null) {
+            pathMap = methodMap.computeIfAbsent(method, k -> new ConcurrentHashMap<>());
+        }
+        RouteStat routeStat = pathMap.get(path);
+        if (routeStat == null) {
+            routeStat = pathMap.computeIfAbsent(path, k -> new RouteStat(service, method, k));
+        }
+        return routeStat;
+    }
+
+    /**
+     * @param timeWinStart the start of a finished window
+     * @return the stat of the routes with requests in the window
+     */
+    public List<AccessStat> getAccessStat(long timeWinStart) {
+        long epoch = timeWinStart / WINDOW;
+        List<AccessStat> result = new ArrayList<>();
+        for (Map<String, Map<String, RouteStat>> methodMap : routeStatMap.values()) {
+            for (Map<String, RouteStat> pathMap : methodMap.values()) {
+                Iterator<RouteStat> it = pathMap.values().iterator();
+                while (it.hasNext()) {
+                    RouteStat routeStat = it.next();
+                    Window w = routeStat.windows.get((int) (epoch & 1));
+                    if (w.epoch == epoch) {
+                        AccessStat accessStat = new AccessStat();
+                        accessStat.service   = routeStat.service;
+                        accessStat.apiMethod = routeStat.method;
+                        accessStat.apiPath   = routeStat.path;
+                        accessStat.start     = timeWinStart;
+                        accessStat.reqs      = (int) w.reqs.sum();
+                        accessStat.reqTime   = w.reqTime;
+                        result.add(accessStat);
+                    } else if (routeStat.idle(epoch)) {
+                        it.remove();
                     }
                 }
-        );
+            }
+        }
         return result;
     }
 }
@@ -43,4 +43,10 @@ public class StatPluginFilterProperties {
 
     @Value("${stat.topic:}")
     private String fizzAccessStatTopic;
+
+    /**
+     * publish the stats of a window to channel as one json array message, instead of one message per stat
+     */
+    @Value("${stat.batch:false}")
+    private boolean fizzAccessStatBatch = false;
 }
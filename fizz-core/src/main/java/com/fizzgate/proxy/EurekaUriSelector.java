@@ -17,6 +17,9 @@
 
 package com.fizzgate.proxy;
 
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
+import com.fizzgate.util.Consts;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.discovery.EurekaClient;
 import com.netflix.discovery.shared.Applications;
@@ -75,6 +78,10 @@ public class EurekaUriSelector extends AbstractDiscoveryClientUriSelector {
         if (insts == null || insts.isEmpty()) {
             throw new RuntimeException("eureka no " + service, null, false, false) {};
         }
+        LoadBalancer balancer = LoadBalancers.get(service);
+        if (balancer != null) {
+            return balancer.choose(service, insts, inst -> inst.getIPAddr() + Consts.S.COLON + inst.getPort());
+        }
         Applications apps = eurekaClient.getApplications();
         int index = (int) (apps.getNextIndex(service.toUpperCase(), false).incrementAndGet() % insts.size());
         return insts.get(index);
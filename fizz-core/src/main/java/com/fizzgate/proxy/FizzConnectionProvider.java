@@ -0,0 +1,308 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy;
+
+import com.fizzgate.config.ProxyWebClientConfig.Pool;
+import com.fizzgate.proxy.balancer.UpstreamStats;
+import com.fizzgate.util.Consts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.bootstrap.Bootstrap;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Acquires connection from the pool of the remote host, or the pool of the backend service which the host belongs to,
+ * or the default pool, and keeps the metrics of every pool.
+ * <p/>
+ * A host belongs to a service after {@link #bind(String, String)}, which FizzWebClient does when it sends request to a service instance,
+ * until it is not requested for {@link UpstreamStats#IDLE_EXPIRE_MINUTES}, mostly a deregistered instance.
+ *
+ * @author hongqiaowei
+ */
+
+public class FizzConnectionProvider implements ConnectionProvider {
+
+    public static class PoolStats {
+
+        public String  pool;
+        public String  remoteAddress;
+        public int     maxConnections;
+        public int     active;
+        public int     idle;
+        public int     pending;
+        public long    acquires;
+        public double  acquireAvgMillis;
+        public double  acquireMaxMillis;
+    }
+
+    private static class AcquireStats {
+
+        final LongAdder  count = new LongAdder();
+        final LongAdder  nanos = new LongAdder();
+        final AtomicLong max   = new AtomicLong(0);
+
+        void record(long n) {
+            count.increment();
+            nanos.add(n);
+            long m;
+            while (n > (m = max.get()) && !max.compareAndSet(m, n)) {
+            }
+        }
+    }
+
+    private static class PoolMetrics {
+
+        final String                pool;
+        final String                remoteAddress;
+        final int                   maxConnections;
+        final ConnectionPoolMetrics metrics;
+
+        PoolMetrics(String pool, String remoteAddress, int maxConnections, ConnectionPoolMetrics metrics) {
+            this.pool           = pool;
+            this.remoteAddress  = remoteAddress;
+            this.maxConnections = maxConnections;
+            this.metrics        = metrics;
+        }
+    }
+
+    private final ConnectionProvider              defaultProvider;
+
+    private final Map<String, ConnectionProvider> serviceProviders    = new HashMap<>();
+
+    private final Map<String, ConnectionProvider> hostProviders       = new HashMap<>();
+
+    private final Cache<String, String>           addressServiceMap   = Caffeine.newBuilder()
+                                                                                .expireAfterAccess(UpstreamStats.IDLE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+                                                                                .executor(Runnable::run)
+                                                                                .build();
+
+    private final Map<String, PoolMetrics>        poolMetricsMap      = new ConcurrentHashMap<>();
+
+    private final Map<String, AcquireStats>       acquireStatsMap     = new ConcurrentHashMap<>();
+
+    /**
+     * @param pool         the default pool, with all properties set
+     * @param servicePools service to its pool, which inherits the unset properties from the default one
+     * @param hostPools    host:port to its pool, which inherits the unset properties from the default one, the IPv6 host in brackets
+     */
+    public FizzConnectionProvider(String name, Pool pool, Map<String, Pool> servicePools, Map<String, Pool> hostPools) {
+        defaultProvider = create(name, pool);
+        servicePools.forEach(
+                (service, p) -> {
+                    serviceProviders.put(service, create(name + Consts.S.DASH + service, p.inherit(pool)));
+                }
+        );
+        hostPools.forEach(
+                (host, p) -> {
+                    hostProviders.put(address(host), create(name + Consts.S.DASH + host, p.inherit(pool)));
+                }
+        );
+    }
+
+    private ConnectionProvider create(String name, Pool p) {
+        int maxConnections = p.getMaxConnections();
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(name)
+                                                               .maxConnections(maxConnections)
+                                                               .pendingAcquireMaxCount(p.getPendingAcquireMaxCount())
+                                                               .pendingAcquireTimeout(Duration.ofMillis(p.getPendingAcquireTimeout()))
+                                                               .metrics(true, () -> (poolName, id, remoteAddress, metrics) -> {
+                                                                   String address = address(remoteAddress);
+                                                                   poolMetricsMap.put(poolName + Consts.S.SPACE + address, new PoolMetrics(poolName, address, maxConnections, metrics));
+                                                               });
+        if (p.getMaxIdleTime() > 0) {
+            builder.maxIdleTime(Duration.ofMillis(p.getMaxIdleTime()));
+        }
+        if (p.getMaxLifeTime() > 0) {
+            builder.maxLifeTime(Duration.ofMillis(p.getMaxLifeTime()));
+        }
+        if (p.getEvictionInterval() > 0) {
+            builder.evictInBackground(Duration.ofMillis(p.getEvictionInterval()));
+        }
+        if (p.getLifo()) {
+            builder.lifo();
+        }
+        return builder.build();
+    }
+
+    public boolean hasServicePools() {
+        return !serviceProviders.isEmpty();
+    }
+
+    /**
+     * Lets the connections to the instance of uri be acquired from the pool of service, if the service has pool.
+     */
+    public void bind(String service, String uri) {
+        if (serviceProviders.containsKey(service)) {
+            String address = address(uri);
+            if (!service.equals(addressServiceMap.getIfPresent(address))) {
+                addressServiceMap.put(address, service);
+            }
+        }
+    }
+
+    @Override
+    public Mono<? extends Connection> acquire(Bootstrap bootstrap) {
+        SocketAddress remoteAddress = bootstrap.config().remoteAddress();
+        if (remoteAddress instanceof Supplier) {
+            // the lazy address of http client, which the underlying provider would convert too
+            remoteAddress = (SocketAddress) ((Supplier<?>) remoteAddress).get();
+            bootstrap.remoteAddress(remoteAddress);
+        }
+        String address = address(remoteAddress);
+        ConnectionProvider provider = null;
+        if (address != null) {
+            provider = hostProviders.get(address);
+            if (provider == null && !serviceProviders.isEmpty()) {
+                String service = addressServiceMap.getIfPresent(address);
+                if (service != null) {
+                    provider = serviceProviders.get(service);
+                }
+            }
+        }
+        if (provider == null) {
+            provider = defaultProvider;
+        }
+        ConnectionProvider p = provider;
+        return Mono.defer(
+                () -> {
+                    long start = System.nanoTime();
+                    return p.acquire(bootstrap).doOnSuccess(c -> getAcquireStats(address).record(System.nanoTime() - start));
+                }
+        );
+    }
+
+    private AcquireStats getAcquireStats(String address) {
+        String a = address == null ? Consts.S.EMPTY : address;
+        AcquireStats stats = acquireStatsMap.get(a);
+        if (stats == null) {
+            stats = acquireStatsMap.computeIfAbsent(a, k -> new AcquireStats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return the live metrics of every pool to a remote host
+     */
+    public List<PoolStats> getPoolStats() {
+        List<PoolStats> result = new ArrayList<>(poolMetricsMap.size());
+        poolMetricsMap.values().forEach(
+                pm -> {
+                    PoolStats ps = new PoolStats();
+                    ps.pool           = pm.pool;
+                    ps.remoteAddress  = pm.remoteAddress;
+                    ps.maxConnections = pm.maxConnections;
+                    ps.active         = pm.metrics.acquiredSize();
+                    ps.idle           = pm.metrics.idleSize();
+                    ps.pending        = pm.metrics.pendingAcquireSize();
+                    AcquireStats as = acquireStatsMap.get(pm.remoteAddress == null ? Consts.S.EMPTY : pm.remoteAddress);
+                    if (as != null) {
+                        long n = as.count.sum();
+                        ps.acquires         = n;
+                        ps.acquireAvgMillis = n == 0 ? 0 : as.nanos.sum() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+                        ps.acquireMaxMillis = as.max.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                    }
+                    result.add(ps);
+                }
+        );
+        return result;
+    }
+
+    @Override
+    public int maxConnections() {
+        return defaultProvider.maxConnections();
+    }
+
+    @Override
+    public void disposeWhen(SocketAddress address) {
+        defaultProvider.disposeWhen(address);
+        serviceProviders.values().forEach(p -> p.disposeWhen(address));
+        hostProviders.values().forEach(p -> p.disposeWhen(address));
+    }
+
+    @Override
+    public void dispose() {
+        defaultProvider.dispose();
+        serviceProviders.values().forEach(ConnectionProvider::dispose);
+        hostProviders.values().forEach(ConnectionProvider::dispose);
+    }
+
+    @Override
+    public Mono<Void> disposeLater() {
+        List<Mono<Void>> monos = new ArrayList<>();
+        monos.add(defaultProvider.disposeLater());
+        serviceProviders.values().forEach(p -> monos.add(p.disposeLater()));
+        hostProviders.values().forEach(p -> monos.add(p.disposeLater()));
+        return Mono.when(monos);
+    }
+
+    static String address(SocketAddress socketAddress) {
+        if (socketAddress instanceof InetSocketAddress) {
+            InetSocketAddress isa = (InetSocketAddress) socketAddress;
+            return address(isa.getHostString(), isa.getPort());
+        }
+        return socketAddress == null ? null : socketAddress.toString();
+    }
+
+    /**
+     * @return host:port of the uri, the port is 80 or 443 by the scheme if absent
+     */
+    public static String address(String uri) {
+        String address = UpstreamStats.address(uri);
+        int colon = address.lastIndexOf(Consts.S.COLON);
+        if (colon > address.lastIndexOf(']')) {
+            return address(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        return address(address, uri.startsWith("https") ? 443 : 80);
+    }
+
+    /**
+     * The address of uri and the one of socket go through here, so both map to the same pool.
+     *
+     * @return host:port, an IPv6 host is in full form and in brackets, like [0:0:0:0:0:0:0:1]:80
+     */
+    private static String address(String host, int port) {
+        if (host.indexOf(':') >= 0) {
+            String h = host.charAt(0) == '[' ? host.substring(1, host.length() - 1) : host;
+            try {
+                // a literal, no lookup
+                h = InetAddress.getByName(h).getHostAddress();
+            } catch (UnknownHostException e) {
+            }
+            return '[' + h + "]:" + port;
+        }
+        return host + Consts.S.COLON + port;
+    }
+}
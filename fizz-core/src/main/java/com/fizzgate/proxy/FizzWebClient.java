@@ -35,6 +35,10 @@ import org.springframework.web.reactive.function.client.WebClient;
 import com.fizzgate.config.ProxyWebClientConfig;
 import com.fizzgate.config.SystemConfig;
 import com.fizzgate.exception.ExternalService4xxException;
+import com.fizzgate.log.AccessLogContext;
+import com.fizzgate.proxy.balancer.InstanceStats;
+import com.fizzgate.proxy.balancer.OutlierDetector;
+import com.fizzgate.proxy.balancer.UpstreamStats;
 import com.fizzgate.service_registry.RegistryCenterService;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.NetworkUtils;
@@ -43,13 +47,18 @@ import com.fizzgate.util.WebUtils;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import static com.google.common.net.HttpHeaders.X_FORWARDED_FOR;
 
@@ -66,6 +75,11 @@ public class FizzWebClient {
 
     private static final String host         = "Host";
 
+    /**
+     * the key of the reactor context entry which tells to send request by HTTP/2, see {@link #http2(boolean)}
+     */
+    public  static final String HTTP2        = "fizzHttp2";
+
     @Resource
     private SystemConfig systemConfig;
 
@@ -78,6 +92,24 @@ public class FizzWebClient {
     @Resource(name = ProxyWebClientConfig.proxyWebClient)
     private WebClient webClient;
 
+    @Resource(name = ProxyWebClientConfig.proxyConnectionProvider)
+    private FizzConnectionProvider connectionProvider;
+
+    @Resource(name = ProxyWebClientConfig.proxyHttp2WebClient)
+    private WebClient http2WebClient;
+
+    @Resource
+    private ProxyWebClientConfig proxyWebClientConfig;
+
+    private RetryBudget retryBudget;
+
+    @PostConstruct
+    public void init() {
+        if (systemConfig.getFizzWebClientRetryBudgetPercent() > 0) {
+            retryBudget = new RetryBudget(systemConfig.getFizzWebClientRetryBudgetPercent(), systemConfig.getFizzWebClientRetryBudgetMinRetries());
+        }
+    }
+
     public Mono<ClientResponse> send(String traceId,
                                      HttpMethod method, String uriOrSvc, @Nullable HttpHeaders headers, @Nullable Object body) {
 
@@ -100,9 +132,20 @@ public class FizzWebClient {
                                   HttpMethod method, String uriOrSvc, @Nullable HttpHeaders headers, @Nullable Object body,
     		                           long timeout, long numRetries, long retryInterval, String... uriQryParamVals) {
 
+        return send(traceId, method, uriOrSvc, headers, body, timeout, numRetries, retryInterval, 0, uriQryParamVals);
+    }
+
+    /**
+     * @param retryBodyMaxSize the max size of streaming body retained for retrying, 0 means the system default,
+     *                         request with larger body is sent without retry
+     */
+    public Mono<ClientResponse> send(String traceId,
+                                     HttpMethod method, String uriOrSvc, @Nullable HttpHeaders headers, @Nullable Object body,
+                                     long timeout, long numRetries, long retryInterval, long retryBodyMaxSize, String... uriQryParamVals) {
+
         String s = extractServiceOrAddress(uriOrSvc);
-       
-        Mono<ClientResponse> cr = Mono.just(Consts.S.EMPTY).flatMap(dummy -> {
+
+        return send(traceId, s, body, numRetries, retryInterval, retryBodyMaxSize, b -> Mono.just(Consts.S.EMPTY).flatMap(dummy -> {
             if (isService(s)) {
                 String path = uriOrSvc.substring(uriOrSvc.indexOf(Consts.S.FORWARD_SLASH, 10));
                 String uri = null;
@@ -112,33 +155,17 @@ public class FizzWebClient {
                     String svc = s.substring(commaPos + 1);
                     String instance = registryCenterService.getInstance(rc, svc);
                     uri = ThreadContext.getStringBuilder().append(Consts.S.HTTP_PROTOCOL_PREFIX).append(instance).append(path).toString();
+                    bindConnectionPool(svc, uri);
+                    return send2uri(traceId, method, uri, headers, b, timeout, uriQryParamVals).subscriberContext(http2(isHttp2Service(svc)));
                 } else {
                     uri = discoveryClientUriSelector.getNextUri(s, path);
+                    bindConnectionPool(s, uri);
+                    return send2uri(traceId, method, uri, headers, b, timeout, uriQryParamVals).subscriberContext(http2(isHttp2Service(s)));
                 }
-                return send2uri(traceId, method, uri, headers, body, timeout, uriQryParamVals);
             } else {
-                return send2uri(traceId, method, uriOrSvc, headers, body, timeout, uriQryParamVals);
+                return send2uri(traceId, method, uriOrSvc, headers, b, timeout, uriQryParamVals);
             }
-        });
-       
-        if (numRetries > 0) {
-			cr = cr.flatMap(resp->{
-				// Do not retry on 4xx client error
-				if (resp.statusCode().is4xxClientError()) {
-					return Mono.error(new ExternalService4xxException());
-				}
-				return Mono.just(resp);
-			}).retryWhen(
-                Retry.fixedDelay(numRetries, Duration.ofMillis(retryInterval > 0 ? retryInterval : 0))
-                     .filter(throwable -> !(throwable instanceof ExternalService4xxException))
-                     .onRetryExhaustedThrow(
-                         (retryBackoffSpec, retrySignal) -> {
-                             throw new FizzRuntimeException("External service failed to process after max retries");
-                         }
-                     )
-            );
-        }
-        return cr;
+        }));
     }
 
     public Mono<ClientResponse> send2service(@Nullable String traceId,
@@ -165,37 +192,108 @@ public class FizzWebClient {
                                                    HttpMethod method,  String service,  String relativeUri,  @Nullable HttpHeaders headers,  @Nullable Object body,
                                                          long timeout, long numRetries, long retryInterval,  String... relativeUriQryParamVals) {
 
-    	Mono<ClientResponse> cr = Mono.just(Consts.S.EMPTY).flatMap(dummy -> {
+        return send2service(traceId, method, service, relativeUri, headers, body, timeout, numRetries, retryInterval, 0, relativeUriQryParamVals);
+    }
+
+    /**
+     * @param retryBodyMaxSize the max size of streaming body retained for retrying, 0 means the system default,
+     *                         request with larger body is sent without retry
+     */
+    public Mono<ClientResponse> send2service(@Nullable String traceId,
+                                             HttpMethod method,  String service,  String relativeUri,  @Nullable HttpHeaders headers,  @Nullable Object body,
+                                             long timeout, long numRetries, long retryInterval, long retryBodyMaxSize, String... relativeUriQryParamVals) {
+
+        return send(traceId, service, body, numRetries, retryInterval, retryBodyMaxSize, b -> Mono.just(Consts.S.EMPTY).flatMap(dummy -> {
             String uri = null;
+            String svc = service;
             int commaPos = service.indexOf(Consts.S.COMMA);
             if (commaPos > -1) {
                 String rc = service.substring(0, commaPos);
-                String s  = service.substring(commaPos + 1);
-                String instance = registryCenterService.getInstance(rc, s);
+                svc = service.substring(commaPos + 1);
+                String instance = registryCenterService.getInstance(rc, svc);
                 uri = ThreadContext.getStringBuilder().append(Consts.S.HTTP_PROTOCOL_PREFIX).append(instance).append(relativeUri).toString();
             } else {
                 uri = discoveryClientUriSelector.getNextUri(service, relativeUri);
             }
-            return send2uri(traceId, method, uri, headers, body, timeout, relativeUriQryParamVals);
-    	});
-        if (numRetries > 0) {
-            cr = cr.flatMap(resp -> {
-                // Do not retry on 4xx client error
-                if (resp.statusCode().is4xxClientError()) {
-                    return Mono.error(new ExternalService4xxException());
-                }
-                return Mono.just(resp);
-            }).retryWhen(
-                Retry.fixedDelay(numRetries, Duration.ofMillis(retryInterval > 0 ? retryInterval : 0))
-                     .filter(throwable -> !(throwable instanceof ExternalService4xxException))
-                     .onRetryExhaustedThrow(
-                         (retryBackoffSpec, retrySignal) -> {
-                             throw new FizzRuntimeException("External service failed to process after max retries");
-                         }
-                     )
-            );
+            bindConnectionPool(svc, uri);
+            return send2uri(traceId, method, uri, headers, b, timeout, relativeUriQryParamVals).subscriberContext(http2(isHttp2Service(svc)));
+        }));
+    }
+
+    /**
+     * Streaming body is retained in a {@link ReplayableBody} for retrying, if it is larger than retryBodyMaxSize,
+     * the request is sent without retry.
+     */
+    private Mono<ClientResponse> send(@Nullable String traceId, String service, @Nullable Object body,
+                                      long numRetries, long retryInterval, long retryBodyMaxSize, Function<Object, Mono<ClientResponse>> sender) {
+
+        if (retryBudget != null) {
+            retryBudget.deposit(service);
         }
-        return cr;
+        if (numRetries <= 0) {
+            return sender.apply(body);
+        }
+        if (body instanceof Flux) {
+            long maxSize = retryBodyMaxSize > 0 ? retryBodyMaxSize : systemConfig.getFizzWebClientRetryBodyMaxSize();
+            return ReplayableBody.from((Flux<DataBuffer>) body, maxSize)
+                                 .flatMap(
+                                         rb -> {
+                                             if (rb.isReplayable()) {
+                                                 return retry(service, sender.apply(rb.getBody()), numRetries, retryInterval).doFinally(st -> rb.release());
+                                             }
+                                             org.apache.logging.log4j.ThreadContext.put(Consts.TRACE_ID, traceId);
+                                             log.warn("request body to {} is larger than {} bytes, disable retry", service, maxSize);
+                                             return sender.apply(rb.getBody()).doFinally(st -> rb.release());
+                                         }
+                                 );
+        }
+        return retry(service, sender.apply(body), numRetries, retryInterval);
+    }
+
+    private Mono<ClientResponse> retry(String service, Mono<ClientResponse> cr, long numRetries, long retryInterval) {
+        RetryBackoffSpec retrySpec = retrySpec(numRetries, retryInterval, systemConfig.isFizzWebClientRetryExponentialBackoffEnable(),
+                                               systemConfig.getFizzWebClientRetryExponentialBackoffMaxInterval(), systemConfig.getFizzWebClientRetryJitter());
+        return cr.flatMap(resp -> {
+                    // Do not retry on 4xx client error
+                    if (resp.statusCode().is4xxClientError()) {
+                        return Mono.error(new ExternalService4xxException());
+                    }
+                    return Mono.just(resp);
+                })
+                .retryWhen(
+                        retrySpec.filter(throwable -> !(throwable instanceof ExternalService4xxException) && (retryBudget == null || retryBudget.tryWithdraw(service)))
+                                 .onRetryExhaustedThrow(
+                                         (retryBackoffSpec, retrySignal) -> {
+                                             throw new FizzRuntimeException("External service failed to process after max retries");
+                                         }
+                                 )
+                );
+    }
+
+    /**
+     * @param jitter for exponential backoff, see {@link RetryBackoffSpec#jitter(double)}; for fixed delay, each delay
+     *               is picked randomly from retryInterval * (1 - jitter) to retryInterval * (1 + jitter), because
+     *               RetryBackoffSpec only jitters between its min and max backoff, which are the same for fixed delay
+     */
+    static RetryBackoffSpec retrySpec(long numRetries, long retryInterval, boolean exponentialBackoff, long maxInterval, double jitter) {
+        Duration interval = Duration.ofMillis(retryInterval > 0 ? retryInterval : 0);
+        if (exponentialBackoff) {
+            RetryBackoffSpec retrySpec = Retry.backoff(numRetries, interval).maxBackoff(Duration.ofMillis(Math.max(retryInterval, maxInterval)));
+            if (jitter > 0) {
+                retrySpec = retrySpec.jitter(jitter);
+            }
+            return retrySpec;
+        }
+        if (jitter > 0 && retryInterval > 0) {
+            return Retry.fixedDelay(numRetries, Duration.ZERO)
+                        .doBeforeRetryAsync(signal -> Mono.delay(Duration.ofMillis(jitteredDelay(retryInterval, jitter))).then());
+        }
+        return Retry.fixedDelay(numRetries, interval);
+    }
+
+    static long jitteredDelay(long retryInterval, double jitter) {
+        long offset = (long) (retryInterval * Math.min(jitter, 1));
+        return retryInterval - offset + ThreadLocalRandom.current().nextLong(offset * 2 + 1);
     }
 
     public Mono<ClientResponse> send2uri(@Nullable String traceId, HttpMethod method, String uri, @Nullable HttpHeaders headers, @Nullable Object body) {
@@ -223,7 +321,41 @@ public class FizzWebClient {
             log.debug(b.toString());
         }
 
-        WebClient.RequestBodyUriSpec requestBodyUriSpec = webClient.method(method);
+        Mono<ClientResponse> cr;
+        ProxyWebClientConfig.Http2 http2 = proxyWebClientConfig.getHttp2();
+        if (!http2.isEnable()) {
+            cr = exchange(webClient, method, uri, headers, body, uriQryParamVals);
+        } else if (!http2.getHosts().isEmpty() && http2.getHosts().contains(FizzConnectionProvider.address(uri))) {
+            cr = exchange(http2WebClient, method, uri, headers, body, uriQryParamVals);
+        } else {
+            cr = Mono.subscriberContext().flatMap(
+                    ctx -> {
+                        WebClient client = ctx.getOrDefault(HTTP2, false) ? http2WebClient : webClient;
+                        return exchange(client, method, uri, headers, body, uriQryParamVals);
+                    }
+            );
+        }
+        if (timeout == 0) {
+            long systemConfigRouteTimeout = systemConfig.getRouteTimeout();
+            if (systemConfigRouteTimeout != 0) {
+                timeout = systemConfigRouteTimeout;
+            }
+        }
+        if (timeout > 0) {
+            cr = cr.timeout(Duration.ofMillis(timeout));
+        }
+        if (AccessLogContext.isEnabled()) {
+            cr = AccessLogContext.upstream(uri, cr);
+        }
+        if (UpstreamStats.isEnabled()) {
+            cr = track(uri, cr);
+        }
+
+        return cr;
+    }
+
+    private Mono<ClientResponse> exchange(WebClient client, HttpMethod method, String uri, @Nullable HttpHeaders headers, @Nullable Object body, String... uriQryParamVals) {
+        WebClient.RequestBodyUriSpec requestBodyUriSpec = client.method(method);
         WebClient.RequestBodySpec requestBodySpec = null;
         if (uriQryParamVals.length == 0) {
             requestBodySpec = requestBodyUriSpec.uri(uri);
@@ -261,18 +393,46 @@ public class FizzWebClient {
 			}
         }
 
-        Mono<ClientResponse> cr = req.exchange();
-        if (timeout == 0) {
-            long systemConfigRouteTimeout = systemConfig.getRouteTimeout();
-            if (systemConfigRouteTimeout != 0) {
-                timeout = systemConfigRouteTimeout;
-            }
-        }
-        if (timeout > 0) {
-            cr = cr.timeout(Duration.ofMillis(timeout));
+        return req.exchange();
+    }
+
+    /**
+     * Feeds the outstanding requests and latency of the upstream instance to the load balancers,
+     * and the 5xx responses and errors to the outlier detector.
+     */
+    private Mono<ClientResponse> track(String uri, Mono<ClientResponse> cr) {
+        InstanceStats stats = UpstreamStats.get(extractServiceOrAddress(uri));
+        return Mono.defer(
+                () -> {
+                    stats.start();
+                    long start = System.nanoTime();
+                    return cr.doOnSuccess(r -> OutlierDetector.record(stats, r != null && r.rawStatusCode() >= 500))
+                             .doOnError(t -> OutlierDetector.record(stats, true))
+                             .doFinally(s -> stats.end(System.nanoTime() - start));
+                }
+        );
+    }
+
+    /**
+     * @return the function which marks the reactor context to send request by HTTP/2 if http2 is true,
+     *         works when proxy-webclient.http2.enable is true
+     */
+    public static Function<Context, Context> http2(boolean http2) {
+        if (http2) {
+            return ctx -> ctx.put(HTTP2, true);
         }
+        return Function.identity();
+    }
 
-        return cr;
+    private boolean isHttp2Service(String service) {
+        ProxyWebClientConfig.Http2 http2 = proxyWebClientConfig.getHttp2();
+        return http2.isEnable() && http2.getServices().contains(service);
+    }
+
+    private void bindConnectionPool(String service, String uri) {
+        if (connectionProvider != null && connectionProvider.hasServicePools()) {
+            connectionProvider.bind(service, uri);
+        }
     }
 
     private void setHostHeader(String uri, HttpHeaders headers) {
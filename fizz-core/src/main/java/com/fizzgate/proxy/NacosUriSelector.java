@@ -22,6 +22,8 @@ import com.alibaba.cloud.nacos.NacosServiceManager;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingService;
 import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -83,8 +85,23 @@ public class NacosUriSelector extends AbstractDiscoveryClientUriSelector {
 
     private Instance selectOneHealthyInstance(String service) {
         Instance instance = null;
+        LoadBalancer balancer = LoadBalancers.get(service);
         try {
-            if (useGroupName && userClusterName) {
+            if (balancer != null) {
+                List<Instance> instances;
+                if (useGroupName && userClusterName) {
+                    instances = naming.selectInstances(service, groupName, clusterNameList, true);
+                } else if (useGroupName) {
+                    instances = naming.selectInstances(service, groupName, true);
+                } else if (userClusterName) {
+                    instances = naming.selectInstances(service, clusterNameList, true);
+                } else {
+                    instances = naming.selectInstances(service, true);
+                }
+                if (instances != null && !instances.isEmpty()) {
+                    instance = balancer.choose(service, instances, Instance::toInetAddr);
+                }
+            } else if (useGroupName && userClusterName) {
                 instance = naming.selectOneHealthyInstance(service, groupName, clusterNameList);
             } else if (useGroupName) {
                 instance = naming.selectOneHealthyInstance(service, groupName);
@@ -0,0 +1,227 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request body which can be sent more than once, for retrying.
+ * <p/>
+ * The body is copied into a pooled direct buffer as it arrives, if it ends within maxSize bytes,
+ * each {@link #getBody()} subscription replays a duplicate of the buffer; otherwise the buffered
+ * bytes are followed by the rest of the original body, which can be sent only once,
+ * and {@link #isReplayable()} is false, the caller should not retry then.
+ * <p/>
+ * {@link #release()} must be called after the last sending.
+ *
+ * @author hongqiaowei
+ */
+
+final class ReplayableBody extends BaseSubscriber<DataBuffer> {
+
+    private static final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final long                      maxSize;
+
+    private       MonoSink<ReplayableBody>  sink;
+
+    private       ByteBuf                   buffer         = Unpooled.EMPTY_BUFFER;
+
+    private       boolean                   replayable     = false;
+
+    private       boolean                   overflow       = false;
+
+    private final AtomicBoolean             sent           = new AtomicBoolean(false);
+
+    private final AtomicBoolean             released       = new AtomicBoolean(false);
+
+    private       FluxSink<DataBuffer>      remainder;
+
+    private       boolean                   done           = false;
+
+    private       Throwable                 error;
+
+    private ReplayableBody(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the body which is replayable if it is not larger than maxSize bytes
+     */
+    static Mono<ReplayableBody> from(Flux<DataBuffer> body, long maxSize) {
+        return Mono.create(
+                sink -> {
+                    ReplayableBody rb = new ReplayableBody(maxSize);
+                    rb.sink = sink;
+                    sink.onCancel(rb::cancelBuffering);
+                    body.subscribe(rb);
+                }
+        );
+    }
+
+    boolean isReplayable() {
+        return replayable;
+    }
+
+    /**
+     * @return the buffered bytes count
+     */
+    int size() {
+        return buffer.readableBytes();
+    }
+
+    Flux<DataBuffer> getBody() {
+        if (replayable) {
+            return Flux.defer(
+                    () -> {
+                        if (released.get()) {
+                            return Flux.error(new IllegalStateException("replayable body released"));
+                        }
+                        if (buffer.readableBytes() == 0) {
+                            return Flux.empty();
+                        }
+                        return Flux.just(bufferFactory.wrap(buffer.retainedDuplicate()));
+                    }
+            );
+        }
+        return Flux.defer(
+                () -> {
+                    if (!sent.compareAndSet(false, true)) {
+                        return Flux.error(new IllegalStateException("body larger than " + maxSize + " bytes can be sent only once"));
+                    }
+                    // the writer releases the buffer after writing
+                    DataBuffer prefix = bufferFactory.wrap(buffer);
+                    return Flux.concat(Flux.just(prefix), Flux.create(this::bridge));
+                }
+        );
+    }
+
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            if (replayable) {
+                buffer.release();
+            } else if (sent.compareAndSet(false, true)) {
+                buffer.release();
+                cancel();
+            }
+        }
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+        subscription.request(1);
+    }
+
+    @Override
+    protected void hookOnNext(DataBuffer dataBuffer) {
+        if (overflow) {
+            remainder.next(dataBuffer);
+            return;
+        }
+        synchronized (this) {
+            try {
+                int n = dataBuffer.readableByteCount();
+                if (n > 0 && !released.get()) {
+                    if (buffer == Unpooled.EMPTY_BUFFER) {
+                        buffer = PooledByteBufAllocator.DEFAULT.directBuffer(n);
+                    }
+                    buffer.writeBytes(dataBuffer.asByteBuffer());
+                }
+            } finally {
+                DataBufferUtils.release(dataBuffer);
+            }
+        }
+        if (buffer.readableBytes() > maxSize) {
+            overflow = true;
+            sink.success(this);
+        } else {
+            request(1);
+        }
+    }
+
+    @Override
+    protected void hookOnComplete() {
+        if (overflow) {
+            synchronized (this) {
+                done = true;
+                if (remainder != null) {
+                    remainder.complete();
+                }
+            }
+        } else {
+            replayable = true;
+            sink.success(this);
+        }
+    }
+
+    @Override
+    protected void hookOnError(Throwable throwable) {
+        if (overflow) {
+            synchronized (this) {
+                done = true;
+                error = throwable;
+                if (remainder != null) {
+                    remainder.error(throwable);
+                }
+            }
+        } else {
+            if (released.compareAndSet(false, true)) {
+                buffer.release();
+            }
+            sink.error(throwable);
+        }
+    }
+
+    private void bridge(FluxSink<DataBuffer> s) {
+        synchronized (this) {
+            if (done) {
+                if (error == null) {
+                    s.complete();
+                } else {
+                    s.error(error);
+                }
+                return;
+            }
+            remainder = s;
+        }
+        s.onRequest(this::request);
+        s.onCancel(this::cancel);
+    }
+
+    private synchronized void cancelBuffering() {
+        if (!overflow && !replayable) {
+            cancel();
+            if (released.compareAndSet(false, true)) {
+                buffer.release();
+            }
+        }
+    }
+}
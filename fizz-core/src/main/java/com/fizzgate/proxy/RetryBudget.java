@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits retries to a percentage of the requests to each backend service,
+ * so retries can't multiply the load of an overloaded service.
+ * <p/>
+ * Every request deposits percent credits to the service's balance, a retry withdraws 100 credits,
+ * the balance is capped at minRetries * 100, which is also the initial balance, to allow some retries
+ * when the service has few requests.
+ *
+ * @author hongqiaowei
+ */
+
+public class RetryBudget {
+
+    private static final long                    RETRY_COST = 100;
+
+    private final        int                     percent;
+
+    private final        long                    maxBalance;
+
+    private final        Map<String, AtomicLong> balances   = new ConcurrentHashMap<>();
+
+    /**
+     * @param percent    retries in percentage of requests, 0 means no limit
+     * @param minRetries retries allowed regardless of the percentage
+     */
+    public RetryBudget(int percent, int minRetries) {
+        this.percent    = percent;
+        this.maxBalance = Math.max(minRetries, 1) * RETRY_COST;
+    }
+
+    public boolean isEnabled() {
+        return percent > 0;
+    }
+
+    public void deposit(String service) {
+        if (percent > 0) {
+            AtomicLong balance = getBalance(service);
+            long b;
+            do {
+                b = balance.get();
+                if (b >= maxBalance) {
+                    return;
+                }
+            } while (!balance.compareAndSet(b, Math.min(b + percent, maxBalance)));
+        }
+    }
+
+    public boolean tryWithdraw(String service) {
+        if (percent <= 0) {
+            return true;
+        }
+        AtomicLong balance = getBalance(service);
+        long b;
+        do {
+            b = balance.get();
+            if (b < RETRY_COST) {
+                return false;
+            }
+        } while (!balance.compareAndSet(b, b - RETRY_COST));
+        return true;
+    }
+
+    private AtomicLong getBalance(String service) {
+        AtomicLong balance = balances.get(service);
+        if (balance == null) {
+            balance = balances.computeIfAbsent(service, s -> new AtomicLong(maxBalance));
+        }
+        return balance;
+    }
+}
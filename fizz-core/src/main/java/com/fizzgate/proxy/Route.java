@@ -17,10 +17,12 @@
 
 package com.fizzgate.proxy;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 
 import com.fizzgate.plugin.PluginConfig;
+import com.fizzgate.proxy.dubbo.DubboParamBinding;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.JacksonUtils;
 
@@ -66,12 +68,29 @@ public class Route {
 
     public String             rpcGroup;
 
+    /**
+     * compiled from rpcParamTypes when the api config loads, see DubboInterfaceDeclaration.getParamBinding().
+     */
+    @JsonIgnore
+    public DubboParamBinding  rpcParamBinding;
+
     public long               timeout             = 0;
 
     public int                retryCount          = 0;
 
     public long               retryInterval       = 0;
 
+    /**
+     * the max size of request body retained for retrying, 0 means the system default, see
+     * fizz.web-client.retry.body-max-size, request with larger body is not retried.
+     */
+    public long               retryBodyMaxSize    = 0;
+
+    /**
+     * send request to backend with HTTP/2, h2c for http and h2 for https
+     */
+    public boolean            http2               = false;
+
     public MediaType          contentType;
 
     public String             body;
@@ -163,6 +182,16 @@ public class Route {
         return this;
     }
 
+    public Route retryBodyMaxSize(long s) {
+        retryBodyMaxSize = s;
+        return this;
+    }
+
+    public Route http2(boolean b) {
+        http2 = b;
+        return this;
+    }
+
     public Route contentType(MediaType type) {
         contentType = type;
         return this;
@@ -24,6 +24,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import com.fizzgate.config.AggregateRedisConfig;
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.JacksonUtils;
 import com.fizzgate.util.ReactorUtils;
@@ -38,6 +40,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -139,6 +142,14 @@ public class RpcInstanceServiceImpl implements RpcInstanceService {
 
     @Override
     public String getInstance(RpcTypeEnum rpcTypeEnum, String service) {
+        LoadBalancer balancer = LoadBalancers.get(service);
+        if (balancer != null) {
+            List<String> instanceList = this.getAllInstance(rpcTypeEnum, service);
+            if (CollectionUtils.isEmpty(instanceList)) {
+                return null;
+            }
+            return balancer.choose(service, instanceList, Function.identity());
+        }
         Byte loadBalanceType = serviceToLoadBalanceTypeMap.get(this.getServiceKey(rpcTypeEnum.getType(), service));
         if (LOAD_BALANCE_TYPE_RANDOM.equals(loadBalanceType)) {
             LOGGER.debug("type:{} service:{} get instance random", rpcTypeEnum, service);
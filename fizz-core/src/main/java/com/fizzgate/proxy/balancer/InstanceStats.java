@@ -0,0 +1,150 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The outstanding requests and the EWMA latency of an upstream instance.
+ * <p/>
+ * The latency average decays with time, a sample taken elapsed nanos after the last one
+ * weighs 1 - exp(-elapsed / decay), so the average reflects the recent samples, no matter how many.
+ *
+ * @author hongqiaowei
+ */
+
+public class InstanceStats {
+
+    private final String        address;
+
+    private final long          decayNanos;
+
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+
+    private       double        ewma        = 0;
+
+    private       long          lastSampleTime;
+
+    private volatile String     service;
+
+    // 0 means never ejected
+    private volatile long       ejectedUntil;
+
+    // guarded by this, see OutlierDetector
+
+    int                         consecutiveFailures;
+
+    long                        windowStart;
+
+    int                         windowRequests;
+
+    int                         windowFailures;
+
+    int                         ejections;
+
+    InstanceStats(String address, long decayNanos) {
+        this.address    = address;
+        this.decayNanos = decayNanos;
+        windowStart     = System.nanoTime();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the service the instance was last chosen for, null if unknown
+     */
+    public String getService() {
+        return service;
+    }
+
+    void setService(String service) {
+        this.service = service;
+    }
+
+    public boolean isEjected() {
+        return isEjected(System.nanoTime());
+    }
+
+    boolean isEjected(long now) {
+        long until = ejectedUntil;
+        return until != 0 && until - now > 0;
+    }
+
+    long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    void eject(long until) {
+        ejectedUntil = until == 0 ? 1 : until;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the EWMA latency in nanos, 0 if no sample yet
+     */
+    public synchronized double getEwma() {
+        return ewma;
+    }
+
+    public void start() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * @param latency nanos from the request start to the response or error
+     */
+    public void end(long latency) {
+        outstanding.decrementAndGet();
+        observe(latency, System.nanoTime());
+    }
+
+    synchronized void observe(long latency, long now) {
+        if (ewma == 0) {
+            ewma = latency;
+        } else {
+            long elapsed = Math.max(now - lastSampleTime, 0);
+            double w = Math.exp(-(double) elapsed / decayNanos);
+            ewma = ewma * w + latency * (1 - w);
+        }
+        lastSampleTime = now;
+    }
+
+    /**
+     * @param seed the EWMA latency to assume if the instance has no sample yet, e.g. the average of the service,
+     *             so a new instance is not taken as the fastest one, 0 if no instance of the service has a sample
+     * @return the cost of sending a request to the instance, the less the better,
+     *         it is the expected latency of the request queued behind the outstanding ones
+     */
+    public double getScore(double seed) {
+        double l = getEwma();
+        int o = outstanding.get();
+        if (l == 0) {
+            l = seed;
+        }
+        if (l == 0) {
+            // nothing to compare the latency with, by the outstanding requests only
+            return o;
+        }
+        return l * (o + 1);
+    }
+}
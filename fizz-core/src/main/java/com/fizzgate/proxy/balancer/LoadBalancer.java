@@ -0,0 +1,41 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Chooses an instance of a service for the next request, implementations are registered to {@link LoadBalancers}
+ * by name, spring beans of this type are registered too.
+ *
+ * @author hongqiaowei
+ */
+
+public interface LoadBalancer {
+
+    String name();
+
+    /**
+     * @param service   the service name
+     * @param instances the candidate instances, not empty
+     * @param address   gets the ip:port of an instance, which is the key of its {@link InstanceStats}
+     * @return the chosen instance
+     */
+    <T> T choose(String service, List<T> instances, Function<? super T, String> address);
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of {@link LoadBalancer}s, and the balancer of each service.
+ * <p/>
+ * A service without balancer configured, neither by service nor the default one, see LoadBalancerConfig,
+ * is balanced by its selection path's own strategy, e.g. the weighted random of nacos,
+ * unless {@link OutlierDetector} is enabled, then by round robin, because the native strategies can't skip the ejected instances.
+ *
+ * @author hongqiaowei
+ */
+
+public abstract class LoadBalancers {
+
+    private static final    Map<String, LoadBalancer>       balancerMap         = new ConcurrentHashMap<>();
+
+    private static volatile LoadBalancer                    defaultBalancer;
+
+    private static volatile Map<String, LoadBalancer>       serviceBalancerMap  = Collections.emptyMap();
+
+    private static final    Map<LoadBalancer, LoadBalancer> ejectingBalancerMap = new ConcurrentHashMap<>();
+
+    private static final    LoadBalancer                    fallbackBalancer    = new RoundRobinLoadBalancer();
+
+    static {
+        register(new RoundRobinLoadBalancer());
+        register(new RandomLoadBalancer());
+        register(new P2cLoadBalancer(true));
+        register(new P2cLoadBalancer(false));
+    }
+
+    private LoadBalancers() {
+    }
+
+    public static void register(LoadBalancer balancer) {
+        balancerMap.put(balancer.name(), balancer);
+    }
+
+    /**
+     * @return the balancer of the name, null if name is blank
+     * @throws IllegalArgumentException if no such balancer
+     */
+    public static LoadBalancer getByName(String name) {
+        if (StringUtils.isBlank(name)) {
+            return null;
+        }
+        LoadBalancer balancer = balancerMap.get(name);
+        if (balancer == null) {
+            throw new IllegalArgumentException("no load balancer " + name + ", the registered: " + balancerMap.keySet());
+        }
+        return balancer;
+    }
+
+    /**
+     * @return the balancer of the name, null if name is blank or no such balancer
+     */
+    public static LoadBalancer find(String name) {
+        if (name == null) {
+            return null;
+        }
+        LoadBalancer balancer = balancerMap.get(name);
+        if (balancer == null) {
+            return null;
+        }
+        return withOutlierEjection(balancer);
+    }
+
+    /**
+     * @param service null means the default balancer
+     * @return the balancer of the service, null if not configured and outlier detection disabled
+     */
+    public static LoadBalancer get(String service) {
+        LoadBalancer balancer = serviceBalancerMap.get(service);
+        if (balancer == null) {
+            balancer = defaultBalancer;
+        }
+        return withOutlierEjection(balancer);
+    }
+
+    private static LoadBalancer withOutlierEjection(LoadBalancer balancer) {
+        if (!OutlierDetector.isEnabled()) {
+            return balancer;
+        }
+        if (balancer == null) {
+            balancer = fallbackBalancer;
+        }
+        LoadBalancer b = ejectingBalancerMap.get(balancer);
+        if (b == null) {
+            b = ejectingBalancerMap.computeIfAbsent(balancer, OutlierEjectingLoadBalancer::new);
+        }
+        return b;
+    }
+
+    public static boolean isAnyConfigured() {
+        return defaultBalancer != null || !serviceBalancerMap.isEmpty();
+    }
+
+    /**
+     * @param defaultType  the balancer of services not in serviceTypes, blank means none
+     * @param serviceTypes service to balancer name
+     */
+    public static void configure(String defaultType, Map<String, String> serviceTypes) {
+        LoadBalancer d = getByName(defaultType);
+        Map<String, LoadBalancer> m = new HashMap<>();
+        if (serviceTypes != null) {
+            serviceTypes.forEach(
+                    (service, type) -> {
+                        m.put(service, getByName(type));
+                    }
+            );
+        }
+        defaultBalancer = d;
+        serviceBalancerMap = m;
+    }
+}
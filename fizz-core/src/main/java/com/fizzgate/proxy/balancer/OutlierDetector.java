@@ -0,0 +1,146 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passive health checking of upstream instances by the results of the requests to them.
+ * <p/>
+ * An instance is ejected from the load balancers when it fails consecutiveFailures requests in a row,
+ * or when its failure rate in the interval reaches failureRate percent of at least minRequests requests,
+ * a failure is a 5xx response or an error like timeout.
+ * The ejection time is baseEjectionTime doubled by each ejection of the instance, up to maxEjectionTime,
+ * and the doubling decreases by one for each interval without failure after the instance returns.
+ * No more than maxEjectionPercent of the instances of a service are ejected at the same time.
+ *
+ * @author hongqiaowei
+ */
+
+public abstract class OutlierDetector {
+
+    public interface Listener {
+
+        /**
+         * @param reason why the instance is ejected
+         */
+        void onEjection(InstanceStats stats, long ejectionMillis, String reason);
+    }
+
+    private static volatile boolean  enabled             = false;
+
+    private static volatile int      consecutiveFailures = 5;
+
+    private static volatile int      failureRate         = 50;
+
+    private static volatile int      minRequests         = 20;
+
+    private static volatile long     intervalNanos       = TimeUnit.SECONDS.toNanos(10);
+
+    private static volatile long     baseEjectionNanos   = TimeUnit.SECONDS.toNanos(30);
+
+    private static volatile long     maxEjectionNanos    = TimeUnit.SECONDS.toNanos(300);
+
+    private static volatile int      maxEjectionPercent  = 50;
+
+    private static volatile Listener listener;
+
+    private OutlierDetector() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param consecutiveFailures 0 means not to eject by consecutive failures
+     * @param failureRate         0 means not to eject by failure rate
+     */
+    public static void configure(boolean enabled, int consecutiveFailures, int failureRate, int minRequests, long intervalMillis,
+                                 long baseEjectionMillis, long maxEjectionMillis, int maxEjectionPercent) {
+        OutlierDetector.consecutiveFailures = consecutiveFailures;
+        OutlierDetector.failureRate         = failureRate;
+        OutlierDetector.minRequests         = minRequests;
+        OutlierDetector.intervalNanos       = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        OutlierDetector.baseEjectionNanos   = TimeUnit.MILLISECONDS.toNanos(baseEjectionMillis);
+        OutlierDetector.maxEjectionNanos    = TimeUnit.MILLISECONDS.toNanos(Math.max(maxEjectionMillis, baseEjectionMillis));
+        OutlierDetector.maxEjectionPercent  = maxEjectionPercent;
+        OutlierDetector.enabled             = enabled;
+    }
+
+    public static void setListener(Listener l) {
+        listener = l;
+    }
+
+    public static int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public static void record(InstanceStats stats, boolean failure) {
+        if (enabled) {
+            record(stats, failure, System.nanoTime());
+        }
+    }
+
+    static void record(InstanceStats stats, boolean failure, long now) {
+        long ejection;
+        String reason;
+        synchronized (stats) {
+            if (stats.isEjected(now)) {
+                // the response of request sent before ejection
+                return;
+            }
+            if (now - stats.windowStart >= intervalNanos) {
+                if (stats.windowFailures == 0 && stats.ejections > 0) {
+                    stats.ejections--;
+                }
+                stats.windowStart    = now;
+                stats.windowRequests = 0;
+                stats.windowFailures = 0;
+            }
+            stats.windowRequests++;
+            if (failure) {
+                stats.windowFailures++;
+                stats.consecutiveFailures++;
+            } else {
+                stats.consecutiveFailures = 0;
+                return;
+            }
+
+            if (consecutiveFailures > 0 && stats.consecutiveFailures >= consecutiveFailures) {
+                reason = stats.consecutiveFailures + " consecutive failures";
+            } else if (failureRate > 0 && stats.windowRequests >= minRequests && stats.windowFailures * 100 >= failureRate * stats.windowRequests) {
+                reason = stats.windowFailures + " failures of " + stats.windowRequests + " requests";
+            } else {
+                return;
+            }
+
+            ejection = Math.min(baseEjectionNanos << Math.min(stats.ejections, 20), maxEjectionNanos);
+            stats.eject(now + ejection);
+            stats.ejections++;
+            stats.consecutiveFailures = 0;
+            stats.windowStart         = now + ejection;
+            stats.windowRequests      = 0;
+            stats.windowFailures      = 0;
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.onEjection(stats, TimeUnit.NANOSECONDS.toMillis(ejection), reason);
+        }
+    }
+}
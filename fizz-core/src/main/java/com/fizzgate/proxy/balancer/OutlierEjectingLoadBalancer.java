@@ -0,0 +1,92 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Chooses from the instances not ejected by {@link OutlierDetector}, with the balancer it wraps.
+ * <p/>
+ * If more than maxEjectionPercent of the instances are ejected, the ones returning soonest are chosen from too,
+ * and if all are ejected, all are chosen from.
+ *
+ * @author hongqiaowei
+ */
+
+class OutlierEjectingLoadBalancer implements LoadBalancer {
+
+    private final LoadBalancer balancer;
+
+    OutlierEjectingLoadBalancer(LoadBalancer balancer) {
+        this.balancer = balancer;
+    }
+
+    @Override
+    public String name() {
+        return balancer.name();
+    }
+
+    @Override
+    public <T> T choose(String service, List<T> instances, Function<? super T, String> address) {
+        T inst = balancer.choose(service, available(instances, address), address);
+        UpstreamStats.get(address.apply(inst)).setService(service);
+        return inst;
+    }
+
+    static <T> List<T> available(List<T> instances, Function<? super T, String> address) {
+        int n = instances.size();
+        if (n == 1) {
+            return instances;
+        }
+        long now = System.nanoTime();
+        List<T> available = null;
+        List<T> ejected = null;
+        for (int i = 0; i < n; i++) {
+            T inst = instances.get(i);
+            InstanceStats stats = UpstreamStats.peek(address.apply(inst));
+            if (stats != null && stats.isEjected(now)) {
+                if (ejected == null) {
+                    available = new ArrayList<>(instances.subList(0, i));
+                    ejected = new ArrayList<>();
+                }
+                ejected.add(inst);
+            } else if (available != null) {
+                available.add(inst);
+            }
+        }
+        if (ejected == null) {
+            return instances;
+        }
+        if (available.isEmpty()) {
+            return instances;
+        }
+        int max = n * OutlierDetector.getMaxEjectionPercent() / 100;
+        if (ejected.size() > max) {
+            ejected.sort(
+                    (a, b) -> Long.compare(
+                            UpstreamStats.get(address.apply(a)).getEjectedUntil() - now,
+                            UpstreamStats.get(address.apply(b)).getEjectedUntil() - now
+                    )
+            );
+            available.addAll(ejected.subList(0, ejected.size() - max));
+        }
+        return available;
+    }
+}
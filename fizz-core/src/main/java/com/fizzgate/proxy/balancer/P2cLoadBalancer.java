@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Power of two choices: picks two instances at random and chooses the one with lower cost,
+ * which avoids slow or busy instances without herding all requests to the best one.
+ * <p/>
+ * {@link #P2C_EWMA} costs an instance by {@link InstanceStats#getScore(double)}, the EWMA latency times the outstanding requests,
+ * an instance without latency samples yet is taken as one of the average latency of the service,
+ * {@link #LEAST_REQUEST} by the outstanding requests only.
+ *
+ * @author hongqiaowei
+ */
+
+public class P2cLoadBalancer implements LoadBalancer {
+
+    public static final String P2C_EWMA      = "p2c-ewma";
+
+    public static final String LEAST_REQUEST = "least-request";
+
+    private final String  name;
+
+    private final boolean ewma;
+
+    public P2cLoadBalancer(boolean ewma) {
+        this.ewma = ewma;
+        this.name = ewma ? P2C_EWMA : LEAST_REQUEST;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public <T> T choose(String service, List<T> instances, Function<? super T, String> address) {
+        int n = instances.size();
+        if (n == 1) {
+            return instances.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++;
+        }
+        T ia = instances.get(a), ib = instances.get(b);
+        InstanceStats sa = UpstreamStats.peek(address.apply(ia)), sb = UpstreamStats.peek(address.apply(ib));
+        double ca, cb;
+        if (ewma) {
+            double seed = 0;
+            if (!sampled(sa) || !sampled(sb)) {
+                seed = averageEwma(instances, address);
+            }
+            ca = sa == null ? seed : sa.getScore(seed);
+            cb = sb == null ? seed : sb.getScore(seed);
+        } else {
+            ca = sa == null ? 0 : sa.getOutstanding();
+            cb = sb == null ? 0 : sb.getOutstanding();
+        }
+        if (ca == cb) {
+            return random.nextBoolean() ? ia : ib;
+        }
+        return ca < cb ? ia : ib;
+    }
+
+    private static boolean sampled(InstanceStats stats) {
+        return stats != null && stats.getEwma() != 0;
+    }
+
+    /**
+     * @return the average EWMA latency of the sampled instances, 0 if none
+     */
+    private static <T> double averageEwma(List<T> instances, Function<? super T, String> address) {
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < instances.size(); i++) {
+            InstanceStats stats = UpstreamStats.peek(address.apply(instances.get(i)));
+            if (stats != null) {
+                double l = stats.getEwma();
+                if (l != 0) {
+                    sum += l;
+                    n++;
+                }
+            }
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+}
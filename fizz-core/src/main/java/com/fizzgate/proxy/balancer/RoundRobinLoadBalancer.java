@@ -0,0 +1,53 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "round-robin";
+
+    private final Map<String, AtomicInteger> counterMap = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public <T> T choose(String service, List<T> instances, Function<? super T, String> address) {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        AtomicInteger counter = counterMap.get(service);
+        if (counter == null) {
+            counter = counterMap.computeIfAbsent(service, s -> new AtomicInteger(0));
+        }
+        int i = counter.getAndIncrement() & Integer.MAX_VALUE;
+        return instances.get(i % instances.size());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link InstanceStats} of upstream instances by ip:port, which are fed by FizzWebClient
+ * with the response timings and results when {@link #isEnabled()}.
+ * The stats of an instance that is neither requested nor chosen from for {@link #IDLE_EXPIRE_MINUTES},
+ * mostly a removed one, are dropped.
+ *
+ * @author hongqiaowei
+ */
+
+public abstract class UpstreamStats {
+
+    public  static final long                         IDLE_EXPIRE_MINUTES = 10;
+
+    private static final long                         DEFAULT_DECAY       = TimeUnit.SECONDS.toNanos(10);
+
+    private static final Cache<String, InstanceStats> statsMap            = Caffeine.newBuilder()
+                                                                                    .expireAfterAccess(IDLE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+                                                                                    .executor(Runnable::run)
+                                                                                    .build();
+
+    private static volatile boolean                   enabled             = false;
+
+    private static volatile long                      decayNanos          = DEFAULT_DECAY;
+
+    private UpstreamStats() {
+    }
+
+    /**
+     * @return true if any balancer is configured or outlier detection is enabled
+     */
+    public static boolean isEnabled() {
+        return enabled || OutlierDetector.isEnabled();
+    }
+
+    public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    public static void setDecayNanos(long nanos) {
+        decayNanos = nanos;
+    }
+
+    /**
+     * @param uri like http://ip:port/path, the scheme and path are optional
+     * @return ip:port of the uri
+     */
+    public static String address(String uri) {
+        int begin = uri.indexOf("://");
+        begin = begin < 0 ? 0 : begin + 3;
+        int end = uri.indexOf('/', begin);
+        if (begin == 0 && end < 0) {
+            return uri;
+        }
+        return uri.substring(begin, end < 0 ? uri.length() : end);
+    }
+
+    public static InstanceStats get(String address) {
+        InstanceStats stats = statsMap.getIfPresent(address);
+        if (stats == null) {
+            stats = statsMap.get(address, a -> new InstanceStats(a, decayNanos));
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats of the address, null if no request to it is tracked
+     */
+    public static InstanceStats peek(String address) {
+        return statsMap.getIfPresent(address);
+    }
+
+    public static Map<String, InstanceStats> getAll() {
+        return statsMap.asMap();
+    }
+
+    static void clear() {
+        statsMap.invalidateAll();
+    }
+}
@@ -17,8 +17,6 @@
 
 package com.fizzgate.proxy.dubbo;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.dubbo.config.ApplicationConfig;
 import org.apache.dubbo.config.ReferenceConfig;
 import org.apache.dubbo.config.RegistryConfig;
@@ -39,6 +37,7 @@ import javax.annotation.Resource;
 import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -48,9 +47,18 @@ import java.util.concurrent.CompletableFuture;
  */
 @Service
 public class ApacheDubboGenericService {
+	private static final String[] EMPTY_TYPES = new String[0];
+
+	private static final Object[] EMPTY_VALUES = new Object[0];
+
 	@Resource
 	private ApacheDubboGenericServiceProperties apacheDubboGenericServiceProperties;
 
+	/**
+	 * key is service:version:group
+	 */
+	private final Map<String, GenericService> genericServiceMap = new ConcurrentHashMap<>();
+
 	@PostConstruct
 	public void afterPropertiesSet() {
 
@@ -74,6 +82,21 @@ public class ApacheDubboGenericService {
 		return referenceConfig;
 	}
 
+	/**
+	 * @return the generic service referenced once and shared by requests
+	 */
+	public GenericService getGenericService(String serviceName, String version, String group) {
+		String key = serviceName + ':' + version + ':' + group;
+		GenericService genericService = genericServiceMap.get(key);
+		if (genericService == null) {
+			genericService = genericServiceMap.computeIfAbsent(key, k -> {
+				ReferenceConfig<GenericService> reference = createReferenceConfig(serviceName, version, group);
+				return ReferenceConfigCache.getCache().get(reference);
+			});
+		}
+		return genericService;
+	}
+
 	/**
 	 * Generic invoke.
 	 *
@@ -87,21 +110,22 @@ public class ApacheDubboGenericService {
 			Map<String, String> attachments) {
 
 		RpcContext.getContext().setAttachments(attachments);
-		ReferenceConfig<GenericService> reference = createReferenceConfig(interfaceDeclaration.getServiceName(),
+		GenericService genericService = getGenericService(interfaceDeclaration.getServiceName(),
 				interfaceDeclaration.getVersion(), interfaceDeclaration.getGroup());
 
-		ReferenceConfigCache cache = ReferenceConfigCache.getCache();
-		GenericService genericService = cache.get(reference);
-
-		Pair<String[], Object[]> pair;
+		String[] types;
+		Object[] values;
 		if (CollectionUtils.isEmpty(body)) {
-			pair = new ImmutablePair<String[], Object[]>(new String[] {}, new Object[] {});
+			types = EMPTY_TYPES;
+			values = EMPTY_VALUES;
 		} else {
-			pair = DubboUtils.parseDubboParam(body, interfaceDeclaration.getParameterTypes());
+			DubboParamBinding binding = interfaceDeclaration.getParamBinding();
+			types = binding.getTypes();
+			values = binding.bind(body);
 		}
 
 		CompletableFuture<Object> future = null;
-		Object object = genericService.$invoke(interfaceDeclaration.getMethod(), pair.getLeft(), pair.getRight());
+		Object object = genericService.$invoke(interfaceDeclaration.getMethod(), types, values);
 		if (object == null) {
 			future = RpcContext.getContext().getCompletableFuture();
 		} else if (object instanceof CompletableFuture) {
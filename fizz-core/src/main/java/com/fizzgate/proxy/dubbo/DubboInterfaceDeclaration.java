@@ -30,6 +30,7 @@ public class DubboInterfaceDeclaration {
 	private String version;
 	private String group;
 	private int timeout;
+	private DubboParamBinding paramBinding;
 
 	public DubboInterfaceDeclaration() {
 	}
@@ -60,6 +61,22 @@ public class DubboInterfaceDeclaration {
 		this.parameterTypes = parameterTypes;
 	}
 
+	/**
+	 * @return the binding of parameter types, the precompiled one is used if it is compiled from the parameter types
+	 */
+	public DubboParamBinding getParamBinding() {
+		DubboParamBinding b = paramBinding;
+		if (b == null || !b.isFor(parameterTypes)) {
+			b = DubboParamBinding.compile(parameterTypes);
+			paramBinding = b;
+		}
+		return b;
+	}
+
+	public void setParamBinding(DubboParamBinding paramBinding) {
+		this.paramBinding = paramBinding;
+	}
+
 	public void setTimeout(int timeout) {
 		this.timeout = timeout;
 	}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.dubbo;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The parameter types of a dubbo method, split once, and the keys of parameter values in request body,
+ * the value of the nth parameter is the pn field of body.
+ *
+ * @author Francis Dong
+ *
+ */
+public class DubboParamBinding {
+
+	public final String parameterTypes;
+
+	private final String[] types;
+
+	private final String[] keys;
+
+	private DubboParamBinding(String parameterTypes) {
+		this.parameterTypes = parameterTypes;
+		if (StringUtils.isBlank(parameterTypes)) {
+			types = null;
+			keys = null;
+		} else {
+			types = StringUtils.split(parameterTypes, ',');
+			keys = new String[types.length];
+			for (int i = 0; i < types.length; i++) {
+				keys[i] = "p" + (i + 1);
+			}
+		}
+	}
+
+	public static DubboParamBinding compile(String parameterTypes) {
+		return new DubboParamBinding(parameterTypes);
+	}
+
+	/**
+	 * @return whether the binding is compiled from the parameterTypes
+	 */
+	public boolean isFor(String parameterTypes) {
+		return StringUtils.equals(this.parameterTypes, parameterTypes);
+	}
+
+	/**
+	 * @return the parameter types, null if no parameter types declared
+	 */
+	public String[] getTypes() {
+		return types;
+	}
+
+	/**
+	 * @param paramMap the request body
+	 * @return the parameter values, null if no parameter types declared
+	 */
+	public Object[] bind(Map<String, Object> paramMap) {
+		if (types == null) {
+			return null;
+		}
+		Object[] values = new Object[types.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = paramMap.get(keys[i]);
+		}
+		return values;
+	}
+}
@@ -17,11 +17,8 @@
 
 package com.fizzgate.proxy.dubbo;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -37,22 +34,10 @@ public class DubboUtils {
 	 * body json string
 	 */
 	public static Pair<String[], Object[]> parseDubboParam(Map<String, Object> paramMap, final String parameterTypes) {
-		if (StringUtils.isBlank(parameterTypes)) {
-			return new ImmutablePair<>(null, null);
-		}
-		String[] parameter = StringUtils.split(parameterTypes, ',');
-		if (parameter.length == 1 && !isBaseType(parameter[0])) {
-			return new ImmutablePair<>(parameter, new Object[] { paramMap.get("p1") });
-		}
-		List<Object> list = new LinkedList<>();
-		for (int i = 0; i < parameter.length; i++) {
-			list.add(paramMap.get("p" + (i + 1)));
-		}
-		Object[] objects = list.toArray();
-		return new ImmutablePair<>(parameter, objects);
+		return parseDubboParam(paramMap, DubboParamBinding.compile(parameterTypes));
 	}
 
-	private static boolean isBaseType(String type) {
-		return type.startsWith("java") || type.startsWith("[Ljava");
+	public static Pair<String[], Object[]> parseDubboParam(Map<String, Object> paramMap, DubboParamBinding binding) {
+		return new ImmutablePair<>(binding.getTypes(), binding.bind(paramMap));
 	}
 }
@@ -22,12 +22,14 @@ import com.fizzgate.proxy.grpc.client.CallResults;
 import com.fizzgate.proxy.grpc.client.GrpcProxyClient;
 import com.fizzgate.proxy.grpc.client.core.GrpcMethodDefinition;
 import com.fizzgate.proxy.grpc.client.utils.ChannelFactory;
+import com.fizzgate.proxy.grpc.client.utils.ChannelPool;
 import com.google.common.net.HostAndPort;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.grpc.CallOptions;
 import io.grpc.ManagedChannel;
 import org.apache.dubbo.rpc.service.GenericException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -35,6 +37,9 @@ import static com.fizzgate.proxy.grpc.client.utils.GrpcReflectionUtils.parseToMe
 import static io.grpc.CallOptions.DEFAULT;
 import static java.util.Collections.singletonList;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +50,28 @@ public class GrpcGenericService {
 	@Autowired
 	private GrpcProxyClient grpcProxyClient;
 
+	/**
+	 * channels are shut down after idle for the millis
+	 */
+	@Value("${fizz.grpc.channel.idle-timeout:600000}")
+	private long channelIdleTimeout = 600_000;
+
+	private ChannelPool channelPool;
+
+	@PostConstruct
+	public void init() {
+		channelPool = new ChannelPool(channelIdleTimeout);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		channelPool.shutdown();
+	}
+
+	public ChannelPool getChannelPool() {
+		return channelPool;
+	}
+
 	/**
 	 * Generic invoke.
 	 *
@@ -62,24 +89,18 @@ public class GrpcGenericService {
 		if (endPoint == null) {
 			throw new RuntimeException("can't find target endpoint");
 		}
-		Map<String, Object> metaHeaderMap = attachments;
-		ManagedChannel channel = null;
-		try {
-			channel = ChannelFactory.create(endPoint, metaHeaderMap);
-			CallOptions calloptions = DEFAULT.withDeadlineAfter(grpcInterfaceDeclaration.getTimeout(), TimeUnit.MILLISECONDS);
-			
-			CallResults callResults = new CallResults();
-			ListenableFuture<Void> future = grpcProxyClient.invokeMethodAsync(methodDefinition, channel, calloptions,
-					singletonList(payload), callResults);
-			return Mono.fromFuture(new ListenableFutureAdapter(future).getCompletableFuture().thenApply(ret -> {
-				return callResults.asJSON();
-			})).onErrorMap(exception -> exception instanceof GenericException
-					? new FizzException(((GenericException) exception).getExceptionMessage())
-					: new FizzException((Throwable) exception));
-		} finally {
-			if (channel != null) {
-				channel.shutdown();
-			}
-		}
+		Map<String, Object> metaHeaderMap = attachments == null ? Collections.emptyMap() : attachments;
+		ManagedChannel channel = channelPool.get(endPoint);
+		CallOptions calloptions = DEFAULT.withDeadlineAfter(grpcInterfaceDeclaration.getTimeout(), TimeUnit.MILLISECONDS)
+				.withOption(ChannelFactory.METADATA, metaHeaderMap);
+
+		CallResults callResults = new CallResults();
+		ListenableFuture<Void> future = grpcProxyClient.invokeMethodAsync(methodDefinition, channel, calloptions,
+				singletonList(payload), callResults);
+		return Mono.fromFuture(new ListenableFutureAdapter(future).getCompletableFuture().thenApply(ret -> {
+			return callResults.asJSON();
+		})).onErrorMap(exception -> exception instanceof GenericException
+				? new FizzException(((GenericException) exception).getExceptionMessage())
+				: new FizzException((Throwable) exception));
 	}
 }
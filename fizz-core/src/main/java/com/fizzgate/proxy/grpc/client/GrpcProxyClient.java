@@ -24,13 +24,21 @@ SOFTWARE.
 package com.fizzgate.proxy.grpc.client;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import com.fizzgate.proxy.grpc.client.core.GrpcMethodDefinition;
 import com.fizzgate.proxy.grpc.client.core.ServiceResolver;
 import com.fizzgate.proxy.grpc.client.utils.GrpcReflectionUtils;
 import com.fizzgate.proxy.grpc.client.utils.MessageWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
 import com.google.protobuf.Descriptors.MethodDescriptor;
 import com.google.protobuf.DynamicMessage;
@@ -39,7 +47,10 @@ import com.google.protobuf.util.JsonFormat.TypeRegistry;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 @Service
 /**
@@ -47,8 +58,27 @@ import org.springframework.stereotype.Service;
  * Created on 2018-12-01
  */
 public class GrpcProxyClient {
+
+    private static final long DEFAULT_DESCRIPTOR_TTL = 300_000;
 	
     private GrpcClient grpcClient = new GrpcClient();
+
+    /**
+     * the resolved services by server reflection, key is channel authority + '/' + full service name
+     */
+    private final Cache<String, ResolvedService> resolvedServices;
+
+    public GrpcProxyClient() {
+        this(DEFAULT_DESCRIPTOR_TTL);
+    }
+
+    /**
+     * @param descriptorTtl millis to keep the resolved service descriptors, the service is resolved again then
+     */
+    @Autowired
+    public GrpcProxyClient(@Value("${fizz.grpc.descriptor-cache.ttl:300000}") long descriptorTtl) {
+        resolvedServices = Caffeine.newBuilder().expireAfterWrite(descriptorTtl, TimeUnit.MILLISECONDS).build();
+    }
     
     public CallResults invokeMethod(GrpcMethodDefinition definition, Channel channel, CallOptions callOptions,
                                          List<String> requestJsonTexts) {
@@ -63,13 +93,18 @@ public class GrpcProxyClient {
 
     public ListenableFuture<Void> invokeMethodAsync(GrpcMethodDefinition definition, Channel channel, CallOptions callOptions,
                                                     List<String> requestJsonTexts, CallResults results) {
-        FileDescriptorSet fileDescriptorSet = GrpcReflectionUtils.resolveService(channel, definition.getFullServiceName());
-        if (fileDescriptorSet == null) {
-            return null;
+        String key = channel.authority() + '/' + definition.getFullServiceName();
+        ResolvedService resolvedService = resolvedServices.getIfPresent(key);
+        if (resolvedService == null) {
+            FileDescriptorSet fileDescriptorSet = GrpcReflectionUtils.resolveService(channel, definition.getFullServiceName());
+            if (fileDescriptorSet == null) {
+                return null;
+            }
+            resolvedService = new ResolvedService(ServiceResolver.fromFileDescriptorSet(fileDescriptorSet));
+            resolvedServices.put(key, resolvedService);
         }
-        ServiceResolver serviceResolver = ServiceResolver.fromFileDescriptorSet(fileDescriptorSet);
-        MethodDescriptor methodDescriptor = serviceResolver.resolveServiceMethod(definition);
-        TypeRegistry registry = TypeRegistry.newBuilder().add(serviceResolver.listMessageTypes()).build();
+        MethodDescriptor methodDescriptor = resolvedService.resolveServiceMethod(definition);
+        TypeRegistry registry = resolvedService.registry;
         List<DynamicMessage> requestMessages = GrpcReflectionUtils.parseToMessages(registry, methodDescriptor.getInputType(),
                 requestJsonTexts);
 //        CallResults results = new CallResults();
@@ -82,7 +117,60 @@ public class GrpcProxyClient {
                 .responseObserver(streamObserver)
                 .build();
 
-        return grpcClient.call(callParams);
+        ListenableFuture<Void> future = grpcClient.call(callParams);
+        Futures.addCallback(future, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
 
+            @Override
+            public void onFailure(Throwable t) {
+                Status.Code code = Status.fromThrowable(t).getCode();
+                if (code == Status.Code.UNIMPLEMENTED || code == Status.Code.NOT_FOUND) {
+                    // the service may be changed
+                    resolvedServices.invalidate(key);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * @param authority the channel authority, host:port
+     */
+    public void invalidate(String authority, String fullServiceName) {
+        resolvedServices.invalidate(authority + '/' + fullServiceName);
+    }
+
+    public void invalidateAll() {
+        resolvedServices.invalidateAll();
+    }
+
+    public long getResolvedServiceCount() {
+        resolvedServices.cleanUp();
+        return resolvedServices.estimatedSize();
+    }
+
+    private static class ResolvedService {
+
+        final ServiceResolver               resolver;
+
+        final TypeRegistry                  registry;
+
+        final Map<String, MethodDescriptor> methods = new ConcurrentHashMap<>();
+
+        ResolvedService(ServiceResolver resolver) {
+            this.resolver = resolver;
+            this.registry = TypeRegistry.newBuilder().add(resolver.listMessageTypes()).build();
+        }
+
+        MethodDescriptor resolveServiceMethod(GrpcMethodDefinition definition) {
+            MethodDescriptor md = methods.get(definition.getMethodName());
+            if (md == null) {
+                md = resolver.resolveServiceMethod(definition);
+                methods.put(definition.getMethodName(), md);
+            }
+            return md;
+        }
     }
 }
@@ -41,8 +41,35 @@ import io.grpc.netty.NettyChannelBuilder;
  */
 public class ChannelFactory {
 
+    /**
+     * The metadata sent with a call on channels created by {@link #create(HostAndPort)}, so the channel can be shared by calls.
+     */
+    public static final CallOptions.Key<Map<String, Object>> METADATA = CallOptions.Key.createWithDefault("fizz-grpc-metadata", emptyMap());
+
+    private static final ClientInterceptor callOptionsMetadataInterceptor = new ClientInterceptor() {
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+                final MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, final Channel next) {
+
+            Map<String, Object> metaDataMap = callOptions.getOption(METADATA);
+            if (metaDataMap.isEmpty()) {
+                return next.newCall(method, callOptions);
+            }
+            return new CheckedForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                @Override
+                protected void checkedStart(Listener<RespT> responseListener, Metadata headers) {
+                    putMetadata(metaDataMap, headers);
+                    delegate().start(responseListener, headers);
+                }
+            };
+        }
+    };
+
     public static ManagedChannel create(HostAndPort endpoint) {
-        return create(endpoint, emptyMap());
+        return NettyChannelBuilder.forAddress(endpoint.getHostText(), endpoint.getPort())
+                .negotiationType(NegotiationType.PLAINTEXT)
+                .intercept(callOptionsMetadataInterceptor)
+                .build();
     }
 
     public static ManagedChannel create(HostAndPort endpoint, Map<String, Object> metaDataMap) {
@@ -61,14 +88,18 @@ public class ChannelFactory {
                 return new CheckedForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
                     @Override
                     protected void checkedStart(Listener<RespT> responseListener, Metadata headers) {
-                        metaDataMap.forEach((k, v) -> {
-                            Key<String> mKey = Key.of(k, ASCII_STRING_MARSHALLER);
-                            headers.put(mKey, String.valueOf(v));
-                        });
+                        putMetadata(metaDataMap, headers);
                         delegate().start(responseListener, headers);
                     }
                 };
             }
         };
     }
+
+    private static void putMetadata(Map<String, Object> metaDataMap, Metadata headers) {
+        metaDataMap.forEach((k, v) -> {
+            Key<String> mKey = Key.of(k, ASCII_STRING_MARSHALLER);
+            headers.put(mKey, String.valueOf(v));
+        });
+    }
 }
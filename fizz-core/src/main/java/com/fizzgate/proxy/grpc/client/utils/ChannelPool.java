@@ -0,0 +1,73 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.grpc.client.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.net.HostAndPort;
+import io.grpc.ManagedChannel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares one channel by all calls to an endpoint, the channel multiplexes calls over its HTTP/2 connection
+ * and reconnects by itself, it is shut down after idle for idleMillis, in-flight calls on it still complete.
+ * <p/>
+ * Call metadata should be set by {@link ChannelFactory#METADATA} call option.
+ */
+public class ChannelPool {
+
+    private final Cache<HostAndPort, ManagedChannel> channels;
+
+    public ChannelPool(long idleMillis) {
+        channels = Caffeine.newBuilder()
+                           .expireAfterAccess(idleMillis, TimeUnit.MILLISECONDS)
+                           .executor(Runnable::run)
+                           .<HostAndPort, ManagedChannel>removalListener(
+                                   (endpoint, channel, cause) -> {
+                                       if (channel != null) {
+                                           channel.shutdown();
+                                       }
+                                   }
+                           )
+                           .build();
+    }
+
+    public ManagedChannel get(HostAndPort endpoint) {
+        ManagedChannel channel = channels.get(endpoint, ChannelFactory::create);
+        if (channel.isShutdown()) {
+            channels.asMap().remove(endpoint, channel);
+            channel = channels.get(endpoint, ChannelFactory::create);
+        }
+        return channel;
+    }
+
+    public void invalidate(HostAndPort endpoint) {
+        channels.invalidate(endpoint);
+    }
+
+    public long size() {
+        channels.cleanUp();
+        return channels.estimatedSize();
+    }
+
+    public void shutdown() {
+        channels.invalidateAll();
+        channels.cleanUp();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.http2;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.function.Function;
+
+/**
+ * Connects WebClient to upstream with HTTP/2, each request is a stream of the multiplexed connection from {@link Http2ConnectionPool}.
+ *
+ * @author hongqiaowei
+ */
+
+public class Http2ClientHttpConnector implements ClientHttpConnector {
+
+    private static final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final Http2ConnectionPool pool;
+
+    public Http2ClientHttpConnector(Http2ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public Http2ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri, Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+        Http2ClientHttpResponse response = new Http2ClientHttpResponse(bufferFactory);
+        return pool.acquire(uri, response)
+                   .flatMap(
+                           stream -> {
+                               Mono<ClientHttpResponse> received = response.receive(stream);
+                               return requestCallback.apply(new Http2ClientHttpRequest(method, uri, stream, bufferFactory))
+                                                     .then(received)
+                                                     .doOnCancel(stream::close);
+                           }
+                   );
+    }
+}
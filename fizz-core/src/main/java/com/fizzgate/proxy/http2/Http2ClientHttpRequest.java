@@ -0,0 +1,166 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.http2;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.util.AsciiString;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.AbstractClientHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sends request as the headers and data frames of a HTTP/2 stream.
+ *
+ * @author hongqiaowei
+ */
+
+class Http2ClientHttpRequest extends AbstractClientHttpRequest {
+
+    private static final AsciiString        TRAILERS  = AsciiString.cached("trailers");
+
+    private final HttpMethod                method;
+
+    private final URI                       uri;
+
+    private final Http2StreamChannel        stream;
+
+    private final NettyDataBufferFactory    bufferFactory;
+
+    private final Http2Headers              http2Headers;
+
+    Http2ClientHttpRequest(HttpMethod method, URI uri, Http2StreamChannel stream, NettyDataBufferFactory bufferFactory) {
+        this.method        = method;
+        this.uri           = uri;
+        this.stream        = stream;
+        this.bufferFactory = bufferFactory;
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        if (uri.getRawQuery() != null) {
+            path = path + '?' + uri.getRawQuery();
+        }
+        http2Headers = new DefaultHttp2Headers().method(method.name())
+                                                .scheme(uri.getScheme())
+                                                .authority(uri.getRawAuthority())
+                                                .path(path);
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    public DataBufferFactory bufferFactory() {
+        return bufferFactory;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        return doCommit(
+                () -> write(new DefaultHttp2HeadersFrame(http2Headers, false))
+                        .thenMany(Flux.from(body).concatMap(b -> write(new DefaultHttp2DataFrame(NettyDataBufferFactory.toByteBuf(b), false))))
+                        .then(Mono.defer(() -> write(new DefaultHttp2DataFrame(Unpooled.EMPTY_BUFFER, true))))
+        );
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return writeWith(Flux.from(body).concatMap(Flux::from));
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+        return doCommit(() -> write(new DefaultHttp2HeadersFrame(http2Headers, true)));
+    }
+
+    private Mono<Void> write(Http2StreamFrame frame) {
+        return Mono.create(
+                sink -> {
+                    stream.writeAndFlush(frame).addListener(
+                            f -> {
+                                if (f.isSuccess()) {
+                                    sink.success();
+                                } else {
+                                    sink.error(f.cause());
+                                }
+                            }
+                    );
+                }
+        );
+    }
+
+    @Override
+    protected void applyHeaders() {
+        getHeaders().forEach(
+                (name, values) -> {
+                    String n = name.toLowerCase(Locale.ROOT);
+                    if (n.equals("host")) {
+                        if (!values.isEmpty()) {
+                            http2Headers.authority(values.get(0));
+                        }
+                    } else if (n.equals("te")) {
+                        // only te: trailers is allowed in HTTP/2
+                        for (String v : values) {
+                            if (TRAILERS.contentEqualsIgnoreCase(v)) {
+                                http2Headers.add(n, TRAILERS);
+                            }
+                        }
+                    } else if (!isConnectionSpecific(n)) {
+                        http2Headers.add(n, values);
+                    }
+                }
+        );
+    }
+
+    private static boolean isConnectionSpecific(String name) {
+        return name.equals("connection") || name.equals("keep-alive") || name.equals("proxy-connection") || name.equals("transfer-encoding") || name.equals("upgrade");
+    }
+
+    @Override
+    protected void applyCookies() {
+        for (List<HttpCookie> cookies : getCookies().values()) {
+            for (HttpCookie cookie : cookies) {
+                http2Headers.add(HttpHeaders.COOKIE.toLowerCase(Locale.ROOT), cookie.getName() + '=' + cookie.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.cookie.ClientCookieDecoder;
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The response received by the frames of a HTTP/2 stream, it is also the handler of the stream.
+ * <p/>
+ * The stream reads frames on demand of the body, at most a few frames are buffered,
+ * so a slow consumer holds the flow control window of the stream instead of buffering the whole body.
+ *
+ * @author hongqiaowei
+ */
+
+class Http2ClientHttpResponse extends ChannelInboundHandlerAdapter implements ClientHttpResponse {
+
+    private static final int                      MAX_BUFFERED = 8;
+
+    private final NettyDataBufferFactory          bufferFactory;
+
+    private final MonoProcessor<ClientHttpResponse> received   = MonoProcessor.create();
+
+    private final Queue<DataBuffer>               queue;
+
+    private final UnicastProcessor<DataBuffer>    body;
+
+    private final AtomicBoolean                   bodySubscribed = new AtomicBoolean(false);
+
+    private       Http2StreamChannel              stream;
+
+    private       int                             status;
+
+    private       HttpHeaders                     headers;
+
+    private       boolean                         headersReceived = false;
+
+    private       boolean                         ended           = false;
+
+    Http2ClientHttpResponse(NettyDataBufferFactory bufferFactory) {
+        this.bufferFactory = bufferFactory;
+        this.queue         = Queues.<DataBuffer>unbounded().get();
+        this.body          = UnicastProcessor.create(queue, this::cancel);
+    }
+
+    /**
+     * @return the response after its headers received
+     */
+    Mono<ClientHttpResponse> receive(Http2StreamChannel stream) {
+        this.stream = stream;
+        stream.read();
+        return received;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() {
+        return HttpStatus.valueOf(status);
+    }
+
+    @Override
+    public int getRawStatusCode() {
+        return status;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public MultiValueMap<String, ResponseCookie> getCookies() {
+        MultiValueMap<String, ResponseCookie> result = new LinkedMultiValueMap<>();
+        List<String> setCookies = headers.get(HttpHeaders.SET_COOKIE);
+        if (setCookies != null) {
+            for (String sc : setCookies) {
+                Cookie c = ClientCookieDecoder.LAX.decode(sc);
+                if (c != null) {
+                    result.add(c.name(), ResponseCookie.from(c.name(), c.value())
+                                                       .domain(c.domain())
+                                                       .path(c.path())
+                                                       .maxAge(c.maxAge())
+                                                       .secure(c.isSecure())
+                                                       .httpOnly(c.isHttpOnly())
+                                                       .sameSite(c instanceof DefaultCookie && ((DefaultCookie) c).sameSite() != null ? ((DefaultCookie) c).sameSite().name() : null)
+                                                       .build());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Flux<DataBuffer> getBody() {
+        return body.doOnSubscribe(s -> bodySubscribed.set(true))
+                   .doOnRequest(n -> stream.eventLoop().execute(this::readIfNeeded))
+                   .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private void readIfNeeded() {
+        if (!ended && stream.isActive() && queue.size() < MAX_BUFFERED) {
+            stream.read();
+        }
+    }
+
+    private void cancel() {
+        if (!ended) {
+            // resets the stream
+            stream.close();
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof Http2HeadersFrame) {
+            Http2HeadersFrame frame = (Http2HeadersFrame) msg;
+            if (!headersReceived) {
+                int s = frame.headers().status() == null ? 0 : Integer.parseInt(frame.headers().status().toString());
+                if (s >= 100 && s < 200) {
+                    // informational response, e.g. 100 continue
+                    return;
+                }
+                status = s;
+                headers = toHttpHeaders(frame.headers());
+                headersReceived = true;
+                if (frame.isEndStream()) {
+                    end();
+                }
+                received.onNext(this);
+            } else if (frame.isEndStream()) {
+                // trailers
+                end();
+            }
+        } else if (msg instanceof Http2DataFrame) {
+            Http2DataFrame frame = (Http2DataFrame) msg;
+            ByteBuf content = frame.content();
+            if (content.isReadable()) {
+                body.onNext(bufferFactory.wrap(content));
+            } else {
+                content.release();
+            }
+            if (frame.isEndStream()) {
+                end();
+            }
+        } else {
+            if (msg instanceof Http2ResetFrame) {
+                error(new IOException("http2 stream reset: " + ((Http2ResetFrame) msg).errorCode()));
+            }
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (!headersReceived) {
+            ctx.read();
+        } else if (bodySubscribed.get()) {
+            readIfNeeded();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        error(new IOException("http2 stream closed before response completed"));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        error(cause);
+        ctx.close();
+    }
+
+    private void end() {
+        if (!ended) {
+            ended = true;
+            body.onComplete();
+            // the stream channel is closed after the stream, the pool counts the stream till then
+            stream.read();
+        }
+    }
+
+    private void error(Throwable t) {
+        if (!headersReceived) {
+            headersReceived = true;
+            ended = true;
+            received.onError(t);
+        } else if (!ended) {
+            ended = true;
+            body.onError(t);
+        }
+    }
+
+    private static HttpHeaders toHttpHeaders(Http2Headers http2Headers) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Map.Entry<CharSequence, CharSequence> h : http2Headers) {
+            CharSequence name = h.getKey();
+            if (name.length() > 0 && name.charAt(0) != ':') {
+                headers.add(name.toString(), h.getValue().toString());
+            }
+        }
+        return headers;
+    }
+}
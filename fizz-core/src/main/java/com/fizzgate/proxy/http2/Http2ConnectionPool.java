@@ -0,0 +1,516 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.http2;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import javax.net.ssl.SSLException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP/2 connections to upstream hosts, each carries multiple requests as streams.
+ * <p/>
+ * A host has at most maxConnections connections, each with at most maxConcurrentStreams streams,
+ * or the SETTINGS_MAX_CONCURRENT_STREAMS of the host if less; new connection is made only when all the existing ones are full,
+ * and stream acquires beyond that wait, at most pendingAcquireMaxCount of them, for pendingAcquireTimeout.
+ * <p/>
+ * http uri is connected with prior knowledge (h2c), https one with TLS and ALPN (h2).
+ *
+ * @author hongqiaowei
+ */
+
+public class Http2ConnectionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(Http2ConnectionPool.class);
+
+    private final int                           maxConnections;
+
+    private final int                           maxConcurrentStreams;
+
+    private final int                           pendingAcquireMaxCount;
+
+    private final Duration                      pendingAcquireTimeout;
+
+    private final int                           connectTimeout;
+
+    private final SslContext                    sslContext;
+
+    private final EventLoopGroup                loops;
+
+    private final Class<? extends SocketChannel> channelType;
+
+    private final Map<String, HostPool>         hostPools = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeout in millis
+     */
+    public Http2ConnectionPool(int maxConnections, int maxConcurrentStreams, int pendingAcquireMaxCount, Duration pendingAcquireTimeout,
+                               int connectTimeout, boolean trustInsecureSSL) {
+        this(maxConnections, maxConcurrentStreams, pendingAcquireMaxCount, pendingAcquireTimeout, connectTimeout, trustInsecureSSL,
+             HttpResources.get(), true);
+    }
+
+    /**
+     * @param connectTimeout in millis
+     * @param loopResources  the loops connections run on
+     */
+    public Http2ConnectionPool(int maxConnections, int maxConcurrentStreams, int pendingAcquireMaxCount, Duration pendingAcquireTimeout,
+                               int connectTimeout, boolean trustInsecureSSL, LoopResources loopResources, boolean preferNative) {
+        this.maxConnections         = maxConnections;
+        this.maxConcurrentStreams   = maxConcurrentStreams;
+        this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        this.pendingAcquireTimeout  = pendingAcquireTimeout;
+        this.connectTimeout         = connectTimeout;
+
+        loops       = loopResources.onClient(preferNative);
+        channelType = loopResources.onChannelClass(SocketChannel.class, loops);
+
+        SslProvider provider = SslProvider.isAlpnSupported(SslProvider.OPENSSL) ? SslProvider.OPENSSL : SslProvider.JDK;
+        SslContextBuilder builder = SslContextBuilder.forClient()
+                                                     .sslProvider(provider)
+                                                     .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                                                     .applicationProtocolConfig(
+                                                             new ApplicationProtocolConfig(
+                                                                     ApplicationProtocolConfig.Protocol.ALPN,
+                                                                     ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                                                                     ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                                                                     ApplicationProtocolNames.HTTP_2
+                                                             )
+                                                     );
+        if (trustInsecureSSL) {
+            builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+        }
+        try {
+            sslContext = builder.build();
+        } catch (SSLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param handler handles the frames the stream receives
+     * @return new stream to the host of uri, whose auto read is off
+     */
+    public Mono<Http2StreamChannel> acquire(URI uri, ChannelHandler handler) {
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort();
+        if (port < 0) {
+            port = secure ? 443 : 80;
+        }
+        String key = uri.getHost() + ':' + port;
+        HostPool hp = hostPools.get(key);
+        if (hp == null) {
+            int p = port;
+            hp = hostPools.computeIfAbsent(key, k -> new HostPool(uri.getHost(), p, secure));
+        }
+        HostPool hostPool = hp;
+        return Mono.<Http2StreamChannel>create(sink -> hostPool.acquire(new Pending(sink, handler)))
+                   .timeout(pendingAcquireTimeout, Mono.error(() -> new TimeoutException("acquire http2 stream to " + key + " timeout")));
+    }
+
+    /**
+     * @return host:port to its connections and active streams of each connection
+     */
+    public Map<String, List<Integer>> getStreams() {
+        Map<String, List<Integer>> result = new HashMap<>();
+        hostPools.forEach(
+                (key, hp) -> {
+                    List<Integer> streams = new ArrayList<>();
+                    synchronized (hp) {
+                        hp.connections.forEach(c -> streams.add(c.streams));
+                    }
+                    result.put(key, streams);
+                }
+        );
+        return result;
+    }
+
+    public void dispose() {
+        hostPools.values().forEach(
+                hp -> {
+                    synchronized (hp) {
+                        hp.connections.forEach(c -> c.channel.close());
+                    }
+                }
+        );
+        hostPools.clear();
+    }
+
+    private static class Pending {
+
+        final MonoSink<Http2StreamChannel> sink;
+        final ChannelHandler               handler;
+        volatile boolean                   cancelled = false;
+
+        Pending(MonoSink<Http2StreamChannel> sink, ChannelHandler handler) {
+            this.sink    = sink;
+            this.handler = handler;
+        }
+    }
+
+    private class Connection {
+
+        final Channel          channel;
+        final Http2FrameCodec  codec;
+        int                    streams = 0;
+        volatile boolean       goAway  = false;
+
+        Connection(Channel channel) {
+            this.channel = channel;
+            this.codec   = channel.pipeline().get(Http2FrameCodec.class);
+        }
+
+        boolean available() {
+            if (goAway || !channel.isActive()) {
+                return false;
+            }
+            int max = Math.min(maxConcurrentStreams, codec.connection().local().maxActiveStreams());
+            return streams < max;
+        }
+    }
+
+    private class HostPool {
+
+        final String           host;
+        final int              port;
+        final boolean          secure;
+        final List<Connection> connections = new ArrayList<>();
+        final Deque<Pending>   pendings    = new ArrayDeque<>();
+        int                    connecting  = 0;
+
+        HostPool(String host, int port, boolean secure) {
+            this.host   = host;
+            this.port   = port;
+            this.secure = secure;
+        }
+
+        void acquire(Pending pending) {
+            pending.sink.onCancel(
+                    () -> {
+                        pending.cancelled = true;
+                        synchronized (this) {
+                            pendings.remove(pending);
+                        }
+                    }
+            );
+            Connection c;
+            boolean connect = false;
+            synchronized (this) {
+                c = pick();
+                if (c == null) {
+                    if (pendings.size() >= pendingAcquireMaxCount) {
+                        pending.sink.error(new IllegalStateException("pending acquires of http2 stream to " + host + ':' + port + " reach " + pendingAcquireMaxCount));
+                        return;
+                    }
+                    pendings.add(pending);
+                    if (connections.size() + connecting < maxConnections && connecting < pendings.size()) {
+                        connecting++;
+                        connect = true;
+                    }
+                } else {
+                    c.streams++;
+                }
+            }
+            if (c != null) {
+                open(c, pending);
+            } else if (connect) {
+                connect();
+            }
+        }
+
+        /**
+         * @return the available connection with the least streams
+         */
+        private Connection pick() {
+            Connection result = null;
+            for (int i = 0; i < connections.size(); i++) {
+                Connection c = connections.get(i);
+                if (c.available() && (result == null || c.streams < result.streams)) {
+                    result = c;
+                }
+            }
+            return result;
+        }
+
+        private void open(Connection c, Pending pending) {
+            if (pending.cancelled) {
+                release(c);
+                return;
+            }
+            new Http2StreamChannelBootstrap(c.channel).option(ChannelOption.AUTO_READ, false)
+                                                      .handler(pending.handler)
+                                                      .open()
+                                                      .addListener(
+                                                              f -> {
+                                                                  if (f.isSuccess()) {
+                                                                      Http2StreamChannel stream = (Http2StreamChannel) f.getNow();
+                                                                      stream.closeFuture().addListener(cf -> release(c));
+                                                                      if (pending.cancelled) {
+                                                                          stream.close();
+                                                                      } else {
+                                                                          pending.sink.success(stream);
+                                                                      }
+                                                                  } else {
+                                                                      release(c);
+                                                                      pending.sink.error(f.cause());
+                                                                  }
+                                                              }
+                                                      );
+        }
+
+        private void release(Connection c) {
+            synchronized (this) {
+                c.streams--;
+            }
+            drain();
+        }
+
+        private void drain() {
+            List<Object[]> opens = null;
+            boolean connect = false;
+            synchronized (this) {
+                while (!pendings.isEmpty()) {
+                    Connection c = pick();
+                    if (c == null) {
+                        break;
+                    }
+                    c.streams++;
+                    if (opens == null) {
+                        opens = new ArrayList<>(2);
+                    }
+                    opens.add(new Object[]{c, pendings.poll()});
+                }
+                if (!pendings.isEmpty() && connecting == 0 && connections.size() < maxConnections) {
+                    connecting++;
+                    connect = true;
+                }
+            }
+            if (opens != null) {
+                for (Object[] o : opens) {
+                    open((Connection) o[0], (Pending) o[1]);
+                }
+            }
+            if (connect) {
+                connect();
+            }
+        }
+
+        private void connect() {
+            ConnectionHandler handler = new ConnectionHandler();
+            Bootstrap bootstrap = new Bootstrap().group(loops)
+                                                 .channel(channelType)
+                                                 .option(ChannelOption.TCP_NODELAY, true)
+                                                 .option(ChannelOption.SO_KEEPALIVE, true)
+                                                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                                                 .handler(
+                                                         new ChannelInitializer<Channel>() {
+                                                             @Override
+                                                             protected void initChannel(Channel ch) {
+                                                                 if (secure) {
+                                                                     SslHandler sslHandler = sslContext.newHandler(ch.alloc(), host, port);
+                                                                     // the handshake failure closes the connection before the exception reaches handlers
+                                                                     sslHandler.handshakeFuture().addListener(
+                                                                             f -> {
+                                                                                 if (!f.isSuccess() && handler.failure == null) {
+                                                                                     handler.failure = f.cause();
+                                                                                 }
+                                                                             }
+                                                                     );
+                                                                     ch.pipeline().addLast(sslHandler);
+                                                                     ch.pipeline().addLast(
+                                                                             new ApplicationProtocolNegotiationHandler("") {
+                                                                                 @Override
+                                                                                 protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                                                                                     if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                                                                                         addHttp2Handlers(ctx.pipeline(), handler);
+                                                                                     } else {
+                                                                                         handler.failure = new IllegalStateException(host + ':' + port + " not support h2, negotiated: " + protocol);
+                                                                                         ctx.close();
+                                                                                     }
+                                                                                 }
+
+                                                                                 @Override
+                                                                                 public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                                                                     handler.exceptionCaught(ctx, cause);
+                                                                                 }
+                                                                             }
+                                                                     );
+                                                                 } else {
+                                                                     addHttp2Handlers(ch.pipeline(), handler);
+                                                                 }
+                                                             }
+                                                         }
+                                                 );
+            ChannelFuture cf = bootstrap.connect(host, port);
+            cf.addListener(
+                    f -> {
+                        if (!f.isSuccess() && handler.settle()) {
+                            connectFailed(f.cause());
+                        }
+                    }
+            );
+            // the connection may close before the settings of host received, for handshake failure, no h2 or others,
+            // and the ConnectionHandler is not in the pipeline until ALPN is done
+            cf.channel().closeFuture().addListener(f -> handler.closed());
+        }
+
+        private void addHttp2Handlers(ChannelPipeline pipeline, ConnectionHandler handler) {
+            pipeline.addLast(Http2FrameCodecBuilder.forClient().initialSettings(Http2Settings.defaultSettings()).build());
+            pipeline.addLast(
+                    new Http2MultiplexHandler(
+                            new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    // no server push
+                                    ReferenceCountUtil.release(msg);
+                                }
+                            }
+                    )
+            );
+            pipeline.addLast(handler);
+        }
+
+        private void connectFailed(Throwable t) {
+            log.warn("connect {}:{} with http2 fail", host, port, t);
+            List<Pending> failed;
+            synchronized (this) {
+                connecting--;
+                if (!connections.isEmpty()) {
+                    failed = null;
+                } else {
+                    failed = new ArrayList<>(pendings);
+                    pendings.clear();
+                }
+            }
+            if (failed == null) {
+                drain();
+            } else {
+                failed.forEach(p -> p.sink.error(t));
+            }
+        }
+
+        /**
+         * Adds the connection to pool after the settings of host received, and removes it after closed;
+         * a connection closed before that fails the connecting, only once.
+         */
+        private class ConnectionHandler extends ChannelInboundHandlerAdapter {
+
+            private final AtomicBoolean settled = new AtomicBoolean(false);
+
+            private Connection          connection;
+
+            volatile Throwable          failure;
+
+            boolean settle() {
+                return settled.compareAndSet(false, true);
+            }
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                try {
+                    if (msg instanceof Http2SettingsFrame) {
+                        if (connection == null && settle()) {
+                            connection = new Connection(ctx.channel());
+                            synchronized (HostPool.this) {
+                                connecting--;
+                                connections.add(connection);
+                            }
+                            if (log.isDebugEnabled()) {
+                                log.debug("http2 connection to {}:{} established, settings: {}", host, port, ((Http2SettingsFrame) msg).settings());
+                            }
+                            drain();
+                        }
+                    } else if (msg instanceof Http2GoAwayFrame) {
+                        if (connection != null) {
+                            connection.goAway = true;
+                        }
+                        drain();
+                    }
+                } finally {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+
+            void closed() {
+                if (connection != null) {
+                    synchronized (HostPool.this) {
+                        connections.remove(connection);
+                    }
+                    drain();
+                } else if (settle()) {
+                    Throwable t = failure;
+                    connectFailed(t == null ? new IllegalStateException("http2 connection to " + host + ':' + port + " closed before settings received") : t);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                log.warn("http2 connection to {}:{} error", host, port, cause);
+                if (failure == null) {
+                    failure = cause;
+                }
+                ctx.close();
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.fizzgate.service_registry.eureka;
 
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
 import com.fizzgate.service_registry.FizzServiceRegistration;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.Utils;
@@ -188,6 +190,10 @@ public class FizzEurekaServiceRegistration extends FizzServiceRegistration {
         if (CollectionUtils.isEmpty(insts)) {
             throw Utils.runtimeExceptionWithoutStack(getId() + " eureka no " + service);
         }
+        LoadBalancer balancer = LoadBalancers.get(service);
+        if (balancer != null) {
+            return balancer.choose(service, insts, inst -> inst.getIPAddr() + Consts.S.COLON + inst.getPort());
+        }
         Applications apps = client.getApplications();
         int index = (int) (apps.getNextIndex(service.toUpperCase(), false).incrementAndGet() % insts.size());
         return insts.get(index);
@@ -35,6 +35,8 @@ import com.alibaba.nacos.common.remote.client.Connection;
 import com.alibaba.nacos.common.remote.client.RpcClientStatus;
 import com.alibaba.nacos.common.remote.client.grpc.GrpcClient;
 import com.alibaba.nacos.common.utils.ThreadUtils;
+import com.fizzgate.proxy.balancer.LoadBalancer;
+import com.fizzgate.proxy.balancer.LoadBalancers;
 import com.fizzgate.service_registry.FizzServiceRegistration;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.ReflectionUtils;
@@ -181,8 +183,23 @@ public class FizzNacosServiceRegistration extends FizzServiceRegistration {
 
     public Instance getInstanceInfo(String service) {
         Instance instance = null;
+        LoadBalancer balancer = LoadBalancers.get(service);
         try {
-            if (useGroup && userCluster) {
+            if (balancer != null) {
+                List<Instance> instances;
+                if (useGroup && userCluster) {
+                    instances = namingService.selectInstances(service, group, clusters, true);
+                } else if (useGroup) {
+                    instances = namingService.selectInstances(service, group, true);
+                } else if (userCluster) {
+                    instances = namingService.selectInstances(service, clusters, true);
+                } else {
+                    instances = namingService.selectInstances(service, true);
+                }
+                if (instances != null && !instances.isEmpty()) {
+                    instance = balancer.choose(service, instances, Instance::toInetAddr);
+                }
+            } else if (useGroup && userCluster) {
                 instance = namingService.selectOneHealthyInstance(service, group, clusters);
             } else if (useGroup) {
                 instance = namingService.selectOneHealthyInstance(service, group);
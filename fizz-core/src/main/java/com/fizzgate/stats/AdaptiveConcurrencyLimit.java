@@ -0,0 +1,147 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.stats;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Concurrent request limit of a resource which is adjusted by the response time
+ * of the resource, like the gradient algorithm of Netflix concurrency-limits.
+ * <br/>
+ * The limit is updated once per time slot from the statistic of a recent time
+ * slot:
+ * 
+ * <pre>
+ * gradient = max(0.5, min(1, TOLERANCE * noLoadRt / avgRt))
+ * limit    = limit * gradient + sqrt(limit)
+ * </pre>
+ * 
+ * so the limit grows while the average response time is within TOLERANCE times
+ * of the no load response time, and shrinks as requests queue up in the
+ * backend. noLoadRt is the minimum of the average response time of the time
+ * slots, it goes up only with the time slots whose peak concurrent requests
+ * are less than half of the limit, in which the response time isn't raised by
+ * queuing. The limit doesn't grow either in such a time slot, since the traffic
+ * can't tell whether a larger limit is fine.
+ * 
+ * @author Francis Dong
+ *
+ */
+public class AdaptiveConcurrencyLimit {
+
+	private static final AtomicLongFieldUpdater<AdaptiveConcurrencyLimit> LAST_SLOT_ID_UPDATER = AtomicLongFieldUpdater.newUpdater(AdaptiveConcurrencyLimit.class, "lastSlotId");
+
+	public static final int     INITIAL_LIMIT = 20;
+
+	public static final int     MIN_LIMIT     = 1;
+
+	private static final double TOLERANCE     = 1.5;
+
+	private static final double MIN_GRADIENT  = 0.5;
+
+	/**
+	 * Ratio of the distance to the average response time that noLoadRt moves up in
+	 * a time slot
+	 */
+	private static final double NO_LOAD_RT_UP = 0.1;
+
+	private volatile int        limit;
+
+	private volatile int        maxLimit;
+
+	private volatile long       lastSlotId    = 0;
+
+	private double              estimatedLimit;
+
+	private double              noLoadRt      = 0;
+
+	/**
+	 * @param maxLimit maximum of the limit, not positive for no maximum
+	 */
+	public AdaptiveConcurrencyLimit(long maxLimit) {
+		setMaxLimit(maxLimit);
+		this.estimatedLimit = Math.min(INITIAL_LIMIT, this.maxLimit);
+		this.limit = (int) estimatedLimit;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public void setMaxLimit(long maxLimit) {
+		int max = maxLimit > 0 && maxLimit < Integer.MAX_VALUE ? (int) maxLimit : Integer.MAX_VALUE;
+		if (max != this.maxLimit) {
+			this.maxLimit = Math.max(max, MIN_LIMIT);
+		}
+	}
+
+	/**
+	 * Update the limit with the time slot before the previous one of the specified
+	 * time slot, whose requests have been running for one time slot at least, the
+	 * unfinished ones are taken as having that response time. Only the first call
+	 * of a time slot updates, the others return immediately
+	 * 
+	 * @param resourceStat statistic of the resource
+	 * @param timeSlotId   current time slot ID
+	 */
+	public void update(ResourceStat resourceStat, long timeSlotId) {
+		long last = lastSlotId;
+		if (timeSlotId <= last || !LAST_SLOT_ID_UPDATER.compareAndSet(this, last, timeSlotId)) {
+			return;
+		}
+		TimeSlot timeSlot = resourceStat.peekTimeSlot(timeSlotId - 2 * FlowStat.INTERVAL);
+		if (timeSlot == null) {
+			return;
+		}
+		TimeSlot.Snapshot slot = timeSlot.snapshot();
+		long unfinished = Math.max(0, slot.counter - slot.compReqs);
+		long n = slot.compReqs + unfinished;
+		if (n > 0) {
+			double avgRt = (double) (slot.totalRt + unfinished * FlowStat.INTERVAL) / n;
+			update(Math.max(1, avgRt), slot.peakConcurrentRequests);
+		}
+	}
+
+	/**
+	 * Update the limit with the statistic of a time slot
+	 * 
+	 * @param avgRt                  average response time of the time slot
+	 * @param peakConcurrentRequests peak concurrent requests of the time slot
+	 */
+	synchronized void update(double avgRt, long peakConcurrentRequests) {
+		// the limit may have grown since the time slot
+		boolean limited = peakConcurrentRequests * 2 >= limit;
+		if (noLoadRt == 0 || avgRt < noLoadRt) {
+			noLoadRt = avgRt;
+		} else if (!limited) {
+			noLoadRt = noLoadRt + (avgRt - noLoadRt) * NO_LOAD_RT_UP;
+		}
+
+		double gradient = Math.max(MIN_GRADIENT, Math.min(1, TOLERANCE * noLoadRt / avgRt));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		if (newLimit > estimatedLimit && !limited) {
+			return;
+		}
+		estimatedLimit = Math.max(MIN_LIMIT, Math.min(maxLimit, newLimit));
+		limit = (int) estimatedLimit;
+	}
+}
@@ -19,6 +19,7 @@ package com.fizzgate.stats;
 
 import com.fizzgate.stats.circuitbreaker.CircuitBreakManager;
 import com.fizzgate.stats.circuitbreaker.CircuitBreaker;
+import com.fizzgate.stats.ratelimit.ClusterRateLimiter;
 import com.fizzgate.util.Consts;
 import com.fizzgate.util.ResourceIdUtils;
 import com.fizzgate.util.WebUtils;
@@ -35,8 +36,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -69,13 +68,15 @@ public class FlowStat {
 	 */
 	public static long RETENTION_TIME_IN_MINUTES = 5;
 
-	private ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-	private Lock w = rwl.writeLock();
-
 	private ExecutorService pool = Executors.newFixedThreadPool(2);
 
 	private CircuitBreakManager circuitBreakManager;
 
+	/**
+	 * Not null in cluster mode, in which QPS is limited across gateway nodes
+	 */
+	private ClusterRateLimiter clusterRateLimiter;
+
 	public FlowStat() {
 		runScheduleJob();
 	}
@@ -95,6 +96,10 @@ public class FlowStat {
 		this.circuitBreakManager = circuitBreakManager;
 	}
 
+	public void setClusterRateLimiter(ClusterRateLimiter clusterRateLimiter) {
+		this.clusterRateLimiter = clusterRateLimiter;
+	}
+
 	private void runScheduleJob() {
 		pool.submit(new HousekeepJob(this));
 		pool.submit(new PeakConcurrentJob(this));
@@ -155,144 +160,142 @@ public class FlowStat {
 		if (resourceConfigs == null || resourceConfigs.size() == 0) {
 			return null;
 		}
-		w.lock();
-		try {
-			// check if exceed limit
-			for (ResourceConfig resourceConfig : resourceConfigs) {
-				long maxCon = resourceConfig.getMaxCon();
-				long maxQPS = resourceConfig.getMaxQPS();
-				if (maxCon >= 0 || maxQPS >= 0) {
-					ResourceStat resourceStat = getResourceStat(resourceConfig.getResourceId());
-					// check concurrent request
-					if (maxCon >= 0) {
-						long n = resourceStat.getConcurrentRequests().get();
-						if (n >= maxCon) {
-							resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
-							if (totalBlockFunc != null) {
-								List<ResourceConfig> parentResCfgs = totalBlockFunc.apply(resourceConfig,
-										resourceConfigs);
-								if (parentResCfgs != null && parentResCfgs.size() > 0) {
-									for (ResourceConfig pResCfg : parentResCfgs) {
-										getResourceStat(pResCfg.getResourceId())
-												.incrTotalBlockRequestToTimeSlot(curTimeSlotId);
-									}
-								}
-							}
-							return IncrRequestResult.block(resourceConfig.getResourceId(),
-									BlockType.CONCURRENT_REQUEST);
-						}
-					}
-
-					// check QPS
-					if (maxQPS >= 0) {
-						long total = resourceStat.getTimeSlot(curTimeSlotId).getCounter();
-						if (total >= maxQPS) {
-							resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
-							if (totalBlockFunc != null) {
-								List<ResourceConfig> parentResCfgs = totalBlockFunc.apply(resourceConfig,
-										resourceConfigs);
-								if (parentResCfgs != null && parentResCfgs.size() > 0) {
-									for (ResourceConfig pResCfg : parentResCfgs) {
-										getResourceStat(pResCfg.getResourceId())
-												.incrTotalBlockRequestToTimeSlot(curTimeSlotId);
-									}
-								}
-							}
-							return IncrRequestResult.block(resourceConfig.getResourceId(), BlockType.QPS);
-						}
-					}
-				}
-			}
-
-			// increase request and concurrent request
-			for (ResourceConfig resourceConfig : resourceConfigs) {
-				ResourceStat resourceStat = getResourceStat(resourceConfig.getResourceId());
-				int cons = resourceStat.getConcurrentRequests().incrementAndGet();
-				resourceStat.getTimeSlot(curTimeSlotId).updatePeakConcurrentReqeusts(cons);
-				resourceStat.getTimeSlot(curTimeSlotId).incr();
-			}
-			return IncrRequestResult.success();
-		} finally {
-			w.unlock();
+		int[] cons = new int[resourceConfigs.size()];
+		IncrRequestResult result = reserve(resourceConfigs, curTimeSlotId, totalBlockFunc, cons);
+		if (result != null) {
+			return result;
 		}
+		commit(resourceConfigs, curTimeSlotId, cons);
+		return IncrRequestResult.success();
 	}
 
+	/**
+	 * Increase concurrent request counter for given resources chain, if the
+	 * circuit breaker of the request service and path permits.
+	 * <br/>
+	 * The quota is reserved before asking the circuit breaker and rolled back if
+	 * the breaker rejects, so a request blocked by concurrent request or QPS limit
+	 * never takes the probe of a detective resume or a share of a gradual resume,
+	 * while a request rejected by the breaker holds its quota for a moment.
+	 * 
+	 * @param exchange        the request
+	 * @param resourceConfigs Resource configurations
+	 * @param curTimeSlotId   current time slot ID, it should be generated by
+	 *                        Flowstat.currentTimeSlotId()
+	 * @param totalBlockFunc  [optional] callback function for statistic of total
+	 *                        block requests of the resource and its parent resources
+	 * @return IncrRequestResult
+	 */
 	public IncrRequestResult incrRequest(ServerWebExchange exchange, List<ResourceConfig> resourceConfigs, long curTimeSlotId,
 										 BiFunction<ResourceConfig, List<ResourceConfig>, List<ResourceConfig>> totalBlockFunc) {
 		if (resourceConfigs == null || resourceConfigs.size() == 0) {
 			return null;
 		}
-		w.lock();
-		try {
-			// check if exceed limit
-			for (ResourceConfig resourceConfig : resourceConfigs) {
-				long maxCon = resourceConfig.getMaxCon();
+		int[] cons = new int[resourceConfigs.size()];
+		IncrRequestResult result = reserve(resourceConfigs, curTimeSlotId, totalBlockFunc, cons);
+		if (result != null) {
+			return result;
+		}
+
+		String service = WebUtils.getClientService(exchange);
+		String path    = WebUtils.getClientReqPath(exchange);
+		boolean permit = circuitBreakManager.permit(exchange, curTimeSlotId, this, service, path);
+		if (!permit) {
+			rollback(resourceConfigs, curTimeSlotId, resourceConfigs.size());
+			String resource = ResourceIdUtils.buildResourceId(null, null, null, service, path);
+			return IncrRequestResult.block(resource, BlockType.CIRCUIT_BREAK);
+		}
+
+		commit(resourceConfigs, curTimeSlotId, cons);
+		return IncrRequestResult.success();
+	}
+
+	/**
+	 * Reserve concurrent request and QPS quota for the resources chain without
+	 * locking, the reserved quota of preceding resources is rolled back when a
+	 * resource exceeds its limit, so the resources chain is increased all or none
+	 * 
+	 * @param cons concurrent requests of each resource after reserving
+	 * @return null if all resources are reserved, otherwise the block result
+	 */
+	private IncrRequestResult reserve(List<ResourceConfig> resourceConfigs, long curTimeSlotId,
+			BiFunction<ResourceConfig, List<ResourceConfig>, List<ResourceConfig>> totalBlockFunc, int[] cons) {
+		for (int i = 0; i < resourceConfigs.size(); i++) {
+			ResourceConfig resourceConfig = resourceConfigs.get(i);
+			ResourceStat resourceStat = getResourceStat(resourceConfig.getResourceId());
+			BlockType blockType = null;
+
+			// check concurrent request
+			long maxCon = resourceConfig.getMaxCon();
+			if (resourceConfig.isAdaptiveCon()) {
+				AdaptiveConcurrencyLimit acl = resourceStat.getAdaptiveConcurrencyLimit(maxCon);
+				acl.update(resourceStat, curTimeSlotId);
+				maxCon = acl.getLimit();
+			} else if (resourceStat.getAdaptiveConcurrencyLimit() != null) {
+				resourceStat.removeAdaptiveConcurrencyLimit();
+			}
+			int n = resourceStat.tryIncrConcurrentRequest(maxCon);
+			if (n < 0) {
+				blockType = BlockType.CONCURRENT_REQUEST;
+			} else {
+				// check QPS
 				long maxQPS = resourceConfig.getMaxQPS();
-				if (maxCon >= 0 || maxQPS >= 0) {
-					ResourceStat resourceStat = getResourceStat(resourceConfig.getResourceId());
-					// check concurrent request
-					if (maxCon >= 0) {
-						long n = resourceStat.getConcurrentRequests().get();
-						if (n >= maxCon) {
-							resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
-							if (totalBlockFunc != null) {
-								List<ResourceConfig> parentResCfgs = totalBlockFunc.apply(resourceConfig,
-										resourceConfigs);
-								if (parentResCfgs != null && parentResCfgs.size() > 0) {
-									for (ResourceConfig pResCfg : parentResCfgs) {
-										getResourceStat(pResCfg.getResourceId())
-												.incrTotalBlockRequestToTimeSlot(curTimeSlotId);
-									}
-								}
-							}
-							return IncrRequestResult.block(resourceConfig.getResourceId(),
-									BlockType.CONCURRENT_REQUEST);
-						}
+				TimeSlot timeSlot = resourceStat.getTimeSlot(curTimeSlotId);
+				if (maxQPS > 0 && clusterRateLimiter != null) {
+					int r = clusterRateLimiter.tryAcquire(resourceConfig.getResourceId(), maxQPS);
+					if (r == ClusterRateLimiter.ACQUIRED) {
+						// a leased token is not given back if a later resource blocks the request
+						timeSlot.incr();
+					} else if (r == ClusterRateLimiter.DENIED || !timeSlot.tryIncr(maxQPS)) {
+						resourceStat.getConcurrentRequests().decrementAndGet();
+						blockType = BlockType.QPS;
 					}
-
-					// check QPS
-					if (maxQPS >= 0) {
-						long total = resourceStat.getTimeSlot(curTimeSlotId).getCounter();
-						if (total >= maxQPS) {
-							resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
-							if (totalBlockFunc != null) {
-								List<ResourceConfig> parentResCfgs = totalBlockFunc.apply(resourceConfig,
-										resourceConfigs);
-								if (parentResCfgs != null && parentResCfgs.size() > 0) {
-									for (ResourceConfig pResCfg : parentResCfgs) {
-										getResourceStat(pResCfg.getResourceId())
-												.incrTotalBlockRequestToTimeSlot(curTimeSlotId);
-									}
-								}
-							}
-							return IncrRequestResult.block(resourceConfig.getResourceId(), BlockType.QPS);
-						}
+				} else if (maxQPS >= 0) {
+					if (!timeSlot.tryIncr(maxQPS)) {
+						resourceStat.getConcurrentRequests().decrementAndGet();
+						blockType = BlockType.QPS;
 					}
+				} else {
+					timeSlot.incr();
 				}
 			}
 
-			for (ResourceConfig resourceConfig : resourceConfigs) {
-				getResourceStat(resourceConfig.getResourceId());
+			if (blockType != null) {
+				rollback(resourceConfigs, curTimeSlotId, i);
+				resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
+				if (totalBlockFunc != null) {
+					List<ResourceConfig> parentResCfgs = totalBlockFunc.apply(resourceConfig, resourceConfigs);
+					if (parentResCfgs != null && parentResCfgs.size() > 0) {
+						for (ResourceConfig pResCfg : parentResCfgs) {
+							getResourceStat(pResCfg.getResourceId()).incrTotalBlockRequestToTimeSlot(curTimeSlotId);
+						}
+					}
+				}
+				return IncrRequestResult.block(resourceConfig.getResourceId(), blockType);
 			}
+			cons[i] = n;
+		}
+		return null;
+	}
 
-			String service = WebUtils.getClientService(exchange);
-			String path    = WebUtils.getClientReqPath(exchange);
-			String resource = ResourceIdUtils.buildResourceId(null, null, null, service, path);
-			boolean permit = circuitBreakManager.permit(exchange, curTimeSlotId, this, service, path);
-			if (!permit) {
-				return IncrRequestResult.block(resource, BlockType.CIRCUIT_BREAK);
-			}
+	/**
+	 * Roll back the reserved quota of the first n resources
+	 */
+	private void rollback(List<ResourceConfig> resourceConfigs, long curTimeSlotId, int n) {
+		for (int i = 0; i < n; i++) {
+			ResourceStat resourceStat = getResourceStat(resourceConfigs.get(i).getResourceId());
+			resourceStat.getConcurrentRequests().decrementAndGet();
+			resourceStat.getTimeSlot(curTimeSlotId).decr();
+		}
+	}
 
-			// increase request and concurrent request
-			for (ResourceConfig resourceConfig : resourceConfigs) {
-				ResourceStat resourceStat = getResourceStat(resourceConfig.getResourceId());
-				int cons = resourceStat.getConcurrentRequests().incrementAndGet();
-				resourceStat.getTimeSlot(curTimeSlotId).updatePeakConcurrentReqeusts(cons);
-				resourceStat.getTimeSlot(curTimeSlotId).incr();
-			}
-			return IncrRequestResult.success();
-		} finally {
-			w.unlock();
+	/**
+	 * Update peak concurrent requests after all resources are reserved
+	 */
+	private void commit(List<ResourceConfig> resourceConfigs, long curTimeSlotId, int[] cons) {
+		for (int i = 0; i < resourceConfigs.size(); i++) {
+			ResourceStat resourceStat = getResourceStat(resourceConfigs.get(i).getResourceId());
+			resourceStat.getTimeSlot(curTimeSlotId).updatePeakConcurrentReqeusts(cons[i]);
 		}
 	}
 
@@ -469,6 +472,19 @@ public class FlowStat {
 	 * @return
 	 */
 	public TimeWindowStat getTimeWindowStat(String resourceId, long startTimeMilli, long endTimeMilli) {
+		return getTimeWindowStat(resourceId, startTimeMilli, endTimeMilli, true);
+	}
+
+	/**
+	 * Returns the timeWindowStat of the specific resource in the specified time
+	 * window [startTimeMilli, endTimeMilli)
+	 * 
+	 * @param startTimeMilli included
+	 * @param endTimeMilli   excluded
+	 * @param rtPercentiles  whether to compute response time percentiles
+	 * @return
+	 */
+	public TimeWindowStat getTimeWindowStat(String resourceId, long startTimeMilli, long endTimeMilli, boolean rtPercentiles) {
 		long startSlotId = (startTimeMilli / INTERVAL) * INTERVAL;
 		long endSlotId = (endTimeMilli / INTERVAL) * INTERVAL;
 
@@ -477,7 +493,7 @@ public class FlowStat {
 		}
 		if (resourceStats.containsKey(resourceId)) {
 			ResourceStat resourceStat = resourceStats.get(resourceId);
-			return resourceStat.getTimeWindowStat(startSlotId, endSlotId);
+			return resourceStat.getTimeWindowStat(startSlotId, endSlotId, rtPercentiles);
 		}
 		return null;
 	}
@@ -572,35 +588,7 @@ public class FlowStat {
 		@Override
 		public void run() {
 			long n = FlowStat.RETENTION_TIME_IN_MINUTES * 60 * 1000 / FlowStat.INTERVAL * FlowStat.INTERVAL;
-			long lastSlotId = stat.currentTimeSlotId() - n;
 			while (true) {
-				long slotId = stat.currentTimeSlotId() - n;
-				/*if (log.isDebugEnabled()) {
-					log.debug("{} - {} resource stats size {}", lastSlotId, slotId, stat.resourceStats.size());
-				}
-				Set<Map.Entry<String, ResourceStat>> es = stat.resourceStats.entrySet();
-				for (Entry<String, ResourceStat> e : es) {
-					String resourceId = e.getKey();
-					ConcurrentMap<Long, TimeSlot> timeSlots = e.getValue().getTimeSlots();
-					if (log.isDebugEnabled()) {
-						log.debug("{} - {} {} has {} timeslot", lastSlotId, slotId, resourceId, timeSlots.size());
-					}
-				}*/
-				for (long i = lastSlotId; i < slotId;) {
-					Set<Entry<String, ResourceStat>> entrys = stat.resourceStats.entrySet();
-					for (Entry<String, ResourceStat> entry : entrys) {
-						String resourceId = entry.getKey();
-						ConcurrentMap<Long, TimeSlot> timeSlots = entry.getValue().getTimeSlots();
-						/*if (log.isDebugEnabled()) {
-							log.debug("{} - {} {} remove {} timeslot", lastSlotId, slotId, resourceId, i);
-						}*/
-						timeSlots.remove(i);
-					}
-					i = i + FlowStat.INTERVAL;
-				}
-				lastSlotId = slotId;
-				// log.debug("housekeeping done");
-
 				if (cleanResource) {
 					long currentTimeSlot = stat.currentTimeSlotId();
 					long startTimeSlot = currentTimeSlot - n;
@@ -613,8 +601,8 @@ public class FlowStat {
 						boolean noTraffic = true;
 						long timeSlot = startTimeSlot;
 						for (; timeSlot < currentTimeSlot; timeSlot += FlowStat.INTERVAL) {
-							int reqCnt = resourceStat.getTimeSlot(timeSlot).getCounter();
-							if (reqCnt > 0) {
+							TimeSlot ts = resourceStat.peekTimeSlot(timeSlot);
+							if (ts != null && ts.getCounter() > 0) {
 								noTraffic = false;
 								break;
 							}
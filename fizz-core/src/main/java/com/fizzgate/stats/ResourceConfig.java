@@ -55,6 +55,12 @@ public class ResourceConfig {
 	 */
 	private long maxQPS = -1L;
 
+	/**
+	 * Whether the maximum concurrent request is adjusted by the response time, then
+	 * maxCon is the upper bound of it, see {@link AdaptiveConcurrencyLimit}
+	 */
+	private boolean adaptiveCon = false;
+
 
 	//---------------------------------------------------------------------
 	// Degrade rule
@@ -18,12 +18,10 @@
 package com.fizzgate.stats;
 
 import java.math.BigDecimal;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,9 +43,13 @@ public class ResourceStat {
 	private String resourceId;
 
 	/**
-	 * Request count of time slot, the beginning timestamp(timeId) as key
+	 * Ring of time slots indexed by (timeSlotId / INTERVAL) % length, it covers
+	 * RETENTION_TIME_IN_MINUTES and a time slot is reset lazily when it is reused
+	 * by a later time slot ID
 	 */
-	private ConcurrentMap<Long, TimeSlot> timeSlots = new ConcurrentHashMap<>(256);
+	private final AtomicReferenceArray<TimeSlot> timeSlots;
+
+	private final ReentrantLock resetLock = new ReentrantLock();
 
 	/**
 	 * Concurrent requests
@@ -55,13 +57,25 @@ public class ResourceStat {
 //	private AtomicLong concurrentRequests = new AtomicLong(0);
 	private AtomicInteger concurrentRequests = new AtomicInteger(0);
 
-	private ReentrantReadWriteLock rwl1 = new ReentrantReadWriteLock();
-	private ReentrantReadWriteLock rwl2 = new ReentrantReadWriteLock();
-	private Lock w1 = rwl1.writeLock();
-	private Lock w2 = rwl2.writeLock();
+	/**
+	 * Adaptive concurrent request limit, null if the resource has no adaptive limit
+	 */
+	private volatile AdaptiveConcurrencyLimit adaptiveConcurrencyLimit;
+
+	/**
+	 * Completed requests whose response time in millis is larger than it are
+	 * counted as slow, -1 if slow requests are not counted
+	 */
+	private volatile long slowRt = -1;
 
 	public ResourceStat(String resourceId) {
 		this.resourceId = resourceId;
+		int n = (int) (FlowStat.RETENTION_TIME_IN_MINUTES * 60 * 1000 / FlowStat.INTERVAL);
+		this.timeSlots = new AtomicReferenceArray<>(n);
+	}
+
+	private int index(long timeSlotId) {
+		return (int) ((timeSlotId / FlowStat.INTERVAL) % timeSlots.length());
 	}
 
 	/**
@@ -71,20 +85,53 @@ public class ResourceStat {
 	 * @return
 	 */
 	public TimeSlot getTimeSlot(long timeSlotId) {
-		if (timeSlots.containsKey(timeSlotId)) {
-			return timeSlots.get(timeSlotId);
-		} else {
-			TimeSlot timeSlot = new TimeSlot(timeSlotId);
-			timeSlot.setPeakConcurrentRequests(this.concurrentRequests.get());
-			TimeSlot old = timeSlots.putIfAbsent(timeSlotId, timeSlot);
-			if (old != null) {
-				return old;
-			} else {
+		int idx = index(timeSlotId);
+		for (;;) {
+			TimeSlot timeSlot = timeSlots.get(idx);
+			if (timeSlot == null) {
+				timeSlot = new TimeSlot(timeSlotId);
+				timeSlot.setPeakConcurrentRequests(this.concurrentRequests.get());
+				if (timeSlots.compareAndSet(idx, null, timeSlot)) {
+					return timeSlot;
+				}
+				continue;
+			}
+			long id = timeSlot.getId();
+			if (id == timeSlotId) {
 				return timeSlot;
 			}
+			if (id > timeSlotId) {
+				// out of retention time, the statistic is discarded
+				return new TimeSlot(timeSlotId);
+			}
+			if (resetLock.tryLock()) {
+				try {
+					if (timeSlot.getId() < timeSlotId) {
+						timeSlot.reset(timeSlotId, this.concurrentRequests.get());
+					}
+				} finally {
+					resetLock.unlock();
+				}
+			} else {
+				Thread.yield();
+			}
 		}
 	}
 
+	/**
+	 * Returns Time slot of the specified time slot ID without creating it
+	 * 
+	 * @param timeSlotId
+	 * @return null if there is no statistic of the time slot
+	 */
+	public TimeSlot peekTimeSlot(long timeSlotId) {
+		TimeSlot timeSlot = timeSlots.get(index(timeSlotId));
+		if (timeSlot != null && timeSlot.getId() == timeSlotId) {
+			return timeSlot;
+		}
+		return null;
+	}
+
 	/**
 	 * Increase concurrent request counter of the resource
 	 * 
@@ -94,26 +141,70 @@ public class ResourceStat {
 	 *         resource
 	 */
 	public boolean incrConcurrentRequest(long timeSlotId, Long maxCon) {
-		w1.lock();
-		try {
-			boolean isExceeded = false;
-			if (maxCon != null && maxCon.intValue() > 0) {
-				int n = this.concurrentRequests.get();
-				if (n >= maxCon.longValue()) {
-					isExceeded = true;
-					this.incrBlockRequestToTimeSlot(timeSlotId);
-				} else {
-					int conns = this.concurrentRequests.incrementAndGet();
-					this.getTimeSlot(timeSlotId).updatePeakConcurrentReqeusts(conns);
+		int conns;
+		if (maxCon != null && maxCon.intValue() > 0) {
+			conns = this.tryIncrConcurrentRequest(maxCon);
+			if (conns < 0) {
+				this.incrBlockRequestToTimeSlot(timeSlotId);
+				return false;
+			}
+		} else {
+			conns = this.concurrentRequests.incrementAndGet();
+		}
+		this.getTimeSlot(timeSlotId).updatePeakConcurrentReqeusts(conns);
+		return true;
+	}
+
+	/**
+	 * Increase concurrent request counter of the resource if it is less than the
+	 * specified maximum, the peak concurrent requests of time slot is not updated
+	 * 
+	 * @param maxCon maximum concurrent requests, negative for no limit
+	 * @return concurrent requests after increasing, or -1 if exceed the maximum
+	 */
+	public int tryIncrConcurrentRequest(long maxCon) {
+		if (maxCon < 0) {
+			return this.concurrentRequests.incrementAndGet();
+		}
+		for (;;) {
+			int n = this.concurrentRequests.get();
+			if (n >= maxCon) {
+				return -1;
+			}
+			if (this.concurrentRequests.compareAndSet(n, n + 1)) {
+				return n + 1;
+			}
+		}
+	}
+
+	public AdaptiveConcurrencyLimit getAdaptiveConcurrencyLimit() {
+		return adaptiveConcurrencyLimit;
+	}
+
+	/**
+	 * Returns adaptive concurrent request limit of the resource, it is created if
+	 * absent
+	 * 
+	 * @param maxLimit maximum of the limit, not positive for no maximum
+	 */
+	public AdaptiveConcurrencyLimit getAdaptiveConcurrencyLimit(long maxLimit) {
+		AdaptiveConcurrencyLimit acl = adaptiveConcurrencyLimit;
+		if (acl == null) {
+			synchronized (this) {
+				acl = adaptiveConcurrencyLimit;
+				if (acl == null) {
+					acl = new AdaptiveConcurrencyLimit(maxLimit);
+					adaptiveConcurrencyLimit = acl;
 				}
-			} else {
-				int conns = this.concurrentRequests.incrementAndGet();
-				this.getTimeSlot(timeSlotId).updatePeakConcurrentReqeusts(conns);
 			}
-			return !isExceeded;
-		} finally {
-			w1.unlock();
+		} else {
+			acl.setMaxLimit(maxLimit);
 		}
+		return acl;
+	}
+
+	public void removeAdaptiveConcurrencyLimit() {
+		adaptiveConcurrencyLimit = null;
 	}
 
 	/**
@@ -150,33 +241,17 @@ public class ResourceStat {
 	 * @return false if exceed the maximum RPS of the specified resource
 	 */
 	public boolean incrRequestToTimeSlot(long timeSlotId, Long maxRPS) {
-		w2.lock();
-		try {
-			boolean isExceeded = false;
-			if (maxRPS != null && maxRPS.intValue() > 0) {
-//				TimeWindowStat timeWindowStat = this.getCurrentTimeWindowStat(resourceId, curTimeSlotId);
-//				if (new BigDecimal(maxRPS).compareTo(timeWindowStat.getRps()) <= 0) {
-//					isExceeded = true;
-//					resourceStat.incrBlockRequestToTimeSlot(curTimeSlotId);
-//				}
-
-				// time slot unit is one second
-				long total = this.getTimeSlot(timeSlotId).getCounter();
-				long max = Long.valueOf(maxRPS);
-				if (total >= max) {
-					isExceeded = true;
-					this.incrBlockRequestToTimeSlot(timeSlotId);
-					this.decrConcurrentRequest(timeSlotId);
-				} else {
-					this.getTimeSlot(timeSlotId).incr();
-				}
-			} else {
-				this.getTimeSlot(timeSlotId).incr();
+		if (maxRPS != null && maxRPS.intValue() > 0) {
+			// time slot unit is one second
+			if (!this.getTimeSlot(timeSlotId).tryIncr(maxRPS)) {
+				this.incrBlockRequestToTimeSlot(timeSlotId);
+				this.decrConcurrentRequest(timeSlotId);
+				return false;
 			}
-			return !isExceeded;
-		} finally {
-			w2.unlock();
+		} else {
+			this.getTimeSlot(timeSlotId).incr();
 		}
+		return true;
 	}
 
 	public void updateCircuitBreakState(long timeSlot, CircuitBreaker.State current, CircuitBreaker.State target) {
@@ -208,19 +283,19 @@ public class ResourceStat {
 //	}
 
 	public void incr2xxStatusCount(long timeSlot) {
-		getTimeSlot(timeSlot).get2xxStatusCount().incrementAndGet();
+		getTimeSlot(timeSlot).incr2xxStatusCount();
 	}
 
 	public void incr4xxStatusCount(long timeSlot) {
-		getTimeSlot(timeSlot).get4xxStatusCount().incrementAndGet();
+		getTimeSlot(timeSlot).incr4xxStatusCount();
 	}
 
 	public void incr5xxStatusCount(long timeSlot) {
-		getTimeSlot(timeSlot).get5xxStatusCount().incrementAndGet();
+		getTimeSlot(timeSlot).incr5xxStatusCount();
 	}
 
 	public void incr504StatusCount(long timeSlot) {
-		getTimeSlot(timeSlot).get504StatusCount().incrementAndGet();
+		getTimeSlot(timeSlot).incr504StatusCount();
 	}
 
 	/**
@@ -232,7 +307,45 @@ public class ResourceStat {
 	 * @return
 	 */
 	public void addRequestRT(long timeSlotId, long rt, boolean isSuccess) {
-		this.getTimeSlot(timeSlotId).addRequestRT(rt, isSuccess);
+		TimeSlot timeSlot = this.getTimeSlot(timeSlotId);
+		timeSlot.addRequestRT(rt, isSuccess);
+		long s = slowRt;
+		if (s >= 0 && rt > s) {
+			timeSlot.incrSlowRequests();
+		}
+	}
+
+	public long getSlowRt() {
+		return slowRt;
+	}
+
+	/**
+	 * Counts the completed requests whose response time is larger than the
+	 * specified one as slow from now on
+	 * 
+	 * @param slowRt response time threshold in millis, -1 to stop counting
+	 */
+	public void setSlowRt(long slowRt) {
+		this.slowRt = slowRt;
+	}
+
+	/**
+	 * Returns completed requests of the specified time window whose response time
+	 * is larger than the slow response time, see {@link #setSlowRt(long)}
+	 * 
+	 * @param startSlotId
+	 * @param endSlotId
+	 * @return
+	 */
+	public long getSlowRequests(long startSlotId, long endSlotId) {
+		long n = 0;
+		for (long i = startSlotId; i < endSlotId; i = i + FlowStat.INTERVAL) {
+			TimeSlot timeSlot = peekTimeSlot(i);
+			if (timeSlot != null) {
+				n = n + timeSlot.getSlowRequests();
+			}
+		}
+		return n;
 	}
 
 	/**
@@ -243,6 +356,20 @@ public class ResourceStat {
 	 * @return
 	 */
 	public TimeWindowStat getTimeWindowStat(long startSlotId, long endSlotId) {
+		return getTimeWindowStat(startSlotId, endSlotId, true);
+	}
+
+	/**
+	 * Returns statistic of the specified time window
+	 * 
+	 * @param startSlotId
+	 * @param endSlotId
+	 * @param rtPercentiles whether to merge the response time histograms of the
+	 *                      time slots for percentiles, false for the callers on the
+	 *                      request path which don't need them
+	 * @return
+	 */
+	public TimeWindowStat getTimeWindowStat(long startSlotId, long endSlotId, boolean rtPercentiles) {
 		TimeWindowStat tws = new TimeWindowStat();
 
 		tws.setStartTime(startSlotId);
@@ -264,26 +391,33 @@ public class ResourceStat {
 		int _5xxStatus = 0;
 		int _504Status = 0;
 
+		RtHistogram rtHistogram = rtPercentiles ? new RtHistogram() : null;
+
 		for (long i = startSlotId; i < endSlotId;) {
-			if (timeSlots.containsKey(i)) {
-				TimeSlot timeSlot = timeSlots.get(i);
-				min = timeSlot.getMin() < min ? timeSlot.getMin() : min;
-				max = timeSlot.getMax() > max ? timeSlot.getMax() : max;
-				peakConcurrences = timeSlot.getPeakConcurrentRequests() > peakConcurrences
-						? timeSlot.getPeakConcurrentRequests()
+			TimeSlot timeSlot = peekTimeSlot(i);
+			if (timeSlot != null) {
+				TimeSlot.Snapshot slot = timeSlot.snapshot();
+				min = slot.min < min ? slot.min : min;
+				max = slot.max > max ? slot.max : max;
+				peakConcurrences = slot.peakConcurrentRequests > peakConcurrences
+						? slot.peakConcurrentRequests
 						: peakConcurrences;
-				peakRps = timeSlot.getCounter() > peakRps ? timeSlot.getCounter() : peakRps;
-				totalReqs = totalReqs + timeSlot.getCounter();
-				totalRt = totalRt + timeSlot.getTotalRt();
-				errors = errors + timeSlot.getErrors();
-				blockReqs = blockReqs + timeSlot.getBlockRequests();
-				totalBlockReqs = totalBlockReqs + timeSlot.getTotalBlockRequests();
-				compReqs = compReqs + timeSlot.getCompReqs();
-
-				_2xxStatus = _2xxStatus + timeSlot.get2xxStatusCount().get();
-				_4xxStatus = _4xxStatus + timeSlot.get4xxStatusCount().get();
-				_5xxStatus = _5xxStatus + timeSlot.get5xxStatusCount().get();
-				_504Status = _504Status + timeSlot.get504StatusCount().get();
+				peakRps = slot.counter > peakRps ? slot.counter : peakRps;
+				totalReqs = totalReqs + slot.counter;
+				totalRt = totalRt + slot.totalRt;
+				errors = errors + slot.errors;
+				blockReqs = blockReqs + slot.blockRequests;
+				totalBlockReqs = totalBlockReqs + slot.totalBlockRequests;
+				compReqs = compReqs + slot.compReqs;
+
+				_2xxStatus = _2xxStatus + slot._2xxStatusCount;
+				_4xxStatus = _4xxStatus + slot._4xxStatusCount;
+				_5xxStatus = _5xxStatus + slot._5xxStatusCount;
+				_504Status = _504Status + slot._504StatusCount;
+
+				if (rtPercentiles) {
+					timeSlot.mergeRtHistogram(rtHistogram);
+				}
 			}
 			i = i + FlowStat.INTERVAL;
 		}
@@ -305,6 +439,13 @@ public class ResourceStat {
 		if (compReqs > 0) {
 			tws.setAvgRt(totalRt / compReqs);
 		}
+
+		if (rtPercentiles && rtHistogram.getTotal() > 0) {
+			tws.setP50(rtHistogram.getValueAtPercentile(50, min, max));
+			tws.setP90(rtHistogram.getValueAtPercentile(90, min, max));
+			tws.setP99(rtHistogram.getValueAtPercentile(99, min, max));
+			tws.setP999(rtHistogram.getValueAtPercentile(99.9, min, max));
+		}
 		
 		if (totalReqs > 0) {
 			BigDecimal nsec = new BigDecimal(endSlotId - startSlotId).divide(new BigDecimal(1000), 5,
@@ -330,14 +471,6 @@ public class ResourceStat {
 		this.resourceId = resourceId;
 	}
 
-	public ConcurrentMap<Long, TimeSlot> getTimeSlots() {
-		return timeSlots;
-	}
-
-	public void setTimeSlots(ConcurrentMap<Long, TimeSlot> timeSlots) {
-		this.timeSlots = timeSlots;
-	}
-
 	public AtomicInteger getConcurrentRequests() {
 		return concurrentRequests;
 	}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.stats;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Response time histogram with log-linear buckets like HdrHistogram: response
+ * times below 16ms have their own bucket, every power of two above is split
+ * into 8 buckets, so a percentile is at most 12.5% larger than the real value.
+ * Response times from 2^20ms (about 17 minutes) fall into the last bucket.
+ * <br/>
+ * A time slot records into an {@link AtomicIntegerArray} of {@link #BUCKETS}
+ * counters, the histograms of the time slots of a time window are merged into
+ * an instance of this class, which is not thread safe.
+ * 
+ * @author Francis Dong
+ *
+ */
+public class RtHistogram {
+
+	private static final int SUB_BUCKET_BITS  = 3;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int LINEAR_BITS      = SUB_BUCKET_BITS + 1;
+
+	private static final int MAX_BITS         = 20;
+
+	/**
+	 * Bucket count of a histogram
+	 */
+	public static final int  BUCKETS          = (MAX_BITS - LINEAR_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final long[]     counts           = new long[BUCKETS];
+
+	private long             total;
+
+	/**
+	 * Returns bucket index of the response time
+	 * 
+	 * @param rt response time in milliseconds
+	 */
+	public static int index(long rt) {
+		if (rt < (1 << LINEAR_BITS)) {
+			return rt < 0 ? 0 : (int) rt;
+		}
+		if (rt >= (1L << MAX_BITS)) {
+			return BUCKETS - 1;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(rt) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (rt >>> shift);
+	}
+
+	/**
+	 * Returns the largest response time of the bucket
+	 * 
+	 * @param index bucket index
+	 */
+	public static long highestValue(int index) {
+		if (index < (1 << LINEAR_BITS)) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long sub = index - (shift << SUB_BUCKET_BITS);
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record response time into the counters of a time slot
+	 */
+	public static void record(AtomicIntegerArray counters, long rt) {
+		counters.incrementAndGet(index(rt));
+	}
+
+	/**
+	 * Add the counters of a time slot to this histogram
+	 */
+	public void add(AtomicIntegerArray counters) {
+		for (int i = 0; i < BUCKETS; i++) {
+			int c = counters.get(i);
+			if (c > 0) {
+				counts[i] += c;
+				total += c;
+			}
+		}
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the response time which the specified percentage of the recorded
+	 * response times are less than or equal to, or null if nothing is recorded
+	 * 
+	 * @param percentile between 0 and 100, e.g. 99.9
+	 * @param min        minimum response time, used to bound the result
+	 * @param max        maximum response time, used to bound the result
+	 */
+	public Long getValueAtPercentile(double percentile, long min, long max) {
+		if (total == 0) {
+			return null;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += counts[i];
+			if (n >= rank) {
+				long v = highestValue(i);
+				return v > max ? max : (v < min ? min : v);
+			}
+		}
+		return max;
+	}
+}
@@ -16,57 +16,88 @@
  */
 package com.fizzgate.stats;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.fizzgate.stats.circuitbreaker.CircuitBreaker;
 
 /**
+ * Counters of a time slot, they are updated from all event loop threads, so the
+ * statistic counters are striped {@link LongAdder}s which do not contend on one
+ * cache line, while the counters whose updated value is used for a decision are
+ * updated by CAS.
  * 
  * @author Francis Dong
  *
  */
 public class TimeSlot {
 
+	private static final AtomicIntegerFieldUpdater<TimeSlot> COUNTER_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TimeSlot.class, "counter");
+
+	private static final AtomicIntegerFieldUpdater<TimeSlot> PEAK_CONCURRENT_REQUESTS_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TimeSlot.class, "peakConcurrentRequests");
+
+	private static final AtomicLongFieldUpdater<TimeSlot>    MIN_UPDATER = AtomicLongFieldUpdater.newUpdater(TimeSlot.class, "min");
+
+	private static final AtomicLongFieldUpdater<TimeSlot>    MAX_UPDATER = AtomicLongFieldUpdater.newUpdater(TimeSlot.class, "max");
+
+	private static final AtomicIntegerFieldUpdater<TimeSlot> GRADUAL_RESUME_NUM_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TimeSlot.class, "gradualResumeNum");
+
+	private static final AtomicIntegerFieldUpdater<TimeSlot> RESUME_TRAFFIC_FACTOR_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TimeSlot.class, "resumeTrafficFactor");
+
+	private static final AtomicIntegerFieldUpdater<TimeSlot> GRADUAL_REJECT_NUM_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TimeSlot.class, "gradualRejectNum");
+
+	private static final AtomicReferenceFieldUpdater<TimeSlot, AtomicIntegerArray> RT_HISTOGRAM_UPDATER = AtomicReferenceFieldUpdater.newUpdater(TimeSlot.class, AtomicIntegerArray.class, "rtHistogram");
+
 	/**
 	 * Time slot start timestamp as ID
 	 */
-	private long id;
+	private volatile long id;
 
 	/**
-	 * Request counter
+	 * Request counter, it is compared with the QPS limit before increasing
 	 */
-//	private AtomicLong counter = new AtomicLong();
 	private volatile int counter = 0;
 
 	/**
 	 * Error request counter
 	 */
-//	private AtomicLong errors = new AtomicLong();
-	private volatile int errors = 0;
+	private final LongAdder errors = new LongAdder();
 
 	/**
 	 * Minimum response time
 	 */
-	private long min = Long.MAX_VALUE;
+	private volatile long min = Long.MAX_VALUE;
 
 	/**
 	 * Maximum response time
 	 */
-	private long max = Long.MIN_VALUE;
+	private volatile long max = Long.MIN_VALUE;
 
 	/**
 	 * Total response time
 	 */
-//	private AtomicLong totalRt = new AtomicLong(0);
-	private volatile int totalRt = 0;
+	private final LongAdder totalRt = new LongAdder();
 	
 	/**
 	 * Completed Request counter
 	 */
-//	private AtomicLong compReqs = new AtomicLong();
-	private volatile int compReqs = 0;
+	private final LongAdder compReqs = new LongAdder();
+
+	/**
+	 * Response time histogram, see {@link RtHistogram}, it is allocated by the
+	 * first completed request, so idle time slots take no memory for it
+	 */
+	private volatile AtomicIntegerArray rtHistogram;
+
+	/**
+	 * Completed requests slower than the slow response time of the resource, see
+	 * {@link ResourceStat#setSlowRt(long)}
+	 */
+	private final LongAdder slowRequests = new LongAdder();
 
 	/**
 	 * Peak concurrent requests
@@ -76,51 +107,61 @@ public class TimeSlot {
 	/**
 	 * Block requests <br/>
 	 */
-//	private AtomicLong blockRequests = new AtomicLong(0);
-	private volatile int blockRequests = 0;
+	private final LongAdder blockRequests = new LongAdder();
 	
 	/**
 	 * Total block requests of the resource and its underlying resources <br/>
 	 */
-//	private AtomicLong totalBlockRequests = new AtomicLong(0);
-	private volatile int totalBlockRequests = 0;
+	private final LongAdder totalBlockRequests = new LongAdder();
+
+	private final AtomicReference<CircuitBreaker.State> circuitBreakState   = new AtomicReference<>(CircuitBreaker.State.CLOSED);
 
-	private AtomicReference<CircuitBreaker.State> circuitBreakState   = new AtomicReference<>(CircuitBreaker.State.CLOSED);
+	private final LongAdder                             circuitBreakNum     = new LongAdder();
 
-//	private AtomicLong                            circuitBreakNum     = new AtomicLong(0);
-	private volatile int                          circuitBreakNum     = 0;
+	private volatile int                                gradualResumeNum    = 0;
 
-//	private AtomicLong                            gradualResumeNum    = new AtomicLong(0);
-	private volatile int                          gradualResumeNum    = 0;
+	private volatile int                                resumeTrafficFactor = 1;
 
-//	private AtomicInteger                         resumeTrafficFactor = new AtomicInteger(1);
-	private volatile int                          resumeTrafficFactor = 1;
+	private volatile int                                gradualRejectNum    = 0;
 
-//	private AtomicLong                            gradualRejectNum    = new AtomicLong(0);
-	private volatile int                          gradualRejectNum    = 0;
+	private final LongAdder                             _2xxStatusCount     = new LongAdder();
 
-	private AtomicInteger                         _2xxStatusCount     = new AtomicInteger(0);
+	private final LongAdder                             _4xxStatusCount     = new LongAdder();
 
-	private AtomicInteger                         _4xxStatusCount     = new AtomicInteger(0);
+	private final LongAdder                             _5xxStatusCount     = new LongAdder();
+
+	private final LongAdder                             _504StatusCount     = new LongAdder();
+
+	public int get2xxStatusCount() {
+		return _2xxStatusCount.intValue();
+	}
+
+	public void incr2xxStatusCount() {
+		_2xxStatusCount.increment();
+	}
 
-	private AtomicInteger                         _5xxStatusCount     = new AtomicInteger(0);
+	public int get4xxStatusCount() {
+		return _4xxStatusCount.intValue();
+	}
 
-	private AtomicInteger                         _504StatusCount     = new AtomicInteger(0);
+	public void incr4xxStatusCount() {
+		_4xxStatusCount.increment();
+	}
 
-	public AtomicInteger get2xxStatusCount() {
-		return _2xxStatusCount;
+	public int get5xxStatusCount() {
+		return _5xxStatusCount.intValue();
 	}
 
-	public AtomicInteger get4xxStatusCount() {
-		return _4xxStatusCount;
+	public void incr5xxStatusCount() {
+		_5xxStatusCount.increment();
 	}
 
-	public AtomicInteger get5xxStatusCount() {
-		return _5xxStatusCount;
+	public int get504StatusCount() {
+		return _504StatusCount.intValue();
 	}
 
-	public AtomicInteger get504StatusCount() {
-		return _504StatusCount;
+	public void incr504StatusCount() {
+		_504StatusCount.increment();
 	}
 
 	public AtomicReference<CircuitBreaker.State> getCircuitBreakState() {
@@ -128,15 +169,16 @@ public class TimeSlot {
 	}
 
 	public int getCircuitBreakNum() {
-		return circuitBreakNum;
+		return circuitBreakNum.intValue();
 	}
 
 	public void setCircuitBreakNum(int v) {
-		circuitBreakNum = v;
+		circuitBreakNum.reset();
+		circuitBreakNum.add(v);
 	}
 
 	public void incrCircuitBreakNum() {
-		++circuitBreakNum;
+		circuitBreakNum.increment();
 	}
 
 	public int getGradualResumeNum() {
@@ -144,11 +186,11 @@ public class TimeSlot {
 	}
 
 	public int incrGradualResumeNum() {
-		return ++gradualResumeNum;
+		return GRADUAL_RESUME_NUM_UPDATER.incrementAndGet(this);
 	}
 
 	public int decrGradualResumeNum() {
-		return --gradualResumeNum;
+		return GRADUAL_RESUME_NUM_UPDATER.decrementAndGet(this);
 	}
 
 	public int getResumeTrafficFactor() {
@@ -156,7 +198,7 @@ public class TimeSlot {
 	}
 
 	public void incrResumeTrafficFactor() {
-		++resumeTrafficFactor;
+		RESUME_TRAFFIC_FACTOR_UPDATER.incrementAndGet(this);
 	}
 
 	public int getGradualRejectNum() {
@@ -164,11 +206,11 @@ public class TimeSlot {
 	}
 
 	public int incrGradualRejectNum() {
-		return ++gradualRejectNum;
+		return GRADUAL_REJECT_NUM_UPDATER.incrementAndGet(this);
 	}
 
 	public int decrGradualRejectNum() {
-		return --gradualRejectNum;
+		return GRADUAL_REJECT_NUM_UPDATER.decrementAndGet(this);
 	}
 
 
@@ -180,13 +222,74 @@ public class TimeSlot {
 		return id;
 	}
 
+	/**
+	 * Reset time slot for reusing it as the specified time slot ID, the ID is
+	 * updated after all statistics are cleared
+	 * 
+	 * @param id                 new time slot ID
+	 * @param concurrentRequests current concurrent requests as the initial peak
+	 */
+	public void reset(long id, int concurrentRequests) {
+		counter = 0;
+		errors.reset();
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+		totalRt.reset();
+		compReqs.reset();
+		AtomicIntegerArray h = rtHistogram;
+		if (h != null) {
+			for (int i = 0; i < RtHistogram.BUCKETS; i++) {
+				h.lazySet(i, 0);
+			}
+		}
+		slowRequests.reset();
+		peakConcurrentRequests = concurrentRequests;
+		blockRequests.reset();
+		totalBlockRequests.reset();
+		circuitBreakState.set(CircuitBreaker.State.CLOSED);
+		circuitBreakNum.reset();
+		gradualResumeNum = 0;
+		resumeTrafficFactor = 1;
+		gradualRejectNum = 0;
+		_2xxStatusCount.reset();
+		_4xxStatusCount.reset();
+		_5xxStatusCount.reset();
+		_504StatusCount.reset();
+		this.id = id;
+	}
+
 	/**
 	 * Add request to time slot
 	 * 
 	 */
 	public void incr() {
-		// counter.incrementAndGet();
-		++counter;
+		COUNTER_UPDATER.incrementAndGet(this);
+	}
+
+	/**
+	 * Add request to time slot if the counter is less than the specified maximum
+	 * 
+	 * @param max maximum requests of this time slot
+	 * @return false if the counter already reaches the maximum
+	 */
+	public boolean tryIncr(long max) {
+		for (;;) {
+			int n = counter;
+			if (n >= max) {
+				return false;
+			}
+			if (COUNTER_UPDATER.compareAndSet(this, n, n + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Remove request from time slot, used to roll back a request added by incr or tryIncr
+	 * 
+	 */
+	public void decr() {
+		COUNTER_UPDATER.decrementAndGet(this);
 	}
 
 	/**
@@ -195,14 +298,43 @@ public class TimeSlot {
 	 * @param rt
 	 * @param isSuccess Whether the request is success or not
 	 */
-	public synchronized void addRequestRT(long rt, boolean isSuccess) {
-		totalRt += rt;
-		++compReqs;
+	public void addRequestRT(long rt, boolean isSuccess) {
+		totalRt.add(rt);
+		compReqs.increment();
 		if (!isSuccess) {
-			++errors;
+			errors.increment();
+		}
+		long v;
+		while (rt < (v = min) && !MIN_UPDATER.compareAndSet(this, v, rt)) {
+		}
+		while (rt > (v = max) && !MAX_UPDATER.compareAndSet(this, v, rt)) {
+		}
+		AtomicIntegerArray h = rtHistogram;
+		if (h == null) {
+			RT_HISTOGRAM_UPDATER.compareAndSet(this, null, new AtomicIntegerArray(RtHistogram.BUCKETS));
+			h = rtHistogram;
+		}
+		RtHistogram.record(h, rt);
+	}
+
+	public int getSlowRequests() {
+		return slowRequests.intValue();
+	}
+
+	public void incrSlowRequests() {
+		slowRequests.increment();
+	}
+
+	/**
+	 * Add the response time histogram of this time slot to the specified histogram
+	 * 
+	 * @param histogram histogram of a time window
+	 */
+	public void mergeRtHistogram(RtHistogram histogram) {
+		AtomicIntegerArray h = rtHistogram;
+		if (h != null) {
+			histogram.add(h);
 		}
-		min = rt < min ? rt : min;
-		max = rt > max ? rt : max;
 	}
 
 	/**
@@ -210,9 +342,24 @@ public class TimeSlot {
 	 * 
 	 * @param concurrentRequests Current concurrent requests
 	 */
-	public synchronized void updatePeakConcurrentReqeusts(int concurrentRequests) {
-		peakConcurrentRequests = concurrentRequests > peakConcurrentRequests ? concurrentRequests
-				: peakConcurrentRequests;
+	public void updatePeakConcurrentReqeusts(int concurrentRequests) {
+		for (;;) {
+			int peak = peakConcurrentRequests;
+			if (concurrentRequests <= peak || PEAK_CONCURRENT_REQUESTS_UPDATER.compareAndSet(this, peak, concurrentRequests)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the statistic of this time slot, each counter is read once, so the
+	 * values are consistent with each other as long as the time slot is not updated
+	 * concurrently
+	 * 
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
 	}
 
 	public void setId(long id) {
@@ -243,12 +390,13 @@ public class TimeSlot {
 		this.max = max;
 	}
 
-	public int getTotalRt() {
-		return totalRt;
+	public long getTotalRt() {
+		return totalRt.sum();
 	}
 
-	public void setTotalRt(int totalRt) {
-		this.totalRt = totalRt;
+	public void setTotalRt(long totalRt) {
+		this.totalRt.reset();
+		this.totalRt.add(totalRt);
 	}
 
 	public long getPeakConcurrentRequests() {
@@ -260,43 +408,101 @@ public class TimeSlot {
 	}
 
 	public int getErrors() {
-		return errors;
+		return errors.intValue();
 	}
 
 	public void setErrors(int errors) {
-		this.errors = errors;
+		this.errors.reset();
+		this.errors.add(errors);
 	}
 
 	public int getBlockRequests() {
-		return blockRequests;
+		return blockRequests.intValue();
 	}
 
 	public void setBlockRequests(int blockRequests) {
-		this.blockRequests = blockRequests;
+		this.blockRequests.reset();
+		this.blockRequests.add(blockRequests);
 	}
 
 	public void incrBlockRequests() {
-		++blockRequests;
+		blockRequests.increment();
 	}
 
 	public int getCompReqs() {
-		return compReqs;
+		return compReqs.intValue();
 	}
 
 	public void setCompReqs(int compReqs) {
-		this.compReqs = compReqs;
+		this.compReqs.reset();
+		this.compReqs.add(compReqs);
 	}
 
 	public int getTotalBlockRequests() {
-		return totalBlockRequests;
+		return totalBlockRequests.intValue();
 	}
 
 	public void incrTotalBlockRequests() {
-		++totalBlockRequests;
+		totalBlockRequests.increment();
 	}
 
 	public void setTotalBlockRequests(int totalBlockRequests) {
-		this.totalBlockRequests = totalBlockRequests;
+		this.totalBlockRequests.reset();
+		this.totalBlockRequests.add(totalBlockRequests);
+	}
+
+	/**
+	 * Statistic of a time slot
+	 */
+	public static class Snapshot {
+
+		public final long id;
+
+		public final long counter;
+
+		public final long errors;
+
+		public final long min;
+
+		public final long max;
+
+		public final long totalRt;
+
+		public final long compReqs;
+
+		public final long peakConcurrentRequests;
+
+		public final long blockRequests;
+
+		public final long totalBlockRequests;
+
+		public final long circuitBreakNum;
+
+		public final int  _2xxStatusCount;
+
+		public final int  _4xxStatusCount;
+
+		public final int  _5xxStatusCount;
+
+		public final int  _504StatusCount;
+
+		private Snapshot(TimeSlot timeSlot) {
+			id                     = timeSlot.id;
+			counter                = timeSlot.counter;
+			errors                 = timeSlot.errors.sum();
+			min                    = timeSlot.min;
+			max                    = timeSlot.max;
+			totalRt                = timeSlot.totalRt.sum();
+			compReqs               = timeSlot.compReqs.sum();
+			peakConcurrentRequests = timeSlot.peakConcurrentRequests;
+			blockRequests          = timeSlot.blockRequests.sum();
+			totalBlockRequests     = timeSlot.totalBlockRequests.sum();
+			circuitBreakNum        = timeSlot.circuitBreakNum.sum();
+			_2xxStatusCount        = timeSlot._2xxStatusCount.intValue();
+			_4xxStatusCount        = timeSlot._4xxStatusCount.intValue();
+			_5xxStatusCount        = timeSlot._5xxStatusCount.intValue();
+			_504StatusCount        = timeSlot._504StatusCount.intValue();
+		}
 	}
 
 }
@@ -50,6 +50,26 @@ public class TimeWindowStat {
 	 */
 	private Long avgRt;
 
+	/**
+	 * 50th percentile response time
+	 */
+	private Long p50;
+
+	/**
+	 * 90th percentile response time
+	 */
+	private Long p90;
+
+	/**
+	 * 99th percentile response time
+	 */
+	private Long p99;
+
+	/**
+	 * 99.9th percentile response time
+	 */
+	private Long p999;
+
 	/**
 	 * Total requests
 	 */
@@ -151,6 +171,38 @@ public class TimeWindowStat {
 		this.avgRt = avgRt;
 	}
 
+	public Long getP50() {
+		return p50;
+	}
+
+	public void setP50(Long p50) {
+		this.p50 = p50;
+	}
+
+	public Long getP90() {
+		return p90;
+	}
+
+	public void setP90(Long p90) {
+		this.p90 = p90;
+	}
+
+	public Long getP99() {
+		return p99;
+	}
+
+	public void setP99(Long p99) {
+		this.p99 = p99;
+	}
+
+	public Long getP999() {
+		return p999;
+	}
+
+	public void setP999(Long p999) {
+		this.p999 = p999;
+	}
+
 	public Long getTotal() {
 		return total;
 	}
@@ -234,6 +234,8 @@ public class CircuitBreakManager {
         cb.breakStrategy        = serviceDefaultCircuitBreaker.breakStrategy;
         cb.errorRatioThreshold  = serviceDefaultCircuitBreaker.errorRatioThreshold;
         cb.totalErrorThreshold  = serviceDefaultCircuitBreaker.totalErrorThreshold;
+        cb.slowRtThreshold      = serviceDefaultCircuitBreaker.slowRtThreshold;
+        cb.slowRatioThreshold   = serviceDefaultCircuitBreaker.slowRatioThreshold;
         cb.minRequests          = serviceDefaultCircuitBreaker.minRequests;
         cb.monitorDuration      = serviceDefaultCircuitBreaker.monitorDuration;
         cb.breakDuration        = serviceDefaultCircuitBreaker.breakDuration;
@@ -53,7 +53,7 @@ public class CircuitBreaker {
 
     // not use strategy pattern
     public enum BreakStrategy {
-        TOTAL_ERRORS, ERRORS_RATIO
+        TOTAL_ERRORS, ERRORS_RATIO, SLOW_REQUESTS_RATIO
     }
 
     public enum ResumeStrategy {
@@ -135,6 +135,13 @@ public class CircuitBreaker {
 
     public int           totalErrorThreshold;
 
+    /**
+     * request whose response time in millis is larger than it is slow
+     */
+    public long          slowRtThreshold;
+
+    public float         slowRatioThreshold;
+
     public int           monitorDuration;
 
     public int           minRequests;
@@ -175,6 +182,7 @@ public class CircuitBreaker {
             @JsonProperty("strategy")            int    strategy,
             @JsonProperty("ratioThreshold")      float  ratioThreshold,
             @JsonProperty("exceptionCount")      int    exceptionCount,
+            @JsonProperty("slowRt")              long   slowRt,
             @JsonProperty("minRequestCount")     int    minRequestCount,
             @JsonProperty("timeWindow")          int    timeWindow,
             @JsonProperty("statInterval")        int    statInterval,
@@ -211,6 +219,10 @@ public class CircuitBreaker {
         if (strategy == 1) {
             breakStrategy = BreakStrategy.ERRORS_RATIO;
             errorRatioThreshold = ratioThreshold;
+        } else if (strategy == 3) {
+            breakStrategy = BreakStrategy.SLOW_REQUESTS_RATIO;
+            slowRatioThreshold = ratioThreshold;
+            slowRtThreshold = slowRt;
         } else {
             breakStrategy = BreakStrategy.TOTAL_ERRORS;
             totalErrorThreshold = exceptionCount;
@@ -343,7 +355,15 @@ public class CircuitBreaker {
     private boolean permitCallInClosedState(long currentTimeWindow, FlowStat flowStat) {
 
         long endTimeWindow = currentTimeWindow + 1000;
-        TimeWindowStat timeWindowStat = flowStat.getTimeWindowStat(resource, stateStartTime, endTimeWindow);
+        ResourceStat resourceStat = null;
+        if (breakStrategy == BreakStrategy.SLOW_REQUESTS_RATIO) {
+            // the requests completed from now on are counted, so the ones before the first check of the rule are not
+            resourceStat = flowStat.getResourceStat(resource);
+            if (resourceStat.getSlowRt() != slowRtThreshold) {
+                resourceStat.setSlowRt(slowRtThreshold);
+            }
+        }
+        TimeWindowStat timeWindowStat = flowStat.getTimeWindowStat(resource, stateStartTime, endTimeWindow, false);
         long reqCount = timeWindowStat.getCompReqs();
         long errCount = timeWindowStat.getErrors();
 
@@ -366,12 +386,33 @@ public class CircuitBreaker {
                 return false;
             }
         }
+        if (breakStrategy == BreakStrategy.SLOW_REQUESTS_RATIO && reqCount >= minRequests) {
+            long slowCount = resourceStat.getSlowRequests(timeWindow(stateStartTime), endTimeWindow);
+            BigDecimal slows    = new BigDecimal(slowCount);
+            BigDecimal requests = new BigDecimal(reqCount);
+            float p = slows.divide(requests, 2, RoundingMode.HALF_UP).floatValue();
+            if (p - slowRatioThreshold >= 0) {
+                LOGGER.debug("{} current time window {} request count {} >= min requests {} slow ratio {} >= slow ratio threshold {}, reject request",
+                             resource, currentTimeWindow, reqCount, minRequests, p, slowRatioThreshold);
+                transit(State.CLOSED, State.OPEN, currentTimeWindow, flowStat);
+                resourceStat.incrCircuitBreakNum(currentTimeWindow);
+                return false;
+            }
+        }
 
         LOGGER.debug("{} current time window {} in {} which start at {}, permit request", resource, currentTimeWindow, stateRef.get(), stateStartTime);
 
         return true;
     }
 
+    /**
+     * @return true if the request with the rt is slow for this circuit breaker,
+     *         then a detective request is regarded as failed
+     */
+    public boolean isSlow(long rt) {
+        return breakStrategy == BreakStrategy.SLOW_REQUESTS_RATIO && rt > slowRtThreshold;
+    }
+
     @Override
     public String toString() {
         return JacksonUtils.writeValueAsString(this);
@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.fizzgate.stats.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster wide QPS limit: each gateway node leases a batch of tokens from a token bucket shared in redis,
+ * and serves requests from the local lease, so only refills hit redis.
+ * <p>
+ * A node falls back to its own QPS limit, like cluster mode is off, when it holds no fresh lease,
+ * e.g. the first request of a resource or redis is slow or unavailable.
+ *
+ * @author hongqiaowei
+ */
+
+public class ClusterRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRateLimiter.class);
+
+    public  static final int    ACQUIRED          = 1;
+
+    public  static final int    DENIED            = 0;
+
+    /**
+     * No fresh lease, the QPS should be limited locally
+     */
+    public  static final int    LOCAL             = -1;
+
+    private static final String BUCKET_KEY_PREFIX = "fizz_rate_limit_bucket:";
+
+    /**
+     * KEYS[1]: bucket, ARGV[1]: rate, ARGV[2]: tokens wanted, ARGV[3]: now in millis, return tokens granted.
+     * The bucket refills rate tokens per second and holds rate tokens at most.
+     * It refills by the redis clock, so skewed node clocks don't matter, which needs the script replicated by
+     * effects because of TIME, the default since redis 5 and enabled by replicate_commands since 3.2;
+     * ARGV[3], the node clock, is used only on older redis.
+     */
+    private static final RedisScript<Long> LEASE_SCRIPT = RedisScript.of(
+            "local rate = tonumber(ARGV[1]) " +
+            "local want = tonumber(ARGV[2]) " +
+            "local now  = tonumber(ARGV[3]) " +
+            "if redis.replicate_commands then " +
+            "  redis.replicate_commands() " +
+            "  local t = redis.call('TIME') " +
+            "  now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+            "end " +
+            "local b = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(b[1]) " +
+            "local ts = tonumber(b[2]) " +
+            "if tokens == nil or ts == nil then " +
+            "  tokens = rate " +
+            "  ts = now " +
+            "elseif now > ts then " +
+            "  tokens = math.min(rate, tokens + (now - ts) * rate / 1000) " +
+            "  ts = now " +
+            "end " +
+            "local grant = math.min(want, math.floor(tokens)) " +
+            "tokens = tokens - grant " +
+            "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts)) " +
+            "redis.call('PEXPIRE', KEYS[1], 60000) " +
+            "return grant",
+            Long.class
+    );
+
+    private final ReactiveStringRedisTemplate rt;
+
+    private final int                         leasePercent;
+
+    private final long                        leaseMillis;
+
+    private final long                        redisTimeoutMillis;
+
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>(64);
+
+    /**
+     * @param leasePercent       tokens of a lease, in percentage of the QPS limit
+     * @param leaseMillis        how long leased tokens are valid
+     * @param redisTimeoutMillis refill is treated as failed if redis doesn't respond in time
+     */
+    public ClusterRateLimiter(ReactiveStringRedisTemplate rt, int leasePercent, long leaseMillis, long redisTimeoutMillis) {
+        this.rt                 = rt;
+        this.leasePercent       = leasePercent;
+        this.leaseMillis        = leaseMillis;
+        this.redisTimeoutMillis = redisTimeoutMillis;
+    }
+
+    /**
+     * @return {@link #ACQUIRED}, {@link #DENIED} or {@link #LOCAL}
+     */
+    public int tryAcquire(String resourceId, long maxQPS) {
+        Lease lease = leases.get(resourceId);
+        if (lease == null) {
+            lease = leases.computeIfAbsent(resourceId, Lease::new);
+        }
+        return lease.tryAcquire(maxQPS, System.currentTimeMillis());
+    }
+
+    long getLeaseTokens(String resourceId) {
+        Lease lease = leases.get(resourceId);
+        return lease == null ? 0 : lease.tokens.get();
+    }
+
+    private class Lease {
+
+        private final String        resourceId;
+
+        private final List<String>  keys;
+
+        private final AtomicLong    tokens         = new AtomicLong(0);
+
+        private final AtomicBoolean refilling      = new AtomicBoolean(false);
+
+        /**
+         * The leased tokens are valid before the time
+         */
+        private volatile long       expireTime     = 0;
+
+        /**
+         * The last refill got less tokens than wanted, requests are denied after the lease is used up
+         */
+        private volatile boolean    exhausted      = false;
+
+        /**
+         * No refill before the time, after the bucket exhausted or redis unavailable
+         */
+        private volatile long       nextRefillTime = 0;
+
+        Lease(String resourceId) {
+            this.resourceId = resourceId;
+            this.keys       = Collections.singletonList(BUCKET_KEY_PREFIX + resourceId);
+        }
+
+        int tryAcquire(long maxQPS, long now) {
+            if (now >= expireTime) {
+                tokens.set(0);
+                refill(maxQPS, now);
+                return LOCAL;
+            }
+            long batch = batch(maxQPS);
+            while (true) {
+                long n = tokens.get();
+                if (n <= 0) {
+                    refill(maxQPS, now);
+                    return exhausted ? DENIED : LOCAL;
+                }
+                if (tokens.compareAndSet(n, n - 1)) {
+                    if (n - 1 <= batch >> 1) {
+                        refill(maxQPS, now);
+                    }
+                    return ACQUIRED;
+                }
+            }
+        }
+
+        private long batch(long maxQPS) {
+            return Math.max(1, maxQPS * leasePercent / 100);
+        }
+
+        private void refill(long maxQPS, long now) {
+            if (now < nextRefillTime || !refilling.compareAndSet(false, true)) {
+                return;
+            }
+            long want = batch(maxQPS);
+            List<String> args = Arrays.asList(String.valueOf(maxQPS), String.valueOf(want), String.valueOf(now));
+            rt.execute(LEASE_SCRIPT, keys, args)
+              .next()
+              .timeout(Duration.ofMillis(redisTimeoutMillis))
+              .subscribe(
+                      grant -> {
+                          long t = System.currentTimeMillis();
+                          if (t >= expireTime) {
+                              tokens.set(grant);
+                          } else {
+                              tokens.addAndGet(grant);
+                          }
+                          expireTime = t + leaseMillis;
+                          exhausted  = grant < want;
+                          if (exhausted) {
+                              // it takes 1000 / maxQPS millis for the bucket to refill one token
+                              nextRefillTime = t + Math.max(1, 1000 / Math.max(1, maxQPS));
+                          }
+                          refilling.set(false);
+                      },
+                      throwable -> {
+                          nextRefillTime = System.currentTimeMillis() + leaseMillis;
+                          expireTime     = 0;
+                          refilling.set(false);
+                          log.warn("lease {} tokens from redis fail, limit QPS locally", resourceId, throwable);
+                      },
+                      () -> refilling.compareAndSet(true, false)
+              );
+        }
+    }
+}
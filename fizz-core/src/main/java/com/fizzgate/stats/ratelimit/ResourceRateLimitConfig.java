@@ -67,6 +67,11 @@ public class ResourceRateLimitConfig {
 
     public  long    concurrents = -1L;
 
+    /**
+     * concurrents is adjusted by the response time, and the configured value is the upper bound
+     */
+    private boolean adaptiveConcurrents = false;
+
     public  String  responseType;
 
     public  String  responseContent;
@@ -75,6 +80,14 @@ public class ResourceRateLimitConfig {
         return enable;
     }
 
+    public boolean isAdaptiveConcurrents() {
+        return adaptiveConcurrents;
+    }
+
+    public void setAdaptiveConcurrents(int v) {
+        adaptiveConcurrents = v == 1;
+    }
+
     public void setDeleted(int v) {
         if (v == 1) {
             isDeleted = true;
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.config.AccessLogConfig;
+import com.fizzgate.filter.AccessLogFilter;
+import com.fizzgate.log.AccessLogWriter;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link AccessLogFilter} per request, disabled vs enabled, with the access logs written and dropped
+ * in each iteration, run by
+ * <pre>
+ * mvn test -pl fizz-core -am -P benchmark -Dtest=AccessLogBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author hongqiaowei
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AccessLogBenchmark {
+
+    private static final WebFilterChain chain = exchange -> Mono.empty();
+
+    @Param({"false", "true"})
+    public boolean                      enable;
+
+    private Path                        dir;
+
+    private AccessLogConfig             config;
+
+    private AccessLogFilter             filter;
+
+    private MockServerWebExchange       exchange;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("access-log-benchmark");
+        config = new AccessLogConfig();
+        config.setEnable(enable);
+        config.setFile(dir.resolve("access.log").toString());
+        config.setBufferSize(64 * 1024);
+        config.init();
+        filter = new AccessLogFilter();
+        ReflectionTestUtils.setField(filter, "accessLogConfig", config);
+        exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/proxy/xservice/ypath?a=b").header("fizz-appid", "app1")
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        config.destroy();
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> p.toFile().delete());
+        }
+        Files.delete(dir);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Logs {
+
+        public  long written;
+
+        public  long dropped;
+
+        private long writtenBefore, droppedBefore;
+
+        @Setup(Level.Iteration)
+        public void setup(AccessLogBenchmark b) {
+            AccessLogWriter w = b.config.getWriter();
+            if (w != null) {
+                writtenBefore = w.getWritten();
+                droppedBefore = w.getDropped();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown(AccessLogBenchmark b) {
+            AccessLogWriter w = b.config.getWriter();
+            if (w != null) {
+                written = w.getWritten() - writtenBefore;
+                dropped = w.getDropped() - droppedBefore;
+            }
+        }
+    }
+
+    @Benchmark
+    public Void filter(Logs logs) {
+        return filter.filter(exchange, chain).block();
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(AccessLogBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.stats.FlowStat;
+import com.fizzgate.stats.IncrRequestResult;
+import com.fizzgate.stats.ResourceConfig;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission and completion of a request through a global, service, api and app resource chain by
+ * {@link FlowStat#incrRequest(List, long)} and {@link FlowStat#addRequestRT(List, long, long, boolean, HttpStatus)},
+ * which are the same before the lock-free admission path, so checking out the previous FlowStat and running
+ * the benchmark again compares the two implementations, run by
+ * <pre>
+ * mvn test -pl fizz-core -am -P benchmark -Dtest=FlowStatBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author Francis Dong
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FlowStatBenchmark {
+
+    private FlowStat             stat;
+
+    private List<ResourceConfig> resourceConfigs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stat = new FlowStat(false, false);
+        resourceConfigs = new ArrayList<>();
+        resourceConfigs.add(new ResourceConfig("benchmark_global",  -1L,       -1L));
+        resourceConfigs.add(new ResourceConfig("benchmark_service", 1000000,   -1L));
+        resourceConfigs.add(new ResourceConfig("benchmark_api",     1000000,   Long.MAX_VALUE));
+        resourceConfigs.add(new ResourceConfig("benchmark_app",     -1L,       Long.MAX_VALUE));
+    }
+
+    private IncrRequestResult request() {
+        long slotId = stat.currentTimeSlotId();
+        IncrRequestResult result = stat.incrRequest(resourceConfigs, slotId);
+        if (result.isSuccess()) {
+            stat.addRequestRT(resourceConfigs, slotId, 10, true, HttpStatus.OK);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public IncrRequestResult request1Thread() {
+        return request();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public IncrRequestResult request8Threads() {
+        return request();
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(FlowStatBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.plugin.auth.ApiConfig;
+import com.fizzgate.util.UrlTransformUtils;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewriting a request path to the backend path by {@link UrlTransformUtils#transform(String, String, String)} vs by
+ * {@link ApiConfig#transform(String)}, which uses the compiled path rewrite template, run by
+ * <pre>
+ * mvn test -pl fizz-core -am -P benchmark -Dtest=PathRewriteBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author hongqiaowei
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PathRewriteBenchmark {
+
+    private static final String[][] ROUTES = {
+            // frontend path, backend path, request path
+            {"/order/{orderId}",                "/api/v1/orders/{orderId}",              "/order/20230102123"},
+            {"/user/{uid}/address/{aid}",       "/inner/users/{uid}/addresses/{aid}",    "/user/10086/address/3"},
+            {"/proxy/**",                       "/{$1}",                                 "/proxy/static/js/app.js"},
+            {"/goods/*/detail",                 "/goods-service/detail/{$1}",            "/goods/987/detail"}
+    };
+
+    @Param({"0", "1", "2", "3"})
+    public int        route;
+
+    private String    frontendPath;
+
+    private String    backendPath;
+
+    private String    reqPath;
+
+    private ApiConfig apiConfig;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        frontendPath = ROUTES[route][0];
+        backendPath  = ROUTES[route][1];
+        reqPath      = ROUTES[route][2];
+        apiConfig = new ApiConfig();
+        apiConfig.setPath(frontendPath);
+        apiConfig.backendPath = backendPath;
+    }
+
+    @Benchmark
+    public String urlTransformUtils() {
+        return UrlTransformUtils.transform(frontendPath, backendPath, reqPath);
+    }
+
+    @Benchmark
+    public String pathRewriteTemplate() {
+        return apiConfig.transform(reqPath);
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(PathRewriteBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
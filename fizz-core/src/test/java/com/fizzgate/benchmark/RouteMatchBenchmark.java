@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.plugin.auth.ApiConfig;
+import com.fizzgate.plugin.auth.GatewayGroup;
+import com.fizzgate.plugin.auth.ServiceConfig;
+import com.fizzgate.util.Consts;
+import com.fizzgate.util.UrlTransformUtils;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a request path against the api configs of a service, by scanning them with the ant path matcher,
+ * as before the route trie, vs by {@link ServiceConfig#getApiConfigs(boolean, String, HttpMethod, String)}, run by
+ * <pre>
+ * mvn test -pl fizz-core -am -P benchmark -Dtest=RouteMatchBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author hongqiaowei
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteMatchBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int              routes;
+
+    private List<ApiConfig> apiConfigs;
+
+    private ServiceConfig   serviceConfig;
+
+    private String[]        paths;
+
+    private int             next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        apiConfigs = new ArrayList<>(routes);
+        paths = new String[routes];
+        serviceConfig = new ServiceConfig("svc");
+        for (int i = 0; i < routes; i++) {
+            String pattern;
+            switch (i % 4) {
+                case 0:
+                    pattern = "/module" + i + "/resource/list";
+                    paths[i] = pattern;
+                    break;
+                case 1:
+                    pattern = "/module" + i + "/resource/{id}";
+                    paths[i] = "/module" + i + "/resource/123";
+                    break;
+                case 2:
+                    pattern = "/module" + i + "/{type}/items/*";
+                    paths[i] = "/module" + i + "/book/items/456";
+                    break;
+                default:
+                    pattern = "/module" + i + "/**";
+                    paths[i] = "/module" + i + "/x/y/z";
+            }
+            ApiConfig ac = new ApiConfig();
+            ac.id = i + 1;
+            ac.service = "svc";
+            ac.setPath(pattern);
+            ac.fizzMethod = i % 2 == 0 ? HttpMethod.GET : ApiConfig.ALL_METHOD;
+            apiConfigs.add(ac);
+            serviceConfig.add(ac);
+        }
+    }
+
+    @Benchmark
+    public int antPathMatcher() {
+        String path = paths[next++ % routes];
+        String path0 = path;
+        if (!path.equals(Consts.S.FORWARD_SLASH_STR)) {
+            int lastCharPos = path.length() - 1;
+            if (path.charAt(lastCharPos) == Consts.S.FORWARD_SLASH) {
+                path0 = path.substring(0, lastCharPos);
+            } else {
+                path0 = path + Consts.S.FORWARD_SLASH;
+            }
+        }
+        int n = 0;
+        for (ApiConfig ac : apiConfigs) {
+            if (ac.dedicatedLine || (ac.fizzMethod != HttpMethod.GET && ac.fizzMethod != ApiConfig.ALL_METHOD)) {
+                continue;
+            }
+            String pathPattern = ac.path;
+            if (pathPattern.equals(path) || pathPattern.equals(path0)
+                    || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path) || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path0)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int trie() {
+        return serviceConfig.getApiConfigs(false, GatewayGroup.DEFAULT, HttpMethod.GET, paths[next++ % routes]).size();
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(RouteMatchBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
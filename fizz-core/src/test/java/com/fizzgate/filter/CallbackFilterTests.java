@@ -0,0 +1,113 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.fizzgate.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.fizzgate.plugin.auth.ApiConfig;
+import com.fizzgate.plugin.auth.AuthPluginFilter;
+import com.fizzgate.proxy.Route;
+import com.fizzgate.spring.http.server.reactive.ext.FizzServerHttpRequestDecorator;
+import com.fizzgate.util.Result;
+import com.fizzgate.util.WebUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class CallbackFilterTests {
+
+    private static final int    CHUNK_SIZE = 64 * 1024;
+
+    private static final int    CHUNKS     = 100 * 1024 * 1024 / CHUNK_SIZE;
+
+    private static final byte[] CHUNK      = new byte[CHUNK_SIZE];
+
+    private final AtomicBoolean bodySubscribed = new AtomicBoolean(false);
+
+    private ServerWebExchange exchange(Route route) {
+        DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> body = Flux.range(0, CHUNKS)
+                                    .map(i -> (DataBuffer) bufferFactory.wrap(CHUNK))
+                                    .doOnSubscribe(s -> bodySubscribed.set(true));
+        MockServerHttpRequest request = MockServerHttpRequest.post("/svc/upload").body(body);
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(WebUtils.ROUTE, route);
+        ApiConfig ac = new ApiConfig();
+        ac.type = route.type;
+        exchange.getAttributes().put(WebUtils.FILTER_CONTEXT, new HashMap<String, FilterResult>());
+        Map<String, Object> data = new HashMap<>();
+        data.put(AuthPluginFilter.RESULT, Result.succ(ac));
+        WebUtils.transmitSuccessFilterResult(exchange, AuthPluginFilter.AUTH_PLUGIN_FILTER, data);
+        return exchange;
+    }
+
+    @Test
+    void streamBodyOfProxyRouteTest() {
+        ServerWebExchange exchange = exchange(new Route().type(ApiConfig.Type.SERVICE_DISCOVERY));
+        ServerHttpRequest original = exchange.getRequest();
+        AtomicLong bytes = new AtomicLong(0);
+
+        new CallbackFilter().filter(exchange, e -> {
+                                        assertFalse(bodySubscribed.get());
+                                        assertSame(original, e.getRequest());
+                                        return e.getRequest().getBody()
+                                                             .doOnNext(
+                                                                     b -> {
+                                                                         // the upload buffers reach backend as they are, no copy
+                                                                         assertSame(CHUNK, b.asByteBuffer().array());
+                                                                         bytes.addAndGet(b.readableByteCount());
+                                                                     }
+                                                             )
+                                                             .then();
+                                    })
+                            .block();
+
+        assertEquals(100L * 1024 * 1024, bytes.get());
+    }
+
+    @Test
+    void streamBodyOfRetryRouteTest() {
+        // FizzWebClient retains the body for retrying
+        Route route = new Route().type(ApiConfig.Type.SERVICE_DISCOVERY).retryCount(1);
+        ServerWebExchange exchange = exchange(route);
+        ServerHttpRequest original = exchange.getRequest();
+        new CallbackFilter().filter(exchange, e -> {
+                                        assertFalse(bodySubscribed.get());
+                                        assertFalse(e.getRequest() instanceof FizzServerHttpRequestDecorator);
+                                        assertSame(original, e.getRequest());
+                                        return Mono.empty();
+                                    })
+                            .block();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class AccessLogWriterTests {
+
+    private static final EventTranslatorTwoArg<AccessLogRecord, String, Integer> translator =
+            (r, sequence, path, fields) -> {
+                r.fields       = fields;
+                r.ts           = 1700000000000L;
+                r.traceId      = "t1";
+                r.app          = null;
+                r.service      = "xservice";
+                r.method       = "GET";
+                r.path         = path;
+                r.status       = 200;
+                r.upstream     = "10.0.0.1:8080";
+                r.reqBytes     = -1;
+                r.respBytes    = 35;
+                r.time         = 1520;
+                r.upstreamTime = 1200;
+            };
+
+    @Test
+    void writeTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("access.log");
+        AccessLogWriter writer = new AccessLogWriter(file.toString(), 1024 * 1024, 2, 16);
+        writer.write(translator, "/ypath", AccessLogRecord.ALL);
+        writer.write(translator, "/路径\"\\\n😀", AccessLogRecord.ALL);
+        writer.write(translator, "/ypath", AccessLogRecord.fields(Arrays.asList("path", "status", "gatewayTime")));
+        writer.shutdown(1000);
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("{\"ts\":1700000000000,\"traceId\":\"t1\",\"app\":null,\"service\":\"xservice\",\"method\":\"GET\",\"path\":\"/ypath\",\"status\":200," +
+                     "\"upstream\":\"10.0.0.1:8080\",\"reqBytes\":-1,\"respBytes\":35,\"time\":1520,\"upstreamTime\":1200,\"gatewayTime\":320}", lines.get(0));
+        JSONObject o = JSON.parseObject(lines.get(1));
+        assertEquals("/路径\"\\\n😀", o.getString("path"));
+        assertEquals("{\"path\":\"/ypath\",\"status\":200,\"gatewayTime\":320}", lines.get(2));
+        assertEquals(3, writer.getWritten());
+        assertEquals(0, writer.getDropped());
+    }
+
+    @Test
+    void rollTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("access.log");
+        AccessLogWriter writer = new AccessLogWriter(file.toString(), 100, 2, 16);
+        for (int i = 0; i < 5; i++) {
+            writer.write(translator, "/ypath", AccessLogRecord.fields(Arrays.asList("path", "status")));
+            Thread.sleep(50);
+        }
+        writer.shutdown(1000);
+
+        // 31 bytes a line, 3 lines a file
+        assertEquals(2, Files.readAllLines(file).size());
+        assertEquals(3, Files.readAllLines(dir.resolve("access.log.1")).size());
+        assertFalse(Files.exists(dir.resolve("access.log.2")));
+    }
+
+    @Test
+    void fieldsTest() {
+        assertEquals(AccessLogRecord.ALL, AccessLogRecord.fields(null));
+        assertEquals(AccessLogRecord.PATH | AccessLogRecord.TIME, AccessLogRecord.fields(Arrays.asList("path", "time")));
+        assertThrows(IllegalArgumentException.class, () -> AccessLogRecord.fields(Arrays.asList("path", "xx")));
+    }
+}
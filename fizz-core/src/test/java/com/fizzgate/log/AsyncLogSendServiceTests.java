@@ -0,0 +1,165 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author zhongjie
+ */
+
+public class AsyncLogSendServiceTests {
+
+    private static LogSend log(int i) {
+        return new LogSend("", "127.0.0.1", 400, (long) i, String.valueOf(i));
+    }
+
+    private static class Collector implements LogSendService {
+
+        final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(LogSend logSend) {
+            List<String> b = new ArrayList<>();
+            b.add(logSend.getContent());
+            batches.add(b);
+        }
+
+        @Override
+        public void send(List<LogSend> logSends) {
+            List<String> b = new ArrayList<>();
+            for (LogSend ls : logSends) {
+                b.add(ls.getContent());
+            }
+            batches.add(b);
+        }
+
+        List<String> all() {
+            List<String> all = new ArrayList<>();
+            batches.forEach(all::addAll);
+            return all;
+        }
+    }
+
+    @Test
+    void batchTest() throws InterruptedException {
+        Collector collector = new Collector();
+        AsyncLogSendService service = new AsyncLogSendService(collector, 1024, 10, 100);
+        for (int i = 0; i < 25; i++) {
+            service.send(log(i));
+        }
+        Thread.sleep(500);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            expected.add(String.valueOf(i));
+        }
+        assertEquals(expected, collector.all());
+        assertTrue(collector.batches.size() <= 5);
+        for (List<String> batch : collector.batches) {
+            assertTrue(batch.size() <= 10);
+        }
+        assertEquals(collector.batches.size(), service.getBatches());
+        assertEquals(0, service.getDropped());
+        service.shutdown(1000);
+    }
+
+    @Test
+    void batchIntervalTest() throws InterruptedException {
+        Collector collector = new Collector();
+        AsyncLogSendService service = new AsyncLogSendService(collector, 1024, 100, 100);
+        service.send(log(0));
+        Thread.sleep(30);
+        assertTrue(collector.batches.isEmpty());
+        Thread.sleep(300);
+        assertEquals(1, collector.batches.size());
+        service.shutdown(1000);
+    }
+
+    @Test
+    void dropTest() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Collector collector = new Collector() {
+            @Override
+            public void send(List<LogSend> logSends) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(logSends);
+            }
+        };
+        AsyncLogSendService service = new AsyncLogSendService(collector, 4, 1, 10);
+        service.send(log(0));
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++) {
+            service.send(log(i));
+        }
+        // the slot of the log being sent is not free yet
+        assertEquals(7, service.getDropped());
+        release.countDown();
+
+        service.shutdown(1000);
+        assertEquals(4, collector.all().size());
+        assertEquals("3", collector.all().get(3));
+    }
+
+    @Test
+    void failTest() throws InterruptedException {
+        Collector collector = new Collector() {
+
+            int sends = 0;
+
+            @Override
+            public void send(List<LogSend> logSends) {
+                if (++sends == 1) {
+                    throw new IllegalStateException("fail");
+                }
+                super.send(logSends);
+            }
+
+            // like redis failing to publish asynchronously
+            @Override
+            public long getFailed() {
+                return 2;
+            }
+        };
+        AsyncLogSendService service = new AsyncLogSendService(collector, 1024, 1, 10);
+        service.send(log(0));
+        service.send(log(1));
+        // shutdown busy spins on the backlog, let the sender thread run first on a single cpu
+        for (int i = 0; i < 50 && collector.batches.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        service.shutdown(1000);
+        assertEquals(1, collector.all().size());
+        assertEquals(3, service.getFailed());
+    }
+}
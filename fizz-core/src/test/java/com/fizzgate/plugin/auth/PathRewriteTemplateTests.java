@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.plugin.auth;
+
+import com.fizzgate.util.UrlTransformUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class PathRewriteTemplateTests {
+
+    private static final String[][] ROUTES = {
+            // frontend path, backend path
+            {"/a/{id}",          "/b/{id}"},
+            {"/a/{id}",          "/b/{$1}/c"},
+            {"/a/{id}/{name}",   "/b/{name}-{id}"},
+            {"/a/*",             "/b/{$1}"},
+            {"/a/**",            "/b/{$1}"},
+            {"/a/**",            "/b/x"},
+            {"/a/**/c/{id}",     "/b/{$1}/{id}/{$2}"},
+            {"/a/**/c/**",       "/b/{$2}/{$1}"},
+            {"/**/c",            "/{$1}"},
+            {"/a/{id}",          "/b/{unknown}/{id}"},
+            {"/a/{id}",          "/b/{u0}-{u1}/{id}"},
+            {"/a/{id}",          "/b/{u0}-{id}-{u1}"},
+            {"/a/{id}",          "/b/{{id}}"},
+            {"/a/{id}/{id}",     "/b/{id}"},
+            {"/a/{id:\\d+}",     "/b/{id}"},
+            {"/a/b*",            "/b/{$1}"},
+            {"/a/?",             "/b/{$1}"},
+            {"/a/{id}",          "/b/{$2}"},
+            {"/a/{id}",          "/b/{id"},
+            {"/a/{id}",          "/b/id}"}
+    };
+
+    private static final String[] PATHS = {
+            "/a/1", "/a/1/", "/a/1/2", "/a/x/c/2", "/a/x/y/c/2", "/a/c/c/c/c", "/a/", "/a", "/a//c/", "/x/c", "/c",
+            "/a/x/c/y/c/z", "/a/12", "/a/b1", "/a/$1", "/a/{x}", "/a/1#2"
+    };
+
+    @Test
+    void transformTest() {
+        for (String[] route : ROUTES) {
+            PathRewriteTemplate t = PathRewriteTemplate.compile(route[0], route[1]);
+            for (String path : PATHS) {
+                String expected;
+                try {
+                    expected = UrlTransformUtils.transform(route[0], route[1], path);
+                } catch (IllegalStateException e) {
+                    assertThrows(IllegalStateException.class, () -> t.transform(path));
+                    continue;
+                }
+                assertEquals(expected, t.transform(path), route[0] + " " + route[1] + " " + path);
+            }
+        }
+        assertTrue (PathRewriteTemplate.compile("/a/{id}", "/b/{id}").isCompiled());
+        assertTrue (PathRewriteTemplate.compile("/a/{id}", "/b/{u0}-{u1}/{id}").isCompiled());
+        assertFalse(PathRewriteTemplate.compile("/a/{id}", "/b/{u0}-{id}-{u1}").isCompiled());
+        assertFalse(PathRewriteTemplate.compile("/a/b*",   "/b/{$1}").isCompiled());
+    }
+
+    @Test
+    void transformCommonRoutesTest() {
+        String[][] routes = {
+                {"/order/{orderId}",                "/api/v1/orders/{orderId}",              "/order/20230102123"},
+                {"/user/{uid}/address/{aid}",       "/inner/users/{uid}/addresses/{aid}",    "/user/10086/address/3"},
+                {"/proxy/**",                       "/{$1}",                                 "/proxy/static/js/app.js"},
+                {"/goods/*/detail",                 "/goods-service/detail/{$1}",            "/goods/987/detail"}
+        };
+        for (String[] r : routes) {
+            PathRewriteTemplate t = PathRewriteTemplate.compile(r[0], r[1]);
+            assertTrue(t.isCompiled(), r[0] + " " + r[1]);
+            assertEquals(UrlTransformUtils.transform(r[0], r[1], r[2]), t.transform(r[2]), r[0] + " " + r[1] + " " + r[2]);
+        }
+    }
+}
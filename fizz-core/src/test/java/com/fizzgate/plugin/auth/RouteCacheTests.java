@@ -0,0 +1,107 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.plugin.auth;
+
+import com.fizzgate.util.ReflectionUtils;
+import com.fizzgate.util.Result;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class RouteCacheTests {
+
+    ApiConfigService      apiConfigService;
+
+    ApiConfig2appsService apiConfig2appsService;
+
+    GatewayGroupService   gatewayGroupService;
+
+    RouteCache            routeCache;
+
+    @BeforeEach
+    void beforeEach() {
+        apiConfigService      = new ApiConfigService();
+        apiConfig2appsService = new ApiConfig2appsService();
+        gatewayGroupService   = new GatewayGroupService();
+        routeCache            = new RouteCache(100);
+        ReflectionUtils.set(apiConfigService, "apiConfig2AppsService", apiConfig2appsService);
+        ReflectionUtils.set(apiConfigService, "gatewayGroupService",   gatewayGroupService);
+        ReflectionUtils.set(apiConfigService, "routeCache",            routeCache);
+        apiConfigService.serviceConfigMap = new HashMap<>();
+    }
+
+    private ApiConfig apiConfig(int id, String path, boolean checkApp) {
+        ApiConfig ac = new ApiConfig();
+        ac.id = id;
+        ac.service = "svc";
+        ac.setPath(path);
+        ac.fizzMethod = HttpMethod.GET;
+        ac.checkApp = checkApp;
+        apiConfigService.updateServiceConfigMap(ac, apiConfigService.serviceConfigMap);
+        return ac;
+    }
+
+    @Test
+    void appAccessCheckedOnCachedRoutesTest() {
+        apiConfig(1, "/a/{id}", false);
+        apiConfig(2, "/a/b", true);
+
+        Result<ApiConfig> r = apiConfigService.get(false, "app0", "svc", HttpMethod.GET, "/a/b");
+        assertEquals(1, r.data.id);
+        assertEquals(0, routeCache.getHitCount());
+        assertEquals(1, routeCache.getMissCount());
+
+        apiConfig2appsService.getApiConfig2appsMap().put(2, new HashSet<>(Collections.singleton("app0")));
+        r = apiConfigService.get(false, "app0", "svc", HttpMethod.GET, "/a/b");
+        assertEquals(2, r.data.id);
+        r = apiConfigService.get(false, "app1", "svc", HttpMethod.GET, "/a/b");
+        assertEquals(1, r.data.id);
+        assertEquals(2, routeCache.getHitCount());
+        assertEquals(1, routeCache.getMissCount());
+    }
+
+    @Test
+    void invalidateByVersionTest() {
+        apiConfig(1, "/a/{id}", false);
+        assertEquals(1, apiConfigService.get(false, null, "svc", HttpMethod.GET, "/a/b").data.id);
+        assertEquals(1, apiConfigService.get(false, null, "svc", HttpMethod.GET, "/a/b").data.id);
+        assertEquals(1, routeCache.getHitCount());
+
+        apiConfig(2, "/a/b", false);
+        assertEquals(1, apiConfigService.get(false, null, "svc", HttpMethod.GET, "/a/b").data.id);
+        ((AtomicLong) ReflectionUtils.get(apiConfigService, "version")).incrementAndGet();
+        assertEquals(2, apiConfigService.get(false, null, "svc", HttpMethod.GET, "/a/b").data.id);
+        assertEquals(2, routeCache.getMissCount());
+
+        ((AtomicLong) ReflectionUtils.get(gatewayGroupService, "version")).incrementAndGet();
+        assertEquals(2, apiConfigService.get(false, null, "svc", HttpMethod.GET, "/a/b").data.id);
+        assertEquals(3, routeCache.getMissCount());
+        assertEquals(2, routeCache.getHitCount());
+    }
+}
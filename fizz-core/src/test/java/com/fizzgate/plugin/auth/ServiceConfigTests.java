@@ -0,0 +1,184 @@
+package com.fizzgate.plugin.auth;
+
+import com.fizzgate.util.Consts;
+import com.fizzgate.util.UrlTransformUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class ServiceConfigTests {
+
+    private static final String[] PATTERNS = {
+            "/**", "/a", "/a/", "/a/b", "/a/b/c", "/a/*", "/a/{id}", "/a/{id}/c", "/a/*/c", "/a/**", "/a/**/c",
+            "/a/b/**", "/**/c", "/a/**/b/**", "/x/{p}/{q}", "/a/b*", "/a/{id:\\d+}", "/a/?", "/a/*.json",
+            "/a/{id}.json", "/a/**/**", "/A/b", "/a/b/c/d/e"
+    };
+
+    private static final String[] PATHS = {
+            "/", "/a", "/a/", "/a/b", "/a/b/", "/a/b/c", "/a/b/c/", "/a/x/c", "/a//c", "/a/b/x/c", "/a/1", "/a/12",
+            "/a/x.json", "/a/b/c/d/e", "/a/b/c/d/e/", "/x/1/2", "/x/1", "/x/1/2/3", "/b/c", "/c", "/A/b", "/a/bb",
+            "/a/x/b/y", "/a/b/b/b", "/z", "//", "/a/b//"
+    };
+
+    private ServiceConfig serviceConfig(List<ApiConfig> apiConfigs) {
+        ServiceConfig sc = new ServiceConfig("svc");
+        for (ApiConfig ac : apiConfigs) {
+            sc.add(ac);
+        }
+        return sc;
+    }
+
+    private ApiConfig apiConfig(int id, String path, Object method, boolean dedicatedLine) {
+        ApiConfig ac = new ApiConfig();
+        ac.id = id;
+        ac.service = "svc";
+        ac.setPath(path);
+        ac.fizzMethod = method;
+        ac.dedicatedLine = dedicatedLine;
+        return ac;
+    }
+
+    /**
+     * How path patterns were matched before the trie
+     */
+    private static Set<Integer> linearMatch(List<ApiConfig> apiConfigs, boolean dedicatedLineRequest, HttpMethod method, String path) {
+        String path0 = path;
+        if (!path.equals(Consts.S.FORWARD_SLASH_STR)) {
+            int lastCharPos = path.length() - 1;
+            char c = path.charAt(lastCharPos);
+            if (c == Consts.S.FORWARD_SLASH) {
+                path0 = path.substring(0, lastCharPos);
+            } else {
+                path0 = path + Consts.S.FORWARD_SLASH;
+            }
+        }
+        Set<Integer> result = new HashSet<>();
+        for (ApiConfig ac : apiConfigs) {
+            if (ac.dedicatedLine != dedicatedLineRequest || (ac.fizzMethod != method && ac.fizzMethod != ApiConfig.ALL_METHOD)) {
+                continue;
+            }
+            String pathPattern = ac.path;
+            if (pathPattern.equals(path) || pathPattern.equals(path0)
+                    || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path) || UrlTransformUtils.ANT_PATH_MATCHER.match(pathPattern, path0)) {
+                result.add(ac.id);
+            }
+        }
+        return result;
+    }
+
+    private static Set<Integer> ids(List<ApiConfig> apiConfigs) {
+        return apiConfigs.stream().map(ac -> ac.id).collect(Collectors.toSet());
+    }
+
+    @Test
+    void matchLikeAntPathMatcherTest() {
+        List<ApiConfig> apiConfigs = new ArrayList<>();
+        int id = 0;
+        for (String pattern : PATTERNS) {
+            apiConfigs.add(apiConfig(++id, pattern, ApiConfig.ALL_METHOD, false));
+            apiConfigs.add(apiConfig(++id, pattern, HttpMethod.GET, false));
+            apiConfigs.add(apiConfig(++id, pattern, HttpMethod.POST, true));
+        }
+        ServiceConfig sc = serviceConfig(apiConfigs);
+
+        for (String path : PATHS) {
+            for (HttpMethod method : new HttpMethod[]{HttpMethod.GET, HttpMethod.POST}) {
+                for (boolean dedicatedLineRequest : new boolean[]{false, true}) {
+                    List<ApiConfig> matched = sc.getApiConfigs(dedicatedLineRequest, GatewayGroup.DEFAULT, method, path);
+                    assertEquals(linearMatch(apiConfigs, dedicatedLineRequest, method, path), ids(matched), method + " " + path);
+                    assertEquals(ids(matched).size(), matched.size(), method + " " + path);
+                }
+            }
+        }
+    }
+
+    @Test
+    void mostSpecificFirstTest() {
+        List<ApiConfig> apiConfigs = new ArrayList<>();
+        int id = 0;
+        for (String pattern : PATTERNS) {
+            apiConfigs.add(apiConfig(++id, pattern, ApiConfig.ALL_METHOD, false));
+            apiConfigs.add(apiConfig(++id, pattern, HttpMethod.GET, false));
+        }
+        ServiceConfig sc = new ServiceConfig("svc");
+        for (ApiConfig ac : apiConfigs) {
+            sc.load(ac);
+        }
+        sc.buildPathPatternTries();
+
+        for (String path : PATHS) {
+            List<ApiConfig> matched = new ArrayList<>(sc.getApiConfigs(false, Collections.singleton(GatewayGroup.DEFAULT), HttpMethod.GET, path));
+            assertEquals(linearMatch(apiConfigs, false, HttpMethod.GET, path), ids(matched), path);
+            List<ApiConfig> sorted = new ArrayList<>(matched);
+            sorted.sort(new ApiConfigPathPatternComparator(path));
+            assertEquals(sorted, matched, path);
+        }
+    }
+
+    @Test
+    void rebuildOnChangeTest() {
+        ApiConfig ac1 = apiConfig(1, "/a/{id}", ApiConfig.ALL_METHOD, false);
+        ApiConfig ac2 = apiConfig(2, "/a/b", HttpMethod.GET, false);
+        ServiceConfig sc = serviceConfig(Arrays.asList(ac1, ac2));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), ids(sc.getApiConfigs(false, GatewayGroup.DEFAULT, HttpMethod.GET, "/a/b")));
+
+        sc.remove(ac2);
+        assertEquals(Collections.singleton(1), ids(sc.getApiConfigs(false, GatewayGroup.DEFAULT, HttpMethod.GET, "/a/b")));
+
+        sc.remove(ac1);
+        assertEquals(0, sc.getApiConfigs(false, GatewayGroup.DEFAULT, HttpMethod.GET, "/a/b").size());
+
+        ApiConfig ac3 = apiConfig(3, "/c/**", HttpMethod.GET, false);
+        ac3.gatewayGroups = new HashSet<>(Arrays.asList(GatewayGroup.DEFAULT, "gg1"));
+        sc.update(ac3);
+        assertEquals(Collections.singleton(3), ids(sc.getApiConfigs(false, "gg1", HttpMethod.GET, "/c/d")));
+        assertEquals(Collections.singleton(3), ids(sc.getApiConfigs(false, GatewayGroup.DEFAULT, HttpMethod.GET, "/c/d")));
+    }
+
+    @Test
+    void matchGeneratedRoutesTest() {
+        for (int routes : new int[]{10, 100, 1000}) {
+            List<ApiConfig> apiConfigs = new ArrayList<>(routes);
+            List<String> paths = new ArrayList<>(routes);
+            for (int i = 0; i < routes; i++) {
+                String pattern;
+                String path;
+                switch (i % 4) {
+                    case 0:
+                        pattern = "/module" + i + "/resource/list";
+                        path = pattern;
+                        break;
+                    case 1:
+                        pattern = "/module" + i + "/resource/{id}";
+                        path = "/module" + i + "/resource/123";
+                        break;
+                    case 2:
+                        pattern = "/module" + i + "/{type}/items/*";
+                        path = "/module" + i + "/book/items/456";
+                        break;
+                    default:
+                        pattern = "/module" + i + "/**";
+                        path = "/module" + i + "/x/y/z";
+                }
+                apiConfigs.add(apiConfig(i + 1, pattern, i % 2 == 0 ? HttpMethod.GET : ApiConfig.ALL_METHOD, false));
+                paths.add(path);
+            }
+            ServiceConfig sc = serviceConfig(apiConfigs);
+
+            for (String path : paths) {
+                for (HttpMethod method : new HttpMethod[]{HttpMethod.GET, HttpMethod.POST}) {
+                    List<ApiConfig> matched = sc.getApiConfigs(false, GatewayGroup.DEFAULT, method, path);
+                    assertEquals(linearMatch(apiConfigs, false, method, path), ids(matched), method + " " + path);
+                }
+            }
+        }
+    }
+}
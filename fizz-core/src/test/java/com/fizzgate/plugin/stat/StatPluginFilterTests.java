@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.plugin.stat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class StatPluginFilterTests {
+
+    @Test
+    void concurrentStatTest() throws InterruptedException {
+        StatPluginFilter filter = new StatPluginFilter();
+        long win = 1_700_000_000_000L;
+        int threads = 8, reqs = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(
+                    () -> {
+                        for (int i = 0; i < reqs; i++) {
+                            filter.getRouteStat("xservice", "GET", "/a").incr(win + i % 10_000);
+                            filter.getRouteStat("xservice", "POST", "/a").incr(win + 10_000 + i % 10_000);
+                        }
+                        latch.countDown();
+                    }
+            );
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        List<AccessStat> stats = filter.getAccessStat(win);
+        assertEquals(1, stats.size());
+        AccessStat stat = stats.get(0);
+        assertEquals("GET", stat.apiMethod);
+        assertEquals(threads * reqs, stat.reqs);
+        assertEquals(win, stat.start);
+
+        stats = filter.getAccessStat(win + 10_000);
+        assertEquals(1, stats.size());
+        assertEquals("POST", stats.get(0).apiMethod);
+        assertEquals(threads * reqs, stats.get(0).reqs);
+    }
+
+    @Test
+    void windowSwapTest() {
+        StatPluginFilter filter = new StatPluginFilter();
+        long win = 1_700_000_000_000L;
+        StatPluginFilter.RouteStat rs = filter.getRouteStat("xservice", "GET", "/a");
+        rs.incr(win);
+        rs.incr(win + 10_000);
+        rs.incr(win + 10_001);
+        // reuses the slot of the first window
+        rs.incr(win + 20_000);
+
+        assertTrue(filter.getAccessStat(win).isEmpty());
+        assertEquals(2, filter.getAccessStat(win + 10_000).get(0).reqs);
+        assertEquals(1, filter.getAccessStat(win + 20_000).get(0).reqs);
+        assertSame(rs, filter.getRouteStat("xservice", "GET", "/a"));
+
+        // idle route is removed
+        assertTrue(filter.getAccessStat(win + 50_000).isEmpty());
+        assertNotSame(rs, filter.getRouteStat("xservice", "GET", "/a"));
+    }
+}
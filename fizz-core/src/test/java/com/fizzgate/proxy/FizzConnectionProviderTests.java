@@ -0,0 +1,137 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy;
+
+import com.fizzgate.config.ProxyWebClientConfig.Pool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.internal.shaded.reactor.pool.PoolAcquirePendingLimitException;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class FizzConnectionProviderTests {
+
+    private DisposableServer       server;
+
+    private FizzConnectionProvider provider;
+
+    @BeforeEach
+    void beforeEach() {
+        server = HttpServer.create()
+                           .host("127.0.0.1")
+                           .port(0)
+                           .route(routes -> routes.get("/slow", (req, resp) -> resp.sendString(Mono.just("ok").delayElement(Duration.ofMillis(300)))))
+                           .bindNow();
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (provider != null) {
+            provider.dispose();
+        }
+        server.disposeNow();
+    }
+
+    private String get(HttpClient client, String host) {
+        return client.get()
+                     .uri("http://" + host + ':' + server.port() + "/slow")
+                     .responseContent()
+                     .aggregate()
+                     .asString()
+                     .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void hostPoolTest() throws InterruptedException {
+        Pool hostPool = new Pool();
+        hostPool.setMaxConnections(1);
+        hostPool.setPendingAcquireMaxCount(1);
+        provider = new FizzConnectionProvider("test", Pool.defaults(), Collections.emptyMap(), Collections.singletonMap("127.0.0.1:" + server.port(), hostPool));
+        HttpClient client = HttpClient.create(provider);
+
+        List<Object> results = Flux.range(0, 3)
+                                   .flatMap(i -> Mono.fromCallable(() -> (Object) get(client, "127.0.0.1")).onErrorResume(Mono::just).subscribeOn(Schedulers.elastic()))
+                                   .collectList()
+                                   .block(Duration.ofSeconds(5));
+        assertEquals(2, results.stream().filter("ok"::equals).count());
+        assertTrue(results.stream().anyMatch(r -> r instanceof PoolAcquirePendingLimitException));
+
+        // the connection is released on the event loop after the response completes
+        FizzConnectionProvider.PoolStats stats = provider.getPoolStats().get(0);
+        for (int i = 0; i < 50 && stats.active > 0; i++) {
+            Thread.sleep(20);
+            stats = provider.getPoolStats().get(0);
+        }
+        assertEquals("test-127.0.0.1:" + server.port(), stats.pool);
+        assertEquals(1, stats.maxConnections);
+        assertEquals(0, stats.active);
+        assertEquals(1, stats.idle);
+        assertEquals(0, stats.pending);
+        assertEquals(2, stats.acquires);
+        // the second acquire waits for the first response
+        assertTrue(stats.acquireMaxMillis > 200);
+    }
+
+    @Test
+    void servicePoolTest() {
+        Pool servicePool = new Pool();
+        servicePool.setMaxConnections(2);
+        provider = new FizzConnectionProvider("test", Pool.defaults(), Collections.singletonMap("xservice", servicePool), Collections.emptyMap());
+        HttpClient client = HttpClient.create(provider);
+
+        assertEquals("ok", get(client, "localhost"));
+        provider.bind("xservice", "http://127.0.0.1:" + server.port() + "/slow");
+        assertEquals("ok", get(client, "127.0.0.1"));
+
+        List<String> pools = provider.getPoolStats().stream().map(ps -> ps.pool + ' ' + ps.maxConnections).sorted().collect(Collectors.toList());
+        assertEquals(2, pools.size());
+        assertEquals("test 500", pools.get(0));
+        assertEquals("test-xservice 2", pools.get(1));
+    }
+
+    @Test
+    void addressTest() {
+        assertEquals("10.0.0.1:8080", FizzConnectionProvider.address("http://10.0.0.1:8080/a"));
+        assertEquals("10.0.0.1:80",   FizzConnectionProvider.address("http://10.0.0.1/a"));
+        assertEquals("xhost:443",     FizzConnectionProvider.address("https://xhost"));
+        assertEquals("[0:0:0:0:0:0:0:1]:80",   FizzConnectionProvider.address("http://[::1]/a"));
+        assertEquals("[0:0:0:0:0:0:0:1]:8080", FizzConnectionProvider.address("[::1]:8080"));
+
+        // the remote address of a connection maps to the same pool as the uri
+        assertEquals("10.0.0.1:8080",          FizzConnectionProvider.address(new InetSocketAddress("10.0.0.1", 8080)));
+        assertEquals("[0:0:0:0:0:0:0:1]:80",   FizzConnectionProvider.address(new InetSocketAddress("::1", 80)));
+        assertEquals("[0:0:0:0:0:0:0:1]:80",   FizzConnectionProvider.address(InetSocketAddress.createUnresolved("::1", 80)));
+    }
+}
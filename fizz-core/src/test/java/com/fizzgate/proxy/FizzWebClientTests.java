@@ -3,8 +3,18 @@ package com.fizzgate.proxy;
 import org.junit.jupiter.api.Test;
 
 import com.fizzgate.proxy.FizzWebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author hongqiaowei
@@ -37,4 +47,28 @@ public class FizzWebClientTests {
         String r6 = fizzWebClient.extractServiceOrAddress("http://127.0.0.1:8600/apath");
         assertEquals(r6, "127.0.0.1:8600");
     }
+
+    @Test
+    void fixedDelayJitterTest() {
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            long d = FizzWebClient.jitteredDelay(100, 0.5);
+            assertTrue(d >= 50 && d <= 150, "delay " + d);
+            delays.add(d);
+        }
+        assertTrue(delays.size() > 1);
+        assertEquals(100, FizzWebClient.jitteredDelay(100, 0));
+
+        List<Long> subscribeTimes = new ArrayList<>();
+        Mono<String> failure = Mono.defer(() -> {
+            subscribeTimes.add(System.nanoTime());
+            return Mono.error(new RuntimeException("fail"));
+        });
+        assertThrows(RuntimeException.class, () -> failure.retryWhen(FizzWebClient.retrySpec(5, 20, false, 0, 0.5)).block(Duration.ofSeconds(5)));
+        assertEquals(6, subscribeTimes.size());
+        for (int i = 1; i < subscribeTimes.size(); i++) {
+            long delay = TimeUnit.NANOSECONDS.toMillis(subscribeTimes.get(i) - subscribeTimes.get(i - 1));
+            assertTrue(delay >= 10, "delay " + delay);
+        }
+    }
 }
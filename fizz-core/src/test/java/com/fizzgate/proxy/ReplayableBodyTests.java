@@ -0,0 +1,150 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class ReplayableBodyTests {
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final List<NettyDataBuffer>  sources       = new ArrayList<>();
+
+    private Flux<DataBuffer> body(String... chunks) {
+        return Flux.fromArray(chunks)
+                   .map(
+                           c -> {
+                               NettyDataBuffer b = bufferFactory.allocateBuffer();
+                               b.write(c.getBytes(StandardCharsets.UTF_8));
+                               sources.add(b);
+                               return b;
+                           }
+                   );
+    }
+
+    private static String read(Flux<DataBuffer> body) {
+        return DataBufferUtils.join(body)
+                              .map(
+                                      b -> {
+                                          String s = b.toString(StandardCharsets.UTF_8);
+                                          DataBufferUtils.release(b);
+                                          return s;
+                                      }
+                              )
+                              .defaultIfEmpty("")
+                              .block();
+    }
+
+    private void assertSourcesReleased() {
+        for (NettyDataBuffer b : sources) {
+            assertEquals(0, b.getNativeBuffer().refCnt());
+        }
+    }
+
+    @Test
+    void replayTest() {
+        ReplayableBody rb = ReplayableBody.from(body("abc", "def", "g"), 8).block();
+        assertTrue(rb.isReplayable());
+        assertEquals(7, rb.size());
+        assertSourcesReleased();
+
+        Flux<DataBuffer> body = rb.getBody();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("abcdefg", read(body));
+        }
+        rb.release();
+        assertThrows(IllegalStateException.class, () -> read(body));
+    }
+
+    @Test
+    void emptyBodyTest() {
+        ReplayableBody rb = ReplayableBody.from(Flux.empty(), 8).block();
+        assertTrue(rb.isReplayable());
+        assertEquals("", read(rb.getBody()));
+        assertEquals("", read(rb.getBody()));
+        rb.release();
+    }
+
+    @Test
+    void overflowTest() {
+        ReplayableBody rb = ReplayableBody.from(body("abc", "def", "ghi", "jk"), 5).block();
+        assertFalse(rb.isReplayable());
+        // buffering stops once the body is larger than max size, the rest is not read yet
+        assertEquals(6, rb.size());
+        assertEquals(2, sources.size());
+
+        Flux<DataBuffer> body = rb.getBody();
+        assertEquals("abcdefghijk", read(body));
+        assertThrows(IllegalStateException.class, () -> read(body));
+        rb.release();
+        assertSourcesReleased();
+    }
+
+    @Test
+    void releaseUnsentOverflowBodyTest() {
+        ReplayableBody rb = ReplayableBody.from(body("abc", "def", "ghi"), 2).block();
+        assertFalse(rb.isReplayable());
+        rb.release();
+        assertSourcesReleased();
+        assertThrows(IllegalStateException.class, () -> read(rb.getBody()));
+    }
+
+    @Test
+    void retryBudgetTest() {
+        RetryBudget budget = new RetryBudget(20, 2);
+        assertTrue(budget.isEnabled());
+        assertTrue(budget.tryWithdraw("svc"));
+        assertTrue(budget.tryWithdraw("svc"));
+        assertFalse(budget.tryWithdraw("svc"));
+        assertTrue(budget.tryWithdraw("svc2"));
+
+        for (int i = 0; i < 4; i++) {
+            budget.deposit("svc");
+        }
+        assertFalse(budget.tryWithdraw("svc"));
+        budget.deposit("svc");
+        assertTrue(budget.tryWithdraw("svc"));
+
+        for (int i = 0; i < 100; i++) {
+            budget.deposit("svc");
+        }
+        assertTrue(budget.tryWithdraw("svc"));
+        assertTrue(budget.tryWithdraw("svc"));
+        assertFalse(budget.tryWithdraw("svc"));
+
+        RetryBudget unlimited = new RetryBudget(0, 0);
+        assertFalse(unlimited.isEnabled());
+        assertTrue(unlimited.tryWithdraw("svc"));
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.balancer;
+
+import com.fizzgate.plugin.auth.ApiConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class LoadBalancerTests {
+
+    private static final List<String> instances = Arrays.asList("10.0.0.1:80", "10.0.0.2:80", "10.0.0.3:80");
+
+    @AfterEach
+    void afterEach() {
+        LoadBalancers.configure(null, null);
+        OutlierDetector.configure(false, 5, 50, 20, 10_000, 30_000, 300_000, 50);
+        OutlierDetector.setListener(null);
+        UpstreamStats.clear();
+    }
+
+    private static Map<String, Integer> choose(LoadBalancer balancer, int times) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < times; i++) {
+            counts.merge(balancer.choose("svc", instances, Function.identity()), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Test
+    void ewmaTest() {
+        InstanceStats stats = new InstanceStats("10.0.0.1:80", TimeUnit.SECONDS.toNanos(10));
+        long now = 0;
+        stats.observe(100, now);
+        assertEquals(100, stats.getEwma());
+
+        // a sample right after the last one hardly moves the average
+        stats.observe(1000, now += 1);
+        assertEquals(100, stats.getEwma(), 1);
+
+        // a sample long after the last one takes over
+        stats.observe(1000, now += TimeUnit.SECONDS.toNanos(100));
+        assertEquals(1000, stats.getEwma(), 1);
+
+        // a sample one decay after the last one weighs 1 - 1/e
+        stats.observe(0, now + TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1000 / Math.E, stats.getEwma(), 1);
+    }
+
+    @Test
+    void p2cEwmaAvoidsSlowInstanceTest() {
+        long now = System.nanoTime();
+        UpstreamStats.get("10.0.0.1:80").observe(TimeUnit.MILLISECONDS.toNanos(10),  now);
+        UpstreamStats.get("10.0.0.2:80").observe(TimeUnit.MILLISECONDS.toNanos(12),  now);
+        UpstreamStats.get("10.0.0.3:80").observe(TimeUnit.MILLISECONDS.toNanos(500), now);
+
+        Map<String, Integer> counts = choose(LoadBalancers.getByName(P2cLoadBalancer.P2C_EWMA), 30_000);
+        assertNull(counts.get("10.0.0.3:80"));
+        // the two fast ones share the load instead of herding to the fastest
+        assertTrue(counts.get("10.0.0.1:80") > 10_000);
+        assertTrue(counts.get("10.0.0.2:80") > 5_000);
+
+        // the fastest one gets busy
+        for (int i = 0; i < 60; i++) {
+            UpstreamStats.get("10.0.0.1:80").start();
+        }
+        counts = choose(LoadBalancers.getByName(P2cLoadBalancer.P2C_EWMA), 30_000);
+        assertNull(counts.get("10.0.0.1:80"));
+        assertTrue(counts.get("10.0.0.3:80") > 5_000);
+    }
+
+    @Test
+    void p2cEwmaSeedsNewInstanceTest() {
+        long now = System.nanoTime();
+        UpstreamStats.get("10.0.0.1:80").observe(TimeUnit.MILLISECONDS.toNanos(10), now);
+        UpstreamStats.get("10.0.0.2:80").observe(TimeUnit.MILLISECONDS.toNanos(12), now);
+
+        // the new instance is taken as one of the average latency, not the fastest one
+        Map<String, Integer> counts = choose(LoadBalancers.getByName(P2cLoadBalancer.P2C_EWMA), 30_000);
+        assertTrue(counts.get("10.0.0.3:80") > 5_000);
+        assertTrue(counts.get("10.0.0.3:80") < 15_000);
+        assertTrue(counts.get("10.0.0.1:80") > counts.get("10.0.0.3:80"));
+    }
+
+    @Test
+    void leastRequestTest() {
+        UpstreamStats.get("10.0.0.1:80").start();
+        UpstreamStats.get("10.0.0.1:80").start();
+        UpstreamStats.get("10.0.0.2:80").start();
+
+        Map<String, Integer> counts = choose(LoadBalancers.getByName(P2cLoadBalancer.LEAST_REQUEST), 30_000);
+        assertNull(counts.get("10.0.0.1:80"));
+        assertTrue(counts.get("10.0.0.3:80") > counts.get("10.0.0.2:80"));
+    }
+
+    @Test
+    void roundRobinAndRandomTest() {
+        Map<String, Integer> counts = choose(LoadBalancers.getByName(RoundRobinLoadBalancer.NAME), 30_000);
+        for (String inst : instances) {
+            assertEquals(10_000, counts.get(inst));
+        }
+        counts = choose(LoadBalancers.getByName(RandomLoadBalancer.NAME), 30_000);
+        for (String inst : instances) {
+            assertTrue(counts.get(inst) > 9_000);
+        }
+    }
+
+    @Test
+    void configureTest() {
+        assertNull(LoadBalancers.get("svc"));
+        assertFalse(LoadBalancers.isAnyConfigured());
+
+        LoadBalancers.configure(null, Collections.singletonMap("svc", P2cLoadBalancer.P2C_EWMA));
+        assertTrue(LoadBalancers.isAnyConfigured());
+        assertEquals(P2cLoadBalancer.P2C_EWMA, LoadBalancers.get("svc").name());
+        assertNull(LoadBalancers.get("svc2"));
+
+        LoadBalancers.configure(RandomLoadBalancer.NAME, Collections.singletonMap("svc", P2cLoadBalancer.P2C_EWMA));
+        assertEquals(RandomLoadBalancer.NAME, LoadBalancers.get("svc2").name());
+        assertEquals(RandomLoadBalancer.NAME, LoadBalancers.get(null).name());
+
+        assertThrows(IllegalArgumentException.class, () -> LoadBalancers.configure("xxx", null));
+        assertNull(LoadBalancers.find("xxx"));
+    }
+
+    @Test
+    void httpHostPortsTest() {
+        ApiConfig ac = new ApiConfig();
+        ac.id = 1;
+        ac.httpHostPorts = Arrays.asList("http://10.0.0.1:80", "http://10.0.0.2:80");
+        assertEquals("http://10.0.0.1:80", ac.getNextHttpHostPort());
+        assertEquals("http://10.0.0.2:80", ac.getNextHttpHostPort());
+
+        ac.loadBalancer = P2cLoadBalancer.LEAST_REQUEST;
+        UpstreamStats.get("10.0.0.1:80").start();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("http://10.0.0.2:80", ac.getNextHttpHostPort());
+        }
+
+        assertEquals("10.0.0.1:80", UpstreamStats.address("http://10.0.0.1:80/a/b"));
+        assertEquals("10.0.0.1:80", UpstreamStats.address("https://10.0.0.1:80"));
+        assertEquals("10.0.0.1:80", UpstreamStats.address("10.0.0.1:80"));
+    }
+
+    @Test
+    void outlierEjectionTest() {
+        OutlierDetector.configure(true, 3, 0, 20, 10_000, 1_000, 3_000, 50);
+        List<String> ejections = new ArrayList<>();
+        OutlierDetector.setListener((stats, millis, reason) -> ejections.add(stats.getService() + ' ' + stats.getAddress() + ' ' + millis));
+
+        LoadBalancer balancer = LoadBalancers.get("svc");
+        assertEquals(RoundRobinLoadBalancer.NAME, balancer.name());
+        balancer.choose("svc", instances, Function.identity());
+
+        long now = System.nanoTime();
+        InstanceStats stats = UpstreamStats.get("10.0.0.1:80");
+        OutlierDetector.record(stats, true,  now);
+        OutlierDetector.record(stats, true,  now);
+        OutlierDetector.record(stats, false, now);
+        OutlierDetector.record(stats, true,  now);
+        OutlierDetector.record(stats, true,  now);
+        assertFalse(stats.isEjected(now));
+        OutlierDetector.record(stats, true,  now);
+        assertTrue(stats.isEjected(now));
+        assertEquals(Collections.singletonList("svc 10.0.0.1:80 1000"), ejections);
+
+        Map<String, Integer> counts = choose(balancer, 3_000);
+        assertNull(counts.get("10.0.0.1:80"));
+        assertEquals(1_500, counts.get("10.0.0.2:80"));
+
+        // back after the ejection time, and ejected twice as long when it fails again
+        now += TimeUnit.MILLISECONDS.toNanos(1_001);
+        assertFalse(stats.isEjected(now));
+        for (int i = 0; i < 3; i++) {
+            OutlierDetector.record(stats, true, now);
+        }
+        assertEquals("svc 10.0.0.1:80 2000", ejections.get(1));
+        now += TimeUnit.MILLISECONDS.toNanos(2_001);
+        for (int i = 0; i < 6; i++) {
+            OutlierDetector.record(stats, true, now);
+            now += TimeUnit.MILLISECONDS.toNanos(3_001);
+        }
+        // up to the max ejection time
+        assertEquals("svc 10.0.0.1:80 3000", ejections.get(ejections.size() - 1));
+    }
+
+    @Test
+    void failureRateTest() {
+        OutlierDetector.configure(true, 0, 50, 10, 10_000, 1_000, 3_000, 50);
+        long now = System.nanoTime();
+        InstanceStats stats = UpstreamStats.get("10.0.0.1:80");
+        for (int i = 0; i < 8; i++) {
+            OutlierDetector.record(stats, i % 2 == 0, now);
+        }
+        assertFalse(stats.isEjected(now));
+        OutlierDetector.record(stats, false, now);
+        OutlierDetector.record(stats, true,  now);
+        assertTrue(stats.isEjected(now));
+    }
+
+    @Test
+    void maxEjectionPercentTest() {
+        OutlierDetector.configure(true, 1, 0, 20, 10_000, 10_000, 10_000, 50);
+        List<String> insts = Arrays.asList("10.0.0.1:80", "10.0.0.2:80", "10.0.0.3:80", "10.0.0.4:80");
+        long now = System.nanoTime();
+        OutlierDetector.record(UpstreamStats.get("10.0.0.1:80"), true, now);
+        OutlierDetector.record(UpstreamStats.get("10.0.0.2:80"), true, now + 1);
+        assertEquals(Arrays.asList("10.0.0.3:80", "10.0.0.4:80"), OutlierEjectingLoadBalancer.available(insts, Function.identity()));
+
+        // no more than 2 of 4 are ejected, the one returning soonest is chosen from
+        OutlierDetector.record(UpstreamStats.get("10.0.0.3:80"), true, now + 2);
+        assertEquals(Arrays.asList("10.0.0.4:80", "10.0.0.1:80"), OutlierEjectingLoadBalancer.available(insts, Function.identity()));
+
+        OutlierDetector.record(UpstreamStats.get("10.0.0.4:80"), true, now + 3);
+        assertEquals(insts, OutlierEjectingLoadBalancer.available(insts, Function.identity()));
+    }
+}
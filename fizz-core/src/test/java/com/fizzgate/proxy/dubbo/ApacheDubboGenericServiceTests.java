@@ -0,0 +1,128 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.dubbo;
+
+import org.apache.dubbo.config.ApplicationConfig;
+import org.apache.dubbo.config.ProtocolConfig;
+import org.apache.dubbo.config.RegistryConfig;
+import org.apache.dubbo.config.ServiceConfig;
+import org.apache.dubbo.rpc.service.GenericService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Francis Dong
+ */
+public class ApacheDubboGenericServiceTests {
+
+	public interface GreetingService {
+		String greet(String name, Integer times);
+	}
+
+	public static class GreetingServiceImpl implements GreetingService {
+		@Override
+		public String greet(String name, Integer times) {
+			StringBuilder b = new StringBuilder();
+			for (int i = 0; i < times; i++) {
+				b.append("hello ").append(name).append(';');
+			}
+			return b.toString();
+		}
+	}
+
+	@Test
+	void paramBindingTest() {
+		DubboParamBinding binding = DubboParamBinding.compile("java.lang.String,java.lang.Integer");
+		assertTrue(binding.isFor("java.lang.String,java.lang.Integer"));
+		assertFalse(binding.isFor("java.lang.String"));
+		assertArrayEquals(new String[] { "java.lang.String", "java.lang.Integer" }, binding.getTypes());
+
+		Map<String, Object> body = new HashMap<>();
+		body.put("p1", "fizz");
+		body.put("p2", 2);
+		assertArrayEquals(new Object[] { "fizz", 2 }, binding.bind(body));
+
+		DubboParamBinding none = DubboParamBinding.compile(null);
+		assertNull(none.getTypes());
+		assertNull(none.bind(body));
+
+		DubboInterfaceDeclaration declaration = new DubboInterfaceDeclaration();
+		declaration.setParameterTypes("java.lang.String,java.lang.Integer");
+		declaration.setParamBinding(binding);
+		assertSame(binding, declaration.getParamBinding());
+		declaration.setParameterTypes("java.lang.String");
+		assertArrayEquals(new String[] { "java.lang.String" }, declaration.getParamBinding().getTypes());
+	}
+
+	/**
+	 * dubbo 2.7 defines classes by javassist, which requires --add-opens java.base/java.lang on jdk 9+
+	 */
+	@Test
+	@EnabledOnJre(JRE.JAVA_8)
+	void sendTest() {
+		ApplicationConfig application = new ApplicationConfig("fizz_proxy_test");
+		application.setQosEnable(false);
+		ServiceConfig<GreetingService> provider = new ServiceConfig<>();
+		provider.setApplication(application);
+		provider.setRegistry(new RegistryConfig(RegistryConfig.NO_AVAILABLE));
+		provider.setProtocol(new ProtocolConfig("injvm"));
+		provider.setInterface(GreetingService.class);
+		provider.setRef(new GreetingServiceImpl());
+		provider.setVersion("1.0.0");
+		provider.export();
+		try {
+			send();
+		} finally {
+			provider.unexport();
+		}
+	}
+
+	private void send() {
+		ApacheDubboGenericServiceProperties properties = new ApacheDubboGenericServiceProperties();
+		properties.setZookeeperAddress(RegistryConfig.NO_AVAILABLE);
+		ApacheDubboGenericService service = new ApacheDubboGenericService();
+		ReflectionTestUtils.setField(service, "apacheDubboGenericServiceProperties", properties);
+
+		DubboInterfaceDeclaration declaration = new DubboInterfaceDeclaration();
+		declaration.setServiceName(GreetingService.class.getName());
+		declaration.setVersion("1.0.0");
+		declaration.setMethod("greet");
+		declaration.setParameterTypes("java.lang.String,java.lang.Integer");
+		declaration.setParamBinding(DubboParamBinding.compile("java.lang.String,java.lang.Integer"));
+		declaration.setTimeout(3000);
+
+		Map<String, Object> body = new HashMap<>();
+		body.put("p1", "fizz");
+		body.put("p2", 2);
+		for (int i = 0; i < 3; i++) {
+			Object result = service.send(body, declaration, Collections.emptyMap()).block();
+			assertEquals("hello fizz;hello fizz;", result);
+		}
+
+		GenericService gs = service.getGenericService(GreetingService.class.getName(), "1.0.0", null);
+		assertSame(gs, service.getGenericService(GreetingService.class.getName(), "1.0.0", null));
+	}
+}
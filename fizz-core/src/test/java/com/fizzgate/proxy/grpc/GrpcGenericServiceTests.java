@@ -0,0 +1,146 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.grpc;
+
+import com.fizzgate.proxy.grpc.client.GrpcProxyClient;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.health.v1.HealthCheckResponse;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.services.ProtoReflectionService;
+import io.grpc.services.HealthStatusManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class GrpcGenericServiceTests {
+
+    private static final Metadata.Key<String> USER = Metadata.Key.of("x-user", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final AtomicInteger      reflectionCalls = new AtomicInteger(0);
+
+    private final List<String>       users           = new CopyOnWriteArrayList<>();
+
+    private       Server             server;
+
+    private       GrpcProxyClient    grpcProxyClient;
+
+    private       GrpcGenericService grpcGenericService;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        ServerInterceptor interceptor = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                String method = call.getMethodDescriptor().getFullMethodName();
+                if (method.startsWith("grpc.reflection")) {
+                    reflectionCalls.incrementAndGet();
+                } else {
+                    users.add(String.valueOf(headers.get(USER)));
+                }
+                return next.startCall(call, headers);
+            }
+        };
+        HealthStatusManager health = new HealthStatusManager();
+        health.setStatus("", HealthCheckResponse.ServingStatus.SERVING);
+        server = NettyServerBuilder.forPort(0)
+                                   .addService(health.getHealthService())
+                                   .addService(ProtoReflectionService.newInstance())
+                                   .intercept(interceptor)
+                                   .build()
+                                   .start();
+
+        grpcProxyClient = new GrpcProxyClient();
+        grpcGenericService = new GrpcGenericService();
+        ReflectionTestUtils.setField(grpcGenericService, "grpcProxyClient", grpcProxyClient);
+        grpcGenericService.init();
+    }
+
+    @AfterEach
+    void afterEach() {
+        grpcGenericService.destroy();
+        server.shutdownNow();
+    }
+
+    private GrpcInterfaceDeclaration declaration() {
+        GrpcInterfaceDeclaration declaration = new GrpcInterfaceDeclaration();
+        declaration.setEndpoint("127.0.0.1:" + server.getPort());
+        declaration.setServiceName("grpc.health.v1.Health");
+        declaration.setMethod("Check");
+        declaration.setTimeout(3000);
+        return declaration;
+    }
+
+    @Test
+    void reuseChannelAndDescriptorsTest() {
+        int n = 20;
+        for (int i = 0; i < n; i++) {
+            HashMap<String, Object> attachments = new HashMap<>();
+            attachments.put("x-user", "u" + i);
+            Object result = grpcGenericService.send("{\"service\":\"\"}", declaration(), attachments).block();
+            assertTrue(String.valueOf(result).contains("SERVING"));
+        }
+
+        assertEquals(1, grpcGenericService.getChannelPool().size());
+        assertEquals(1, grpcProxyClient.getResolvedServiceCount());
+
+        // reflection calls are made by the first request only
+        int reflectionCallsOfFirstRequest = reflectionCalls.get();
+        assertTrue(reflectionCallsOfFirstRequest > 0);
+        grpcGenericService.send("{\"service\":\"\"}", declaration(), null).block();
+        assertEquals(reflectionCallsOfFirstRequest, reflectionCalls.get());
+
+        // metadata of each call, on the shared channel
+        assertEquals(n + 1, users.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals("u" + i, users.get(i));
+        }
+        assertEquals("null", users.get(n));
+    }
+
+    @Test
+    void invalidateTest() {
+        grpcGenericService.send("{\"service\":\"\"}", declaration(), null).block();
+        int reflectionCallsOfFirstRequest = reflectionCalls.get();
+
+        grpcProxyClient.invalidate("127.0.0.1:" + server.getPort(), "grpc.health.v1.Health");
+        grpcGenericService.send("{\"service\":\"\"}", declaration(), null).block();
+        assertEquals(2 * reflectionCallsOfFirstRequest, reflectionCalls.get());
+
+        grpcGenericService.getChannelPool().shutdown();
+        assertEquals(0, grpcGenericService.getChannelPool().size());
+        Object result = grpcGenericService.send("{\"service\":\"\"}", declaration(), null).block();
+        assertTrue(String.valueOf(result).contains("SERVING"));
+        assertEquals(1, grpcGenericService.getChannelPool().size());
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.proxy.http2;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.net.ssl.SSLException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class Http2ClientHttpConnectorTests {
+
+    private static final int    MAX_CONCURRENT_STREAMS = 5;
+
+    private NioEventLoopGroup   group;
+
+    private Channel             server;
+
+    private int                 port;
+
+    private Channel             tlsServer;
+
+    private final AtomicInteger connections = new AtomicInteger(0);
+
+    private final AtomicInteger concurrents = new AtomicInteger(0);
+
+    private final AtomicInteger maxConcurrents = new AtomicInteger(0);
+
+    private Http2ConnectionPool pool;
+
+    /**
+     * Responds 100ms after the request ended, with the path, the x-a header and the body of request.
+     */
+    private class StreamHandler extends ChannelInboundHandlerAdapter {
+
+        private Http2Headers requestHeaders;
+
+        private final StringBuilder body = new StringBuilder();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            boolean end;
+            if (msg instanceof Http2HeadersFrame) {
+                requestHeaders = ((Http2HeadersFrame) msg).headers();
+                end = ((Http2HeadersFrame) msg).isEndStream();
+            } else if (msg instanceof Http2DataFrame) {
+                body.append(((Http2DataFrame) msg).content().toString(StandardCharsets.UTF_8));
+                end = ((Http2DataFrame) msg).isEndStream();
+            } else {
+                end = false;
+            }
+            ReferenceCountUtil.release(msg);
+            if (end) {
+                int c = concurrents.incrementAndGet();
+                maxConcurrents.accumulateAndGet(c, Math::max);
+                ctx.executor().schedule(
+                        () -> {
+                            concurrents.decrementAndGet();
+                            Http2Headers headers = new DefaultHttp2Headers().status("200");
+                            headers.add("x-a", requestHeaders.get("x-a") == null ? "" : requestHeaders.get("x-a"));
+                            headers.add("x-cookie", requestHeaders.get("cookie") == null ? "" : requestHeaders.get("cookie"));
+                            headers.add("set-cookie", "sid=1; Path=/");
+                            ByteBuf content = Unpooled.copiedBuffer(requestHeaders.method() + " " + requestHeaders.path() + " " + body, StandardCharsets.UTF_8);
+                            ctx.write(new DefaultHttp2HeadersFrame(headers));
+                            ctx.writeAndFlush(new DefaultHttp2DataFrame(content, true));
+                        },
+                        100, TimeUnit.MILLISECONDS
+                );
+            }
+        }
+    }
+
+    @BeforeEach
+    void beforeEach() throws InterruptedException {
+        group = new NioEventLoopGroup(2);
+        server = new ServerBootstrap().group(group)
+                                      .channel(NioServerSocketChannel.class)
+                                      .childHandler(
+                                              new ChannelInitializer<Channel>() {
+                                                  @Override
+                                                  protected void initChannel(Channel ch) {
+                                                      connections.incrementAndGet();
+                                                      addHttp2Handlers(ch);
+                                                  }
+                                              }
+                                      )
+                                      .bind("127.0.0.1", 0).sync().channel();
+        port = ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    private void addHttp2Handlers(Channel ch) {
+        ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(MAX_CONCURRENT_STREAMS)).build());
+        ch.pipeline().addLast(
+                new Http2MultiplexHandler(
+                        new ChannelInitializer<Http2StreamChannel>() {
+                            @Override
+                            protected void initChannel(Http2StreamChannel ch) {
+                                ch.pipeline().addLast(new StreamHandler());
+                            }
+                        }
+                )
+        );
+    }
+
+    /**
+     * @param protocols the application protocols the server supports
+     * @return port of the TLS server, which talks h2 after handshake
+     */
+    private int tlsServer(String... protocols) throws Exception {
+        SelfSignedCertificate cert = new SelfSignedCertificate();
+        SslContext sslContext = SslContextBuilder.forServer(cert.certificate(), cert.privateKey())
+                                                 .sslProvider(SslProvider.JDK)
+                                                 .applicationProtocolConfig(
+                                                         new ApplicationProtocolConfig(
+                                                                 ApplicationProtocolConfig.Protocol.ALPN,
+                                                                 ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                                                                 ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                                                                 protocols
+                                                         )
+                                                 )
+                                                 .build();
+        tlsServer = new ServerBootstrap().group(group)
+                                         .channel(NioServerSocketChannel.class)
+                                         .childHandler(
+                                                 new ChannelInitializer<Channel>() {
+                                                     @Override
+                                                     protected void initChannel(Channel ch) {
+                                                         connections.incrementAndGet();
+                                                         ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                                                         addHttp2Handlers(ch);
+                                                     }
+                                                 }
+                                         )
+                                         .bind("127.0.0.1", 0).sync().channel();
+        return ((InetSocketAddress) tlsServer.localAddress()).getPort();
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (pool != null) {
+            pool.dispose();
+        }
+        server.close();
+        if (tlsServer != null) {
+            tlsServer.close();
+        }
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private WebClient webClient(int maxConnections, int pendingAcquireMaxCount) {
+        return webClient(maxConnections, pendingAcquireMaxCount, false);
+    }
+
+    private WebClient webClient(int maxConnections, int pendingAcquireMaxCount, boolean trustInsecureSSL) {
+        pool = new Http2ConnectionPool(maxConnections, 100, pendingAcquireMaxCount, Duration.ofSeconds(10), 3000, trustInsecureSSL);
+        return WebClient.builder().clientConnector(new Http2ClientHttpConnector(pool)).build();
+    }
+
+    @Test
+    void multiplexTest() throws InterruptedException {
+        WebClient webClient = webClient(2, 1000);
+        List<String> bodies = Flux.range(0, 30)
+                                  .flatMap(
+                                          i -> webClient.get()
+                                                        .uri("http://127.0.0.1:" + port + "/a?i=" + i)
+                                                        .header("x-a", String.valueOf(i))
+                                                        .exchange()
+                                                        .flatMap(cr -> cr.bodyToMono(String.class).map(b -> cr.headers().header("x-a").get(0) + ' ' + b))
+                                  )
+                                  .collectList()
+                                  .block(Duration.ofSeconds(10));
+
+        assertEquals(30, bodies.size());
+        for (int i = 0; i < 30; i++) {
+            assertTrue(bodies.contains(i + " GET /a?i=" + i + " "));
+        }
+        // 2 connections with 5 streams each at most
+        assertEquals(2, connections.get());
+        assertEquals(2 * MAX_CONCURRENT_STREAMS, maxConcurrents.get());
+        // streams are released on the event loop after the bodies complete
+        Map<String, List<Integer>> streams = Collections.singletonMap("127.0.0.1:" + port, java.util.Arrays.asList(0, 0));
+        for (int i = 0; i < 50 && !streams.equals(pool.getStreams()); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(streams, pool.getStreams());
+    }
+
+    @Test
+    void postTest() {
+        WebClient webClient = webClient(1, 1000);
+        ResponseEntity<String> entity = webClient.post()
+                                                 .uri("http://127.0.0.1:" + port + "/b")
+                                                 .cookie("c", "1")
+                                                 .header("connection", "keep-alive")
+                                                 .body(Flux.just("x", "y", "z").map(s -> new org.springframework.core.io.buffer.DefaultDataBufferFactory().wrap(s.getBytes(StandardCharsets.UTF_8))),
+                                                       org.springframework.core.io.buffer.DataBuffer.class)
+                                                 .exchange()
+                                                 .flatMap(cr -> cr.toEntity(String.class))
+                                                 .block(Duration.ofSeconds(5));
+
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        assertEquals("POST /b xyz", entity.getBody());
+        assertEquals("c=1", entity.getHeaders().getFirst("x-cookie"));
+        assertEquals("sid=1; Path=/", entity.getHeaders().getFirst("set-cookie"));
+    }
+
+    @Test
+    void pendingAcquireLimitTest() throws InterruptedException {
+        WebClient webClient = webClient(1, 1);
+        // open the connection first, otherwise all the requests wait for it and only one can be pending
+        webClient.get().uri("http://127.0.0.1:" + port + "/c").exchange().flatMap(cr -> cr.bodyToMono(String.class)).block(Duration.ofSeconds(5));
+        Map<String, List<Integer>> streams = Collections.singletonMap("127.0.0.1:" + port, Collections.singletonList(0));
+        for (int i = 0; i < 50 && !streams.equals(pool.getStreams()); i++) {
+            Thread.sleep(20);
+        }
+
+        List<Object> results = Flux.range(0, MAX_CONCURRENT_STREAMS + 2)
+                                   .flatMap(
+                                           i -> webClient.get()
+                                                         .uri("http://127.0.0.1:" + port + "/c")
+                                                         .exchange()
+                                                         .flatMap(cr -> cr.bodyToMono(String.class))
+                                                         .cast(Object.class)
+                                                         .onErrorResume(Mono::just)
+                                   )
+                                   .collectList()
+                                   .block(Duration.ofSeconds(5));
+
+        assertEquals(MAX_CONCURRENT_STREAMS + 1, results.stream().filter("GET /c "::equals).count());
+        assertEquals(1, results.stream().filter(r -> r instanceof IllegalStateException).count());
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    void tlsTest() throws Exception {
+        int tlsPort = tlsServer(ApplicationProtocolNames.HTTP_2);
+        WebClient webClient = webClient(1, 1000, true);
+        List<String> bodies = Flux.range(0, 3)
+                                  .flatMap(
+                                          i -> webClient.get()
+                                                        .uri("https://127.0.0.1:" + tlsPort + "/d?i=" + i)
+                                                        .exchange()
+                                                        .flatMap(cr -> cr.bodyToMono(String.class))
+                                  )
+                                  .collectList()
+                                  .block(Duration.ofSeconds(10));
+
+        assertEquals(3, bodies.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bodies.contains("GET /d?i=" + i + " "));
+        }
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    void tlsNoH2Test() throws Exception {
+        int tlsPort = tlsServer(ApplicationProtocolNames.HTTP_1_1);
+        webClient(1, 1000, true);
+        // each acquire fails soon, instead of waiting for the failed connecting till timeout
+        for (int i = 0; i < 2; i++) {
+            Throwable t = acquireError("https://127.0.0.1:" + tlsPort);
+            assertFalse(t instanceof TimeoutException, t.toString());
+        }
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    void tlsHandshakeFailureTest() throws Exception {
+        int tlsPort = tlsServer(ApplicationProtocolNames.HTTP_2);
+        // the self signed certificate of server is not trusted
+        webClient(1, 1000, false);
+        for (int i = 0; i < 2; i++) {
+            Throwable t = acquireError("https://127.0.0.1:" + tlsPort);
+            assertTrue(t instanceof SSLException, t.toString());
+        }
+        assertEquals(2, connections.get());
+    }
+
+    private Throwable acquireError(String uri) {
+        Object result = pool.acquire(URI.create(uri), new ChannelInboundHandlerAdapter())
+                            .cast(Object.class)
+                            .onErrorResume(Mono::just)
+                            .block(Duration.ofSeconds(5));
+        assertTrue(result instanceof Throwable, String.valueOf(result));
+        Throwable t = (Throwable) result;
+        while (t.getCause() != null && !(t instanceof SSLException)) {
+            t = t.getCause();
+        }
+        return t;
+    }
+}
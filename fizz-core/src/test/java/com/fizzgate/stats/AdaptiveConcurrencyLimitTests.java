@@ -0,0 +1,122 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * 
+ * @author Francis Dong
+ *
+ */
+public class AdaptiveConcurrencyLimitTests {
+
+	private static final long BASE_RT = 20;
+
+	private static final int  CLIENTS = 500;
+
+	/**
+	 * Synthetic backend serving capacity requests in parallel, the response time
+	 * grows linearly with the concurrent requests beyond that
+	 */
+	private static long rt(int concurrents, int capacity) {
+		return concurrents <= capacity ? BASE_RT : BASE_RT * concurrents / capacity;
+	}
+
+	/**
+	 * Every simulated second, clients send requests in 10 rounds, the requests
+	 * admitted by the limit of a round run concurrently
+	 * 
+	 * @param rts average response time of each second
+	 * @return limit of each second
+	 */
+	private int[] simulate(FlowStat stat, List<ResourceConfig> resourceConfigs, long startSlotId, int seconds, int clients, int capacity, long[] rts) {
+		int[] limits = new int[seconds];
+		ResourceStat resourceStat = stat.getResourceStat(resourceConfigs.get(0).getResourceId());
+		for (int s = 0; s < seconds; s++) {
+			long slotId = startSlotId + s * FlowStat.INTERVAL;
+			long totalRt = 0, reqs = 0;
+			for (int round = 0; round < 10; round++) {
+				int admitted = 0;
+				for (int c = 0; c < clients; c++) {
+					if (stat.incrRequest(resourceConfigs, slotId).isSuccess()) {
+						admitted++;
+					}
+				}
+				long rt = rt(admitted, capacity);
+				for (int i = 0; i < admitted; i++) {
+					stat.addRequestRT(resourceConfigs, slotId, rt, true, HttpStatus.OK);
+				}
+				totalRt += rt * admitted;
+				reqs += admitted;
+			}
+			limits[s] = resourceStat.getAdaptiveConcurrencyLimit().getLimit();
+			rts[s] = totalRt / reqs;
+		}
+		return limits;
+	}
+
+	private void assertConverged(int[] limits, long[] rts, int capacity) {
+		// the last minute
+		for (int s = limits.length - 60; s < limits.length; s++) {
+			assertTrue(limits[s] >= capacity && limits[s] <= capacity * 2, "limit " + limits[s] + " at " + s);
+			assertTrue(rts[s] <= BASE_RT * 2, "rt " + rts[s] + " at " + s);
+		}
+	}
+
+	@Test
+	public void testConvergence() {
+		FlowStat stat = new FlowStat(false, false);
+		ResourceConfig resourceConfig = new ResourceConfig("testConvergence", 1000, -1L);
+		resourceConfig.setAdaptiveCon(true);
+		List<ResourceConfig> resourceConfigs = Collections.singletonList(resourceConfig);
+		long startSlotId = stat.currentTimeSlotId();
+		long[] rts = new long[120];
+
+		// without limit the response time is 10 times of BASE_RT
+		int[] limits = simulate(stat, resourceConfigs, startSlotId, 120, CLIENTS, 50, rts);
+		assertEquals(AdaptiveConcurrencyLimit.INITIAL_LIMIT, limits[0]);
+		assertConverged(limits, rts, 50);
+
+		// backend slows down
+		limits = simulate(stat, resourceConfigs, startSlotId + 120 * FlowStat.INTERVAL, 120, CLIENTS, 20, rts);
+		for (int s = 10; s < limits.length; s++) {
+			assertTrue(limits[s] <= 20 * 2, "limit " + limits[s] + " at " + s);
+		}
+		assertConverged(limits, rts, 20);
+	}
+
+	@Test
+	public void testNoGrowthWithoutDemand() {
+		FlowStat stat = new FlowStat(false, false);
+		ResourceConfig resourceConfig = new ResourceConfig("testNoGrowthWithoutDemand", 1000, -1L);
+		resourceConfig.setAdaptiveCon(true);
+		List<ResourceConfig> resourceConfigs = Collections.singletonList(resourceConfig);
+		long[] rts = new long[60];
+
+		int[] limits = simulate(stat, resourceConfigs, stat.currentTimeSlotId(), 60, 5, 50, rts);
+		assertEquals(AdaptiveConcurrencyLimit.INITIAL_LIMIT, limits[limits.length - 1]);
+	}
+}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
@@ -250,6 +251,44 @@ public class FlowStatTests {
 		}
 	}
 
+	@Test
+	public void testIncrRequestByResourceChainUnderContention() throws Throwable {
+		int threads = 8;
+		int requests = 20000;
+		String prefix = "contention";
+		List<ResourceConfig> resourceConfigs = new ArrayList<>();
+		resourceConfigs.add(new ResourceConfig(prefix + "_global", -1L, -1L));
+		resourceConfigs.add(new ResourceConfig(prefix + "_service", 1000000, -1L));
+		resourceConfigs.add(new ResourceConfig(prefix + "_api", 1000000, Long.MAX_VALUE));
+		resourceConfigs.add(new ResourceConfig(prefix + "_app", -1L, Long.MAX_VALUE));
+		long curTimeSlotId = stat.currentTimeSlotId();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(pool.submit(() -> {
+				for (int j = 0; j < requests; j++) {
+					IncrRequestResult result = stat.incrRequest(resourceConfigs, curTimeSlotId);
+					assertTrue(result.isSuccess());
+					stat.addRequestRT(resourceConfigs, curTimeSlotId, 1, true, HttpStatus.OK);
+				}
+			}));
+		}
+		pool.shutdown();
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+
+		for (ResourceConfig resourceConfig : resourceConfigs) {
+			String resourceId = resourceConfig.getResourceId();
+			TimeWindowStat tws = stat.getTimeWindowStat(resourceId, curTimeSlotId, curTimeSlotId + 1000);
+			assertEquals((long) threads * requests, tws.getTotal(), resourceId);
+			assertEquals((long) threads * requests, tws.getCompReqs(), resourceId);
+			assertEquals(0, tws.getBlockRequests(), resourceId);
+			assertEquals(0, stat.getConcurrentRequests(resourceId), resourceId);
+		}
+	}
+
 	// @Test
 	public void testPeakConcurrentJob() throws Throwable {
 		long curTimeSlotId = stat.currentTimeSlotId();
@@ -509,6 +548,35 @@ public class FlowStatTests {
 		}
 	}
 
+	@Test
+	public void testTimeSlotRollover() throws Throwable {
+		String resourceId = "testTimeSlotRollover";
+		ResourceStat resourceStat = stat.getResourceStat(resourceId);
+		long retention = FlowStat.RETENTION_TIME_IN_MINUTES * 60 * 1000;
+		long slotId = stat.currentTimeSlotId();
+		long nextRoundSlotId = slotId + retention;
+
+		stat.incrRequest(resourceId, slotId, null, null);
+		stat.addRequestRT(resourceId, slotId, 100, false);
+		assertEquals(1, stat.getTimeWindowStat(resourceId, slotId, slotId + 1000).getTotal());
+
+		// the same slot is reused by the time slot ID of next round
+		TimeSlot timeSlot = resourceStat.getTimeSlot(slotId);
+		stat.incrRequest(resourceId, nextRoundSlotId, null, null);
+		assertTrue(timeSlot == resourceStat.getTimeSlot(nextRoundSlotId));
+		assertEquals(nextRoundSlotId, timeSlot.getId());
+		assertEquals(1, timeSlot.getCounter());
+		assertEquals(0, timeSlot.getErrors());
+		assertEquals(0, timeSlot.getCompReqs());
+		assertEquals(2, timeSlot.getPeakConcurrentRequests());
+
+		// statistic out of retention time is discarded
+		assertEquals(null, resourceStat.peekTimeSlot(slotId));
+		assertEquals(0, stat.getTimeWindowStat(resourceId, slotId, slotId + 1000).getTotal());
+		stat.addRequestRT(resourceId, slotId, 100, false);
+		assertEquals(0, timeSlot.getCompReqs());
+	}
+
 	@Test
 	public void testGetResourceStat() throws Throwable {
 		int threads = 3;
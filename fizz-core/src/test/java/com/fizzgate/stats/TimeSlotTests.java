@@ -0,0 +1,186 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fizzgate.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * 
+ * @author Francis Dong
+ *
+ */
+public class TimeSlotTests {
+
+	private static final int THREADS = 64;
+
+	private static final int REQUESTS = 20000;
+
+	@Test
+	public void testNoCountLostUnderContention() throws Throwable {
+		TimeSlot timeSlot = new TimeSlot(0);
+		runConcurrently(t -> {
+			for (int i = 0; i < REQUESTS; i++) {
+				timeSlot.incr();
+				// rt from 1 to REQUESTS, every 10th request fails
+				timeSlot.addRequestRT(i + 1, i % 10 != 0);
+				timeSlot.incrBlockRequests();
+				timeSlot.incrTotalBlockRequests();
+				timeSlot.incrCircuitBreakNum();
+				timeSlot.incr2xxStatusCount();
+				timeSlot.incrGradualResumeNum();
+				timeSlot.updatePeakConcurrentReqeusts(t * REQUESTS + i);
+			}
+		});
+
+		long total = (long) THREADS * REQUESTS;
+		TimeSlot.Snapshot snapshot = timeSlot.snapshot();
+		assertEquals(total, snapshot.counter);
+		assertEquals(total, snapshot.compReqs);
+		assertEquals(total / 10, snapshot.errors);
+		assertEquals((long) THREADS * REQUESTS * (REQUESTS + 1) / 2, snapshot.totalRt);
+		assertEquals(1, snapshot.min);
+		assertEquals(REQUESTS, snapshot.max);
+		assertEquals(total, snapshot.blockRequests);
+		assertEquals(total, snapshot.totalBlockRequests);
+		assertEquals(total, snapshot.circuitBreakNum);
+		assertEquals(total, snapshot._2xxStatusCount);
+		assertEquals(total, timeSlot.getGradualResumeNum());
+		assertEquals(total - 1, snapshot.peakConcurrentRequests);
+	}
+
+	@Test
+	public void testExactQpsLimitUnderContention() throws Throwable {
+		FlowStat stat = new FlowStat(false, false);
+		long maxQPS = 1000;
+		List<ResourceConfig> resourceConfigs = new ArrayList<>();
+		resourceConfigs.add(new ResourceConfig("testExactQpsLimitUnderContention_global", -1L, -1L));
+		resourceConfigs.add(new ResourceConfig("testExactQpsLimitUnderContention_service", -1L, maxQPS));
+		long slotId = stat.currentTimeSlotId();
+		AtomicInteger admitted = new AtomicInteger();
+
+		runConcurrently(t -> {
+			for (int i = 0; i < REQUESTS / 10; i++) {
+				IncrRequestResult result = stat.incrRequest(resourceConfigs, slotId);
+				if (result.isSuccess()) {
+					admitted.incrementAndGet();
+					stat.addRequestRT(resourceConfigs, slotId, 10, true, HttpStatus.OK);
+				}
+			}
+		});
+
+		long total = (long) THREADS * REQUESTS / 10;
+		TimeWindowStat service = stat.getTimeWindowStat("testExactQpsLimitUnderContention_service", slotId, slotId + 1000);
+		TimeWindowStat global = stat.getTimeWindowStat("testExactQpsLimitUnderContention_global", slotId, slotId + 1000);
+		assertEquals(maxQPS, admitted.get());
+		assertEquals(maxQPS, service.getTotal());
+		assertEquals(maxQPS, service.getCompReqs());
+		assertEquals(total - maxQPS, service.getBlockRequests());
+		assertEquals(maxQPS, global.getTotal());
+		assertEquals(maxQPS, global.get2xxStatus());
+		assertEquals(0, stat.getConcurrentRequests("testExactQpsLimitUnderContention_service"));
+	}
+
+	@Test
+	public void testRtHistogramBuckets() {
+		assertEquals(0, RtHistogram.index(-1));
+		assertEquals(RtHistogram.BUCKETS - 1, RtHistogram.index(Long.MAX_VALUE));
+		int last = 0;
+		for (long rt = 0; rt < (1 << 20); rt++) {
+			int idx = RtHistogram.index(rt);
+			assertTrue(idx == last || idx == last + 1, "rt " + rt);
+			assertTrue(rt <= RtHistogram.highestValue(idx), "rt " + rt);
+			assertTrue(RtHistogram.highestValue(idx) - rt <= rt / 8, "rt " + rt);
+			last = idx;
+		}
+		assertEquals(RtHistogram.BUCKETS - 1, last);
+	}
+
+	@Test
+	public void testRtPercentiles() throws Throwable {
+		FlowStat stat = new FlowStat(false, false);
+		List<ResourceConfig> resourceConfigs = new ArrayList<>();
+		resourceConfigs.add(new ResourceConfig("testRtPercentiles", -1L, -1L));
+		long slotId = stat.currentTimeSlotId();
+
+		// rt from 1 to 10000, half of them in the next time slot
+		runConcurrently(t -> {
+			for (int i = t; i < 10000; i += THREADS) {
+				long slot = i % 2 == 0 ? slotId : slotId + 1000;
+				stat.incrRequest(resourceConfigs, slot);
+				stat.addRequestRT(resourceConfigs, slot, i + 1, true, HttpStatus.OK);
+			}
+		});
+
+		TimeWindowStat tws = stat.getTimeWindowStat("testRtPercentiles", slotId, slotId + 2000);
+		assertEquals(10000, tws.getCompReqs());
+		assertPercentile(5000, tws.getP50());
+		assertPercentile(9000, tws.getP90());
+		assertPercentile(9900, tws.getP99());
+		assertPercentile(9990, tws.getP999());
+		assertTrue(tws.getP999() <= tws.getMax());
+
+		TimeWindowStat empty = stat.getTimeWindowStat("testRtPercentiles", slotId + 2000, slotId + 3000);
+		assertEquals(null, empty.getP50());
+	}
+
+	private void assertPercentile(long expected, Long actual) {
+		assertTrue(actual >= expected && actual <= expected + expected / 8, "expected " + expected + " but " + actual);
+	}
+
+	interface Job {
+		void run(int thread);
+	}
+
+	private void runConcurrently(Job job) throws Throwable {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			int t = i;
+			futures.add(pool.submit(() -> {
+				start.await();
+				job.run(t);
+				return null;
+			}));
+		}
+		start.countDown();
+		pool.shutdown();
+		// rethrow what a job throws, e.g. an assertion error
+		for (Future<?> future : futures) {
+			try {
+				future.get(60, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -5,7 +5,10 @@ import com.fizzgate.Fizz;
 import com.fizzgate.redis.RedisProperties;
 import com.fizzgate.redis.RedisServerConfiguration;
 import com.fizzgate.redis.RedisTemplateConfiguration;
+import com.fizzgate.stats.BlockType;
 import com.fizzgate.stats.FlowStat;
+import com.fizzgate.stats.IncrRequestResult;
+import com.fizzgate.stats.ResourceConfig;
 import com.fizzgate.stats.ResourceStat;
 import com.fizzgate.stats.TimeSlot;
 import com.fizzgate.stats.circuitbreaker.CircuitBreakManager;
@@ -26,6 +29,7 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -110,6 +114,91 @@ public class CircuitBreakManagerTests {
         Assertions.assertEquals(2, timeSlot.getCircuitBreakNum());
     }
 
+    @Test
+    void slowRequestsRatioTest() {
+        String json = "{\"id\":123456789012347,\"type\":3,\"service\":\"xservice\",\"path\":\"/slow\",\"strategy\":3,\"ratioThreshold\":0.5,\"slowRt\":1000,\"minRequestCount\":10,\"timeWindow\":5,\"statInterval\":5,\"recoveryStrategy\":1,\"responseContentType\":\"application/json\",\"responseContent\":\"error\",\"enable\":1,\"isDeleted\":0}";
+        CircuitBreaker cb = JacksonUtils.readValue(json, CircuitBreaker.class);
+        Assertions.assertEquals(CircuitBreaker.BreakStrategy.SLOW_REQUESTS_RATIO, cb.breakStrategy);
+        Assertions.assertEquals(1000, cb.slowRtThreshold);
+        Assertions.assertTrue(cb.isSlow(1001));
+        Assertions.assertFalse(cb.isSlow(1000));
+
+        FlowStat flowStat = new FlowStat(circuitBreakManager);
+        flowStat.cleanResource = false;
+        flowStat.createTimeSlotOnlyTraffic = false;
+        long currentTimeWindow = flowStat.currentTimeSlotId();
+        cb.stateStartTime = currentTimeWindow;
+        circuitBreakManager.getResource2circuitBreakerMap().put(cb.resource, cb);
+
+        MockServerWebExchange mockServerWebExchange = MockServerWebExchange.from(MockServerHttpRequest.get("/xxx").build());
+        ResourceStat resourceStat = flowStat.getResourceStat(cb.resource);
+        // slow requests are counted from the first check of the rule
+        Assertions.assertTrue(circuitBreakManager.permit(mockServerWebExchange, currentTimeWindow, flowStat, "xservice", "/slow"));
+        Assertions.assertEquals(1000, resourceStat.getSlowRt());
+        // 1001 and 1000 fall into the same histogram bucket, only the former is slow
+        for (int i = 0; i < 4; i++) {
+            resourceStat.addRequestRT(currentTimeWindow, 1001, true);
+        }
+        for (int i = 0; i < 6; i++) {
+            resourceStat.addRequestRT(currentTimeWindow, 1000, true);
+        }
+        Assertions.assertEquals(4, resourceStat.getSlowRequests(currentTimeWindow, currentTimeWindow + 1000));
+        Assertions.assertTrue(circuitBreakManager.permit(mockServerWebExchange, currentTimeWindow, flowStat, "xservice", "/slow"));
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, cb.stateRef.get());
+
+        resourceStat.addRequestRT(currentTimeWindow, 1001, true);
+        resourceStat.addRequestRT(currentTimeWindow, 1001, true);
+        Assertions.assertFalse(circuitBreakManager.permit(mockServerWebExchange, currentTimeWindow, flowStat, "xservice", "/slow"));
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, cb.stateRef.get());
+    }
+
+    @Test
+    void reserveBeforePermitTest() {
+        FlowStat flowStat = new FlowStat(circuitBreakManager);
+        flowStat.cleanResource = false;
+        flowStat.createTimeSlotOnlyTraffic = false;
+        long currentTimeWindow = flowStat.currentTimeSlotId();
+
+        String service = "xservice";
+        String path = "/ypath";
+
+        CircuitBreaker cb = new CircuitBreaker();
+        cb.service = service;
+        cb.path = path;
+        cb.resource = ResourceIdUtils.buildResourceId(null, null, null, service, path);
+        cb.breakStrategy = CircuitBreaker.BreakStrategy.TOTAL_ERRORS;
+        cb.monitorDuration = 5 * 1000;
+        cb.minRequests = 100;
+        cb.totalErrorThreshold = 10;
+        cb.breakDuration = 60 * 1000;
+        cb.resumeStrategy = CircuitBreaker.ResumeStrategy.DETECTIVE;
+        cb.stateStartTime = currentTimeWindow;
+        cb.stateRef.set(CircuitBreaker.State.OPEN);
+        circuitBreakManager.getResource2circuitBreakerMap().put(cb.resource, cb);
+
+        String resourceId = "reserveBeforePermitTest";
+        List<ResourceConfig> resourceConfigs = Collections.singletonList(new ResourceConfig(resourceId, 10, 1));
+        ResourceStat resourceStat = flowStat.getResourceStat(resourceId);
+
+        // rejected by the circuit breaker, the reserved quota is rolled back
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/xservice/ypath").build());
+        IncrRequestResult result = flowStat.incrRequest(exchange, resourceConfigs, currentTimeWindow, null);
+        Assertions.assertEquals(BlockType.CIRCUIT_BREAK, result.getBlockType());
+        Assertions.assertEquals(0, resourceStat.getConcurrentRequests().get());
+        Assertions.assertEquals(0, resourceStat.getTimeSlot(currentTimeWindow).getCounter());
+
+        // blocked by the QPS limit, the breaker is not asked and the probe is kept
+        cb.stateRef.set(CircuitBreaker.State.RESUME_DETECTIVE);
+        cb.noProbe.set(true);
+        resourceStat.getTimeSlot(currentTimeWindow).incr();
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/xservice/ypath").build());
+        result = flowStat.incrRequest(exchange, resourceConfigs, currentTimeWindow, null);
+        Assertions.assertEquals(BlockType.QPS, result.getBlockType());
+        Assertions.assertTrue(cb.noProbe.get());
+        Assertions.assertNull(exchange.getAttribute(CircuitBreaker.DETECT_REQUEST));
+        Assertions.assertEquals(1, resourceStat.getTimeSlot(currentTimeWindow).getCounter());
+    }
+
     @Test
     void detectiveResumeTest() throws InterruptedException {
         FlowStat flowStat = new FlowStat(circuitBreakManager);
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.fizzgate.stats.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.fizzgate.redis.RedisProperties;
+import com.fizzgate.redis.RedisServerConfiguration;
+import com.fizzgate.redis.RedisTemplateConfiguration;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+@TestPropertySource("/application.properties")
+@SpringJUnitConfig(classes = {RedisProperties.class, RedisTemplateConfiguration.class, RedisServerConfiguration.class})
+public class ClusterRateLimiterTests {
+
+    @Resource
+    StringRedisTemplate         stringRedisTemplate;
+
+    @Resource
+    ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        stringRedisTemplate.delete("fizz_rate_limit_bucket:svc");
+    }
+
+    @Test
+    void limitAcrossNodesTest() throws InterruptedException {
+        ClusterRateLimiter node0 = new ClusterRateLimiter(reactiveStringRedisTemplate, 10, 1000, 500);
+        ClusterRateLimiter node1 = new ClusterRateLimiter(reactiveStringRedisTemplate, 10, 1000, 500);
+
+        assertEquals(ClusterRateLimiter.LOCAL, node0.tryAcquire("svc", 100));
+        assertEquals(ClusterRateLimiter.LOCAL, node1.tryAcquire("svc", 100));
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals(10, node0.getLeaseTokens("svc"));
+        assertEquals(10, node1.getLeaseTokens("svc"));
+
+        int acquired = 0, denied = 0;
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 500) {
+            for (ClusterRateLimiter node : new ClusterRateLimiter[]{node0, node1}) {
+                int r = node.tryAcquire("svc", 100);
+                if (r == ClusterRateLimiter.ACQUIRED) {
+                    acquired++;
+                } else if (r == ClusterRateLimiter.DENIED) {
+                    denied++;
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        // the bucket holds 100 tokens at most and refills 100 tokens per second, and each node may hold a lease
+        assertTrue(acquired <= 100 + 100 * (elapsed + 200) / 1000 + 20, "acquired " + acquired + " in " + elapsed + "ms");
+        assertTrue(acquired >= 80, "acquired " + acquired);
+        assertTrue(denied > 0);
+    }
+
+    @Test
+    void redisUnavailableTest() throws InterruptedException {
+        LettuceConnectionFactory cf = new LettuceConnectionFactory("localhost", 1);
+        cf.afterPropertiesSet();
+        ClusterRateLimiter node = new ClusterRateLimiter(new ReactiveStringRedisTemplate(cf), 10, 1000, 50);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ClusterRateLimiter.LOCAL, node.tryAcquire("svc", 100));
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        cf.destroy();
+    }
+}
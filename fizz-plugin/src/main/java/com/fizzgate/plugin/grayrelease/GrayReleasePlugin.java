@@ -27,6 +27,8 @@ import com.fizzgate.plugin.requestbody.RequestBodyPlugin;
 import com.fizzgate.proxy.Route;
 import com.fizzgate.spring.web.server.ext.FizzServerWebExchangeDecorator;
 import com.fizzgate.util.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import inet.ipaddr.AddressStringException;
 import inet.ipaddr.IPAddress;
@@ -47,6 +49,7 @@ import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * @author hongqiaowei
@@ -74,8 +77,67 @@ public class GrayReleasePlugin extends RequestBodyPlugin {
     private static final String client           = "client";
     private static final String ip               = "ip";
 
+    private static final Pattern bodyReference = Pattern.compile("\\b(" + body + '|' + form + ")\\b");
+
+    /**
+     * Parsed trigger conditions by condition, not cached in the plugin config, which is serialized as json
+     */
+    private static final Cache<String, TriggerCondition> triggerConditions = Caffeine.newBuilder().maximumSize(1024).build();
+
+    /**
+     * Parsed keys and compiled regexes of matches(key, regex), which may be built from request values, so bounded
+     */
+    private static final Cache<String, Object>           keyExpressions    = Caffeine.newBuilder().maximumSize(1024).build();
+
+    private static final Cache<String, Pattern>          regexPatterns     = Caffeine.newBuilder().maximumSize(1024).build();
+
+    /**
+     * Parsed trigger condition
+     */
+    private static class TriggerCondition {
+
+        final Object  expression;
+
+        /**
+         * whether the condition references the request body, which is read only then
+         */
+        final boolean readBody;
+
+        TriggerCondition(String condition) throws OgnlException {
+            expression = Ognl.parseExpression(condition);
+            readBody   = bodyReference.matcher(condition).find();
+        }
+    }
+
+    /**
+     * Request context of condition expression, each part of the request is put into the map when it is accessed first.
+     */
     private static class OgnlRoot extends HashMap<String, Object> {
 
+        private final ServerWebExchange exchange;
+
+        OgnlRoot(ServerWebExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (super.containsKey(key)) {
+                return super.get(key);
+            }
+            Object value = null;
+            if (key instanceof String) {
+                value = request2ognlContext(exchange, (String) key);
+            }
+            put((String) key, value);
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
         public double random() {
             return Math.random();
         }
@@ -101,11 +163,17 @@ public class GrayReleasePlugin extends RequestBodyPlugin {
         }
 
         public boolean matches(String key, String regex) throws OgnlException {
-            String value = (String) Ognl.getValue(key, this);
+            Object expression = keyExpressions.getIfPresent(key);
+            if (expression == null) {
+                expression = Ognl.parseExpression(key);
+                keyExpressions.put(key, expression);
+            }
+            String value = (String) Ognl.getValue(expression, this);
             if (value == null) {
                 return false;
             }
-            return value.matches(regex);
+            Pattern pattern = regexPatterns.get(regex, Pattern::compile);
+            return pattern.matcher(value).matches();
         }
 
         public String jwtClaim(String name) {
@@ -175,6 +243,17 @@ public class GrayReleasePlugin extends RequestBodyPlugin {
         }
     }
 
+    /**
+     * The request body is read only if the trigger condition references body or form.
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, Map<String, Object> config) {
+        if (getTriggerCondition(config).readBody) {
+            return super.filter(exchange, config);
+        }
+        return doFilter(exchange, config);
+    }
+
     @Override
     public Mono<Void> doFilter(ServerWebExchange exchange, Map<String, Object> config) {
         String traceId = WebUtils.getTraceId(exchange);
@@ -183,16 +262,7 @@ public class GrayReleasePlugin extends RequestBodyPlugin {
             LOGGER.debug("gray release plugin config: {}", JacksonUtils.writeValueAsString(config));
         }
 
-        String tc = (String) config.get(triggerCondition);
-        Object ognlRoot = request2ognlContext(exchange);
-        Boolean conditionMatch = false;
-        try {
-            conditionMatch = (Boolean) Ognl.getValue(tc, ognlRoot);
-        } catch (OgnlException e) {
-            LOGGER.error("calc condition expression {} with context {}", tc, ognlRoot, e);
-            throw new RuntimeException(e);
-        }
-        if (conditionMatch) {
+        if (triggerConditionMatch(exchange, config)) {
             Route route = WebUtils.getRoute(exchange);
             changeRoute(exchange, route, config);
             if (route.type == ApiConfig.Type.DIRECT_RESPONSE) {
@@ -206,133 +276,173 @@ public class GrayReleasePlugin extends RequestBodyPlugin {
         return FizzPluginFilterChain.next(exchange);
     }
 
-    private Object request2ognlContext(ServerWebExchange exchange) {
-        OgnlRoot ognlRoot = new OgnlRoot();
+    public boolean triggerConditionMatch(ServerWebExchange exchange, Map<String, Object> config) {
+        TriggerCondition tc = getTriggerCondition(config);
+        OgnlRoot ognlRoot = new OgnlRoot(exchange);
+        try {
+            return (Boolean) Ognl.getValue(tc.expression, ognlRoot);
+        } catch (OgnlException e) {
+            LOGGER.error("calc condition expression {} with context {}", config.get(triggerCondition), ognlRoot, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private TriggerCondition getTriggerCondition(Map<String, Object> config) {
+        String condition = (String) config.get(triggerCondition);
+        TriggerCondition tc = triggerConditions.getIfPresent(condition);
+        if (tc == null) {
+            try {
+                tc = new TriggerCondition(condition);
+            } catch (OgnlException e) {
+                LOGGER.error("parse condition expression {}", condition, e);
+                throw new RuntimeException(e);
+            }
+            triggerConditions.put(condition, tc);
+        }
+        return tc;
+    }
+
+    /**
+     * @return the part of request context, which is null if the request has no such part
+     */
+    private static Object request2ognlContext(ServerWebExchange exchange, String key) {
         ServerHttpRequest request = exchange.getRequest();
+        switch (key) {
+            case method:
+                return request.getMethodValue().toLowerCase();
 
-        ognlRoot.put(method, request.getMethodValue().toLowerCase());
-        ognlRoot.put(path, WebUtils.getClientReqPath(exchange));
+            case path:
+                return WebUtils.getClientReqPath(exchange);
 
-        MultiValueMap<String, String> queryParams = request.getQueryParams();
-        if (!queryParams.isEmpty()) {
-            Map<String, Object> queryMap = new HashMap<>();
-            queryParams.forEach(
-                                    (name, values) -> {
+            case query:
+                MultiValueMap<String, String> queryParams = request.getQueryParams();
+                if (queryParams.isEmpty()) {
+                    return null;
+                }
+                Map<String, Object> queryMap = new HashMap<>();
+                queryParams.forEach(
+                                        (name, values) -> {
+                                            if (CollectionUtils.isEmpty(values)) {
+                                                queryMap.put(name, null);
+                                            } else if (values.size() > 1) {
+                                                queryMap.put(name, values);
+                                            } else {
+                                                queryMap.put(name, values.get(0));
+                                            }
+                                        }
+                           );
+                return queryMap;
+
+            case header:
+                HttpHeaders headers = request.getHeaders();
+                if (headers.isEmpty()) {
+                    return null;
+                }
+                Map<String, Object> headerMap = new HashMap<>();
+                headers.forEach(
+                                    (nm, values) -> {
+                                        String name = nm.toLowerCase();
                                         if (CollectionUtils.isEmpty(values)) {
-                                            queryMap.put(name, null);
+                                            headerMap.put(name, null);
                                         } else if (values.size() > 1) {
-                                            queryMap.put(name, values);
+                                            headerMap.put(name, values);
                                         } else {
-                                            queryMap.put(name, values.get(0));
+                                            headerMap.put(name, values.get(0));
                                         }
                                     }
                        );
-            ognlRoot.put(query, queryMap);
-        }
-
-        HttpHeaders headers = request.getHeaders();
-        if (!headers.isEmpty()) {
-            Map<String, Object> headerMap = new HashMap<>();
-            headers.forEach(
-                                (nm, values) -> {
-                                    String name = nm.toLowerCase();
-                                    if (CollectionUtils.isEmpty(values)) {
-                                        headerMap.put(name, null);
-                                    } else if (values.size() > 1) {
-                                        headerMap.put(name, values);
-                                    } else {
-                                        headerMap.put(name, values.get(0));
-                                    }
-                                }
-                   );
-            ognlRoot.put(header, headerMap);
-        }
-
-        MultiValueMap<String, HttpCookie> cookies = request.getCookies();
-        if (!CollectionUtils.isEmpty(cookies)) {
-            Map<String, Object> cookieMap = new HashMap<>();
-            cookies.forEach(
-                                (name, values) -> {
-                                    if (CollectionUtils.isEmpty(values)) {
-                                        cookieMap.put(name, null);
-                                    } else if (values.size() > 1) {
-                                        List<String> lst = new ArrayList<>(values.size());
-                                        for (HttpCookie value : values) {
-                                            lst.add(value.getValue());
+                return headerMap;
+
+            case cookie:
+                MultiValueMap<String, HttpCookie> cookies = request.getCookies();
+                if (CollectionUtils.isEmpty(cookies)) {
+                    return null;
+                }
+                Map<String, Object> cookieMap = new HashMap<>();
+                cookies.forEach(
+                                    (name, values) -> {
+                                        if (CollectionUtils.isEmpty(values)) {
+                                            cookieMap.put(name, null);
+                                        } else if (values.size() > 1) {
+                                            List<String> lst = new ArrayList<>(values.size());
+                                            for (HttpCookie value : values) {
+                                                lst.add(value.getValue());
+                                            }
+                                            cookieMap.put(name, lst);
+                                        } else {
+                                            cookieMap.put(name, values.get(0).getValue());
                                         }
-                                        cookieMap.put(name, lst);
-                                    } else {
-                                        cookieMap.put(name, values.get(0).getValue());
                                     }
-                                }
-                   );
-            ognlRoot.put(cookie, cookieMap);
-        }
-
-        MediaType reqContentType = request.getHeaders().getContentType();
-        if (MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(reqContentType)) {
-            exchange.getFormData()
-                    .map(
-                            formData -> {
-                                if (formData == FizzServerWebExchangeDecorator.EMPTY_FORM_DATA) {
-                                    return null;
-                                } else {
-                                    Map<String, Object> formMap = new HashMap<>();
-                                    formData.forEach(
-                                            (name, values) -> {
-                                                if (CollectionUtils.isEmpty(values)) {
-                                                    formMap.put(name, null);
-                                                } else if (values.size() > 1) {
-                                                    formMap.put(name, values);
-                                                } else {
-                                                    formMap.put(name, values.get(0));
+                       );
+                return cookieMap;
+
+            case form:
+                if (!MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(request.getHeaders().getContentType())) {
+                    return null;
+                }
+                // the form data is parsed from the body read by RequestBodyPlugin, so the mono is done synchronously
+                Map<String, Object>[] formMap = new Map[1];
+                exchange.getFormData()
+                        .subscribe(
+                                formData -> {
+                                    if (formData != FizzServerWebExchangeDecorator.EMPTY_FORM_DATA) {
+                                        Map<String, Object> m = new HashMap<>();
+                                        formData.forEach(
+                                                (name, values) -> {
+                                                    if (CollectionUtils.isEmpty(values)) {
+                                                        m.put(name, null);
+                                                    } else if (values.size() > 1) {
+                                                        m.put(name, values);
+                                                    } else {
+                                                        m.put(name, values.get(0));
+                                                    }
                                                 }
-                                            }
-                                    );
-                                    ognlRoot.put(form, formMap);
-                                    return formMap;
+                                        );
+                                        formMap[0] = m;
+                                    }
                                 }
-                            }
-                    )
-                    .subscribe();
-        } else if (MediaType.APPLICATION_JSON.isCompatibleWith(reqContentType)) {
-            request.getBody()
-                   .single()
-                   .map(
-                           bodyDataBuffer -> {
-                               if (bodyDataBuffer == NettyDataBufferUtils.EMPTY_DATA_BUFFER) {
-                                   return ReactorUtils.NULL;
-                               } else {
-                                   String json = bodyDataBuffer.toString(StandardCharsets.UTF_8).trim();
-                                   if (LOGGER.isDebugEnabled()) {
-                                       LOGGER.debug("request {} body: {}", request.getId(), json);
-                                   }
-                                   if (json.charAt(0) == Consts.S.LEFT_SQUARE_BRACKET) {
-                                       List<Object> bodyMap = JacksonUtils.readValue(json, new TypeReference<List<Object>>(){});
-                                       ognlRoot.put(body, bodyMap);
-                                   } else {
-                                       Map<String, Object> bodyMap = JacksonUtils.readValue(json, new TypeReference<Map<String, Object>>(){});
-                                       ognlRoot.put(body, bodyMap);
+                        );
+                return formMap[0];
+
+            case body:
+                if (!MediaType.APPLICATION_JSON.isCompatibleWith(request.getHeaders().getContentType())) {
+                    return null;
+                }
+                Object[] bodyObj = new Object[1];
+                request.getBody()
+                       .single()
+                       .subscribe(
+                               bodyDataBuffer -> {
+                                   if (bodyDataBuffer != NettyDataBufferUtils.EMPTY_DATA_BUFFER) {
+                                       String json = bodyDataBuffer.toString(StandardCharsets.UTF_8).trim();
+                                       if (LOGGER.isDebugEnabled()) {
+                                           LOGGER.debug("request {} body: {}", request.getId(), json);
+                                       }
+                                       if (json.isEmpty()) {
+                                           return;
+                                       }
+                                       if (json.charAt(0) == Consts.S.LEFT_SQUARE_BRACKET) {
+                                           bodyObj[0] = JacksonUtils.readValue(json, new TypeReference<List<Object>>(){});
+                                       } else {
+                                           bodyObj[0] = JacksonUtils.readValue(json, new TypeReference<Map<String, Object>>(){});
+                                       }
                                    }
-                                   return ReactorUtils.NULL;
                                }
-                           }
-                   )
-                   .subscribe();
-        }
+                       );
+                return bodyObj[0];
 
-        String originIp = WebUtils.getOriginIp(exchange);
-        if (originIp != null) {
-            Map<String, Object> clientMap = new HashMap<>();
-            clientMap.put(ip, originIp);
-            ognlRoot.put(client, clientMap);
-        }
+            case client:
+                String originIp = WebUtils.getOriginIp(exchange);
+                if (originIp == null) {
+                    return null;
+                }
+                Map<String, Object> clientMap = new HashMap<>();
+                clientMap.put(ip, originIp);
+                return clientMap;
 
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("request {} ognl root: {}", request.getId(), JacksonUtils.writeValueAsString(ognlRoot));
+            default:
+                return null;
         }
-
-        return ognlRoot;
     }
 
     private void changeRoute(ServerWebExchange exchange, Route route, Map<String, Object> pluginConfig) {
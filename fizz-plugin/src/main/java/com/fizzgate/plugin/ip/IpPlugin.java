@@ -9,7 +9,10 @@ import com.fizzgate.plugin.FizzPluginFilter;
 import com.fizzgate.plugin.FizzPluginFilterChain;
 import com.fizzgate.plugin.auth.ApiConfig;
 import com.fizzgate.plugin.auth.ApiConfigService;
+import com.fizzgate.util.IpMatcher;
 import com.fizzgate.util.WebUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import lombok.extern.slf4j.Slf4j;
@@ -37,6 +40,10 @@ import static com.fizzgate.plugin.ip.RouterConfig.FieldName.*;
 @Component(value = IpPlugin.PLUGIN_NAME)
 public class IpPlugin implements FizzPluginFilter {
     public static final String PLUGIN_NAME = "fizz_plugin_ip";
+    /**
+     * 白名单和黑名单按配置编译后缓存，不缓存在插件配置中，因为插件配置会被序列化为json
+     */
+    private static final Cache<String, IpMatcher> IP_MATCHERS = Caffeine.newBuilder().maximumSize(1024).build();
     @Resource
     private ObjectMapper objectMapper;
     @Resource
@@ -72,8 +79,8 @@ public class IpPlugin implements FizzPluginFilter {
                 }
             }
         } */
-        Set<String> whiteIpSet = ConfigUtils.string2set(routerConfig.getWhiteIp());
-        Set<String> blackIpSet = ConfigUtils.string2set(routerConfig.getBlackIp());
+        IpMatcher whiteIpMatcher = ipMatcher(routerConfig.getWhiteIp());
+        IpMatcher blackIpMatcher = ipMatcher(routerConfig.getBlackIp());
 
         String ip = null;
         try {
@@ -81,8 +88,8 @@ public class IpPlugin implements FizzPluginFilter {
         } catch (SocketException e) {
             log.warn(e.getMessage(), e);
         }
-        log.trace("clientIp:{}, fixedWhiteIpSet:{}, fixedBlackIpSet:{}, whiteIpSet:{}, blackIpSet:{}",
-                ip, fixedWhiteIpSet, fixedBlackIpSet, whiteIpSet, blackIpSet);
+        log.trace("clientIp:{}, fixedWhiteIpSet:{}, fixedBlackIpSet:{}, whiteIp:{}, blackIp:{}",
+                ip, fixedWhiteIpSet, fixedBlackIpSet, routerConfig.getWhiteIp(), routerConfig.getBlackIp());
         // 未获取到client ip，返回false
         if (StringUtils.isBlank(ip)) {
             return false;
@@ -91,11 +98,11 @@ public class IpPlugin implements FizzPluginFilter {
         // 优先匹配路由级别配置，然后再匹配插件级别配置
 
         // 路由级别：：白名单匹配到就直接返回true
-        if (IpMatchUtils.match(ip, whiteIpSet)) {
+        if (whiteIpMatcher != null && whiteIpMatcher.match(ip)) {
             return true;
         }
         // 路由级别：：黑名单匹配到就直接返回false
-        if (IpMatchUtils.match(ip, blackIpSet)) {
+        if (blackIpMatcher != null && blackIpMatcher.match(ip)) {
             return false;
         }
         // 插件级别：：白名单匹配到就直接返回true
@@ -107,7 +114,7 @@ public class IpPlugin implements FizzPluginFilter {
             return false;
         } */
         // 路由级别和插件级别都没匹配到
-        if (CollectionUtils.isEmpty(whiteIpSet) /* || CollectionUtils.isEmpty(fixedWhiteIpSet) */) {
+        if (whiteIpMatcher == null /* || CollectionUtils.isEmpty(fixedWhiteIpSet) */) {
             // 都没有配置白名单，默认返回true
             return true;
         } else {
@@ -126,6 +133,19 @@ public class IpPlugin implements FizzPluginFilter {
         return routerConfig;
     }
 
+    /**
+     * @return 未配置时为null
+     */
+    private static IpMatcher ipMatcher(String ips) {
+        if (StringUtils.isBlank(ips)) {
+            return null;
+        }
+        return IP_MATCHERS.get(ips, k -> {
+            Set<String> ipSet = ConfigUtils.string2set(k);
+            return CollectionUtils.isEmpty(ipSet) ? null : IpMatchUtils.compile(ipSet);
+        });
+    }
+
     private List<PluginConfig.Item> pluginConfig(ServerWebExchange exchange, Map<String, Object> config) {
         String fixedConfig = (String) config.get(com.fizzgate.plugin.PluginConfig.CUSTOM_CONFIG);
         try {
@@ -2,6 +2,7 @@ package com.fizzgate.plugin.ip.util;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
+import com.fizzgate.util.IpMatcher;
 import com.google.common.collect.Sets;
 import inet.ipaddr.AddressStringException;
 import inet.ipaddr.IPAddress;
@@ -215,6 +216,51 @@ public final class IpMatchUtils {
         return false;
     }
 
+    /**
+     * 将IP列表编译为 {@link IpMatcher}，规则与 {@link #match(String, Set)} 相同，IP列表变化时编译一次即可，无效的规则被忽略
+     */
+    public static IpMatcher compile(Set<String> ipList) {
+        IpMatcher.Builder builder = new IpMatcher.Builder();
+        for (String allow : ipList) {
+            if (allow.contains(RANGE_SPLITTER)) { // 处理 类似 192.168.0.0-192.168.2.1，逐段匹配
+                String[] tempAllow = allow.split(RANGE_SPLITTER);
+                if (tempAllow.length == 2) {
+                    long from = IpMatcher.parseIpv4(tempAllow[0].trim());
+                    long end = IpMatcher.parseIpv4(tempAllow[1].trim());
+                    if (from >= 0 && end >= 0) {
+                        builder.box(segments(from), segments(end));
+                    }
+                }
+            } else if (allow.contains("/")) { // 处理 网段 xxx.xxx.xxx./24
+                int splitIndex = allow.indexOf("/");
+                String ipSegment = allow.substring(0, splitIndex).trim();
+                int netmask;
+                try {
+                    netmask = Integer.parseInt(allow.substring(splitIndex + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                long segmentLong = IpMatcher.parseIpv4(ipSegment);
+                // 网段须为网络地址
+                if (segmentLong < 0 || (netmask >= 0 && netmask <= 32 && (segmentLong & ((1L << (32 - netmask)) - 1)) == 0)) {
+                    builder.cidr(ipSegment, netmask);
+                }
+            } else if (allow.contains("*")) {
+                IPAddress rangeAddress = new IPAddressString(allow).getAddress();
+                if (rangeAddress != null) {
+                    builder.address(rangeAddress);
+                }
+            } else {
+                builder.ip(allow);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int[] segments(long ip) {
+        return new int[]{(int) (ip >>> 24) & 0xFF, (int) (ip >>> 16) & 0xFF, (int) (ip >>> 8) & 0xFF, (int) ip & 0xFF};
+    }
+
     /**
      * 根据IP地址，及IP白名单设置规则判断IP是否包含在白名单
      */
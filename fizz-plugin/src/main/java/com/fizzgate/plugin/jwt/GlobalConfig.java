@@ -34,6 +34,11 @@ public class GlobalConfig {
 	 */
 	private String publicKey;
 
+	/**
+	 * Max number of verified tokens cached until their exp, 0 means no cache
+	 */
+	private long tokenCacheSize;
+
 	public String getSecretKey() {
 		return secretKey;
 	}
@@ -50,4 +55,12 @@ public class GlobalConfig {
 		this.publicKey = publicKey;
 	}
 
+	public long getTokenCacheSize() {
+		return tokenCacheSize;
+	}
+
+	public void setTokenCacheSize(long tokenCacheSize) {
+		this.tokenCacheSize = tokenCacheSize;
+	}
+
 }
\ No newline at end of file
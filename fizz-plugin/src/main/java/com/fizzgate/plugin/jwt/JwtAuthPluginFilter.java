@@ -40,6 +40,8 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * 
@@ -66,12 +68,15 @@ public class JwtAuthPluginFilter extends PluginFilter {
 
 	public static final String JWT_CLAIMS = "jwt.claims";
 
+	private static final int MAX_VERIFIERS = 1024;
+
 	/**
 	 * Plugin global custom config, example: <br/>
 	 * <br/>
 	 * {<br/>
 	 * "secretKey": "secret key for HS256/HS384/HS512 Algorithm", <br/>
-	 * "publicKey": "public key for RSA or ECDSA Algorithm" <br/>
+	 * "publicKey": "public key for RSA or ECDSA Algorithm", <br/>
+	 * "tokenCacheSize": 10000 <br/>
 	 * }<br/>
 	 * <br/>
 	 */
@@ -79,6 +84,15 @@ public class JwtAuthPluginFilter extends PluginFilter {
 
 	private String fixedConfigCache = null;
 
+	/**
+	 * Verifiers keyed by algorithm and key, so the key is parsed only once
+	 */
+	private final Map<String, JWTVerifier> verifiers = new ConcurrentHashMap<>();
+
+	private volatile VerifiedTokenCache tokenCache = null;
+
+	private volatile Predicate<DecodedJWT> revocationChecker = null;
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public Mono<Void> doFilter(ServerWebExchange exchange, Map<String, Object> config, String fixedConfig) {
@@ -92,6 +106,7 @@ public class JwtAuthPluginFilter extends PluginFilter {
 					globalConfig = null;
 				}
 				fixedConfigCache = fixedConfig;
+				setTokenCacheSize(globalConfig == null ? 0 : globalConfig.getTokenCacheSize());
 			}
 
 			String secretKey = (String) config.get(KEY);
@@ -171,8 +186,68 @@ public class JwtAuthPluginFilter extends PluginFilter {
 	 */
 	public DecodedJWT verify(String token, String secretKey, String publicKey) {
 		try {
+			VerifiedTokenCache tc = tokenCache;
+			if (tc != null) {
+				// looked up by the raw token, decoded only if it is not cached
+				DecodedJWT cached = tc.get(token, alg -> getVerifierQuietly(alg, secretKey, publicKey));
+				if (cached != null) {
+					return checkRevocation(cached);
+				}
+			}
+
 			DecodedJWT jwt = JWT.decode(token);
 			String alg = jwt.getAlgorithm();
+			JWTVerifier verifier = getVerifier(alg, secretKey, publicKey);
+
+			if (verifier == null) {
+				// Algorithm NOT Supported
+				log.warn("{} Algorithm NOT Supported", alg);
+			} else {
+				DecodedJWT verified;
+				try {
+					verified = verifier.verify(jwt);
+				} catch (JWTVerificationException e) {
+					// Verification failed
+					log.warn("JWT verification failed: {}", e.getMessage());
+					return null;
+				}
+				if (tc != null) {
+					tc.put(token, verifier, verified);
+				}
+				return checkRevocation(verified);
+			}
+		} catch (Exception e) {
+			log.warn("JWT verification exception", e);
+		}
+		return null;
+	}
+
+	private DecodedJWT checkRevocation(DecodedJWT verified) {
+		Predicate<DecodedJWT> rc = revocationChecker;
+		if (rc != null && rc.test(verified)) {
+			log.warn("JWT verification failed: token is revoked");
+			return null;
+		}
+		return verified;
+	}
+
+	/**
+	 * @return null if the key can't be parsed, which the verification of the
+	 *         decoded token reports
+	 */
+	private JWTVerifier getVerifierQuietly(String alg, String secretKey, String publicKey) {
+		try {
+			return getVerifier(alg, secretKey, publicKey);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private JWTVerifier getVerifier(String alg, String secretKey, String publicKey) throws Exception {
+		String key = alg.startsWith("HS") ? secretKey : publicKey;
+		String verifierKey = alg + '\n' + key;
+		JWTVerifier verifier = verifiers.get(verifierKey);
+		if (verifier == null) {
 			Algorithm algorithm = null;
 
 			switch (alg) {
@@ -209,21 +284,55 @@ public class JwtAuthPluginFilter extends PluginFilter {
 			}
 
 			if (algorithm == null) {
-				// Algorithm NOT Supported
-				log.warn("{} Algorithm NOT Supported", alg);
-			} else {
-				JWTVerifier verifier = JWT.require(algorithm).build();
-				try {
-					return verifier.verify(token);
-				} catch (JWTVerificationException e) {
-					// Verification failed
-					log.warn("JWT verification failed: {}", e.getMessage());
-				}
+				return null;
 			}
-		} catch (Exception e) {
-			log.warn("JWT verification exception", e);
+			verifier = JWT.require(algorithm).build();
+			if (verifiers.size() >= MAX_VERIFIERS) {
+				// keys are changed too many times
+				verifiers.clear();
+			}
+			verifiers.put(verifierKey, verifier);
+		}
+		return verifier;
+	}
+
+	/**
+	 * Enable the cache of verified tokens if size is greater than 0, otherwise
+	 * disable it
+	 */
+	public void setTokenCacheSize(long size) {
+		VerifiedTokenCache tc = tokenCache;
+		if (size <= 0) {
+			tokenCache = null;
+		} else if (tc == null || tc.getMaximumSize() != size) {
+			tokenCache = new VerifiedTokenCache(size);
+		}
+	}
+
+	/**
+	 * @return the cache of verified tokens, null if it is disabled
+	 */
+	public VerifiedTokenCache getTokenCache() {
+		return tokenCache;
+	}
+
+	/**
+	 * @param revocationChecker tests each verified token, including the cached
+	 *                          one, the token is rejected if it returns true
+	 */
+	public void setRevocationChecker(Predicate<DecodedJWT> revocationChecker) {
+		this.revocationChecker = revocationChecker;
+	}
+
+	/**
+	 * Remove the token from the cache of verified tokens, it should be rejected by
+	 * the revocation checker then
+	 */
+	public void revoke(String token) {
+		VerifiedTokenCache tc = tokenCache;
+		if (tc != null) {
+			tc.revoke(token);
 		}
-		return null;
 	}
 
 }
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.plugin.jwt;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Caches the tokens which passed signature verification, keyed by the raw
+ * token, so a cached token is neither decoded nor verified again, an entry
+ * expires at the token's exp, tokens without exp are not cached.
+ * <p>
+ * An entry only hits with the verifier it is verified by, so a token verified
+ * with one key is verified again with another key.
+ * <p>
+ * The size, hits and misses are logged every {@link #REPORT_INTERVAL_SECONDS}
+ * while the cache is used.
+ * 
+ * @author Francis Dong
+ *
+ */
+public class VerifiedTokenCache {
+
+	private static final Logger log = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+	public static final long REPORT_INTERVAL_SECONDS = 60;
+
+	private final long maximumSize;
+
+	private final Cache<String, Entry> cache;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+
+	public VerifiedTokenCache(long maximumSize) {
+		this.maximumSize = maximumSize;
+		cache = Caffeine.newBuilder().maximumSize(maximumSize).executor(Runnable::run)
+				.expireAfter(new Expiry<String, Entry>() {
+					@Override
+					public long expireAfterCreate(String key, Entry entry, long currentTime) {
+						return TimeUnit.MILLISECONDS.toNanos(Math.max(entry.expiresAt - System.currentTimeMillis(), 0));
+					}
+
+					@Override
+					public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+						return expireAfterCreate(key, entry, currentTime);
+					}
+
+					@Override
+					public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+						return currentDuration;
+					}
+				}).build();
+	}
+
+	/**
+	 * @param verifierOfAlg the verifier of the algorithm of the cached token, the
+	 *                      one the token should be verified by now
+	 * @return the decoded token if it has been verified by the verifier and not
+	 *         expired, otherwise null
+	 */
+	public DecodedJWT get(String token, Function<String, JWTVerifier> verifierOfAlg) {
+		report();
+		Entry entry = cache.getIfPresent(token);
+		if (entry == null || entry.expiresAt <= System.currentTimeMillis()
+				|| entry.verifier != verifierOfAlg.apply(entry.jwt.getAlgorithm())) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.jwt;
+	}
+
+	public void put(String token, JWTVerifier verifier, DecodedJWT jwt) {
+		if (jwt.getExpiresAt() != null) {
+			cache.put(token, new Entry(verifier, jwt, jwt.getExpiresAt().getTime()));
+		}
+	}
+
+	/**
+	 * Remove the token from cache, then it will be verified again
+	 */
+	public void revoke(String token) {
+		cache.invalidate(token);
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long size() {
+		return cache.estimatedSize();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	private void report() {
+		long now = System.currentTimeMillis();
+		long last = lastReport.get();
+		if (now - last >= TimeUnit.SECONDS.toMillis(REPORT_INTERVAL_SECONDS) && lastReport.compareAndSet(last, now)) {
+			log.info("verified token cache size: {}, hits: {}, misses: {}", size(), getHitCount(), getMissCount());
+		}
+	}
+
+	private static class Entry {
+
+		final JWTVerifier verifier;
+
+		final DecodedJWT jwt;
+
+		final long expiresAt;
+
+		Entry(JWTVerifier verifier, DecodedJWT jwt, long expiresAt) {
+			this.verifier = verifier;
+			this.jwt = jwt;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.plugin.grayrelease.GrayReleasePlugin;
+import com.fizzgate.util.WebUtils;
+import ognl.Ognl;
+import ognl.OgnlException;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trigger condition evaluation of {@link GrayReleasePlugin} per request, the eager one parses the condition
+ * and converts the whole request to the context for every request, as the plugin did before; run by
+ * <pre>
+ * mvn test -pl fizz-plugin -am -P benchmark -Dtest=GrayReleaseBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author hongqiaowei
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GrayReleaseBenchmark {
+
+    @Param({
+            "method == 'get' and header['x-gray'] == 'true'",
+            "query.uid != null and query.uid.hashCode() % 10 == 0",
+            "cookie.region == 'sh' or client.ip == '10.1.2.3'"
+    })
+    public String                triggerCondition;
+
+    private GrayReleasePlugin    grayReleasePlugin;
+
+    private Map<String, Object>  config;
+
+    private MockServerHttpRequest.BaseBuilder<?> request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        grayReleasePlugin = new GrayReleasePlugin();
+        config = new HashMap<>();
+        config.put("triggerCondition", triggerCondition);
+        request = MockServerHttpRequest.get("/aservice/apath/xxx?uid=20&name=henry")
+                                       .header("X-Gray",          "true")
+                                       .header("User-Agent",      "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)")
+                                       .header("Accept",          "application/json")
+                                       .header("Accept-Language", "zh-CN,zh;q=0.9")
+                                       .cookie(new HttpCookie("region", "sh"), new HttpCookie("sid", "8a2c41e0f9"));
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put("oi@", "10.1.2.3");
+        return exchange;
+    }
+
+    @Benchmark
+    public Object eager() throws OgnlException {
+        MockServerWebExchange exchange = exchange();
+        Map<String, Object> root = new HashMap<>();
+        root.put("method", exchange.getRequest().getMethodValue().toLowerCase());
+        root.put("path",   exchange.getRequest().getURI().getPath());
+        Map<String, Object> query = new HashMap<>();
+        exchange.getRequest().getQueryParams().forEach((n, vs) -> query.put(n, vs.get(0)));
+        root.put("query",  query);
+        Map<String, Object> header = new HashMap<>();
+        exchange.getRequest().getHeaders().forEach((n, vs) -> header.put(n.toLowerCase(), vs.get(0)));
+        root.put("header", header);
+        Map<String, Object> cookie = new HashMap<>();
+        exchange.getRequest().getCookies().forEach((n, vs) -> cookie.put(n, vs.get(0).getValue()));
+        root.put("cookie", cookie);
+        Map<String, Object> client = new HashMap<>();
+        client.put("ip", WebUtils.getOriginIp(exchange));
+        root.put("client", client);
+        return Ognl.getValue(triggerCondition, root);
+    }
+
+    @Benchmark
+    public boolean lazy() {
+        return grayReleasePlugin.triggerConditionMatch(exchange(), config);
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(GrayReleaseBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.benchmark;
+
+import com.fizzgate.plugin.ip.util.IpMatchUtils;
+import com.fizzgate.util.IpMatcher;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching an ip against ip rules, by {@link IpMatchUtils#match(String, Set)} which scans the rules,
+ * vs by the compiled {@link IpMatcher}, run by
+ * <pre>
+ * mvn test -pl fizz-plugin -am -P benchmark -Dtest=IpMatcherBenchmark -DfailIfNoTests=false
+ * </pre>
+ *
+ * @author hongqiaowei
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IpMatcherBenchmark {
+
+    @Param({"100", "10000"})
+    public int           rules;
+
+    private Set<String>  ipList;
+
+    private IpMatcher    ipMatcher;
+
+    private String[]     ips;
+
+    private int          next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(1);
+        ipList = new HashSet<>();
+        while (ipList.size() < rules) {
+            String subnet = random.nextInt(224) + "." + random.nextInt(256) + '.' + random.nextInt(256);
+            switch (ipList.size() % 4) {
+                case 0:
+                    ipList.add(subnet + '.' + random.nextInt(256));
+                    break;
+                case 1:
+                    ipList.add(subnet + ".0/24");
+                    break;
+                case 2:
+                    ipList.add(subnet + ".10-" + subnet + ".20");
+                    break;
+                default:
+                    ipList.add(subnet + ".*");
+            }
+        }
+        ipMatcher = IpMatchUtils.compile(ipList);
+        ips = new String[1024];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = random.nextInt(224) + "." + random.nextInt(256) + '.' + random.nextInt(256) + '.' + random.nextInt(256);
+        }
+    }
+
+    @Benchmark
+    public boolean scan() {
+        return IpMatchUtils.match(ips[next++ & 1023], ipList);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return ipMatcher.match(ips[next++ & 1023]);
+    }
+
+    @Test
+    void benchmark() throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(IpMatcherBenchmark.class.getSimpleName())
+                                    .forks(1)
+                                    .warmupIterations(3)
+                                    .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .measurementIterations(5)
+                                    .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(1))
+                                    .build()
+        ).run();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (C) 2021 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.plugin.grayrelease;
+
+import com.fizzgate.util.JacksonUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class GrayReleaseConditionTests {
+
+    private final GrayReleasePlugin grayReleasePlugin = new GrayReleasePlugin();
+
+    @Test
+    void requestPartsTest() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/aservice/apath/xxx?uid=15&tag=a&tag=b")
+                                     .header("X-Gray", "true")
+                                     .cookie(new HttpCookie("region", "sh"))
+        );
+        exchange.getAttributes().put("oi@", "11.238.145.181");
+
+        Map<String, Object> config = config("method == 'get' and header['x-gray'] == 'true' and query.uid == '15' and cookie.region == 'sh'");
+        assertTrue(grayReleasePlugin.triggerConditionMatch(exchange, config));
+        assertTrue(grayReleasePlugin.triggerConditionMatch(exchange, config));
+        // the parsed condition is not cached in the config, which is serialized by the plugin and /admin/cache
+        assertEquals(1, config.size());
+        assertNotNull(JacksonUtils.writeValueAsString(config));
+
+        assertTrue (grayReleasePlugin.triggerConditionMatch(exchange, config("matches('query.uid', '^[0-9]*[05]$') and query.tag.size() == 2")));
+        assertTrue (grayReleasePlugin.triggerConditionMatch(exchange, config("clientIpInRange('11.238.145.180', '11.238.145.182')")));
+        assertTrue (grayReleasePlugin.triggerConditionMatch(exchange, config("exist('query.uid') and exist('header')")));
+        assertFalse(grayReleasePlugin.triggerConditionMatch(exchange, config("exist('form') or exist('query.name') or exist('nothing')")));
+        assertFalse(grayReleasePlugin.triggerConditionMatch(exchange, config("matches('query.name', '.*')")));
+    }
+
+    @Test
+    void bodyTest() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.post("/aservice/apath/xxx")
+                                     .contentType(MediaType.APPLICATION_JSON)
+                                     .body("{\"user\":\"henry\",\"tools\":{\"gun\":\"ak\"}}")
+        );
+        assertTrue (grayReleasePlugin.triggerConditionMatch(exchange, config("body.user == 'henry' and exist('body.tools.gun')")));
+        assertFalse(grayReleasePlugin.triggerConditionMatch(exchange, config("exist('query') or exist('cookie')")));
+    }
+
+    private static Map<String, Object> config(String triggerCondition) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("triggerCondition", triggerCondition);
+        return config;
+    }
+}
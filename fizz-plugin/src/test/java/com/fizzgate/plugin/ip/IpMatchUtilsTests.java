@@ -0,0 +1,48 @@
+/*
+ *  Copyright (C) 2020 the original author or authors.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.fizzgate.plugin.ip;
+
+import com.fizzgate.plugin.ip.util.IpMatchUtils;
+import com.fizzgate.util.IpMatcher;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author hongqiaowei
+ */
+
+public class IpMatchUtilsTests {
+
+    @Test
+    void compileTest() {
+        Set<String> ipList = Sets.newHashSet("10.1.1.1", "10.2.0.0/16", "10.3.1.0-10.3.2.255", "10.4.0.5-10.6.9.5",
+                                             "10.7.*.*", "10.8.*.1", "10.9.1.1/24");
+        IpMatcher matcher = IpMatchUtils.compile(ipList);
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            String ip = "10." + random.nextInt(11) + '.' + random.nextInt(12) + '.' + random.nextInt(12);
+            assertEquals(IpMatchUtils.match(ip, ipList), matcher.match(ip), ip);
+        }
+    }
+}
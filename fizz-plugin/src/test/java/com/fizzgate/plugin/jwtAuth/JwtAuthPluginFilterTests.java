@@ -17,12 +17,20 @@
 
 package com.fizzgate.plugin.jwtAuth;
 
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.fizzgate.plugin.jwt.JwtAuthPluginFilter;
+import com.fizzgate.plugin.jwt.VerifiedTokenCache;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * 
@@ -70,4 +78,46 @@ public class JwtAuthPluginFilterTests {
 		
 	}
 
+	@Test
+	public void testTokenCache() {
+		JwtAuthPluginFilter plugin = new JwtAuthPluginFilter();
+		plugin.setTokenCacheSize(100);
+		VerifiedTokenCache tokenCache = plugin.getTokenCache();
+
+		String token = JWT.create().withSubject("henry").withExpiresAt(new Date(System.currentTimeMillis() + 60000))
+				.sign(Algorithm.HMAC256("123456"));
+		DecodedJWT verified = plugin.verify(token, "123456", null);
+		assertNotNull(verified);
+		assertEquals(0, tokenCache.getHitCount());
+		assertEquals(1, tokenCache.getMissCount());
+		// the cached token is not decoded again
+		DecodedJWT jwt = plugin.verify(token, "123456", null);
+		assertSame(verified, jwt);
+		assertEquals("henry", jwt.getSubject());
+		assertEquals(1, tokenCache.getHitCount());
+
+		// cached token is verified again with another key
+		assertNull(plugin.verify(token, "654321", null));
+		assertEquals(2, tokenCache.getMissCount());
+
+		// revoked token is rejected even if it is cached
+		plugin.setRevocationChecker(t -> "henry".equals(t.getSubject()));
+		assertNull(plugin.verify(token, "123456", null));
+		assertEquals(2, tokenCache.getHitCount());
+		plugin.revoke(token);
+		assertNull(plugin.verify(token, "123456", null));
+		assertEquals(3, tokenCache.getMissCount());
+		plugin.setRevocationChecker(null);
+
+		// expired or no exp token is not cached
+		String expired = JWT.create().withExpiresAt(new Date(System.currentTimeMillis() - 1000))
+				.sign(Algorithm.HMAC256("123456"));
+		assertNull(plugin.verify(expired, "123456", null));
+		String noExp = JWT.create().withSubject("henry").sign(Algorithm.HMAC256("123456"));
+		assertNotNull(plugin.verify(noExp, "123456", null));
+		assertNotNull(plugin.verify(noExp, "123456", null));
+		assertEquals(2, tokenCache.getHitCount());
+		assertEquals(6, tokenCache.getMissCount());
+	}
+
 }